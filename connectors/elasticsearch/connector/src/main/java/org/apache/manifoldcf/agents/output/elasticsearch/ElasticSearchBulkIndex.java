@@ -0,0 +1,322 @@
+/* $Id$ */
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.manifoldcf.agents.output.elasticsearch;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Iterator;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.HttpEntity;
+import org.apache.http.util.EntityUtils;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.Header;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.manifoldcf.agents.interfaces.RepositoryDocument;
+import org.apache.manifoldcf.agents.interfaces.ServiceInterruption;
+import org.apache.manifoldcf.core.interfaces.ManifoldCFException;
+import org.apache.manifoldcf.crawler.system.Logging;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/** Index a group of documents with ElasticSearch _bulk requests.
+* The request body is newline-delimited JSON: an action line naming the document id, followed by
+* the document source, for each document.  The response contains one item per document, in order,
+* which is used to determine the result for each document individually.
+*
+* The body is streamed, and binary content is base64-encoded on the fly, so memory use does not
+* depend on document size.  A request is closed off, and the next one begun, once it holds the
+* configured maximum number of documents or bytes, or has been open for the configured maximum time.
+*/
+public class ElasticSearchBulkIndex extends ElasticSearchConnection
+{
+
+  /** Maximum documents per request */
+  protected final int maxDocuments;
+  /** Maximum bytes per request */
+  protected final long maxBytes;
+  /** Maximum time spent writing one request, in milliseconds */
+  protected final long maxTime;
+
+  /** Per-document results */
+  protected Result[] documentResults = null;
+  /** Per-document result descriptions */
+  protected String[] documentResultDescriptions = null;
+
+  private class BulkRequestEntity implements HttpEntity
+  {
+
+    private final String[] documentURIs;
+    private final RepositoryDocument[] documents;
+    private final int startIndex;
+    private int endIndex;
+
+    public BulkRequestEntity(String[] documentURIs, RepositoryDocument[] documents, int startIndex)
+    {
+      this.documentURIs = documentURIs;
+      this.documents = documents;
+      this.startIndex = startIndex;
+      this.endIndex = startIndex;
+    }
+
+    /** Get the index one past the last document actually written. */
+    public int getEndIndex()
+    {
+      return endIndex;
+    }
+
+    @Override
+    public boolean isChunked() {
+      return true;
+    }
+
+    @Override
+    public void consumeContent()
+      throws IOException {
+      EntityUtils.consume(this);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+      return false;
+    }
+
+    @Override
+    public boolean isStreaming() {
+      return false;
+    }
+
+    @Override
+    public InputStream getContent()
+      throws IOException, IllegalStateException {
+      return null;
+    }
+
+    @Override
+    public void writeTo(OutputStream out)
+      throws IOException {
+      CountingOutputStream counter = new CountingOutputStream(out);
+      PrintWriter pw = new PrintWriter(new OutputStreamWriter(counter, "utf-8"));
+      try
+      {
+        long startTime = System.currentTimeMillis();
+        int i = startIndex;
+        while (i < documents.length)
+        {
+          pw.print("{\"index\" : {\"_id\" : "+ElasticSearchIndex.jsonStringEscape(documentURIs[i])+"}}\n");
+          ElasticSearchIndex.writeDocument(pw, documents[i], documents[i].getBinaryStream());
+          pw.print("\n");
+          pw.flush();
+          i++;
+          endIndex = i;
+          if (i - startIndex >= maxDocuments || counter.getCount() >= maxBytes ||
+            System.currentTimeMillis() - startTime >= maxTime)
+            break;
+        }
+      } finally
+      {
+        pw.flush();
+        IOUtils.closeQuietly(pw);
+      }
+    }
+
+    @Override
+    public long getContentLength() {
+      // Unknown (chunked) length
+      return -1L;
+    }
+
+    @Override
+    public Header getContentType() {
+      return new BasicHeader("Content-type","application/x-ndjson");
+    }
+
+    @Override
+    public Header getContentEncoding() {
+      return null;
+    }
+
+  }
+
+  /** Output stream wrapper that counts the bytes written through it. */
+  protected static class CountingOutputStream extends FilterOutputStream
+  {
+    protected long count = 0L;
+
+    public CountingOutputStream(OutputStream out)
+    {
+      super(out);
+    }
+
+    @Override
+    public void write(int b)
+      throws IOException
+    {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len)
+      throws IOException
+    {
+      out.write(b, off, len);
+      count += len;
+    }
+
+    public long getCount()
+    {
+      return count;
+    }
+  }
+
+  public ElasticSearchBulkIndex(HttpClient client, ElasticSearchConfig config)
+  {
+    super(config, client);
+    maxDocuments = Math.max(1, config.getBulkMaxDocuments());
+    maxBytes = config.getBulkMaxBytes();
+    maxTime = config.getBulkMaxTime();
+  }
+
+  /** Index the documents.
+  * After this method returns, getDocumentResult() and getDocumentResultDescription() describe what
+  * happened to each document.
+  */
+  public void execute(String[] documentURIs, RepositoryDocument[] documents)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    documentResults = new Result[documents.length];
+    documentResultDescriptions = new String[documents.length];
+
+    int startIndex = 0;
+    while (startIndex < documents.length)
+    {
+      StringBuffer url = getApiUrl(config.getIndexType() + "/_bulk", false);
+      HttpPost post = new HttpPost(url.toString());
+      BulkRequestEntity entity = new BulkRequestEntity(documentURIs, documents, startIndex);
+      post.setEntity(entity);
+      boolean accepted = call(post);
+      int endIndex = entity.getEndIndex();
+      if (endIndex == startIndex)
+        throw new ManifoldCFException("Bulk request was sent without any documents");
+      if (accepted)
+        parseResponse(getResponse(), startIndex, endIndex);
+      else
+      {
+        // The whole request was rejected
+        for (int i = startIndex; i < endIndex; i++)
+        {
+          documentResults[i] = Result.ERROR;
+          documentResultDescriptions[i] = getResultDescription();
+        }
+      }
+      startIndex = endIndex;
+    }
+  }
+
+  /** Get the result for a document, by position.
+  */
+  public Result getDocumentResult(int i)
+  {
+    return documentResults[i];
+  }
+
+  /** Get the result description for a document, by position.
+  */
+  public String getDocumentResultDescription(int i)
+  {
+    return documentResultDescriptions[i];
+  }
+
+  /** Interpret the items in a _bulk response.
+  */
+  protected void parseResponse(String response, int startIndex, int endIndex)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    JSONArray items;
+    try
+    {
+      items = new JSONObject(response).getJSONArray("items");
+    }
+    catch (JSONException e)
+    {
+      setResult(Result.UNKNOWN, "Unparseable bulk response: "+response);
+      throw new ManifoldCFException("Unparseable bulk response: "+e.getMessage(),e);
+    }
+    int expected = endIndex - startIndex;
+    if (items.length() != expected)
+    {
+      setResult(Result.UNKNOWN, "Bulk response had "+items.length()+" items; expected "+expected);
+      throw new ManifoldCFException("Bulk response had "+items.length()+" items; expected "+expected);
+    }
+
+    String transientError = null;
+    for (int i = startIndex; i < endIndex; i++)
+    {
+      try
+      {
+        JSONObject item = items.getJSONObject(i - startIndex);
+        Iterator keys = item.keys();
+        JSONObject action = item.getJSONObject((String)keys.next());
+        int status = action.optInt("status",-1);
+        String error = action.has("error")?action.get("error").toString():null;
+        if (error == null && (action.optBoolean("ok",false) || (status >= 200 && status < 300)))
+        {
+          documentResults[i] = Result.OK;
+          documentResultDescriptions[i] = null;
+        }
+        else
+        {
+          documentResults[i] = Result.ERROR;
+          documentResultDescriptions[i] = (error==null)?("HTTP code = "+status):error;
+          Logging.connectors.warn("ES: Bulk index failed for '"+action.optString("_id")+"': "+documentResultDescriptions[i]);
+          // Server-side trouble means the document may well be accepted later, so it must be retried
+          if (status == 429 || status >= 500)
+            transientError = documentResultDescriptions[i];
+        }
+      }
+      catch (JSONException e)
+      {
+        setResult(Result.UNKNOWN, "Unparseable bulk response item: "+e.getMessage());
+        throw new ManifoldCFException("Unparseable bulk response item: "+e.getMessage(),e);
+      }
+    }
+
+    if (transientError != null)
+    {
+      setResult(Result.ERROR, "Server exception: "+transientError);
+      long currentTime = System.currentTimeMillis();
+      throw new ServiceInterruption("Server exception: "+transientError,
+        new ManifoldCFException(transientError),
+        currentTime + 300000L,
+        currentTime + 20L * 60000L,
+        -1,
+        false);
+    }
+  }
+
+}
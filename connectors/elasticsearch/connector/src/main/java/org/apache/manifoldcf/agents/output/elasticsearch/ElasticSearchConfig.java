@@ -33,7 +33,8 @@ public class ElasticSearchConfig extends ElasticSearchParam
   /** Parameters used for the configuration */
   final private static ParameterEnum[] CONFIGURATIONLIST =
   { ParameterEnum.SERVERLOCATION, ParameterEnum.INDEXNAME,
-      ParameterEnum.INDEXTYPE};
+      ParameterEnum.INDEXTYPE, ParameterEnum.BULKMAXDOCUMENTS,
+      ParameterEnum.BULKMAXBYTES, ParameterEnum.BULKMAXSECONDS};
 
   /** Build a set of ElasticSearchParameters by reading ConfigParams. If the
    * value returned by ConfigParams.getParameter is null, the default value is
@@ -90,4 +91,42 @@ public class ElasticSearchConfig extends ElasticSearchParam
     return get(ParameterEnum.INDEXTYPE);
   }
 
+  /** @return the maximum number of documents to send in one _bulk request. */
+  final public int getBulkMaxDocuments()
+  {
+    return parseInt(ParameterEnum.BULKMAXDOCUMENTS);
+  }
+
+  /** @return the maximum number of bytes to send in one _bulk request. */
+  final public long getBulkMaxBytes()
+  {
+    String value = get(ParameterEnum.BULKMAXBYTES);
+    try
+    {
+      return Long.parseLong(value);
+    }
+    catch (NumberFormatException e)
+    {
+      return Long.parseLong(ParameterEnum.BULKMAXBYTES.defaultValue);
+    }
+  }
+
+  /** @return the maximum time to spend writing one _bulk request, in milliseconds. */
+  final public long getBulkMaxTime()
+  {
+    return 1000L * (long)parseInt(ParameterEnum.BULKMAXSECONDS);
+  }
+
+  private int parseInt(ParameterEnum param)
+  {
+    try
+    {
+      return Integer.parseInt(get(param));
+    }
+    catch (NumberFormatException e)
+    {
+      return Integer.parseInt(param.defaultValue);
+    }
+  }
+
 }
@@ -429,6 +429,42 @@ public class ElasticSearchConnector extends BaseOutputConnector
     }
   }
 
+  @Override
+  public int[] addOrReplaceDocuments(String[] documentURIs, String[] outputDescriptions,
+      RepositoryDocument[] documents, String[] authorityNameStrings,
+      IOutputAddActivity activities) throws ManifoldCFException,
+      ServiceInterruption
+  {
+    HttpClient client = getSession();
+    ElasticSearchConfig config = getConfigParameters(null);
+    long startTime = System.currentTimeMillis();
+    ElasticSearchBulkIndex oi = new ElasticSearchBulkIndex(client, config);
+    boolean completed = false;
+    try
+    {
+      oi.execute(documentURIs, documents);
+      completed = true;
+      int[] rval = new int[documents.length];
+      for (int i = 0; i < documents.length; i++)
+      {
+        rval[i] = (oi.getDocumentResult(i) == Result.OK)?DOCUMENTSTATUS_ACCEPTED:DOCUMENTSTATUS_REJECTED;
+      }
+      return rval;
+    }
+    finally
+    {
+      for (int i = 0; i < documents.length; i++)
+      {
+        if (completed)
+          activities.recordActivity(startTime, ELASTICSEARCH_INDEXATION_ACTIVITY,
+            documents[i].getBinaryLength(), documentURIs[i], oi.getDocumentResult(i).name(), oi.getDocumentResultDescription(i));
+        else
+          activities.recordActivity(startTime, ELASTICSEARCH_INDEXATION_ACTIVITY,
+            documents[i].getBinaryLength(), documentURIs[i], oi.getResult().name(), oi.getResultDescription());
+      }
+    }
+  }
+
   @Override
   public void removeDocument(String documentURI, String outputDescription,
       IOutputRemoveActivity activities) throws ManifoldCFException,
@@ -100,41 +100,7 @@ public class ElasticSearchIndex extends ElasticSearchConnection
       PrintWriter pw = new PrintWriter(new OutputStreamWriter(out, "utf-8"));
       try
       {
-        pw.print("{");
-        Iterator<String> i = document.getFields();
-        boolean needComma = false;
-        while (i.hasNext()){
-          String fieldName = i.next();
-          String[] fieldValues = document.getFieldAsStrings(fieldName);
-          needComma = writeField(pw, needComma, fieldName, fieldValues);
-        }
-
-        needComma = writeACLs(pw, needComma, "document", document.getACL(), document.getDenyACL());
-        needComma = writeACLs(pw, needComma, "share", document.getShareACL(), document.getShareDenyACL());
-
-        if(inputStream!=null){
-          if(needComma){
-            pw.print(",");
-          }
-          // I'm told this is not necessary: see CONNECTORS-690
-          //pw.print("\"type\" : \"attachment\",");
-          pw.print("\"file\" : {");
-          String contentType = document.getMimeType();
-          if (contentType != null)
-            pw.print("\"_content_type\" : "+jsonStringEscape(contentType)+",");
-          String fileName = document.getFileName();
-          if (fileName != null)
-            pw.print("\"_name\" : "+jsonStringEscape(fileName)+",");
-          pw.print(" \"content\" : \"");
-          Base64 base64 = new Base64();
-          base64.encodeStream(inputStream, pw);
-          pw.print("\"}");
-        }
-        
-        pw.print("}");
-      } catch (ManifoldCFException e)
-      {
-        throw new IOException(e.getMessage());
+        writeDocument(pw, document, inputStream);
       } finally
       {
         pw.flush();
@@ -160,6 +126,52 @@ public class ElasticSearchIndex extends ElasticSearchConnection
 
   }
 
+  /** Write the JSON source for a document, all on one line.
+  *@param inputStream is the document's binary content, or null if none.
+  */
+  protected static void writeDocument(PrintWriter pw, RepositoryDocument document, InputStream inputStream)
+    throws IOException
+  {
+    try
+    {
+      pw.print("{");
+      Iterator<String> i = document.getFields();
+      boolean needComma = false;
+      while (i.hasNext()){
+        String fieldName = i.next();
+        String[] fieldValues = document.getFieldAsStrings(fieldName);
+        needComma = writeField(pw, needComma, fieldName, fieldValues);
+      }
+
+      needComma = writeACLs(pw, needComma, "document", document.getACL(), document.getDenyACL());
+      needComma = writeACLs(pw, needComma, "share", document.getShareACL(), document.getShareDenyACL());
+
+      if(inputStream!=null){
+        if(needComma){
+          pw.print(",");
+        }
+        // I'm told this is not necessary: see CONNECTORS-690
+        //pw.print("\"type\" : \"attachment\",");
+        pw.print("\"file\" : {");
+        String contentType = document.getMimeType();
+        if (contentType != null)
+          pw.print("\"_content_type\" : "+jsonStringEscape(contentType)+",");
+        String fileName = document.getFileName();
+        if (fileName != null)
+          pw.print("\"_name\" : "+jsonStringEscape(fileName)+",");
+        pw.print(" \"content\" : \"");
+        Base64 base64 = new Base64();
+        base64.encodeStream(inputStream, pw);
+        pw.print("\"}");
+      }
+
+      pw.print("}");
+    } catch (ManifoldCFException e)
+    {
+      throw new IOException(e.getMessage());
+    }
+  }
+
   protected static boolean writeField(PrintWriter pw, boolean needComma,
     String fieldName, String[] fieldValues)
     throws IOException
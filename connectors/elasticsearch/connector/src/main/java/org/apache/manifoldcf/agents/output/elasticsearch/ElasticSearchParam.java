@@ -39,6 +39,12 @@ public class ElasticSearchParam extends HashMap<ParameterEnum, String>
 
 		INDEXTYPE("generictype"),
 
+		BULKMAXDOCUMENTS("100"),
+
+		BULKMAXBYTES("10485760"),
+
+		BULKMAXSECONDS("30"),
+
 		FIELDLIST(""),
 
 		MAXFILESIZE("16777216"),
@@ -39,6 +39,27 @@ function checkConfig() {
       return false;
     }
   }
+  if (editconnection.bulkmaxdocuments) {
+    if (editconnection.bulkmaxdocuments.value == "" || !isInteger(editconnection.bulkmaxdocuments.value) || parseInt(editconnection.bulkmaxdocuments.value) < 1) {
+      alert("$Encoder.bodyJavascriptEscape($ResourceBundle.getString('ElasticSearchConnector.PleaseSupplyValidBulkMaxDocuments'))");
+      editconnection.bulkmaxdocuments.focus();
+      return false;
+    }
+  }
+  if (editconnection.bulkmaxbytes) {
+    if (editconnection.bulkmaxbytes.value == "" || !isInteger(editconnection.bulkmaxbytes.value) || parseInt(editconnection.bulkmaxbytes.value) < 1) {
+      alert("$Encoder.bodyJavascriptEscape($ResourceBundle.getString('ElasticSearchConnector.PleaseSupplyValidBulkMaxBytes'))");
+      editconnection.bulkmaxbytes.focus();
+      return false;
+    }
+  }
+  if (editconnection.bulkmaxseconds) {
+    if (editconnection.bulkmaxseconds.value == "" || !isInteger(editconnection.bulkmaxseconds.value) || parseInt(editconnection.bulkmaxseconds.value) < 1) {
+      alert("$Encoder.bodyJavascriptEscape($ResourceBundle.getString('ElasticSearchConnector.PleaseSupplyValidBulkMaxSeconds'))");
+      editconnection.bulkmaxseconds.focus();
+      return false;
+    }
+  }
   return true;
 }
 
@@ -67,6 +88,30 @@ function checkConfigForSave() {
       return false;
     }
   }
+  if (editconnection.bulkmaxdocuments) {
+    if (editconnection.bulkmaxdocuments.value == "" || !isInteger(editconnection.bulkmaxdocuments.value) || parseInt(editconnection.bulkmaxdocuments.value) < 1) {
+      alert("$Encoder.bodyJavascriptEscape($ResourceBundle.getString('ElasticSearchConnector.PleaseSupplyValidBulkMaxDocuments'))");
+      SelectTab("$Encoder.javascriptBodyEscape($ResourceBundle.getString('ElasticSearchConnector.Parameters'))");
+      editconnection.bulkmaxdocuments.focus();
+      return false;
+    }
+  }
+  if (editconnection.bulkmaxbytes) {
+    if (editconnection.bulkmaxbytes.value == "" || !isInteger(editconnection.bulkmaxbytes.value) || parseInt(editconnection.bulkmaxbytes.value) < 1) {
+      alert("$Encoder.bodyJavascriptEscape($ResourceBundle.getString('ElasticSearchConnector.PleaseSupplyValidBulkMaxBytes'))");
+      SelectTab("$Encoder.javascriptBodyEscape($ResourceBundle.getString('ElasticSearchConnector.Parameters'))");
+      editconnection.bulkmaxbytes.focus();
+      return false;
+    }
+  }
+  if (editconnection.bulkmaxseconds) {
+    if (editconnection.bulkmaxseconds.value == "" || !isInteger(editconnection.bulkmaxseconds.value) || parseInt(editconnection.bulkmaxseconds.value) < 1) {
+      alert("$Encoder.bodyJavascriptEscape($ResourceBundle.getString('ElasticSearchConnector.PleaseSupplyValidBulkMaxSeconds'))");
+      SelectTab("$Encoder.javascriptBodyEscape($ResourceBundle.getString('ElasticSearchConnector.Parameters'))");
+      editconnection.bulkmaxseconds.focus();
+      return false;
+    }
+  }
   return true;
 }
 //-->
@@ -0,0 +1,213 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.agents.output.elasticsearch;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+
+import org.apache.manifoldcf.core.interfaces.ConfigParams;
+import org.apache.manifoldcf.agents.interfaces.RepositoryDocument;
+import org.apache.manifoldcf.agents.output.elasticsearch.ElasticSearchConnection.Result;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Exercise the _bulk indexing path, and the one-PUT-per-document path, against a stand-in server.
+*/
+public class TestElasticSearchBulkIndex
+{
+  protected HttpServer server;
+  protected PoolingClientConnectionManager connectionManager;
+  protected HttpClient client;
+  protected final AtomicInteger requestCount = new AtomicInteger(0);
+  protected final AtomicInteger documentCount = new AtomicInteger(0);
+
+  @BeforeClass
+  public static void setUpLogging()
+  {
+    org.apache.manifoldcf.crawler.system.Logging.connectors = org.apache.log4j.Logger.getLogger("test");
+  }
+
+  @Before
+  public void setUp()
+    throws Exception
+  {
+    server = HttpServer.create(new InetSocketAddress("localhost",0),0);
+    server.createContext("/",new StandInHandler());
+    server.start();
+    connectionManager = new PoolingClientConnectionManager();
+    connectionManager.setMaxTotal(1);
+    client = new DefaultHttpClient(connectionManager);
+  }
+
+  @After
+  public void tearDown()
+    throws Exception
+  {
+    connectionManager.shutdown();
+    server.stop(0);
+  }
+
+  @Test
+  public void perDocumentResultsTest()
+    throws Exception
+  {
+    String[] uris = new String[250];
+    RepositoryDocument[] documents = new RepositoryDocument[uris.length];
+    for (int i = 0; i < uris.length; i++)
+    {
+      uris[i] = ((i % 10 == 3)?"http://bad/":"http://good/")+i;
+      documents[i] = makeDocument(i,100);
+    }
+    ElasticSearchBulkIndex bi = new ElasticSearchBulkIndex(client,makeConfig("100","10485760","30"));
+    bi.execute(uris,documents);
+    // 100 documents per request
+    assertEquals(3,requestCount.get());
+    assertEquals(250,documentCount.get());
+    for (int i = 0; i < uris.length; i++)
+    {
+      if (i % 10 == 3)
+        assertEquals(Result.ERROR,bi.getDocumentResult(i));
+      else
+        assertEquals(Result.OK,bi.getDocumentResult(i));
+    }
+  }
+
+  @Test
+  public void byteThresholdTest()
+    throws Exception
+  {
+    String[] uris = new String[10];
+    RepositoryDocument[] documents = new RepositoryDocument[uris.length];
+    for (int i = 0; i < uris.length; i++)
+    {
+      uris[i] = "http://good/"+i;
+      documents[i] = makeDocument(i,1000);
+    }
+    // Each document is bigger than the byte limit, so each goes in a request of its own
+    ElasticSearchBulkIndex bi = new ElasticSearchBulkIndex(client,makeConfig("100","1000","30"));
+    bi.execute(uris,documents);
+    assertEquals(10,requestCount.get());
+    assertEquals(10,documentCount.get());
+    for (int i = 0; i < uris.length; i++)
+    {
+      assertEquals(Result.OK,bi.getDocumentResult(i));
+    }
+  }
+
+  @Test
+  public void singleDocumentTest()
+    throws Exception
+  {
+    // The per-document path still sends one PUT per document
+    ElasticSearchConfig config = makeConfig("100","10485760","30");
+    for (int i = 0; i < 5; i++)
+    {
+      RepositoryDocument document = makeDocument(i,1000);
+      ElasticSearchIndex oi = new ElasticSearchIndex(client,config);
+      oi.execute("http://good/"+i,document,document.getBinaryStream());
+      assertEquals(Result.OK,oi.getResult());
+    }
+    assertEquals(5,requestCount.get());
+  }
+
+  protected ElasticSearchConfig makeConfig(String maxDocuments, String maxBytes, String maxSeconds)
+  {
+    ConfigParams params = new ConfigParams();
+    params.setParameter(ElasticSearchParam.ParameterEnum.SERVERLOCATION.name(),"http://localhost:"+server.getAddress().getPort()+"/");
+    params.setParameter(ElasticSearchParam.ParameterEnum.BULKMAXDOCUMENTS.name(),maxDocuments);
+    params.setParameter(ElasticSearchParam.ParameterEnum.BULKMAXBYTES.name(),maxBytes);
+    params.setParameter(ElasticSearchParam.ParameterEnum.BULKMAXSECONDS.name(),maxSeconds);
+    return new ElasticSearchConfig(params);
+  }
+
+  protected RepositoryDocument makeDocument(int i, int length)
+    throws Exception
+  {
+    RepositoryDocument document = new RepositoryDocument();
+    document.addField("title","Document "+i);
+    byte[] content = new byte[length];
+    for (int j = 0; j < length; j++)
+    {
+      content[j] = (byte)('a' + (j % 26));
+    }
+    document.setBinary(new ByteArrayInputStream(content),length);
+    return document;
+  }
+
+  /** Pretends to be ElasticSearch, for both per-document PUTs and _bulk posts.
+  * Documents whose ids mention "bad" are rejected.
+  */
+  protected class StandInHandler implements HttpHandler
+  {
+    public void handle(HttpExchange exchange)
+      throws IOException
+    {
+      requestCount.incrementAndGet();
+      String path = exchange.getRequestURI().getPath();
+      BufferedReader br = new BufferedReader(new InputStreamReader(exchange.getRequestBody(),"utf-8"));
+      StringBuilder response = new StringBuilder();
+      if (path.endsWith("/_bulk"))
+      {
+        response.append("{\"took\":1,\"items\":[");
+        boolean first = true;
+        while (true)
+        {
+          String action = br.readLine();
+          if (action == null || action.length() == 0)
+            break;
+          // Skip the source line
+          br.readLine();
+          documentCount.incrementAndGet();
+          if (!first)
+            response.append(",");
+          first = false;
+          if (action.indexOf("bad") != -1)
+            response.append("{\"index\":{\"_id\":\"x\",\"status\":400,\"error\":\"MapperParsingException\"}}");
+          else
+            response.append("{\"index\":{\"_id\":\"x\",\"_version\":1,\"ok\":true}}");
+        }
+        response.append("]}");
+      }
+      else
+      {
+        while (br.readLine() != null)
+        {
+        }
+        response.append("{\"ok\":true,\"_id\":\"x\",\"_version\":1}");
+      }
+      byte[] bytes = response.toString().getBytes("utf-8");
+      exchange.getResponseHeaders().set("Content-Type","application/json; charset=utf-8");
+      exchange.sendResponseHeaders(200,bytes.length);
+      OutputStream os = exchange.getResponseBody();
+      os.write(bytes);
+      os.close();
+    }
+  }
+
+}
@@ -35,6 +35,13 @@ import java.util.regex.*;
 import org.apache.log4j.*;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.Credentials;
@@ -127,6 +134,20 @@ public class HttpPoster
   /** How long to wait before retrying a failed ingestion */
   private static final long interruptionRetryTime = 60000L;
 
+  /** How long an idle request thread lingers before going away, in milliseconds */
+  protected static final long REQUEST_THREAD_KEEPALIVE = 60000L;
+
+  /** The maximum number of requests this poster keeps in flight at once when posting a group of documents */
+  protected final int maxRequests;
+
+  /** The pool of threads that actually talk to Solr for this poster.
+  * Java 1.5 stopped permitting thread interruptions to abort socket waits.  As a result, it is impossible to get threads to shutdown cleanly that are doing
+  * such waits.  So, the places where this happens are done in these threads, rather than the caller's, so that the caller can just abandon them
+  * when it is interrupted.  An abandoned thread returns to the pool once its socket wait finishes or times out.  Both the pool and its queue
+  * are bounded by maxRequests, so requests that cannot be run because too many abandoned ones are still stuck are refused rather than piled up.
+  */
+  protected final ThreadPoolExecutor requestExecutor;
+
   /** Initialize the SolrCloud http poster.
   */
   public HttpPoster(String zookeeperHosts, String collection,
@@ -136,7 +157,7 @@ public class HttpPoster
     String modifiedDateAttributeName, String createdDateAttributeName, String indexedDateAttributeName,
     String fileNameAttributeName, String mimeTypeAttributeName,
     Long maxDocumentLength,
-    String commitWithin)
+    String commitWithin, int maxRequests)
     throws ManifoldCFException
   {
     // These are the paths to the handlers in Solr that deal with the actions we need to do
@@ -156,6 +177,9 @@ public class HttpPoster
     this.mimeTypeAttributeName = mimeTypeAttributeName;
     
     this.maxDocumentLength = maxDocumentLength;
+
+    this.maxRequests = maxRequests;
+    requestExecutor = makeRequestExecutor(maxRequests);
     
     try
     {
@@ -182,7 +206,7 @@ public class HttpPoster
     String modifiedDateAttributeName, String createdDateAttributeName, String indexedDateAttributeName,
     String fileNameAttributeName, String mimeTypeAttributeName,
     IKeystoreManager keystoreManager, Long maxDocumentLength,
-    String commitWithin)
+    String commitWithin, int maxRequests)
     throws ManifoldCFException
   {
     // These are the paths to the handlers in Solr that deal with the actions we need to do
@@ -203,6 +227,9 @@ public class HttpPoster
     
     this.maxDocumentLength = maxDocumentLength;
 
+    this.maxRequests = maxRequests;
+    requestExecutor = makeRequestExecutor(maxRequests);
+
     String location = "";
     if (webapp != null)
       location = "/" + webapp;
@@ -216,7 +243,9 @@ public class HttpPoster
     // Initialize standard solr-j.
     // First, we need an HttpClient where basic auth is properly set up.
     PoolingClientConnectionManager localConnectionManager = new PoolingClientConnectionManager();
-    localConnectionManager.setMaxTotal(1);
+    // Allow for as many connections as we pipeline requests
+    localConnectionManager.setMaxTotal(maxRequests);
+    localConnectionManager.setDefaultMaxPerRoute(maxRequests);
     SSLSocketFactory myFactory;
     if (keystoreManager != null)
     {
@@ -276,10 +305,22 @@ public class HttpPoster
     solrServer = httpSolrServer;
   }
 
+  /** Build the request pool for a poster.
+  */
+  protected static ThreadPoolExecutor makeRequestExecutor(int maxRequests)
+  {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(maxRequests,maxRequests,
+      REQUEST_THREAD_KEEPALIVE,TimeUnit.MILLISECONDS,new ArrayBlockingQueue<Runnable>(maxRequests),new RequestThreadFactory());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
   /** Shut down the poster.
   */
   public void shutdown()
   {
+    // Abandon any requests still stuck in socket waits; the threads are daemons
+    requestExecutor.shutdownNow();
     if (solrServer != null)
       solrServer.shutdown();
     solrServer = null;
@@ -297,48 +338,65 @@ public class HttpPoster
       Logging.ingest.debug("commitPost()");
 
     // Open a socket to ingest, and to the response stream to get the post result
+    CommitOperation operation = new CommitOperation();
+    runRequest(operation);
+    Throwable thr = operation.getException();
+    if (thr != null)
+      handleRequestException(thr, "commit");
+  }
+
+  /** Run a request in the request pool, and wait for it to finish.
+  */
+  protected void runRequest(Runnable request)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    waitForRequest(submitRequest(request));
+  }
+
+  /** Submit a request to the request pool.
+  * If the pool is still full of abandoned requests, a ServiceInterruption is signalled so the work is retried later.
+  */
+  protected Future<?> submitRequest(Runnable request)
+    throws ServiceInterruption
+  {
     try
     {
-      CommitThread t = new CommitThread();
-      try
-      {
-        t.start();
-        t.join();
-
-        Throwable thr = t.getException();
-        if (thr != null)
-        {
-          if (thr instanceof SolrServerException)
-            throw (SolrServerException)thr;
-          if (thr instanceof IOException)
-            throw (IOException)thr;
-          if (thr instanceof RuntimeException)
-            throw (RuntimeException)thr;
-          else
-            throw (Error)thr;
-        }
-        return;
-      }
-      catch (InterruptedException e)
-      {
-        t.interrupt();
-        throw new ManifoldCFException("Interrupted: "+e.getMessage(),ManifoldCFException.INTERRUPTED);
-      }
+      return requestExecutor.submit(request);
     }
-    catch (SolrServerException e)
+    catch (RejectedExecutionException e)
     {
-      handleSolrServerException(e, "commit");
-      return;
+      long currentTime = System.currentTimeMillis();
+      String message = "All Solr request threads are busy with abandoned requests";
+      Logging.ingest.warn(message);
+      throw new ServiceInterruption(message,
+        e,
+        currentTime + interruptionRetryTime,
+        currentTime + 2L * 60L * 60000L,
+        -1,
+        false);
     }
-    catch (SolrException e)
+  }
+
+  /** Wait for a request that was submitted to the request pool.
+  * If the calling thread is interrupted, the request is cancelled and abandoned, and an interruption is signalled right away.
+  */
+  protected static void waitForRequest(Future<?> future)
+    throws ManifoldCFException
+  {
+    try
     {
-      handleSolrException(e, "commit");
-      return;
+      future.get();
     }
-    catch (IOException ioe)
+    catch (InterruptedException e)
     {
-      handleIOException(ioe, "commit");
-      return;
+      future.cancel(true);
+      throw new ManifoldCFException("Interrupted: "+e.getMessage(),ManifoldCFException.INTERRUPTED);
+    }
+    catch (ExecutionException e)
+    {
+      // Requests catch everything themselves, so this is not expected
+      Throwable cause = e.getCause();
+      throw new ManifoldCFException("Unexpected request failure: "+cause.getMessage(),cause);
     }
   }
   
@@ -497,71 +555,131 @@ public class HttpPoster
     String authorityNameString, IOutputAddActivity activities)
     throws ManifoldCFException, ServiceInterruption
   {
-    if (Logging.ingest.isDebugEnabled())
-      Logging.ingest.debug("indexPost(): '" + documentURI + "'");
+    return indexPostMultiple(new String[]{documentURI},new RepositoryDocument[]{document},arguments,sourceTargets,
+      new String[]{authorityNameString},activities)[0];
+  }
 
-    // The SOLR connector cannot deal with folder-level security at this time.  If they are seen, reject the document.
-    if (document.countDirectoryACLs() != 0)
-      return false;
-    
-    // If the document is too long, reject it.
-    if (maxDocumentLength != null && document.getBinaryLength() > maxDocumentLength.longValue())
-      return false;
-    
-    // Convert the incoming acls to qualified forms
-    String[] shareAcls = convertACL(document.getShareACL(),authorityNameString,activities);
-    String[] shareDenyAcls = convertACL(document.getShareDenyACL(),authorityNameString,activities);
-    String[] acls = convertACL(document.getACL(),authorityNameString,activities);
-    String[] denyAcls = convertACL(document.getDenyACL(),authorityNameString,activities);
-    
-    try
+  /**
+  * Post a group of documents to ingest.
+  * The extracting update handler accepts only one document per request, so each document is still posted in a request
+  * of its own, but up to maxRequests of these requests are kept in flight at once.
+  * @param documentURIs are the documents' uris.
+  * @param documents are the document structures to ingest.
+  * @param arguments are the configuration arguments to pass in the post.  Key is argument name, value is a list of the argument values.
+  * @param authorityNameStrings are the names of the governing authorities for the documents' acls, or null if none.
+  * @param activities is the activities object, so we can report what's happening.
+  * @return an array with one entry per document: true if the ingestion was successful, or false if the ingestion is illegal.
+  * @throws ManifoldCFException, ServiceInterruption
+  */
+  public boolean[] indexPostMultiple(String[] documentURIs,
+    RepositoryDocument[] documents, Map arguments, Map<String, List<String>> sourceTargets,
+    String[] authorityNameStrings, IOutputAddActivity activities)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    boolean[] rval = new boolean[documents.length];
+    List<IngestOperation> operationList = new ArrayList<IngestOperation>();
+    List<Integer> operationIndexes = new ArrayList<Integer>();
+    for (int i = 0; i < documents.length; i++)
     {
-      IngestThread t = new IngestThread(documentURI,document,arguments,sourceTargets,shareAcls,shareDenyAcls,acls,denyAcls,commitWithin);
-      try
-      {
-        t.start();
-        t.join();
+      String documentURI = documentURIs[i];
+      RepositoryDocument document = documents[i];
 
-        // Log the activity, if any, regardless of any exception
-        if (t.getActivityCode() != null)
-          activities.recordActivity(t.getActivityStart(),SolrConnector.INGEST_ACTIVITY,t.getActivityBytes(),documentURI,t.getActivityCode(),t.getActivityDetails());
+      if (Logging.ingest.isDebugEnabled())
+        Logging.ingest.debug("indexPost(): '" + documentURI + "'");
+
+      // The SOLR connector cannot deal with folder-level security at this time.  If they are seen, reject the document.
+      if (document.countDirectoryACLs() != 0)
+        continue;
+
+      // If the document is too long, reject it.
+      if (maxDocumentLength != null && document.getBinaryLength() > maxDocumentLength.longValue())
+        continue;
+
+      // Convert the incoming acls to qualified forms
+      String[] shareAcls = convertACL(document.getShareACL(),authorityNameStrings[i],activities);
+      String[] shareDenyAcls = convertACL(document.getShareDenyACL(),authorityNameStrings[i],activities);
+      String[] acls = convertACL(document.getACL(),authorityNameStrings[i],activities);
+      String[] denyAcls = convertACL(document.getDenyACL(),authorityNameStrings[i],activities);
+
+      operationList.add(new IngestOperation(documentURI,document,arguments,sourceTargets,shareAcls,shareDenyAcls,acls,denyAcls,commitWithin));
+      operationIndexes.add(new Integer(i));
+    }
 
-        Throwable thr = t.getException();
-        if (thr != null)
+    IngestOperation[] operations = operationList.toArray(new IngestOperation[0]);
+    Future<?>[] futures = new Future<?>[operations.length];
+    int submitted = 0;
+    try
+    {
+      for (int j = 0; j < operations.length; j++)
+      {
+        // Keep the pipeline full
+        while (submitted < operations.length && submitted < j + maxRequests)
         {
-          if (thr instanceof SolrServerException)
-            throw (SolrServerException)thr;
-          if (thr instanceof IOException)
-            throw (IOException)thr;
-          if (thr instanceof RuntimeException)
-            throw (RuntimeException)thr;
-          else
-            throw (Error)thr;
+          futures[submitted] = submitRequest(operations[submitted]);
+          submitted++;
         }
-        return t.getRval();
+
+        waitForRequest(futures[j]);
+        IngestOperation operation = operations[j];
+        // Log the activity, if any, regardless of any exception
+        if (operation.getActivityCode() != null)
+          activities.recordActivity(operation.getActivityStart(),SolrConnector.INGEST_ACTIVITY,operation.getActivityBytes(),
+            operation.getDocumentURI(),operation.getActivityCode(),operation.getActivityDetails());
+        // Either this throws, or the document is illegal and we can keep going.
+        if (operation.getException() != null)
+          handleIngestException(operation.getException());
+        rval[operationIndexes.get(j).intValue()] = operation.getRval();
       }
-      catch (InterruptedException e)
+    }
+    finally
+    {
+      // If we are leaving early, abandon whatever is still in flight.  This does nothing to requests that are done.
+      for (int j = 0; j < submitted; j++)
       {
-        t.interrupt();
-        throw new ManifoldCFException("Interrupted: "+e.getMessage(),ManifoldCFException.INTERRUPTED);
+        futures[j].cancel(true);
       }
     }
+    return rval;
+  }
+
+  /** Interpret an exception thrown during ingestion.
+  * If this method doesn't throw an exception, it means that the document is illegal and should not be repeated.
+  */
+  protected static void handleIngestException(Throwable thr)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    handleRequestException(thr, "indexing");
+  }
+
+  /** Interpret an exception thrown by a request.
+  * If this method doesn't throw an exception, it means that the document or action is illegal and should not be repeated.
+  */
+  protected static void handleRequestException(Throwable thr, String context)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    try
+    {
+      if (thr instanceof SolrServerException)
+        throw (SolrServerException)thr;
+      if (thr instanceof IOException)
+        throw (IOException)thr;
+      if (thr instanceof RuntimeException)
+        throw (RuntimeException)thr;
+      else
+        throw (Error)thr;
+    }
     catch (SolrServerException e)
     {
-      handleSolrServerException(e, "indexing");
-      return false;
+      handleSolrServerException(e, context);
     }
     catch (SolrException e)
     {
-      handleSolrException(e, "indexing");
-      return false;
+      handleSolrException(e, context);
     }
     catch (IOException ioe)
     {
-      handleIOException(ioe, "indexing");
-      return false;
+      handleIOException(ioe, context);
     }
-
   }
 
   /** Post a check request.
@@ -573,50 +691,11 @@ public class HttpPoster
       Logging.ingest.debug("checkPost()");
 
     // Open a socket to ingest, and to the response stream to get the post result
-    try
-    {
-      StatusThread t = new StatusThread();
-      try
-      {
-        t.start();
-        t.join();
-
-        Throwable thr = t.getException();
-        if (thr != null)
-        {
-          if (thr instanceof SolrServerException)
-            throw (SolrServerException)thr;
-          if (thr instanceof IOException)
-            throw (IOException)thr;
-          if (thr instanceof RuntimeException)
-            throw (RuntimeException)thr;
-          else
-            throw (Error)thr;
-        }
-        return;
-      }
-      catch (InterruptedException e)
-      {
-        t.interrupt();
-        throw new ManifoldCFException("Interrupted: "+e.getMessage(),ManifoldCFException.INTERRUPTED);
-      }
-    }
-    catch (SolrServerException e)
-    {
-      handleSolrServerException(e, "check");
-      return;
-    }
-    catch (SolrException e)
-    {
-      handleSolrException(e, "check");
-      return;
-    }
-    catch (IOException ioe)
-    {
-      handleIOException(ioe, "check");
-      return;
-    }
-
+    StatusOperation operation = new StatusOperation();
+    runRequest(operation);
+    Throwable thr = operation.getException();
+    if (thr != null)
+      handleRequestException(thr, "check");
   }
 
   /** Post a delete request.
@@ -625,57 +704,39 @@ public class HttpPoster
   public void deletePost(String documentURI, IOutputRemoveActivity activities)
     throws ManifoldCFException, ServiceInterruption
   {
-    if (Logging.ingest.isDebugEnabled())
-      Logging.ingest.debug("deletePost(): '" + documentURI + "'");
+    deletePostMultiple(new String[]{documentURI},activities);
+  }
 
-    try
+  /** Post a single delete request for a group of documents.
+  *@param documentURIs are the documents' URIs.
+  */
+  public void deletePostMultiple(String[] documentURIs, IOutputRemoveActivity activities)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    if (Logging.ingest.isDebugEnabled())
     {
-      DeleteThread t = new DeleteThread(documentURI);
-      try
+      for (String documentURI : documentURIs)
       {
-        t.start();
-        t.join();
+        Logging.ingest.debug("deletePost(): '" + documentURI + "'");
+      }
+    }
 
-        // Log the activity, if any, regardless of any exception
-        if (t.getActivityCode() != null)
-          activities.recordActivity(t.getActivityStart(),SolrConnector.REMOVE_ACTIVITY,null,documentURI,t.getActivityCode(),t.getActivityDetails());
+    DeleteOperation operation = new DeleteOperation(documentURIs);
+    runRequest(operation);
 
-        Throwable thr = t.getException();
-        if (thr != null)
-        {
-          if (thr instanceof SolrServerException)
-            throw (SolrServerException)thr;
-          if (thr instanceof IOException)
-            throw (IOException)thr;
-          if (thr instanceof RuntimeException)
-            throw (RuntimeException)thr;
-          else
-            throw (Error)thr;
-        }
-        return;
-      }
-      catch (InterruptedException e)
+    // Log the activity, if any, regardless of any exception
+    if (operation.getActivityCode() != null)
+    {
+      for (String documentURI : documentURIs)
       {
-        t.interrupt();
-        throw new ManifoldCFException("Interrupted: "+e.getMessage(),ManifoldCFException.INTERRUPTED);
+        activities.recordActivity(operation.getActivityStart(),SolrConnector.REMOVE_ACTIVITY,null,documentURI,
+          operation.getActivityCode(),operation.getActivityDetails());
       }
     }
-    catch (SolrServerException e)
-    {
-      handleSolrServerException(e, "delete");
-      return;
-    }
-    catch (SolrException e)
-    {
-      handleSolrException(e, "delete");
-      return;
-    }
-    catch (IOException ioe)
-    {
-      handleIOException(ioe, "delete");
-      return;
-    }
 
+    Throwable thr = operation.getException();
+    if (thr != null)
+      handleRequestException(thr, "delete");
   }
 
   /** Convert an unqualified ACL to qualified form.
@@ -758,13 +819,9 @@ public class HttpPoster
     }
   }
   
-  /** Killable thread that does ingestions.
-  * Java 1.5 stopped permitting thread interruptions to abort socket waits.  As a result, it is impossible to get threads to shutdown cleanly that are doing
-  * such waits.  So, the places where this happens are segregated in their own threads so that they can be just abandoned.
-  *
-  * This thread does a single document ingestion.
+  /** A single document ingestion, performed in the request pool.
   */
-  protected class IngestThread extends java.lang.Thread
+  protected class IngestOperation implements Runnable
   {
     protected String documentURI;
     protected RepositoryDocument document;
@@ -784,12 +841,10 @@ public class HttpPoster
     protected boolean readFromDocumentStreamYet = false;
     protected boolean rval = false;
 
-    public IngestThread(String documentURI, RepositoryDocument document,
+    public IngestOperation(String documentURI, RepositoryDocument document,
       Map<String,List<String>> arguments, Map<String, List<String>> sourceTargets,
       String[] shareAcls, String[] shareDenyAcls, String[] acls, String[] denyAcls, String commitWithin)
     {
-      super();
-      setDaemon(true);
       this.documentURI = documentURI;
       this.document = document;
       this.arguments = arguments;
@@ -984,6 +1039,11 @@ public class HttpPoster
       }
     }
 
+    public String getDocumentURI()
+    {
+      return documentURI;
+    }
+
     public Throwable getException()
     {
       return exception;
@@ -1020,26 +1080,20 @@ public class HttpPoster
     }
   }
 
-  /** Killable thread that does deletions.
-  * Java 1.5 stopped permitting thread interruptions to abort socket waits.  As a result, it is impossible to get threads to shutdown cleanly that are doing
-  * such waits.  So, the places where this happens are segregated in their own threads so that they can be just abandoned.
-  *
-  * This thread does a single document deletion.
+  /** A deletion of a group of documents, done with a single request, performed in the request pool.
   */
-  protected class DeleteThread extends java.lang.Thread
+  protected class DeleteOperation implements Runnable
   {
-    protected String documentURI;
+    protected String[] documentURIs;
 
     protected Long activityStart = null;
     protected String activityCode = null;
     protected String activityDetails = null;
     protected Throwable exception = null;
 
-    public DeleteThread(String documentURI)
+    public DeleteOperation(String[] documentURIs)
     {
-      super();
-      setDaemon(true);
-      this.documentURI = documentURI;
+      this.documentURIs = documentURIs;
     }
 
     public void run()
@@ -1051,7 +1105,7 @@ public class HttpPoster
         // Open a socket to ingest, and to the response stream to get the post result
         try
         {
-          UpdateResponse response = new UpdateRequest(postRemoveAction).deleteById(documentURI).process(solrServer);
+          UpdateResponse response = new UpdateRequest(postRemoveAction).deleteById(Arrays.asList(documentURIs)).process(solrServer);
             
           // Success
           activityStart = new Long(fullStartTime);
@@ -1120,20 +1174,14 @@ public class HttpPoster
     }
   }
   
-  /** Killable thread that does a commit.
-  * Java 1.5 stopped permitting thread interruptions to abort socket waits.  As a result, it is impossible to get threads to shutdown cleanly that are doing
-  * such waits.  So, the places where this happens are segregated in their own threads so that they can be just abandoned.
-  *
-  * This thread does a commit.
+  /** A commit, performed in the request pool.
   */
-  protected class CommitThread extends java.lang.Thread
+  protected class CommitOperation implements Runnable
   {
     protected Throwable exception = null;
 
-    public CommitThread()
+    public CommitOperation()
     {
-      super();
-      setDaemon(true);
     }
 
     public void run()
@@ -1171,20 +1219,14 @@ public class HttpPoster
   }
 
 
-  /** Killable thread that does a status check.
-  * Java 1.5 stopped permitting thread interruptions to abort socket waits.  As a result, it is impossible to get threads to shutdown cleanly that are doing
-  * such waits.  So, the places where this happens are segregated in their own threads so that they can be just abandoned.
-  *
-  * This thread does a status check.
+  /** A status check, performed in the request pool.
   */
-  protected class StatusThread extends java.lang.Thread
+  protected class StatusOperation implements Runnable
   {
     protected Throwable exception = null;
 
-    public StatusThread()
+    public StatusOperation()
     {
-      super();
-      setDaemon(true);
     }
 
     public void run()
@@ -1220,6 +1262,21 @@ public class HttpPoster
     }
   }
 
+  /** Thread factory for the request pools.  The threads are daemon threads, so that abandoned ones
+  * never hold up shutdown.
+  */
+  protected static class RequestThreadFactory implements ThreadFactory
+  {
+    protected final AtomicInteger threadCount = new AtomicInteger(0);
+
+    public Thread newThread(Runnable r)
+    {
+      Thread t = new Thread(r,"Solr request thread "+threadCount.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+
   /** Class for importing documents into Solr via SolrJ
   */
   protected static class RepositoryDocumentStream extends ContentStreamBase
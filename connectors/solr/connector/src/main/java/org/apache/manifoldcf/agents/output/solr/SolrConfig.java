@@ -107,6 +107,10 @@ public class SolrConfig
   public static final String PARAM_KEYSTORE = "Keystore";
   /** Maximum document length */
   public static final String PARAM_MAXLENGTH = "Maximum document length";
+  /** Maximum number of requests in flight at once */
+  public static final String PARAM_MAXREQUESTS = "Maximum concurrent requests";
+  /** Maximum number of requests in flight at once, if not set */
+  public static final String MAXREQUESTS_DEFAULT_VALUE = "4";
   /** Included mime types */
   public static final String PARAM_INCLUDEDMIMETYPES = "Included mime types";
   /** Excluded mime types */
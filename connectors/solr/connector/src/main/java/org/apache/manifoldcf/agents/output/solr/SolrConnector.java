@@ -198,6 +198,21 @@ public class SolrConnector extends org.apache.manifoldcf.agents.output.BaseOutpu
       else
         maxDocumentLength = new Long(docMax);
       
+      String maxRequestsString = params.getParameter(SolrConfig.PARAM_MAXREQUESTS);
+      if (maxRequestsString == null || maxRequestsString.length() == 0)
+        maxRequestsString = SolrConfig.MAXREQUESTS_DEFAULT_VALUE;
+      int maxRequests;
+      try
+      {
+        maxRequests = Integer.parseInt(maxRequestsString);
+      }
+      catch (NumberFormatException e)
+      {
+        throw new ManifoldCFException("Bad value for parameter '"+SolrConfig.PARAM_MAXREQUESTS+"': '"+maxRequestsString+"'");
+      }
+      if (maxRequests < 1)
+        maxRequests = 1;
+
       includedMimeTypesString = params.getParameter(SolrConfig.PARAM_INCLUDEDMIMETYPES);
       if (includedMimeTypesString == null || includedMimeTypesString.length() == 0)
       {
@@ -289,7 +304,7 @@ public class SolrConnector extends org.apache.manifoldcf.agents.output.BaseOutpu
             allowAttributeName,denyAttributeName,idAttributeName,
             modifiedDateAttributeName,createdDateAttributeName,indexedDateAttributeName,
             fileNameAttributeName,mimeTypeAttributeName,
-            keystoreManager,maxDocumentLength,commitWithin);
+            keystoreManager,maxDocumentLength,commitWithin,maxRequests);
           
         }
         catch (NumberFormatException e)
@@ -344,7 +359,7 @@ public class SolrConnector extends org.apache.manifoldcf.agents.output.BaseOutpu
             allowAttributeName,denyAttributeName,idAttributeName,
             modifiedDateAttributeName,createdDateAttributeName,indexedDateAttributeName,
             fileNameAttributeName,mimeTypeAttributeName,
-            maxDocumentLength,commitWithin);
+            maxDocumentLength,commitWithin,maxRequests);
           
         }
         catch (NumberFormatException e)
@@ -624,6 +639,79 @@ public class SolrConnector extends org.apache.manifoldcf.agents.output.BaseOutpu
     // Build the argument map we'll send.
     Map args = new HashMap();
     Map<String, List<String>> sourceTargets = new HashMap<String, List<String>>();
+    unpackOutputDescription(outputDescription,args,sourceTargets);
+
+    // Establish a session
+    getSession();
+
+    // Now, go off and call the ingest API.
+    if (poster.indexPost(documentURI,document,args,sourceTargets,authorityNameString,activities))
+      return DOCUMENTSTATUS_ACCEPTED;
+    return DOCUMENTSTATUS_REJECTED;
+  }
+
+  /** Add (or replace) a group of documents in the output data store using the connector.
+  *@param documentURIs are the URIs of the documents.
+  *@param outputDescriptions are the description strings that were constructed for the documents by the getOutputDescription() method.
+  *@param documents are the document data to be processed (handed to the output data store).
+  *@param authorityNameStrings are the names of the authorities responsible for authorizing any access tokens passed in with the repository
+  * documents.  Individual values may be null.
+  *@param activities is the handle to an object that the implementer of an output connector may use to perform operations, such as logging processing activity.
+  *@return the document statuses (accepted or permanently rejected), one per document, in the same order as the documents.
+  */
+  @Override
+  public int[] addOrReplaceDocuments(String[] documentURIs, String[] outputDescriptions, RepositoryDocument[] documents, String[] authorityNameStrings,
+    IOutputAddActivity activities)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    // Group the documents by output description, since the arguments we send depend on it.  Usually there is only one.
+    Map<String,List<Integer>> groups = new LinkedHashMap<String,List<Integer>>();
+    for (int i = 0; i < documents.length; i++)
+    {
+      List<Integer> group = groups.get(outputDescriptions[i]);
+      if (group == null)
+      {
+        group = new ArrayList<Integer>();
+        groups.put(outputDescriptions[i],group);
+      }
+      group.add(new Integer(i));
+    }
+
+    // Establish a session
+    getSession();
+
+    int[] rval = new int[documents.length];
+    for (String outputDescription : groups.keySet())
+    {
+      List<Integer> group = groups.get(outputDescription);
+      Map args = new HashMap();
+      Map<String, List<String>> sourceTargets = new HashMap<String, List<String>>();
+      unpackOutputDescription(outputDescription,args,sourceTargets);
+
+      String[] groupURIs = new String[group.size()];
+      RepositoryDocument[] groupDocuments = new RepositoryDocument[group.size()];
+      String[] groupAuthorityNames = new String[group.size()];
+      for (int j = 0; j < groupURIs.length; j++)
+      {
+        int index = group.get(j).intValue();
+        groupURIs[j] = documentURIs[index];
+        groupDocuments[j] = documents[index];
+        groupAuthorityNames[j] = authorityNameStrings[index];
+      }
+
+      boolean[] results = poster.indexPostMultiple(groupURIs,groupDocuments,args,sourceTargets,groupAuthorityNames,activities);
+      for (int j = 0; j < results.length; j++)
+      {
+        rval[group.get(j).intValue()] = results[j]?DOCUMENTSTATUS_ACCEPTED:DOCUMENTSTATUS_REJECTED;
+      }
+    }
+    return rval;
+  }
+
+  /** Unpack an output description into the argument map and the source/target field map.
+  */
+  protected static void unpackOutputDescription(String outputDescription, Map args, Map<String, List<String>> sourceTargets)
+  {
     int index = 0;
     ArrayList nameValues = new ArrayList();
     index = unpackList(nameValues,outputDescription,index,'+');
@@ -661,14 +749,6 @@ public class SolrConnector extends org.apache.manifoldcf.agents.output.BaseOutpu
       }
       list.add(target);
     }
-
-    // Establish a session
-    getSession();
-
-    // Now, go off and call the ingest API.
-    if (poster.indexPost(documentURI,document,args,sourceTargets,authorityNameString,activities))
-      return DOCUMENTSTATUS_ACCEPTED;
-    return DOCUMENTSTATUS_REJECTED;
   }
 
   /** Remove a document using the connector.
@@ -687,6 +767,23 @@ public class SolrConnector extends org.apache.manifoldcf.agents.output.BaseOutpu
     poster.deletePost(documentURI,activities);
   }
 
+  /** Remove a group of documents using the connector.
+  * The documents are all removed with a single delete request.
+  *@param documentURIs are the URIs of the documents.
+  *@param outputDescriptions are the last description strings that were constructed for the documents by the getOutputDescription() method.
+  *@param activities is the handle to an object that the implementer of an output connector may use to perform operations, such as logging processing activity.
+  */
+  @Override
+  public void removeDocuments(String[] documentURIs, String[] outputDescriptions, IOutputRemoveActivity activities)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    if (documentURIs.length == 0)
+      return;
+    // Establish a session
+    getSession();
+    poster.deletePostMultiple(documentURIs,activities);
+  }
+
   /** Notify the connector of a completed job.
   * This is meant to allow the connector to flush any internal data structures it has been keeping around, or to tell the output repository that this
   * is a good time to synchronize things.  It is called whenever a job is either completed or aborted.
@@ -828,6 +925,12 @@ public class SolrConnector extends org.apache.manifoldcf.agents.output.BaseOutpu
 "    editconnection.maxdocumentlength.focus();\n"+
 "    return false;\n"+
 "  }\n"+
+"  if (editconnection.maxrequests.value != \"\" && !isInteger(editconnection.maxrequests.value))\n"+
+"  {\n"+
+"    alert(\""+Messages.getBodyJavascriptString(locale,"SolrConnector.MaximumConcurrentRequestsMustBeAnInteger")+"\");\n"+
+"    editconnection.maxrequests.focus();\n"+
+"    return false;\n"+
+"  }\n"+
 "  if (editconnection.commitwithin.value != \"\" && !isInteger(editconnection.commitwithin.value))\n"+
 "  {\n"+
 "    alert(\""+Messages.getBodyJavascriptString(locale,"SolrConnector.CommitWithinValueMustBeAnInteger")+"\");\n"+
@@ -922,6 +1025,13 @@ public class SolrConnector extends org.apache.manifoldcf.agents.output.BaseOutpu
 "    editconnection.maxdocumentlength.focus();\n"+
 "    return false;\n"+
 "  }\n"+
+"  if (editconnection.maxrequests.value != \"\" && !isInteger(editconnection.maxrequests.value))\n"+
+"  {\n"+
+"    alert(\""+Messages.getBodyJavascriptString(locale,"SolrConnector.MaximumConcurrentRequestsMustBeAnInteger")+"\");\n"+
+"    SelectTab(\""+Messages.getBodyJavascriptString(locale,"SolrConnector.Documents")+"\");\n"+
+"    editconnection.maxrequests.focus();\n"+
+"    return false;\n"+
+"  }\n"+
 "  if (editconnection.commitwithin.value != \"\" && !isInteger(editconnection.commitwithin.value))\n"+
 "  {\n"+
 "    alert(\""+Messages.getBodyJavascriptString(locale,"SolrConnector.CommitWithinValueMustBeAnInteger")+"\");\n"+
@@ -1137,6 +1247,10 @@ public class SolrConnector extends org.apache.manifoldcf.agents.output.BaseOutpu
     if (maxLength == null)
       maxLength = "";
     
+    String maxRequests = parameters.getParameter(SolrConfig.PARAM_MAXREQUESTS);
+    if (maxRequests == null)
+      maxRequests = SolrConfig.MAXREQUESTS_DEFAULT_VALUE;
+    
     String includedMimeTypes = parameters.getParameter(SolrConfig.PARAM_INCLUDEDMIMETYPES);
     if (includedMimeTypes == null)
       includedMimeTypes = "";
@@ -1586,6 +1700,12 @@ public class SolrConnector extends org.apache.manifoldcf.agents.output.BaseOutpu
 "    </td>\n"+
 "  </tr>\n"+
 "  <tr>\n"+
+"    <td class=\"description\"><nobr>" + Messages.getBodyString(locale,"SolrConnector.MaximumConcurrentRequests") + "</nobr></td>\n"+
+"    <td class=\"value\">\n"+
+"      <input name=\"maxrequests\" type=\"text\" size=\"5\" value=\""+org.apache.manifoldcf.ui.util.Encoder.attributeEscape(maxRequests)+"\"/>\n"+
+"    </td>\n"+
+"  </tr>\n"+
+"  <tr>\n"+
 "    <td class=\"description\"><nobr>" + Messages.getBodyString(locale,"SolrConnector.IncludedMimeTypes") + "</nobr></td>\n"+
 "    <td class=\"value\">\n"+
 "      <textarea rows=\"10\" cols=\"20\" name=\"includedmimetypes\">"+org.apache.manifoldcf.ui.util.Encoder.bodyEscape(includedMimeTypes)+"</textarea>\n"+
@@ -1604,6 +1724,7 @@ public class SolrConnector extends org.apache.manifoldcf.agents.output.BaseOutpu
     {
       out.print(
 "<input type=\"hidden\" name=\"maxdocumentlength\" value=\""+org.apache.manifoldcf.ui.util.Encoder.attributeEscape(maxLength)+"\"/>\n"+
+"<input type=\"hidden\" name=\"maxrequests\" value=\""+org.apache.manifoldcf.ui.util.Encoder.attributeEscape(maxRequests)+"\"/>\n"+
 "<input type=\"hidden\" name=\"includedmimetypes\" value=\""+org.apache.manifoldcf.ui.util.Encoder.attributeEscape(includedMimeTypes)+"\"/>\n"+
 "<input type=\"hidden\" name=\"excludedmimetypes\" value=\""+org.apache.manifoldcf.ui.util.Encoder.attributeEscape(excludedMimeTypes)+"\"/>\n"
       );
@@ -1885,6 +2006,10 @@ public class SolrConnector extends org.apache.manifoldcf.agents.output.BaseOutpu
     if (maxLength != null)
       parameters.setParameter(SolrConfig.PARAM_MAXLENGTH,maxLength);
     
+    String maxRequests = variableContext.getParameter("maxrequests");
+    if (maxRequests != null)
+      parameters.setParameter(SolrConfig.PARAM_MAXREQUESTS,maxRequests);
+    
     String includedMimeTypes = variableContext.getParameter("includedmimetypes");
     if (includedMimeTypes != null)
       parameters.setParameter(SolrConfig.PARAM_INCLUDEDMIMETYPES,includedMimeTypes);
@@ -0,0 +1,273 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.webcrawler;
+
+import java.util.*;
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.crawler.system.Logging;
+import org.apache.manifoldcf.crawler.jobs.Jobs;
+import org.apache.manifoldcf.crawler.jobs.JobQueue;
+
+/** This class manages the database table that records, for each job, which document "owns" each distinct
+* piece of content.  The owner is the document that gets indexed; other documents in the same job with
+* exactly the same content are duplicates, and are not indexed.
+* A claim is treated as abandoned if the owner is no longer in the job's queue, or has not renewed it for a
+* long time, so that another document with the same content can take over if the owner has gone away.
+* Rows belonging to jobs that no longer exist, and claims that have long since lapsed, are purged now and then.
+*
+* <br><br>
+* <b>contenthashdata</b>
+* <table border="1" cellpadding="3" cellspacing="0">
+* <tr class="TableHeadingColor">
+* <th>Field</th><th>Type</th><th>Description&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;</th>
+* <tr><td>contentkey</td><td>VARCHAR(255)</td><td>Primary Key</td></tr>
+* <tr><td>jobid</td><td>BIGINT</td><td></td></tr>
+* <tr><td>ownerhash</td><td>VARCHAR(40)</td><td></td></tr>
+* <tr><td>owneridentifier</td><td>LONGTEXT</td><td></td></tr>
+* <tr><td>claimtime</td><td>BIGINT</td><td></td></tr>
+* </table>
+* <br><br>
+*
+*/
+public class ContentHashManager extends org.apache.manifoldcf.core.database.BaseTable
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** How long, in milliseconds, a document's claim on its content holds without being renewed */
+  public static final String claimLifetimeProperty = "org.apache.manifoldcf.crawler.connectors.webcrawler.duplicates.claimlifetime";
+
+  public static final long CLAIM_LIFETIME_DEFAULT = 7L * 24L * 60L * 60L * 1000L;
+
+  // Database fields
+  protected final static String contentKeyField = "contentkey";
+  protected final static String jobIDField = "jobid";
+  protected final static String ownerHashField = "ownerhash";
+  protected final static String ownerIdentifierField = "owneridentifier";
+  protected final static String claimTimeField = "claimtime";
+
+  // Framework tables that claims are checked against
+  protected final static String jobsTableName = "jobs";
+  protected final static String jobQueueTableName = "jobqueue";
+
+  /** Constructor.  Note that one content hash manager handle is only useful within a specific thread context,
+  * so the calling connector object logic must recreate the handle whenever the thread context changes.
+  *@param tc is the thread context.
+  *@param database is the database handle.
+  */
+  public ContentHashManager(IThreadContext tc, IDBInterface database)
+    throws ManifoldCFException
+  {
+    super(database,"contenthashdata");
+  }
+
+  /** Install the manager.
+  */
+  public void install()
+    throws ManifoldCFException
+  {
+    // Standard practice: outer loop, no transactions
+    while (true)
+    {
+      Map existing = getTableSchema(null,null);
+      if (existing == null)
+      {
+        // Install the table.
+        HashMap map = new HashMap();
+        map.put(contentKeyField,new ColumnDescription("VARCHAR(255)",true,false,null,null,false));
+        map.put(jobIDField,new ColumnDescription("BIGINT",false,false,null,null,false));
+        map.put(ownerHashField,new ColumnDescription("VARCHAR(40)",false,false,null,null,false));
+        map.put(ownerIdentifierField,new ColumnDescription("LONGTEXT",false,false,null,null,false));
+        map.put(claimTimeField,new ColumnDescription("BIGINT",false,false,null,null,false));
+        performCreate(map,null);
+
+        // Documents release their claims by job and owner hash
+        ArrayList list = new ArrayList();
+        list.add(jobIDField);
+        list.add(ownerHashField);
+        addTableIndex(false,list);
+      }
+      else
+      {
+        // Upgrade code, if needed, goes here
+      }
+
+      break;
+    }
+  }
+
+  /** Uninstall the manager.
+  */
+  public void deinstall()
+    throws ManifoldCFException
+  {
+    performDrop(null);
+  }
+
+  /** Claim a piece of content for a document, unless another document already owns it.  Any other
+  * content the document owned is released, since the document can only have one content at a time.
+  * This method invokes its own retry-able transaction.
+  *@param contentKey is the job-specific key describing the content.
+  *@param jobID is the job the document belongs to.
+  *@param ownerHash is the hash of the document identifier, as it appears in the job queue.
+  *@param ownerIdentifier is the document identifier.
+  *@param currentTime is the current time.
+  *@param claimLifetime is how long, in milliseconds, an unrenewed claim holds.
+  *@return the identifier of the document that owns the content.  This is ownerIdentifier if the claim succeeded.
+  */
+  public String claimContent(String contentKey, Long jobID, String ownerHash, String ownerIdentifier, long currentTime, long claimLifetime)
+    throws ManifoldCFException
+  {
+    while (true)
+    {
+      long sleepAmt = 0L;
+      beginTransaction();
+      try
+      {
+        ArrayList params = new ArrayList();
+        params.add(jobID);
+        params.add(ownerHash);
+        params.add(contentKey);
+        performDelete("WHERE "+jobIDField+"=? AND "+ownerHashField+"=? AND "+contentKeyField+"!=?",params,null);
+
+        params.clear();
+        params.add(contentKey);
+        IResultSet set = performQuery("SELECT "+ownerHashField+","+ownerIdentifierField+","+claimTimeField+" FROM "+getTableName()+
+          " WHERE "+contentKeyField+"=? FOR UPDATE",params,null,null);
+        HashMap values = new HashMap();
+        values.put(jobIDField,jobID);
+        values.put(ownerHashField,ownerHash);
+        values.put(ownerIdentifierField,ownerIdentifier);
+        values.put(claimTimeField,new Long(currentTime));
+        if (set.getRowCount() == 0)
+        {
+          values.put(contentKeyField,contentKey);
+          performInsert(values,null);
+          return ownerIdentifier;
+        }
+        IResultRow row = set.getRow(0);
+        String currentOwnerHash = (String)row.getValue(ownerHashField);
+        long claimTime = ((Long)row.getValue(claimTimeField)).longValue();
+        if (!currentOwnerHash.equals(ownerHash) && claimTime + claimLifetime > currentTime &&
+          isQueued(jobID,currentOwnerHash))
+          return (String)row.getValue(ownerIdentifierField);
+        // Ours already, or abandoned: renew it
+        performUpdate(values,"WHERE "+contentKeyField+"=?",params,null);
+        return ownerIdentifier;
+      }
+      catch (Error e)
+      {
+        signalRollback();
+        throw e;
+      }
+      catch (RuntimeException e)
+      {
+        signalRollback();
+        throw e;
+      }
+      catch (ManifoldCFException e)
+      {
+        signalRollback();
+        // Two documents with the same new content can race to insert it
+        if (e.getErrorCode() == e.DATABASE_TRANSACTION_ABORT)
+        {
+          if (Logging.perf.isDebugEnabled())
+            Logging.perf.debug("Aborted transaction claiming content: "+e.getMessage());
+          sleepAmt = getSleepAmt();
+          continue;
+        }
+        throw e;
+      }
+      finally
+      {
+        endTransaction();
+        sleepFor(sleepAmt);
+      }
+    }
+  }
+
+  /** Renew whatever claim a document has, without changing it.  This is for documents that are unchanged, so
+  * that their claims don't look abandoned.
+  *@param jobID is the job the document belongs to.
+  *@param ownerHash is the hash of the document identifier.
+  *@param currentTime is the current time.
+  */
+  public void renewContent(Long jobID, String ownerHash, long currentTime)
+    throws ManifoldCFException
+  {
+    HashMap values = new HashMap();
+    values.put(claimTimeField,new Long(currentTime));
+    ArrayList params = new ArrayList();
+    params.add(jobID);
+    params.add(ownerHash);
+    performUpdate(values,"WHERE "+jobIDField+"=? AND "+ownerHashField+"=?",params,null);
+  }
+
+  /** Release whatever content a document owns, e.g. because it is no longer being indexed.
+  *@param jobID is the job the document belongs to.
+  *@param ownerHash is the hash of the document identifier.
+  */
+  public void releaseContent(Long jobID, String ownerHash)
+    throws ManifoldCFException
+  {
+    ArrayList params = new ArrayList();
+    params.add(jobID);
+    params.add(ownerHash);
+    performDelete("WHERE "+jobIDField+"=? AND "+ownerHashField+"=?",params,null);
+  }
+
+  /** Remove the claims made within jobs that no longer exist.  The framework does not tell connectors
+  * when a job is deleted, so this is done now and then instead.
+  */
+  public void deleteMissingJobs()
+    throws ManifoldCFException
+  {
+    performDelete("WHERE "+jobIDField+" NOT IN(SELECT "+Jobs.idField+" FROM "+jobsTableName+")",null,null);
+  }
+
+  /** Remove the claims that have not been renewed for longer than their lifetime.  They would be taken over
+  * by the next document with the same content anyway.
+  *@param currentTime is the current time.
+  *@param claimLifetime is how long, in milliseconds, an unrenewed claim holds.
+  */
+  public void deleteExpiredClaims(long currentTime, long claimLifetime)
+    throws ManifoldCFException
+  {
+    ArrayList params = new ArrayList();
+    params.add(new Long(currentTime - claimLifetime));
+    performDelete("WHERE "+claimTimeField+"<?",params,null);
+  }
+
+  /** See whether a document is still in a job's queue.  A document that has left it, e.g. because it
+  * vanished from the site or was filtered out, can no longer renew or release its claims.
+  *@param jobID is the job.
+  *@param ownerHash is the hash of the document identifier.
+  *@return true if the document is queued.
+  */
+  protected boolean isQueued(Long jobID, String ownerHash)
+    throws ManifoldCFException
+  {
+    ArrayList params = new ArrayList();
+    params.add(jobID);
+    params.add(ownerHash);
+    IResultSet set = performQuery("SELECT "+JobQueue.idField+" FROM "+jobQueueTableName+" WHERE "+
+      JobQueue.jobIDField+"=? AND "+JobQueue.docHashField+"=?",params,null,null);
+    return set.getRowCount() > 0;
+  }
+
+}
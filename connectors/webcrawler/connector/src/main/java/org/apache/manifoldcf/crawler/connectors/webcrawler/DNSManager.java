@@ -148,57 +148,118 @@ public class DNSManager extends org.apache.manifoldcf.core.database.BaseTable
   public void writeDNSData(String hostName, String fqdn, String ipaddress, long expirationTime)
     throws ManifoldCFException
   {
+    writeDNSData(new DNSInfo[]{new DNSInfo(ipaddress,fqdn,expirationTime,hostName)});
+  }
+
+  /** Write DNS data for a number of hosts in one transaction, replacing any existing rows.
+  * If a host appears more than once, the last entry for it wins.
+  *@param infos are the DNS entries to write.
+  */
+  public void writeDNSData(DNSInfo[] infos)
+    throws ManifoldCFException
+  {
+    if (infos.length == 0)
+      return;
+    Map<String,DNSInfo> byHost = new HashMap<String,DNSInfo>();
+    for (DNSInfo info : infos)
+    {
+      byHost.put(info.getHostName(),info);
+    }
+    // Write the rows in the same order every time, so concurrent writers don't deadlock
+    String[] hostNames = byHost.keySet().toArray(new String[0]);
+    Arrays.sort(hostNames);
+
     StringSetBuffer ssb = new StringSetBuffer();
-    ssb.add(getDNSKey(hostName));
+    for (String hostName : hostNames)
+    {
+      ssb.add(getDNSKey(hostName));
+    }
     StringSet cacheKeys = new StringSet(ssb);
     ICacheHandle ch = cacheManager.enterCache(null,cacheKeys,getTransactionID());
     try
     {
-      beginTransaction();
-      try
+      while (true)
       {
-        // See whether the instance exists
-        ArrayList params = new ArrayList();
-        params.add(hostName);
-        IResultSet set = performQuery("SELECT * FROM "+getTableName()+" WHERE "+
-          hostField+"=?",params,null,null);
-        HashMap values = new HashMap();
-        values.put(expirationField,new Long(expirationTime));
-        if (fqdn == null)
-          fqdn = "";
-        values.put(fqdnField,fqdn);
-        if (ipaddress == null)
-          ipaddress = "";
-        values.put(ipaddressField, ipaddress);
-        if (set.getRowCount() > 0)
+        long sleepAmt = 0L;
+        beginTransaction();
+        try
         {
-          // Update
-          params.clear();
-          params.add(hostName);
-          performUpdate(values," WHERE "+hostField+"=?",params,null);
+          // See which hosts already have rows, as many at a time as we can
+          Set<String> existingHosts = new HashSet<String>();
+          int maxClause = getMaxInClause();
+          List<String> list = new ArrayList<String>();
+          for (String hostName : hostNames)
+          {
+            if (list.size() == maxClause)
+            {
+              readExistingHosts(list,existingHosts);
+              list.clear();
+            }
+            list.add(hostName);
+          }
+          if (list.size() > 0)
+            readExistingHosts(list,existingHosts);
+
+          for (String hostName : hostNames)
+          {
+            DNSInfo info = byHost.get(hostName);
+            HashMap values = new HashMap();
+            values.put(expirationField,new Long(info.getExpirationTime()));
+            String fqdn = info.getFQDN();
+            if (fqdn == null)
+              fqdn = "";
+            values.put(fqdnField,fqdn);
+            String ipaddress = info.getIPAddress();
+            if (ipaddress == null)
+              ipaddress = "";
+            values.put(ipaddressField, ipaddress);
+            if (existingHosts.contains(hostName))
+            {
+              // Update
+              ArrayList params = new ArrayList();
+              params.add(hostName);
+              performUpdate(values," WHERE "+hostField+"=?",params,null);
+            }
+            else
+            {
+              // Insert
+              values.put(hostField,hostName);
+              // We only need the general key because this is new.
+              performInsert(values,null);
+            }
+          }
+          cacheManager.invalidateKeys(ch);
+          return;
         }
-        else
+        catch (ManifoldCFException e)
         {
-          // Insert
-          values.put(hostField,hostName);
-          // We only need the general key because this is new.
-          performInsert(values,null);
+          signalRollback();
+          // Another process may have inserted one of the same hosts since we looked, which shows up as
+          // a transaction abort.  Try again; this time the host will be seen, and updated instead.
+          if (e.getErrorCode() == e.DATABASE_TRANSACTION_ABORT)
+          {
+            if (Logging.perf.isDebugEnabled())
+              Logging.perf.debug("Aborted transaction writing DNS data: "+e.getMessage());
+            sleepAmt = getSleepAmt();
+            continue;
+          }
+          throw e;
+        }
+        catch (Error e)
+        {
+          signalRollback();
+          throw e;
+        }
+        catch (RuntimeException e)
+        {
+          signalRollback();
+          throw e;
+        }
+        finally
+        {
+          endTransaction();
+          sleepFor(sleepAmt);
         }
-        cacheManager.invalidateKeys(ch);
-      }
-      catch (ManifoldCFException e)
-      {
-        signalRollback();
-        throw e;
-      }
-      catch (Error e)
-      {
-        signalRollback();
-        throw e;
-      }
-      finally
-      {
-        endTransaction();
       }
     }
     finally
@@ -218,6 +279,24 @@ public class DNSManager extends org.apache.manifoldcf.core.database.BaseTable
     return "DNS_"+hostName;
   }
 
+  /** Find out which of a set of hosts already have rows.
+  *@param hostNames are the host names to check.
+  *@param existingHosts is the set the hosts that have rows are added to.
+  */
+  protected void readExistingHosts(List<String> hostNames, Set<String> existingHosts)
+    throws ManifoldCFException
+  {
+    ArrayList params = new ArrayList();
+    String query = buildConjunctionClause(params,new ClauseDescription[]{
+      new MultiClause(hostField,hostNames)});
+    IResultSet set = performQuery("SELECT "+hostField+" FROM "+getTableName()+" WHERE "+query,params,null,null);
+    for (int i = 0; i < set.getRowCount(); i++)
+    {
+      IResultRow row = set.getRow(i);
+      existingHosts.add((String)row.getValue(hostField));
+    }
+  }
+
   /** Read DNS data, if it exists.
   *@return null if the data doesn't exist at all.  Return DNS data if it does.
   */
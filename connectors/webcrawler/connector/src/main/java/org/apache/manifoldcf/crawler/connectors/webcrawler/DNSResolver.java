@@ -0,0 +1,351 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.webcrawler;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.crawler.system.Logging;
+import java.util.*;
+import java.net.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** This class resolves host names in the background, and remembers the answers in memory, so that
+* worker threads rarely have to wait on the resolver or go to the dnsdata table.  Hosts can be
+* resolved ahead of time, as soon as links to them are discovered.  A thread that needs an answer
+* right away does the lookup itself, rather than waiting in line behind lookups done ahead of time.
+* Both successful and failed lookups are remembered, each for its own length of time.  Answers
+* that have not yet been written to the dnsdata table are held until a thread that has a
+* DNSManager picks them up, so that they can be written in one batch.
+*/
+public class DNSResolver
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** How long, in milliseconds, a host's address is kept once found */
+  public static final String positiveTTLProperty = "org.apache.manifoldcf.crawler.connectors.webcrawler.dns.ttl";
+  /** How long, in milliseconds, the fact that a host could not be found is kept */
+  public static final String negativeTTLProperty = "org.apache.manifoldcf.crawler.connectors.webcrawler.dns.negativettl";
+
+  public static final long POSITIVE_TTL_DEFAULT = 6L * 60L * 60L * 1000L;
+  public static final long NEGATIVE_TTL_DEFAULT = 30L * 60L * 1000L;
+
+  /** The maximum number of threads doing lookups */
+  protected static final int MAX_RESOLVER_THREADS = 20;
+  /** How long an idle resolver thread lingers before going away, in milliseconds */
+  protected static final long RESOLVER_THREAD_KEEPALIVE = 60000L;
+  /** The most hosts remembered at once; the least recently used go first */
+  protected static final int MAX_CACHED_HOSTS = 10000;
+  /** The most lookups started ahead of time that may be outstanding at once */
+  protected static final int MAX_PENDING_PREFETCHES = 1000;
+
+  /** The pool of threads doing lookups ahead of time, shared by all resolvers */
+  protected static final ThreadPoolExecutor resolverExecutor;
+  static
+  {
+    resolverExecutor = new ThreadPoolExecutor(MAX_RESOLVER_THREADS,MAX_RESOLVER_THREADS,
+      RESOLVER_THREAD_KEEPALIVE,TimeUnit.MILLISECONDS,new LinkedBlockingQueue<Runnable>(MAX_PENDING_PREFETCHES),new ResolverThreadFactory());
+    resolverExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  /** Answers we have, keyed by host name, least recently used first */
+  protected final Map<String,DNSManager.DNSInfo> resolved = new LinkedHashMap<String,DNSManager.DNSInfo>(16,0.75f,true);
+  /** Lookups waiting or in progress, keyed by host name */
+  protected final Map<String,FutureTask<DNSManager.DNSInfo>> pending = new HashMap<String,FutureTask<DNSManager.DNSInfo>>();
+  /** Answers found here that have not yet been written to the table */
+  protected List<DNSManager.DNSInfo> unwritten = new ArrayList<DNSManager.DNSInfo>();
+
+  /** Positive time to live */
+  protected long positiveTTL = POSITIVE_TTL_DEFAULT;
+  /** Negative time to live */
+  protected long negativeTTL = NEGATIVE_TTL_DEFAULT;
+
+  /** Constructor.
+  */
+  public DNSResolver()
+  {
+  }
+
+  /** Set the times to live.
+  *@param positiveTTL is the time, in milliseconds, to keep a host's address.
+  *@param negativeTTL is the time, in milliseconds, to remember that a host could not be found.
+  */
+  public synchronized void setTimesToLive(long positiveTTL, long negativeTTL)
+  {
+    this.positiveTTL = positiveTTL;
+    this.negativeTTL = negativeTTL;
+  }
+
+  /** Find what we know about a host, without waiting.
+  *@param hostName is the host name.
+  *@param currentTime is the current time.
+  *@return null if there's no unexpired answer for the host.  Otherwise, the answer, whose
+  * ip address is null if the host could not be found.
+  */
+  public synchronized DNSManager.DNSInfo lookup(String hostName, long currentTime)
+  {
+    DNSManager.DNSInfo info = resolved.get(hostName);
+    if (info == null)
+      return null;
+    if (info.getExpirationTime() <= currentTime)
+    {
+      resolved.remove(hostName);
+      return null;
+    }
+    return info;
+  }
+
+  /** Remember an answer that was found elsewhere, e.g. in the dnsdata table.
+  *@param info is the answer.
+  */
+  public synchronized void remember(DNSManager.DNSInfo info)
+  {
+    putResolved(info);
+  }
+
+  /** Start looking up a host in the background, if we don't already have an answer for it and
+  * aren't already looking it up.
+  *@param hostName is the host name.
+  */
+  public synchronized void prefetch(String hostName)
+  {
+    if (pending.get(hostName) != null || lookup(hostName,System.currentTimeMillis()) != null)
+      return;
+    if (pending.size() >= MAX_PENDING_PREFETCHES)
+      return;
+    FutureTask<DNSManager.DNSInfo> task = new FutureTask<DNSManager.DNSInfo>(new ResolveOperation(hostName));
+    try
+    {
+      resolverExecutor.execute(task);
+    }
+    catch (RejectedExecutionException e)
+    {
+      // Other resolvers have filled the line; the host will be looked up when it is needed
+      return;
+    }
+    pending.put(hostName,task);
+  }
+
+  /** Look up a host, waiting for the answer.  The lookup is done in the caller's thread.  If the
+  * host is already being looked up, that lookup is waited for rather than starting another; if it
+  * is only waiting in line to be looked up ahead of time, the caller takes it out of line and does it.
+  *@param hostName is the host name.
+  *@return the answer, whose ip address is null if the host could not be found.
+  */
+  public DNSManager.DNSInfo resolve(String hostName)
+    throws ManifoldCFException
+  {
+    FutureTask<DNSManager.DNSInfo> task;
+    boolean runHere;
+    synchronized (this)
+    {
+      DNSManager.DNSInfo info = lookup(hostName,System.currentTimeMillis());
+      if (info != null)
+        return info;
+      task = pending.get(hostName);
+      if (task == null)
+      {
+        task = new FutureTask<DNSManager.DNSInfo>(new ResolveOperation(hostName));
+        pending.put(hostName,task);
+        runHere = true;
+      }
+      else
+        runHere = resolverExecutor.remove(task);
+    }
+    if (runHere)
+      task.run();
+    try
+    {
+      return task.get();
+    }
+    catch (InterruptedException e)
+    {
+      throw new ManifoldCFException(e.getMessage(),e,ManifoldCFException.INTERRUPTED);
+    }
+    catch (ExecutionException e)
+    {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException)cause;
+      if (cause instanceof Error)
+        throw (Error)cause;
+      throw new ManifoldCFException("Unexpected exception looking up '"+hostName+"': "+cause.getMessage(),cause);
+    }
+  }
+
+  /** Take the answers found here that have not yet been written to the table.  The caller
+  * is then responsible for writing them.
+  *@return the answers, or null if there are none.
+  */
+  public synchronized DNSManager.DNSInfo[] takeUnwritten()
+  {
+    if (unwritten.size() == 0)
+      return null;
+    DNSManager.DNSInfo[] rval = unwritten.toArray(new DNSManager.DNSInfo[0]);
+    unwritten = new ArrayList<DNSManager.DNSInfo>();
+    return rval;
+  }
+
+  /** Give back answers taken by takeUnwritten() that could not be written, so that a later
+  * write picks them up.
+  *@param infos are the answers.
+  */
+  public synchronized void putBackUnwritten(DNSManager.DNSInfo[] infos)
+  {
+    for (DNSManager.DNSInfo info : infos)
+    {
+      if (unwritten.size() >= MAX_CACHED_HOSTS)
+        break;
+      unwritten.add(info);
+    }
+  }
+
+  /** Record an answer from a lookup.
+  *@param info is the answer.
+  */
+  protected synchronized void noteResolved(DNSManager.DNSInfo info)
+  {
+    pending.remove(info.getHostName());
+    putResolved(info);
+    // If nobody has been writing answers out, drop them rather than grow without limit; the
+    // table is only a shared cache.
+    if (unwritten.size() < MAX_CACHED_HOSTS)
+      unwritten.add(info);
+  }
+
+  /** Note that a lookup failed outright.
+  *@param hostName is the host name.
+  */
+  protected synchronized void noteFailed(String hostName)
+  {
+    pending.remove(hostName);
+  }
+
+  /** Put an answer into the map, making room if need be.  Must be called while synchronized.
+  */
+  protected void putResolved(DNSManager.DNSInfo info)
+  {
+    if (resolved.size() >= MAX_CACHED_HOSTS && resolved.get(info.getHostName()) == null)
+    {
+      // Drop everything that has expired, and if that's not enough, the least recently used
+      long currentTime = System.currentTimeMillis();
+      Iterator<DNSManager.DNSInfo> iter = resolved.values().iterator();
+      while (iter.hasNext())
+      {
+        if (iter.next().getExpirationTime() <= currentTime)
+          iter.remove();
+      }
+      iter = resolved.values().iterator();
+      while (resolved.size() >= MAX_CACHED_HOSTS && iter.hasNext())
+      {
+        iter.next();
+        iter.remove();
+      }
+    }
+    resolved.put(info.getHostName(),info);
+  }
+
+  /** Look up a host right now, in the caller's thread.
+  *@param hostName is the host name.
+  *@return the answer.
+  */
+  protected DNSManager.DNSInfo doLookup(String hostName)
+  {
+    // Fetch it using InetAddress
+    InetAddress ip = null;
+    try
+    {
+      ip = InetAddress.getByName(hostName);
+    }
+    catch (UnknownHostException e)
+    {
+      // Host is unknown, so leave ipAddress as null.
+    }
+    String fqdn = null;
+    String ipAddress = null;
+    long ttl;
+    synchronized (this)
+    {
+      ttl = negativeTTL;
+      if (ip != null)
+        ttl = positiveTTL;
+    }
+    if (ip != null)
+    {
+      fqdn = ip.getCanonicalHostName();
+      ipAddress = ip.getHostAddress();
+    }
+    return new DNSManager.DNSInfo(ipAddress,fqdn,System.currentTimeMillis() + ttl,hostName);
+  }
+
+  /** A lookup, run either in the shared resolver pool or by a thread that needs the answer.
+  */
+  protected class ResolveOperation implements Callable<DNSManager.DNSInfo>
+  {
+    protected final String hostName;
+
+    public ResolveOperation(String hostName)
+    {
+      this.hostName = hostName;
+    }
+
+    public DNSManager.DNSInfo call()
+    {
+      try
+      {
+        DNSManager.DNSInfo info = doLookup(hostName);
+        noteResolved(info);
+        return info;
+      }
+      catch (RuntimeException e)
+      {
+        Logging.connectors.warn("WEB: Unexpected exception looking up '"+hostName+"': "+e.getMessage(),e);
+        noteFailed(hostName);
+        throw e;
+      }
+      catch (Error e)
+      {
+        noteFailed(hostName);
+        throw e;
+      }
+    }
+  }
+
+  /** Thread factory for the resolver pool.  Its threads are daemon threads, so that an idle pool
+  * doesn't hold up shutdown.
+  */
+  protected static class ResolverThreadFactory implements ThreadFactory
+  {
+    protected final AtomicInteger threadCount = new AtomicInteger(0);
+
+    public Thread newThread(Runnable r)
+    {
+      Thread t = new Thread(r,"Web DNS thread "+threadCount.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+
+}
@@ -35,21 +35,55 @@ import org.apache.http.HttpException;
 /** This class is a cache of a specific URL's data.  It's fetched early and kept,
 * so that (1) an accurate data length can be found, and (2) we can compute a version
 * checksum.
+* Small documents are kept in memory, and larger ones in temporary files.  The memory that
+* all cached documents use together is limited; once the limit is reached, documents go to
+* temporary files whatever their size.
 */
 public class DataCache
 {
   public static final String _rcsid = "@(#)$Id: DataCache.java 988245 2010-08-23 18:39:35Z kwright $";
 
+  /** Documents no larger than this many bytes are kept in memory; 0 means none are */
+  public static final String memoryThresholdProperty = "org.apache.manifoldcf.crawler.connectors.webcrawler.cache.memorythreshold";
+  /** The most memory, in bytes, that the documents kept in memory may use together */
+  public static final String memoryLimitProperty = "org.apache.manifoldcf.crawler.connectors.webcrawler.cache.memorylimit";
+
+  public static final int MEMORY_THRESHOLD_DEFAULT = 65536;
+  public static final long MEMORY_LIMIT_DEFAULT = 16L * 1024L * 1024L;
+
+  /** The largest number of unused read buffers we hang on to */
+  protected static final int MAX_FREE_BUFFERS = 16;
+
   // Hashmap containing the cache of files.
   // This is keyed by document identifier, and contains DocumentData objects.
   protected Map<String,DocumentData> cacheData = new HashMap<String,DocumentData>();
 
+  /** The memory threshold */
+  protected int memoryThreshold = MEMORY_THRESHOLD_DEFAULT;
+  /** The memory limit */
+  protected long memoryLimit = MEMORY_LIMIT_DEFAULT;
+  /** Memory currently used by cached documents, or reserved by reads in progress */
+  protected long memoryInUse = 0L;
+  /** Read buffers not currently in use.  Each is one byte longer than the memory threshold. */
+  protected List<byte[]> freeBuffers = new ArrayList<byte[]>();
+
   /** Constructor.
   */
   public DataCache()
   {
   }
 
+  /** Set the memory limits.
+  *@param memoryThreshold is the size, in bytes, of the largest document to keep in memory.
+  *@param memoryLimit is the number of bytes the documents kept in memory may use together.
+  */
+  public synchronized void setMemoryLimits(int memoryThreshold, long memoryLimit)
+  {
+    if (memoryThreshold != this.memoryThreshold)
+      freeBuffers.clear();
+    this.memoryThreshold = memoryThreshold;
+    this.memoryLimit = memoryLimit;
+  }
 
   /** Add a data entry into the cache.
   * This method is called whenever the data from a fetch is considered interesting or useful, and will
@@ -68,7 +102,6 @@ public class DataCache
     String contentType = connection.getResponseHeader("Content-Type");
     String referralURI = connection.getResponseHeader("Location");
 
-    // Create a temporary file; that's what we will cache
     try
     {
       // First, get the stream.
@@ -77,102 +110,44 @@ public class DataCache
         return null;
       try
       {
-        File tempFile = File.createTempFile("_webcache_","tmp");
+        XXHash64 contentHash = new XXHash64();
+        // Read as much as we may keep in memory.  The buffer is one byte longer than the threshold,
+        // so if it doesn't fill up, the whole document fits.
+        byte[] memoryBuffer = reserveBuffer();
+        if (memoryBuffer == null)
+          return addFileData(activities,documentIdentifier,responseCode,contentType,referralURI,dataStream,null,0,contentHash);
         try
         {
-          // Causes memory leaks if left around; there's no way to release
-          // the record specifying that the file should be deleted, even
-          // after it's removed.  So disable this and live with the occasional
-          // dangling file left as a result of shutdown or error. :-(
-          // tempFile.deleteOnExit();
-          ManifoldCF.addFile(tempFile);
-
-          // Transfer data to temporary file
-          long checkSum = 0L;
-          OutputStream os = new FileOutputStream(tempFile);
-          try
+          int memoryAmt = 0;
+          while (memoryAmt < memoryBuffer.length)
           {
-            byte[] byteArray = new byte[65536];
-            while (true)
-            {
-              int amt;
-              try
-              {
-                amt = dataStream.read(byteArray,0,byteArray.length);
-              }
-              catch (java.net.SocketTimeoutException e)
-              {
-                Logging.connectors.warn("Socket timeout exception reading socket stream: "+e.getMessage(),e);
-                long currentTime = System.currentTimeMillis();
-                throw new ServiceInterruption("Socket timeout: "+e.getMessage(),e,currentTime + 300000L,
-                  currentTime + 12 * 60 * 60000L,-1,false);
-              }
-              catch (ConnectTimeoutException e)
-              {
-                Logging.connectors.warn("Socket connect timeout exception reading socket stream: "+e.getMessage(),e);
-                long currentTime = System.currentTimeMillis();
-                throw new ServiceInterruption("Socket timeout: "+e.getMessage(),e,currentTime + 300000L,
-                  currentTime + 12 * 60 * 60000L,-1,false);
-              }
-              catch (InterruptedIOException e)
-              {
-                //Logging.connectors.warn("IO interruption seen",e);
-                throw new ManifoldCFException("Interrupted: "+e.getMessage(),ManifoldCFException.INTERRUPTED);
-              }
-              catch (IOException e)
-              {
-                Logging.connectors.warn("IO exception reading socket stream: "+e.getMessage(),e);
-                long currentTime = System.currentTimeMillis();
-                throw new ServiceInterruption("Read timeout: "+e.getMessage(),e,currentTime + 300000L,
-                  currentTime + 12 * 60 * 60000L,-1,false);
-              }
-              if (amt == -1)
-                break;
-              int i = 0;
-              while (i < amt)
-              {
-                byte x = byteArray[i++];
-                long bytevalue = (long)x;
-                checkSum = (checkSum << 5) ^ (checkSum >> 3) ^ (bytevalue << 2) ^ (bytevalue >> 3);
-              }
-
-              os.write(byteArray,0,amt);
-              // Check if job is alive before looping
-              activities.checkJobStillActive();
-            }
+            int amt = readData(dataStream,memoryBuffer,memoryAmt,memoryBuffer.length-memoryAmt);
+            if (amt == -1)
+              break;
+            contentHash.update(memoryBuffer,memoryAmt,amt);
+            memoryAmt += amt;
+            // Check if job is alive before looping
+            activities.checkJobStillActive();
           }
-          finally
+          if (memoryAmt == memoryBuffer.length)
           {
-            os.close();
+            // Too big for memory; write out what we have, and continue on disk
+            return addFileData(activities,documentIdentifier,responseCode,contentType,referralURI,dataStream,memoryBuffer,memoryAmt,contentHash);
           }
-
+          byte[] data = new byte[memoryAmt];
+          System.arraycopy(memoryBuffer,0,data,0,memoryAmt);
+          String checkSum = contentHash.getHexValue();
           synchronized(this)
           {
             deleteData(documentIdentifier);
-            cacheData.put(documentIdentifier,new DocumentData(tempFile,responseCode,contentType,referralURI));
-            return new Long(checkSum).toString();
+            memoryInUse += (long)memoryAmt;
+            cacheData.put(documentIdentifier,new DocumentData(data,responseCode,contentType,referralURI,checkSum));
+            return checkSum;
           }
-
-        }
-        catch (IOException e)
-        {
-          ManifoldCF.deleteFile(tempFile);
-          throw e;
         }
-        catch (ManifoldCFException e)
+        finally
         {
-          ManifoldCF.deleteFile(tempFile);
-          throw e;
-        }
-        catch (ServiceInterruption e)
-        {
-          ManifoldCF.deleteFile(tempFile);
-          throw e;
-        }
-        catch (Error e)
-        {
-          ManifoldCF.deleteFile(tempFile);
-          throw e;
+          releaseBuffer(memoryBuffer);
         }
       }
       finally
@@ -220,6 +195,144 @@ public class DataCache
     }
   }
 
+  /** Transfer the rest of a document to a temporary file, and add that to the cache.
+  *@param initialData is data already read from the stream, or null if none.
+  *@param initialAmt is the amount of initial data.
+  *@param contentHash is the hash of the data so far, which includes the initial data.
+  *@return the checksum value to use as a version string.
+  */
+  protected String addFileData(IVersionActivity activities, String documentIdentifier, int responseCode,
+    String contentType, String referralURI, InputStream dataStream, byte[] initialData, int initialAmt, XXHash64 contentHash)
+    throws IOException, ManifoldCFException, ServiceInterruption
+  {
+    File tempFile = File.createTempFile("_webcache_","tmp");
+    try
+    {
+      // Causes memory leaks if left around; there's no way to release
+      // the record specifying that the file should be deleted, even
+      // after it's removed.  So disable this and live with the occasional
+      // dangling file left as a result of shutdown or error. :-(
+      // tempFile.deleteOnExit();
+      ManifoldCF.addFile(tempFile);
+
+      // Transfer data to temporary file
+      OutputStream os = new FileOutputStream(tempFile);
+      try
+      {
+        if (initialData != null)
+          os.write(initialData,0,initialAmt);
+        byte[] byteArray = new byte[65536];
+        while (true)
+        {
+          int amt = readData(dataStream,byteArray,0,byteArray.length);
+          if (amt == -1)
+            break;
+          contentHash.update(byteArray,0,amt);
+          os.write(byteArray,0,amt);
+          // Check if job is alive before looping
+          activities.checkJobStillActive();
+        }
+      }
+      finally
+      {
+        os.close();
+      }
+
+      String checkSum = contentHash.getHexValue();
+      synchronized(this)
+      {
+        deleteData(documentIdentifier);
+        cacheData.put(documentIdentifier,new DocumentData(tempFile,responseCode,contentType,referralURI,checkSum));
+        return checkSum;
+      }
+
+    }
+    catch (IOException e)
+    {
+      ManifoldCF.deleteFile(tempFile);
+      throw e;
+    }
+    catch (ManifoldCFException e)
+    {
+      ManifoldCF.deleteFile(tempFile);
+      throw e;
+    }
+    catch (ServiceInterruption e)
+    {
+      ManifoldCF.deleteFile(tempFile);
+      throw e;
+    }
+    catch (Error e)
+    {
+      ManifoldCF.deleteFile(tempFile);
+      throw e;
+    }
+  }
+
+  /** Read from the document stream.
+  *@return the amount read, or -1 at the end of the stream.
+  */
+  protected static int readData(InputStream dataStream, byte[] buffer, int offset, int length)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    try
+    {
+      return dataStream.read(buffer,offset,length);
+    }
+    catch (java.net.SocketTimeoutException e)
+    {
+      Logging.connectors.warn("Socket timeout exception reading socket stream: "+e.getMessage(),e);
+      long currentTime = System.currentTimeMillis();
+      throw new ServiceInterruption("Socket timeout: "+e.getMessage(),e,currentTime + 300000L,
+        currentTime + 12 * 60 * 60000L,-1,false);
+    }
+    catch (ConnectTimeoutException e)
+    {
+      Logging.connectors.warn("Socket connect timeout exception reading socket stream: "+e.getMessage(),e);
+      long currentTime = System.currentTimeMillis();
+      throw new ServiceInterruption("Socket timeout: "+e.getMessage(),e,currentTime + 300000L,
+        currentTime + 12 * 60 * 60000L,-1,false);
+    }
+    catch (InterruptedIOException e)
+    {
+      //Logging.connectors.warn("IO interruption seen",e);
+      throw new ManifoldCFException("Interrupted: "+e.getMessage(),ManifoldCFException.INTERRUPTED);
+    }
+    catch (IOException e)
+    {
+      Logging.connectors.warn("IO exception reading socket stream: "+e.getMessage(),e);
+      long currentTime = System.currentTimeMillis();
+      throw new ServiceInterruption("Read timeout: "+e.getMessage(),e,currentTime + 300000L,
+        currentTime + 12 * 60 * 60000L,-1,false);
+    }
+  }
+
+  /** Reserve a buffer to read a document into memory with, if there's memory to spare.
+  *@return the buffer, or null if the document must go to disk.
+  */
+  protected synchronized byte[] reserveBuffer()
+  {
+    if (memoryThreshold <= 0)
+      return null;
+    int bufferSize = memoryThreshold + 1;
+    if (memoryInUse + (long)bufferSize > memoryLimit)
+      return null;
+    memoryInUse += (long)bufferSize;
+    if (freeBuffers.size() > 0)
+      return freeBuffers.remove(freeBuffers.size()-1);
+    return new byte[bufferSize];
+  }
+
+  /** Give back a buffer from reserveBuffer().
+  *@param buffer is the buffer.
+  */
+  protected synchronized void releaseBuffer(byte[] buffer)
+  {
+    memoryInUse -= (long)buffer.length;
+    if (buffer.length == memoryThreshold + 1 && freeBuffers.size() < MAX_FREE_BUFFERS)
+      freeBuffers.add(buffer);
+  }
+
   /** Get the response code.
   *@param documentIdentifier is the document identifier.
   *@return the code.
@@ -256,6 +369,18 @@ public class DataCache
     return dd.getReferralURI();
   }
 
+  /** Get the content hash.
+  *@param documentIdentifier is the document identifier.
+  *@return the hash of the document's content, or null if the document isn't cached.
+  */
+  public synchronized String getContentHash(String documentIdentifier)
+  {
+    DocumentData dd = cacheData.get(documentIdentifier);
+    if (dd == null)
+      return null;
+    return dd.getContentHash();
+  }
+
   /** Fetch binary data length.
   *@param documentIdentifier is the document identifier.
   *@return the length.
@@ -265,7 +390,7 @@ public class DataCache
     DocumentData dd = cacheData.get(documentIdentifier);
     if (dd == null)
       return 0L;
-    return dd.getData().length();
+    return dd.getDataLength();
   }
 
   /** Fetch binary data entry from the cache.
@@ -278,6 +403,8 @@ public class DataCache
     DocumentData dd = cacheData.get(documentIdentifier);
     if (dd == null)
       return null;
+    if (dd.getMemoryData() != null)
+      return new ByteArrayInputStream(dd.getMemoryData());
     try
     {
       return new FileInputStream(dd.getData());
@@ -296,7 +423,10 @@ public class DataCache
     DocumentData dd = cacheData.remove(documentIdentifier);
     if (dd != null)
     {
-      ManifoldCF.deleteFile(dd.getData());
+      if (dd.getMemoryData() != null)
+        memoryInUse -= (long)dd.getMemoryData().length;
+      else
+        ManifoldCF.deleteFile(dd.getData());
     }
   }
 
@@ -307,32 +437,63 @@ public class DataCache
   */
   protected static class DocumentData
   {
-    /** The cache file for the data */
+    /** The cache file for the data, if it is on disk */
     protected File data;
+    /** The data, if it is in memory */
+    protected byte[] memoryData;
     /** The response code */
     protected int responseCode;
     /** The content-type header value */
     protected String contentType;
     /** The referral URI */
     protected String referralURI;
+    /** The hash of the content */
+    protected String contentHash;
 
     // More will probably go here later, but I can't think of much else at the moment.
 
     /** Constructor. */
-    public DocumentData(File data, int responseCode, String contentType, String referralURI)
+    public DocumentData(File data, int responseCode, String contentType, String referralURI, String contentHash)
     {
       this.data = data;
+      this.memoryData = null;
+      this.responseCode = responseCode;
+      this.contentType = contentType;
+      this.referralURI = referralURI;
+      this.contentHash = contentHash;
+    }
+
+    /** Constructor, for data kept in memory. */
+    public DocumentData(byte[] memoryData, int responseCode, String contentType, String referralURI, String contentHash)
+    {
+      this.data = null;
+      this.memoryData = memoryData;
       this.responseCode = responseCode;
       this.contentType = contentType;
       this.referralURI = referralURI;
+      this.contentHash = contentHash;
     }
 
-    /** Get the data */
+    /** Get the data file, or null if the data is in memory */
     public File getData()
     {
       return data;
     }
 
+    /** Get the in-memory data, or null if the data is in a file */
+    public byte[] getMemoryData()
+    {
+      return memoryData;
+    }
+
+    /** Get the data length */
+    public long getDataLength()
+    {
+      if (memoryData != null)
+        return (long)memoryData.length;
+      return data.length();
+    }
+
     /** Get the response code */
     public int getResponseCode()
     {
@@ -351,6 +512,12 @@ public class DataCache
       return referralURI;
     }
 
+    /** Get the content hash */
+    public String getContentHash()
+    {
+      return contentHash;
+    }
+
   }
 
 }
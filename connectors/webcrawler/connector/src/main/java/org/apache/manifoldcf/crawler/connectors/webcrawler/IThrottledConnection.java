@@ -73,6 +73,25 @@ public interface IThrottledConnection
     LoginCookies loginCookies)
     throws ManifoldCFException, ServiceInterruption;
 
+  /** Execute the fetch and get the return code, making the request conditional on the document having
+  * changed since it was last fetched.  If it has not changed, the response code will be 304 and there
+  * will be no body.  Otherwise this behaves just like the unconditional fetch.
+  * @param urlPath is the path part of the url, e.g. "/robots.txt"
+  * @param userAgent is the value of the userAgent header to use.
+  * @param from is the value of the from header to use.
+  * @param connectionTimeoutMilliseconds is the maximum number of milliseconds to wait on socket connect.
+  * @param redirectOK should be set to true if you want redirects to be automatically followed.
+  * @param host is the value to use as the "Host" header, or null to use the default.
+  * @param formData describes additional form arguments and how to fetch the page.
+  * @param loginCookies describes the cookies that should be in effect for this page fetch.
+  * @param lastETag is the ETag value from the last fetch, or null if none.
+  * @param lastModified is the Last-Modified value from the last fetch, or null if none.
+  */
+  public void executeFetch(String urlPath, String userAgent, String from, int connectionTimeoutMilliseconds,
+    int socketTimeoutMilliseconds, boolean redirectOK, String host, FormData formData,
+    LoginCookies loginCookies, String lastETag, String lastModified)
+    throws ManifoldCFException, ServiceInterruption;
+
   /** Get the http response code.
   *@return the response code.  This is either an HTTP response code, or one of the codes above.
   */
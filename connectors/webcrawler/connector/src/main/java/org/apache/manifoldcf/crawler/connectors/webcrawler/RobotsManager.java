@@ -20,6 +20,7 @@ package org.apache.manifoldcf.crawler.connectors.webcrawler;
 
 import java.util.*;
 import java.io.*;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.manifoldcf.core.interfaces.*;
 import org.apache.manifoldcf.crawler.interfaces.*;
 import org.apache.manifoldcf.authorities.interfaces.*;
@@ -51,6 +52,15 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
   // Robots cache class.  Only one needed.
   protected static RobotsCacheClass robotsCacheClass = new RobotsCacheClass();
 
+  /** The most hosts whose parsed robots data is kept in compiledRobots */
+  protected static final int MAX_COMPILED_HOSTS = 2000;
+
+  /** Parsed robots data, keyed by host.  This sits in front of the cache manager, so that the many checks
+  * against a host we already know don't each need a cache manager lookup.  Entries are dropped when they
+  * expire, and when this process writes new data for the host.
+  */
+  protected static final Map<String,RobotsData> compiledRobots = new ConcurrentHashMap<String,RobotsData>();
+
   // Database fields
   protected final static String hostField = "hostname";
   protected final static String robotsField = "robotsdata";
@@ -118,6 +128,10 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
     IVersionActivity activities)
     throws ManifoldCFException
   {
+    RobotsData rd = compiledRobots.get(hostName);
+    if (rd != null && rd.getExpirationTime() > currentTime)
+      return new Boolean(rd.isFetchAllowed(userAgent,pathString));
+
     // Build description objects
     HostDescription[] objectDescriptions = new HostDescription[1];
     StringSetBuffer ssb = new StringSetBuffer();
@@ -129,9 +143,13 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
 
     // We do the expiration check here, rather than in the query, so that caching
     // is possible.
-    RobotsData rd = exec.getResults();
+    rd = exec.getResults();
     if (rd == null || rd.getExpirationTime() <= currentTime)
+    {
+      compiledRobots.remove(hostName);
       return null;
+    }
+    rememberRobotsData(hostName,rd);
     return new Boolean(rd.isFetchAllowed(userAgent,pathString));
   }
 
@@ -213,6 +231,7 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
       finally
       {
         cacheManager.leaveCache(ch);
+        compiledRobots.remove(hostName);
       }
     }
     finally
@@ -233,6 +252,26 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
     return "ROBOTS_"+hostName;
   }
 
+  /** Keep parsed robots data for a host in compiledRobots, making room if need be.
+  */
+  protected static void rememberRobotsData(String hostName, RobotsData rd)
+  {
+    if (compiledRobots.size() >= MAX_COMPILED_HOSTS)
+    {
+      // Drop everything that has expired, and if that's not enough, start over
+      long currentTime = System.currentTimeMillis();
+      Iterator<RobotsData> iter = compiledRobots.values().iterator();
+      while (iter.hasNext())
+      {
+        if (iter.next().getExpirationTime() <= currentTime)
+          iter.remove();
+      }
+      if (compiledRobots.size() >= MAX_COMPILED_HOSTS)
+        compiledRobots.clear();
+    }
+    compiledRobots.put(hostName,rd);
+  }
+
   /** Read robots data, if it exists.
   *@return null if the data doesn't exist at all.  Return robots data if it does.
   */
@@ -298,8 +337,13 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
   */
   protected static class RobotsData
   {
+    /** Stands for "no record applies" in recordsByAgent */
+    protected static final Record NO_RECORD = new Record();
+
     protected long expiration;
     protected ArrayList records = null;
+    /** The record that applies to each user agent we've been asked about */
+    protected final Map<String,Record> recordsByAgent = new ConcurrentHashMap<String,Record>();
 
     /** Constructor. */
     public RobotsData(InputStream is, long expiration, String hostName, IVersionActivity activities)
@@ -336,9 +380,32 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
       if (records == null)
         return true;
 
-      boolean wasDisallowed = false;
-      boolean wasAllowed = false;
+      Record r = recordsByAgent.get(userAgent);
+      if (r == null)
+      {
+        r = findRecord(userAgent);
+        if (r == null)
+          r = NO_RECORD;
+        recordsByAgent.put(userAgent,r);
+      }
+      if (r == NO_RECORD)
+        return true;
 
+      // Allowed always overrides disallowed
+      if (r.isAllowed(pathString))
+        return true;
+      if (r.isDisallowed(pathString))
+        return false;
+
+      // No match -> crawl allowed
+      return true;
+    }
+
+    /** Find the record that applies to a user agent.
+    *@return null if none does.
+    */
+    protected Record findRecord(String userAgent)
+    {
       // First matching user-agent takes precedence, according to the following chunk of spec:
       // "These name tokens are used in User-agent lines in /robots.txt to
       // identify to which specific robots the record applies. The robot
@@ -349,8 +416,6 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
       // line with a "*" value, if present. If no record satisfied either
       // condition, or no records are present at all, access is unlimited."
 
-      boolean sawAgent = false;
-
       String userAgentUpper = userAgent.toUpperCase();
 
       int i = 0;
@@ -358,46 +423,16 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
       {
         Record r = (Record)records.get(i++);
         if (r.isAgentMatch(userAgentUpper,false))
-        {
-          if (r.isDisallowed(pathString))
-            wasDisallowed = true;
-          if (r.isAllowed(pathString))
-            wasAllowed = true;
-
-          sawAgent = true;
-          break;
-        }
+          return r;
       }
-      if (sawAgent == false)
+      i = 0;
+      while (i < records.size())
       {
-        i = 0;
-        while (i < records.size())
-        {
-          Record r = (Record)records.get(i++);
-          if (r.isAgentMatch("*",true))
-          {
-            if (r.isDisallowed(pathString))
-              wasDisallowed = true;
-            if (r.isAllowed(pathString))
-              wasAllowed = true;
-
-            sawAgent = true;
-            break;
-          }
-        }
+        Record r = (Record)records.get(i++);
+        if (r.isAgentMatch("*",true))
+          return r;
       }
-
-      if (sawAgent == false)
-        return true;
-
-      // Allowed always overrides disallowed
-      if (wasAllowed)
-        return true;
-      if (wasDisallowed)
-        return false;
-
-      // No match -> crawl allowed
-      return true;
+      return null;
     }
 
     /** Get expiration */
@@ -603,65 +638,6 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
 
   }
 
-  /** Check if path matches specification */
-  protected static boolean doesPathMatch(String path, String spec)
-  {
-    // For robots 1.0, this function would do just this:
-    // return path.startsWith(spec);
-    // However, we implement the "google bot" spec, which allows wildcard matches that are, in fact, regular-expression-like in some ways.
-    // The "specification" can be found here: http://www.google.com/support/webmasters/bin/answer.py?hl=en&answer=40367
-    return doesPathMatch(path,0,spec,0);
-  }
-
-  /** Recursive method for matching specification to path. */
-  protected static boolean doesPathMatch(String path, int pathIndex, String spec, int specIndex)
-  {
-    while (true)
-    {
-      if (specIndex == spec.length())
-        // Hit the end of the specification!  We're done.
-        return true;
-      char specChar = spec.charAt(specIndex++);
-      if (specChar == '*')
-      {
-        // Found a specification wildcard.
-        // Eat up all the '*' characters at this position - otherwise each additional one increments the exponent of how long this can take,
-        // making denial-of-service via robots parsing a possibility.
-        while (specIndex < spec.length())
-        {
-          if (spec.charAt(specIndex) != '*')
-            break;
-          specIndex++;
-        }
-        // It represents zero or more characters, so we must recursively try for a match against all remaining characters in the path string.
-        while (true)
-        {
-          boolean match = doesPathMatch(path,pathIndex,spec,specIndex);
-          if (match)
-            return true;
-          if (path.length() == pathIndex)
-            // Nothing further to try, and no match
-            return false;
-          pathIndex++;
-          // Try again
-        }
-      }
-      else if (specChar == '$' && specIndex == spec.length())
-      {
-        // Found a specification end-of-path character.
-        // (It can only be legitimately the last character of the specification.)
-        return pathIndex == path.length();
-      }
-      if (pathIndex == path.length())
-        // Hit the end of the path! (but not the end of the specification!)
-        return false;
-      if (path.charAt(pathIndex) != specChar)
-        return false;
-      // On to the next match
-      pathIndex++;
-    }
-  }
-
   /** This is the object description for a robots host object.
   * This is the key that is used to look up cached data.
   */
@@ -842,13 +818,14 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
   }
 
   /** This class represents a record in a robots.txt file.  It contains one or
-  * more user-agents, and one or more disallows.
+  * more user-agents, and one or more disallows.  The allow and disallow paths are compiled
+  * as they are added.
   */
   protected static class Record
   {
     protected ArrayList userAgents = new ArrayList();
-    protected ArrayList disallows = new ArrayList();
-    protected ArrayList allows = new ArrayList();
+    protected RobotsPathMatcher disallows = new RobotsPathMatcher();
+    protected RobotsPathMatcher allows = new RobotsPathMatcher();
 
     /** Constructor.
     */
@@ -860,21 +837,21 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
     */
     public void addAgent(String agentName)
     {
-      userAgents.add(agentName);
+      userAgents.add(agentName.toUpperCase());
     }
 
     /** Add a disallow.
     */
     public void addDisallow(String disallowPath)
     {
-      disallows.add(disallowPath);
+      disallows.addRule(disallowPath);
     }
 
     /** Add an allow.
     */
     public void addAllow(String allowPath)
     {
-      allows.add(allowPath);
+      allows.addRule(allowPath);
     }
 
     /** See if user-agent matches.
@@ -884,7 +861,7 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
       int i = 0;
       while (i < userAgents.size())
       {
-        String agent = ((String)userAgents.get(i++)).toUpperCase();
+        String agent = (String)userAgents.get(i++);
         if (exactMatch && agent.trim().equals(agentNameUpper))
           return true;
         if (!exactMatch && agentNameUpper.indexOf(agent) != -1)
@@ -899,14 +876,7 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
     */
     public boolean isDisallowed(String path)
     {
-      int i = 0;
-      while (i < disallows.size())
-      {
-        String disallow = (String)disallows.get(i++);
-        if (doesPathMatch(path,disallow))
-          return true;
-      }
-      return false;
+      return disallows.matches(path);
     }
 
     /** See if path is allowed.  Only called if user-agent has already
@@ -915,14 +885,7 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
     */
     public boolean isAllowed(String path)
     {
-      int i = 0;
-      while (i < allows.size())
-      {
-        String allow = (String)allows.get(i++);
-        if (doesPathMatch(path,allow))
-          return true;
-      }
-      return false;
+      return allows.matches(path);
     }
 
   }
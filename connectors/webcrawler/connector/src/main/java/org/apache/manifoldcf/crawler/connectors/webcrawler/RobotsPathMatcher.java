@@ -0,0 +1,209 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.webcrawler;
+
+import java.util.*;
+
+/** This class matches a path against a set of robots.txt Allow or Disallow paths at once.
+* Paths without wildcards, which are almost all of them, are compiled into a character trie, so
+* that a check walks the path once no matter how many rules there are.  A path ending in '$'
+* must match the whole path.  Paths containing '*' are matched one at a time.
+*/
+public class RobotsPathMatcher
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** The root of the trie of literal paths */
+  protected final TrieNode root = new TrieNode();
+  /** Paths that contain wildcards */
+  protected final List<String> wildcardSpecs = new ArrayList<String>();
+
+  /** Constructor.
+  */
+  public RobotsPathMatcher()
+  {
+  }
+
+  /** Add a path specification.
+  *@param spec is the path, as it appears in robots.txt.
+  */
+  public void addRule(String spec)
+  {
+    if (spec.indexOf('*') != -1)
+    {
+      wildcardSpecs.add(spec);
+      return;
+    }
+    // A '$' only means end-of-path when it is the last character
+    boolean exact = spec.endsWith("$");
+    int length = exact?spec.length()-1:spec.length();
+    TrieNode node = root;
+    for (int i = 0; i < length; i++)
+    {
+      node = node.addChild(spec.charAt(i));
+    }
+    if (exact)
+      node.exactTerminal = true;
+    else
+      node.prefixTerminal = true;
+  }
+
+  /** Check if a path matches any of the rules.
+  *@param path is the path.
+  *@return true if some rule matches.
+  */
+  public boolean matches(String path)
+  {
+    TrieNode node = root;
+    int i = 0;
+    while (true)
+    {
+      if (node.prefixTerminal)
+        return true;
+      if (i == path.length())
+      {
+        if (node.exactTerminal)
+          return true;
+        break;
+      }
+      node = node.getChild(path.charAt(i++));
+      if (node == null)
+        break;
+    }
+    for (String spec : wildcardSpecs)
+    {
+      if (doesPathMatch(path,spec))
+        return true;
+    }
+    return false;
+  }
+
+  /** Check if path matches a single specification */
+  public static boolean doesPathMatch(String path, String spec)
+  {
+    // For robots 1.0, this function would do just this:
+    // return path.startsWith(spec);
+    // However, we implement the "google bot" spec, which allows wildcard matches that are, in fact, regular-expression-like in some ways.
+    // The "specification" can be found here: http://www.google.com/support/webmasters/bin/answer.py?hl=en&answer=40367
+    return doesPathMatch(path,0,spec,0);
+  }
+
+  /** Recursive method for matching specification to path. */
+  protected static boolean doesPathMatch(String path, int pathIndex, String spec, int specIndex)
+  {
+    while (true)
+    {
+      if (specIndex == spec.length())
+        // Hit the end of the specification!  We're done.
+        return true;
+      char specChar = spec.charAt(specIndex++);
+      if (specChar == '*')
+      {
+        // Found a specification wildcard.
+        // Eat up all the '*' characters at this position - otherwise each additional one increments the exponent of how long this can take,
+        // making denial-of-service via robots parsing a possibility.
+        while (specIndex < spec.length())
+        {
+          if (spec.charAt(specIndex) != '*')
+            break;
+          specIndex++;
+        }
+        // It represents zero or more characters, so we must recursively try for a match against all remaining characters in the path string.
+        while (true)
+        {
+          boolean match = doesPathMatch(path,pathIndex,spec,specIndex);
+          if (match)
+            return true;
+          if (path.length() == pathIndex)
+            // Nothing further to try, and no match
+            return false;
+          pathIndex++;
+          // Try again
+        }
+      }
+      else if (specChar == '$' && specIndex == spec.length())
+      {
+        // Found a specification end-of-path character.
+        // (It can only be legitimately the last character of the specification.)
+        return pathIndex == path.length();
+      }
+      if (pathIndex == path.length())
+        // Hit the end of the path! (but not the end of the specification!)
+        return false;
+      if (path.charAt(pathIndex) != specChar)
+        return false;
+      // On to the next match
+      pathIndex++;
+    }
+  }
+
+  /** A node in the trie.  Children are kept in parallel arrays; there are rarely many of them.
+  */
+  protected static class TrieNode
+  {
+    protected char[] childChars = null;
+    protected TrieNode[] children = null;
+    protected int childCount = 0;
+    /** Set if a rule ends here, and matches whatever follows */
+    protected boolean prefixTerminal = false;
+    /** Set if a rule ends here, and matches only if the path ends here too */
+    protected boolean exactTerminal = false;
+
+    public TrieNode()
+    {
+    }
+
+    public TrieNode getChild(char c)
+    {
+      for (int i = 0; i < childCount; i++)
+      {
+        if (childChars[i] == c)
+          return children[i];
+      }
+      return null;
+    }
+
+    public TrieNode addChild(char c)
+    {
+      TrieNode child = getChild(c);
+      if (child != null)
+        return child;
+      if (children == null)
+      {
+        childChars = new char[2];
+        children = new TrieNode[2];
+      }
+      else if (childCount == children.length)
+      {
+        char[] newChars = new char[childCount * 2];
+        TrieNode[] newChildren = new TrieNode[childCount * 2];
+        System.arraycopy(childChars,0,newChars,0,childCount);
+        System.arraycopy(children,0,newChildren,0,childCount);
+        childChars = newChars;
+        children = newChildren;
+      }
+      child = new TrieNode();
+      childChars[childCount] = c;
+      children[childCount] = child;
+      childCount++;
+      return child;
+    }
+  }
+
+}
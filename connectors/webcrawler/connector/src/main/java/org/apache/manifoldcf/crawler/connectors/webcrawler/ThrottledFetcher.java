@@ -31,6 +31,12 @@ import java.io.*;
 import java.net.*;
 import java.util.zip.GZIPInputStream;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.client.HttpClient;
@@ -51,6 +57,7 @@ import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.AbstractHttpClient;
 import org.apache.http.impl.client.DefaultRedirectStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.util.EntityUtils;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpParams;
@@ -118,6 +125,26 @@ public class ThrottledFetcher
   /** The read chunk length */
   protected static final int READ_CHUNK_LENGTH = 4096;
 
+  /** Property naming the longest time, in milliseconds, that an idle connection is kept alive for
+  * the next fetch from the same server.  A shorter Keep-Alive timeout from the server wins. */
+  public static final String keepAliveProperty = "org.apache.manifoldcf.crawler.connectors.webcrawler.keepalive";
+  /** Default keep-alive time, in milliseconds */
+  public static final long KEEPALIVE_DEFAULT = 15000L;
+
+  /** Property naming the number of threads in the shared fetch pool.  The default is the number
+  * of crawler worker threads, since each of those does one fetch at a time. */
+  public static final String fetchThreadsProperty = "org.apache.manifoldcf.crawler.connectors.webcrawler.fetchthreads";
+  /** How long an idle fetch thread lingers before going away, in milliseconds */
+  protected static final long FETCH_THREAD_KEEPALIVE = 60000L;
+
+  /** The pool of threads that actually talk to web servers, shared by all connections.
+  * Socket waits cannot be interrupted, so they are done in these threads rather than the caller's,
+  * so that the caller can just abandon them when it is interrupted.  Abandoning a fetch aborts its
+  * request, which closes the socket and so frees the thread.  Created on first use, since its size
+  * comes from the configuration.
+  */
+  protected static volatile ThreadPoolExecutor fetchExecutor = null;
+
   /** Connection pools.
   /* This is a static hash of the connection pools in existence.  Each connection pool represents a set of identical connections. */
   protected final static Map<ConnectionPoolKey,ConnectionPool> connectionPools = new HashMap<ConnectionPoolKey,ConnectionPool>();
@@ -139,6 +166,23 @@ public class ThrottledFetcher
     }
   }
 
+  /** Make sure the shared fetch pool exists.  Fetches that find every thread busy can wait
+  * in line, but the line is no longer than the pool is large.
+  */
+  protected static synchronized void createFetchExecutor(IThreadContext threadContext)
+    throws ManifoldCFException
+  {
+    if (fetchExecutor != null)
+      return;
+    int fetchThreads = LockManagerFactory.getIntProperty(threadContext,fetchThreadsProperty,ManifoldCF.getMaxWorkerThreads(threadContext));
+    if (fetchThreads < 1)
+      throw new ManifoldCFException("Illegal value for the number of web fetch threads: "+Integer.toString(fetchThreads));
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(fetchThreads,fetchThreads,
+      FETCH_THREAD_KEEPALIVE,TimeUnit.MILLISECONDS,new ArrayBlockingQueue<Runnable>(fetchThreads),new FetchThreadFactory());
+    executor.allowCoreThreadTimeOut(true);
+    fetchExecutor = executor;
+  }
+
   /** Constructor.  Private since we never instantiate.
   */
   private ThrottledFetcher()
@@ -194,6 +238,8 @@ public class ThrottledFetcher
     ConnectionPoolKey poolKey = new ConnectionPoolKey(protocol,server,port,authentication,
       trustStoreString,proxyHost,proxyPort,proxyAuthDomain,proxyAuthUsername,proxyAuthPassword);
     
+    createFetchExecutor(threadContext);
+
     ConnectionPool p;
     synchronized (connectionPools)
     {
@@ -203,8 +249,9 @@ public class ThrottledFetcher
         // Construct a new IConnectionThrottler.
         IConnectionThrottler connectionThrottler =
           throttleGroups.obtainConnectionThrottler(webThrottleGroupType,throttleGroupName,binNames);
+        long keepAliveMilliseconds = LockManagerFactory.getLongProperty(threadContext,keepAliveProperty,KEEPALIVE_DEFAULT);
         p = new ConnectionPool(connectionThrottler,protocol,server,port,authentication,baseFactory,
-          proxyHost,proxyPort,proxyAuthDomain,proxyAuthUsername,proxyAuthPassword);
+          proxyHost,proxyPort,proxyAuthDomain,proxyAuthUsername,proxyAuthPassword,keepAliveMilliseconds);
         connectionPools.put(poolKey,p);
       }
     }
@@ -285,11 +332,15 @@ public class ThrottledFetcher
     protected final String proxyAuthPassword;
     /** Https protocol */
     protected final javax.net.ssl.SSLSocketFactory httpsSocketFactory;
-
-    /** The thread that is actually doing the work */
-    protected ExecuteMethodThread methodThread = null;
-    /** Set if thread has been started */
-    protected boolean threadStarted = false;
+    /** The longest time an idle http connection is kept alive for the next fetch */
+    protected final long keepAliveMilliseconds;
+    /** The connect timeout the https scheme was last registered with */
+    protected int registeredConnectionTimeout = -1;
+
+    /** The operation that is actually doing the work */
+    protected ExecuteMethodOperation methodOperation = null;
+    /** Set if the operation has been started */
+    protected boolean operationStarted = false;
     
 
     /** Constructor.  Create a connection with a specific server and port, and
@@ -297,7 +348,8 @@ public class ThrottledFetcher
     public ThrottledConnection(ConnectionPool myPool, IFetchThrottler fetchThrottler,
       String protocol, String server, int port, PageCredentials authentication,
       javax.net.ssl.SSLSocketFactory httpsSocketFactory,
-      String proxyHost, int proxyPort, String proxyAuthDomain, String proxyAuthUsername, String proxyAuthPassword)
+      String proxyHost, int proxyPort, String proxyAuthDomain, String proxyAuthUsername, String proxyAuthPassword,
+      long keepAliveMilliseconds)
     {
       this.myPool = myPool;
       this.fetchThrottler = fetchThrottler;
@@ -311,6 +363,7 @@ public class ThrottledFetcher
       this.port = port;
       this.authentication = authentication;
       this.httpsSocketFactory = httpsSocketFactory;
+      this.keepAliveMilliseconds = keepAliveMilliseconds;
     }
 
     /** Check whether the connection has expired.
@@ -322,7 +375,7 @@ public class ThrottledFetcher
     {
       if (connManager != null)
       {
-        connManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+        connManager.closeIdleConnections(keepAliveMilliseconds, TimeUnit.MILLISECONDS);
         connManager.closeExpiredConnections();
       }
       return (currentTime > expireTime);
@@ -343,6 +396,7 @@ public class ThrottledFetcher
       {
         connManager.shutdown();
         connManager = null;
+        registeredConnectionTimeout = -1;
       }
 
     }
@@ -391,11 +445,30 @@ public class ThrottledFetcher
       LoginCookies loginCookies)
       throws ManifoldCFException, ServiceInterruption
     {
-      // Set up scheme
-      SSLSocketFactory myFactory = new SSLSocketFactory(new InterruptibleSocketFactory(httpsSocketFactory,connectionTimeoutMilliseconds),
-        new AllowAllHostnameVerifier());
-      Scheme myHttpsProtocol = new Scheme("https", 443, myFactory);
+      executeFetch(urlPath,userAgent,from,connectionTimeoutMilliseconds,socketTimeoutMilliseconds,
+        redirectOK,host,formData,loginCookies,null,null);
+    }
 
+    /** Execute the fetch and get the return code, making the request conditional on the document having
+    * changed since it was last fetched.  If it has not changed, the response code will be 304 and there
+    * will be no body.
+    * @param urlPath is the path part of the url, e.g. "/robots.txt"
+    * @param userAgent is the value of the userAgent header to use.
+    * @param from is the value of the from header to use.
+    * @param connectionTimeoutMilliseconds is the maximum number of milliseconds to wait on socket connect.
+    * @param redirectOK should be set to true if you want redirects to be automatically followed.
+    * @param host is the value to use as the "Host" header, or null to use the default.
+    * @param formData describes additional form arguments and how to fetch the page.
+    * @param loginCookies describes the cookies that should be in effect for this page fetch.
+    * @param lastETag is the ETag value from the last fetch, or null if none.
+    * @param lastModified is the Last-Modified value from the last fetch, or null if none.
+    */
+    @Override
+    public void executeFetch(String urlPath, String userAgent, String from, int connectionTimeoutMilliseconds,
+      int socketTimeoutMilliseconds, boolean redirectOK, String host, FormData formData,
+      LoginCookies loginCookies, String lastETag, String lastModified)
+      throws ManifoldCFException, ServiceInterruption
+    {
       int hostPort;
       String displayedPort;
       if (port != -1)
@@ -445,9 +518,22 @@ public class ThrottledFetcher
         localConnManager.setDefaultMaxPerRoute(1);
         connManager = localConnManager;
       }
+      else
+      {
+        // Don't try to reuse a kept-alive connection that is past its keep-alive time; the server has
+        // probably closed it, and with no retries the fetch would fail.
+        connManager.closeExpiredConnections();
+      }
       
-      // Set up protocol registry
-      connManager.getSchemeRegistry().register(myHttpsProtocol);
+      // Set up protocol registry.  The connect timeout is built into the socket factory, so this only
+      // needs doing again when the timeout changes.
+      if (registeredConnectionTimeout != connectionTimeoutMilliseconds)
+      {
+        SSLSocketFactory myFactory = new SSLSocketFactory(new InterruptibleSocketFactory(httpsSocketFactory,connectionTimeoutMilliseconds),
+          new AllowAllHostnameVerifier());
+        connManager.getSchemeRegistry().register(new Scheme("https", 443, myFactory));
+        registeredConnectionTimeout = connectionTimeoutMilliseconds;
+      }
       
       long startTime = 0L;
       if (Logging.connectors.isDebugEnabled())
@@ -483,6 +569,8 @@ public class ThrottledFetcher
          
           });
         localHttpClient.setRedirectStrategy(new DefaultRedirectStrategy());
+        // Keep connections alive between fetches, but for no longer than the server or our configuration allows
+        localHttpClient.setKeepAliveStrategy(new CappedKeepAliveStrategy(keepAliveMilliseconds));
         localHttpClient.getCookieSpecs().register(CookiePolicy.BROWSER_COMPATIBILITY, new CookieSpecFactory()
           {
 
@@ -633,6 +721,11 @@ public class ThrottledFetcher
       fetchMethod.setHeader(new BasicHeader("From",from));
       fetchMethod.setHeader(new BasicHeader("Accept","*/*"));
       fetchMethod.setHeader(new BasicHeader("Accept-Encoding","gzip,deflate"));
+      // Validators from the last fetch, so an unchanged document comes back as a bodiless 304
+      if (lastETag != null)
+        fetchMethod.setHeader(new BasicHeader("If-None-Match",lastETag));
+      if (lastModified != null)
+        fetchMethod.setHeader(new BasicHeader("If-Modified-Since",lastModified));
 
       // Use a custom cookie store
       CookieStore cookieStore = new OurBasicCookieStore();
@@ -656,16 +749,16 @@ public class ThrottledFetcher
 
       //httpClient.setCookieStore(cookieStore);
       
-      // Create the thread
-      methodThread = new ExecuteMethodThread(this, fetchThrottler, httpClient, fetchMethod, cookieStore);
+      // Create the operation
+      methodOperation = new ExecuteMethodOperation(this, fetchThrottler, httpClient, fetchMethod, cookieStore);
       try
       {
-        methodThread.start();
-        threadStarted = true;
+        methodOperation.start();
+        operationStarted = true;
         try
         {
-          statusCode = methodThread.getResponseCode();
-          lastFetchCookies = methodThread.getCookies();
+          statusCode = methodOperation.getResponseCode();
+          lastFetchCookies = methodOperation.getCookies();
           switch (statusCode)
           {
           case HttpStatus.SC_REQUEST_TIMEOUT:
@@ -691,9 +784,9 @@ public class ThrottledFetcher
         }
         catch (InterruptedException e)
         {
-          methodThread.interrupt();
-          methodThread = null;
-          threadStarted = false;
+          methodOperation.interrupt();
+          methodOperation = null;
+          operationStarted = false;
           throw e;
         }
 
@@ -762,6 +855,15 @@ public class ThrottledFetcher
         statusCode = FETCH_IO_ERROR;
         return;
       }
+      catch (RejectedExecutionException e)
+      {
+        // Every fetch thread is busy, and so is the line for them
+        fetchMethod = null;
+        throwable = e;
+        long currentTime = System.currentTimeMillis();
+        throw new ServiceInterruption("No fetch thread available for '"+myUrl+"'", e, currentTime + 60000L,
+          -1L,-1,false);
+      }
       catch (Throwable e)
       {
         Logging.connectors.debug("WEB: Caught an unexpected exception: "+e.getMessage(),e);
@@ -809,15 +911,15 @@ public class ThrottledFetcher
     {
       if (fetchMethod == null)
         throw new ManifoldCFException("Attempt to get headers when there is no method");
-      if (methodThread == null || threadStarted == false)
-        throw new ManifoldCFException("Attempt to get headers when no method thread");
+      if (methodOperation == null || operationStarted == false)
+        throw new ManifoldCFException("Attempt to get headers when no method operation");
       try
       {
-        return methodThread.getResponseHeaders();
+        return methodOperation.getResponseHeaders();
       }
       catch (InterruptedException e)
       {
-        methodThread.interrupt();
+        methodOperation.interrupt();
         throw new ManifoldCFException("Interrupted: "+e.getMessage(),e,ManifoldCFException.INTERRUPTED);
       }
       catch (HttpException e)
@@ -841,15 +943,15 @@ public class ThrottledFetcher
     {
       if (fetchMethod == null)
         throw new ManifoldCFException("Attempt to get a header when there is no method");
-      if (methodThread == null || threadStarted == false)
-        throw new ManifoldCFException("Attempt to get a header when no method thread");
+      if (methodOperation == null || operationStarted == false)
+        throw new ManifoldCFException("Attempt to get a header when no method operation");
       try
       {
-        return methodThread.getFirstHeader(headerName);
+        return methodOperation.getFirstHeader(headerName);
       }
       catch (InterruptedException e)
       {
-        methodThread.interrupt();
+        methodOperation.interrupt();
         throw new ManifoldCFException("Interrupted: "+e.getMessage(),e,ManifoldCFException.INTERRUPTED);
       }
       catch (HttpException e)
@@ -872,15 +974,15 @@ public class ThrottledFetcher
     {
       if (fetchMethod == null)
         throw new ManifoldCFException("Attempt to get an input stream when there is no method");
-      if (methodThread == null || threadStarted == false)
-        throw new ManifoldCFException("Attempt to get an input stream when no method thread");
+      if (methodOperation == null || operationStarted == false)
+        throw new ManifoldCFException("Attempt to get an input stream when no method operation");
       try
       {
-        return methodThread.getSafeInputStream();
+        return methodOperation.getSafeInputStream();
       }
       catch (InterruptedException e)
       {
-        methodThread.interrupt();
+        methodOperation.interrupt();
         throw new ManifoldCFException("Interrupted: "+e.getMessage(),e,ManifoldCFException.INTERRUPTED);
       }
       catch (IOException e)
@@ -946,8 +1048,8 @@ public class ThrottledFetcher
       if (fetchType != null)
       {
         // Abort the connection, if not already complete
-        if (methodThread != null && threadStarted)
-          methodThread.abort();
+        if (methodOperation != null && operationStarted)
+          methodOperation.abort();
 
         long endTime = System.currentTimeMillis();
 
@@ -962,22 +1064,22 @@ public class ThrottledFetcher
             Logging.connectors.debug("WEB: Fetch exception for '"+myUrl+"'",throwable);
         }
 
-        // Shut down (join) the connection thread, if any, and if it started
-        if (methodThread != null)
+        // Shut down (wait for) the fetch operation, if any, and if it started
+        if (methodOperation != null)
         {
-          if (threadStarted)
+          if (operationStarted)
           {
             try
             {
-              methodThread.finishUp();
+              methodOperation.finishUp();
             }
             catch (InterruptedException e)
             {
               throw new ManifoldCFException(e.getMessage(),e,ManifoldCFException.INTERRUPTED);
             }
-            threadStarted = false;
+            operationStarted = false;
           }
-          methodThread = null;
+          methodOperation = null;
         }
         
         fetchMethod = null;
@@ -1025,7 +1127,7 @@ public class ThrottledFetcher
       }
       if (e instanceof InterruptedIOException)
       {
-        methodThread.interrupt();
+        methodOperation.interrupt();
         throw new ManifoldCFException("Interrupted",ManifoldCFException.INTERRUPTED);
       }
       if (e instanceof NoHttpResponseException)
@@ -1299,8 +1401,8 @@ public class ThrottledFetcher
     
   }
 
-  /** This thread does the actual socket communication with the server.
-  * It's set up so that it can be abandoned at shutdown time.
+  /** This operation does the actual socket communication with the server, on a thread from the shared
+  * fetch pool.  It's set up so that it can be abandoned at shutdown time.
   *
   * The way it works is as follows:
   * - it starts the transaction
@@ -1312,10 +1414,10 @@ public class ThrottledFetcher
   * for the calling class to examine.
   *
   * The calling class basically accepts the sequence above.  It starts the
-  * thread, and tries to get a response code.  If instead an exception is seen,
+  * operation, and tries to get a response code.  If instead an exception is seen,
   * the exception is thrown up the stack.
   */
-  protected static class ExecuteMethodThread extends Thread
+  protected static class ExecuteMethodOperation implements Runnable
   {
     /** The connection */
     protected final ThrottledConnection theConnection;
@@ -1339,12 +1441,19 @@ public class ThrottledFetcher
     protected Throwable shutdownException = null;
 
     protected Throwable generalException = null;
+
+    /** The future for the operation, once it has been submitted */
+    protected Future<?> future = null;
+    /** Set when the operation begins to run */
+    protected boolean running = false;
+    /** Set when the operation is done running */
+    protected boolean finished = false;
+    /** Set if the operation was given up on before it began to run */
+    protected boolean abandoned = false;
     
-    public ExecuteMethodThread(ThrottledConnection theConnection, IFetchThrottler fetchThrottler,
+    public ExecuteMethodOperation(ThrottledConnection theConnection, IFetchThrottler fetchThrottler,
       AbstractHttpClient httpClient, HttpRequestBase executeMethod, CookieStore cookieStore)
     {
-      super();
-      setDaemon(true);
       this.theConnection = theConnection;
       this.fetchThrottler = fetchThrottler;
       this.httpClient = httpClient;
@@ -1352,7 +1461,46 @@ public class ThrottledFetcher
       this.cookieStore = cookieStore;
     }
 
+    /** Submit the operation to the shared fetch pool. */
+    public void start()
+    {
+      future = fetchExecutor.submit(this);
+    }
+
+    /** Give up on the operation.  The request is aborted first, since that closes its socket and
+    * so frees a pool thread that is blocked on the server.  (This can't wait for the operation's
+    * lock, which is held while the request is executed.)
+    */
+    public void interrupt()
+    {
+      executeMethod.abort();
+      if (future != null)
+        future.cancel(true);
+    }
+
     public void run()
+    {
+      synchronized (this)
+      {
+        if (abandoned)
+          return;
+        running = true;
+      }
+      try
+      {
+        execute();
+      }
+      finally
+      {
+        synchronized (this)
+        {
+          finished = true;
+          this.notifyAll();
+        }
+      }
+    }
+
+    protected void execute()
     {
       try
       {
@@ -1643,10 +1791,22 @@ public class ThrottledFetcher
       }
     }
     
+    /** Wait for the operation to be done running.  If it never got going, it never will. */
     public void finishUp()
       throws InterruptedException
     {
-      join();
+      synchronized (this)
+      {
+        if (!running)
+        {
+          abandoned = true;
+          return;
+        }
+        while (!finished)
+        {
+          wait();
+        }
+      }
     }
     
     protected synchronized void checkException(Throwable exception)
@@ -1671,6 +1831,43 @@ public class ThrottledFetcher
 
   }
 
+  /** Thread factory for the shared fetch pool.  The threads are daemon threads, so that abandoned ones
+  * never hold up shutdown.
+  */
+  protected static class FetchThreadFactory implements ThreadFactory
+  {
+    protected final AtomicInteger threadCount = new AtomicInteger(0);
+
+    public Thread newThread(Runnable r)
+    {
+      Thread t = new Thread(r,"Web fetch thread "+threadCount.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+
+  /** Keep-alive strategy that honors the server's Keep-Alive timeout, but never keeps a connection
+  * longer than our own limit, which also applies when the server doesn't say.
+  */
+  protected static class CappedKeepAliveStrategy extends DefaultConnectionKeepAliveStrategy
+  {
+    protected final long maxKeepAliveMilliseconds;
+
+    public CappedKeepAliveStrategy(long maxKeepAliveMilliseconds)
+    {
+      this.maxKeepAliveMilliseconds = maxKeepAliveMilliseconds;
+    }
+
+    @Override
+    public long getKeepAliveDuration(HttpResponse response, HttpContext context)
+    {
+      long duration = super.getKeepAliveDuration(response,context);
+      if (duration <= 0L || duration > maxKeepAliveMilliseconds)
+        return maxKeepAliveMilliseconds;
+      return duration;
+    }
+  }
+
   protected static class OurBasicCookieStore implements CookieStore, Serializable {
 
     private static final long serialVersionUID = -7581093305228232025L;
@@ -1903,6 +2100,7 @@ public class ThrottledFetcher
     protected final String proxyAuthDomain;
     protected final String proxyAuthUsername;
     protected final String proxyAuthPassword;
+    protected final long keepAliveMilliseconds;
 
     /** The actual pool of connections */
     protected final List<IThrottledConnection> connections = new ArrayList<IThrottledConnection>();
@@ -1912,7 +2110,8 @@ public class ThrottledFetcher
       String server, int port, PageCredentials authentication,
       javax.net.ssl.SSLSocketFactory baseFactory,
       String proxyHost, int proxyPort,
-      String proxyAuthDomain, String proxyAuthUsername, String proxyAuthPassword)
+      String proxyAuthDomain, String proxyAuthUsername, String proxyAuthPassword,
+      long keepAliveMilliseconds)
     {
       this.connectionThrottler = connectionThrottler;
       
@@ -1926,6 +2125,7 @@ public class ThrottledFetcher
       this.proxyAuthDomain = proxyAuthDomain;
       this.proxyAuthUsername = proxyAuthUsername;
       this.proxyAuthPassword = proxyAuthPassword;
+      this.keepAliveMilliseconds = keepAliveMilliseconds;
     }
     
     public IThrottledConnection grab()
@@ -1946,7 +2146,7 @@ public class ThrottledFetcher
         return new ThrottledConnection(this,connectionThrottler.getNewConnectionFetchThrottler(),
           protocol,server,port,authentication,baseFactory,
           proxyHost,proxyPort,
-          proxyAuthDomain,proxyAuthUsername,proxyAuthPassword);
+          proxyAuthDomain,proxyAuthUsername,proxyAuthPassword,keepAliveMilliseconds);
       }
       else
         throw new IllegalStateException("Unexpected return value from waitConnectionAvailable(): "+result);
@@ -137,6 +137,9 @@ public class WebcrawlerConfig
   public static final String NODE_EXCLUDESINDEX = "excludesindex";
   /** Limit to seeds.  When value attribute is true, only seed domains will be permitted. */
   public static final String NODE_LIMITTOSEEDS = "limittoseeds";
+  /** Suppress duplicates.  When value attribute is true, only one of the documents in the job
+  * with exactly the same content, access tokens and metadata will be indexed. */
+  public static final String NODE_SUPPRESSDUPLICATES = "suppressduplicates";
   
 }
 
@@ -131,6 +131,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
   public final static String ACTIVITY_ROBOTSPARSE = "robots parse";
   public final static String ACTIVITY_LOGON_START = "begin logon";
   public final static String ACTIVITY_LOGON_END = "end logon";
+  public final static String ACTIVITY_DUPLICATE = "duplicate";
 
   // Fetch types
   protected final static String FETCH_ROBOTS = "ROBOTS";
@@ -178,6 +179,15 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
   protected DNSManager dnsManager = null;
   /** The cookie manager used by this instance */
   protected CookieManager cookieManager = null;
+  /** The content hash manager used by this instance */
+  protected ContentHashManager contentHashManager = null;
+  /** How long a document's unrenewed claim on its content holds */
+  protected long duplicateClaimLifetime = ContentHashManager.CLAIM_LIFETIME_DEFAULT;
+
+  /** How often content claims left by deleted jobs, or long since lapsed, are purged */
+  protected static final long CLAIM_PURGE_INTERVAL = 60L * 60L * 1000L;
+  /** When this process last purged content claims */
+  protected static long lastClaimPurgeTime = 0L;
 
   /** This flag is set when the instance has been initialized */
   protected boolean isInitialized = false;
@@ -185,6 +195,24 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
   /** This is where we keep data around between the getVersions() phase and the processDocuments() phase. */
   protected static DataCache cache = new DataCache();
 
+  /** This resolves and remembers host names for all connections, so that worker threads rarely wait on DNS. */
+  protected static DNSResolver dnsResolver = new DNSResolver();
+
+  /** Prefix on a version string's checksum for documents that may be revalidated with a conditional
+  * request, rather than fetched in full, the next time they are versioned. */
+  protected static final String REVALIDATABLE_CHECKSUM_PREFIX = "R";
+
+  /** Property capping how many documents are remembered as needing a full fetch */
+  public static final String fullFetchLimitProperty = "org.apache.manifoldcf.crawler.connectors.webcrawler.fullfetchlimit";
+  public static final int FULL_FETCH_LIMIT_DEFAULT = 10000;
+
+  /** Documents that were revalidated but then needed indexing, and so must be fetched in full next time.
+  * Only the most recent are kept; a document that drops out is just revalidated and retried again. */
+  protected static final FullFetchDocuments fullFetchDocuments = new FullFetchDocuments();
+
+  /** Documents that came back unchanged (304) in the getVersions() phase, so have nothing in the cache. */
+  protected Set<String> revalidatedDocuments = new HashSet<String>();
+
   /** Proxy host */
   protected String proxyHost = null;
   
@@ -238,12 +266,14 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     RobotsManager rm = new RobotsManager(threadContext,mainDatabase);
     DNSManager dns = new DNSManager(threadContext,mainDatabase);
     CookieManager cm = new CookieManager(threadContext,mainDatabase);
+    ContentHashManager chm = new ContentHashManager(threadContext,mainDatabase);
     mainDatabase.beginTransaction();
     try
     {
       rm.install();
       dns.install();
       cm.install();
+      chm.install();
     }
     catch (ManifoldCFException e)
     {
@@ -280,9 +310,11 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     RobotsManager rm = new RobotsManager(threadContext,mainDatabase);
     DNSManager dns = new DNSManager(threadContext,mainDatabase);
     CookieManager cm = new CookieManager(threadContext,mainDatabase);
+    ContentHashManager chm = new ContentHashManager(threadContext,mainDatabase);
     mainDatabase.beginTransaction();
     try
     {
+      chm.deinstall();
       cm.deinstall();
       rm.deinstall();
       dns.deinstall();
@@ -309,7 +341,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
   @Override
   public String[] getActivitiesList()
   {
-    return new String[]{ACTIVITY_FETCH, ACTIVITY_ROBOTSPARSE, ACTIVITY_LOGON_START, ACTIVITY_LOGON_END};
+    return new String[]{ACTIVITY_FETCH, ACTIVITY_ROBOTSPARSE, ACTIVITY_LOGON_START, ACTIVITY_LOGON_END, ACTIVITY_DUPLICATE};
   }
 
 
@@ -332,6 +364,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     robotsManager = null;
     dnsManager = null;
     cookieManager = null;
+    contentHashManager = null;
   }
 
   /** Start a session */
@@ -339,7 +372,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     throws ManifoldCFException
   {
     // Handle the stuff that requires a thread context
-    if (robotsManager == null || dnsManager == null || cookieManager == null)
+    if (robotsManager == null || dnsManager == null || cookieManager == null || contentHashManager == null)
     {
       IDBInterface databaseHandle = DBInterfaceFactory.make(currentContext,
         ManifoldCF.getMasterDatabaseName(),
@@ -349,6 +382,14 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
       robotsManager = new RobotsManager(currentContext,databaseHandle);
       dnsManager = new DNSManager(currentContext,databaseHandle);
       cookieManager = new CookieManager(currentContext,databaseHandle);
+      contentHashManager = new ContentHashManager(currentContext,databaseHandle);
+
+      cache.setMemoryLimits(LockManagerFactory.getIntProperty(currentContext,DataCache.memoryThresholdProperty,DataCache.MEMORY_THRESHOLD_DEFAULT),
+        LockManagerFactory.getLongProperty(currentContext,DataCache.memoryLimitProperty,DataCache.MEMORY_LIMIT_DEFAULT));
+      dnsResolver.setTimesToLive(LockManagerFactory.getLongProperty(currentContext,DNSResolver.positiveTTLProperty,DNSResolver.POSITIVE_TTL_DEFAULT),
+        LockManagerFactory.getLongProperty(currentContext,DNSResolver.negativeTTLProperty,DNSResolver.NEGATIVE_TTL_DEFAULT));
+      duplicateClaimLifetime = LockManagerFactory.getLongProperty(currentContext,ContentHashManager.claimLifetimeProperty,ContentHashManager.CLAIM_LIFETIME_DEFAULT);
+      fullFetchDocuments.setLimit(LockManagerFactory.getIntProperty(currentContext,fullFetchLimitProperty,FULL_FETCH_LIMIT_DEFAULT));
     }
 
     // Handle everything else
@@ -412,6 +453,22 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     throws ManifoldCFException
   {
     ThrottledFetcher.flushIdleConnections(currentContext);
+    if (isClaimPurgeDue(System.currentTimeMillis()))
+    {
+      getSession();
+      contentHashManager.deleteMissingJobs();
+      contentHashManager.deleteExpiredClaims(System.currentTimeMillis(),duplicateClaimLifetime);
+    }
+  }
+
+  /** See whether it is time to purge content claims, and if so, note that it is being done.
+  */
+  protected static synchronized boolean isClaimPurgeDue(long currentTime)
+  {
+    if (currentTime < lastClaimPurgeTime + CLAIM_PURGE_INTERVAL)
+      return false;
+    lastClaimPurgeTime = currentTime;
+    return true;
   }
 
   /** Check status of connection.
@@ -670,7 +727,15 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
           String checkSum = null;
           // The headers, which will be needed if resultSignal is RESULT_VERSION_NEEDED.
           Map<String,List<String>> headerData = null;
-          
+
+          // If we've seen this document before, and it is not a kind we find links in, we may be able to
+          // ask the server to send it only if it has changed.  Session-protected documents are always fetched,
+          // because we need their content to detect login pages.
+          RevalidationData revalidation = null;
+          if (sessionCredential == null && oldVersions[i] != null && oldVersions[i].length() > 0 &&
+            !checkFullFetchRequired(documentIdentifier))
+            revalidation = findRevalidationData(oldVersions[i],acls,metadata,filterVersion);
+
           while (true)
           {
             try
@@ -729,11 +794,27 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
                     {
 
                       // Execute the fetch!
-                      connection.executeFetch(url.getFile(),userAgent,from,connectionTimeoutMilliseconds,
-                        socketTimeoutMilliseconds,false,hostName,formData,lc);
+                      if (revalidation != null && currentURI.equals(documentIdentifier))
+                        connection.executeFetch(url.getFile(),userAgent,from,connectionTimeoutMilliseconds,
+                          socketTimeoutMilliseconds,false,hostName,formData,lc,revalidation.getETag(),revalidation.getLastModified());
+                      else
+                        connection.executeFetch(url.getFile(),userAgent,from,connectionTimeoutMilliseconds,
+                          socketTimeoutMilliseconds,false,hostName,formData,lc);
                       int response = connection.getResponseCode();
 
-                      if (response == 200 || response == 302 || response == 301)
+                      if (response == 304 && revalidation != null && currentURI.equals(documentIdentifier))
+                      {
+                        // Not modified.  There's no body, and nothing to cache; the version comes out just as it
+                        // did last time.
+                        if (Logging.connectors.isDebugEnabled())
+                          Logging.connectors.debug("WEB: Document '"+currentURI+"' has not changed since it was last fetched");
+                        checkSum = revalidation.getCheckSum();
+                        headerData = revalidation.getHeaderData();
+                        revalidatedDocuments.add(documentIdentifier);
+                        resultSignal = RESULT_VERSION_NEEDED;
+                        activityResultCode = null;
+                      }
+                      else if (response == 200 || response == 302 || response == 301)
                       {
                         // If this was part of the login sequence, update the cookies regardless of what else happens
                         if (sessionState == SESSIONSTATE_LOGIN)
@@ -754,6 +835,9 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
                           // Treat it as real, and cache it.
                           checkSum = cache.addData(activities,currentURI,connection);
                           headerData = connection.getResponseHeaders();
+                          // Documents we will never find links in can be revalidated next time, rather than fetched
+                          if (checkSum != null && response == 200 && isDocumentRevalidatable(currentURI))
+                            checkSum = REVALIDATABLE_CHECKSUM_PREFIX + checkSum;
                           resultSignal = RESULT_VERSION_NEEDED;
                           activityResultCode = null;
                         }
@@ -1143,6 +1227,8 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
           case RESULT_NO_DOCUMENT:
             if (Logging.connectors.isDebugEnabled())
               Logging.connectors.debug("WEB: Removing url '"+documentIdentifier+"'"+((contextMessage!=null)?" because "+contextMessage:""),contextException);
+            // processDocuments() won't be called for a removed document, so give up its content here
+            releaseContent(activities,documentIdentifier,filter);
             rval[i] = null;
             break;
           case RESULT_NO_VERSION:
@@ -1152,61 +1238,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
             break;
           case RESULT_VERSION_NEEDED:
             // Calculate version from document data, which is presumed to be present.
-            StringBuilder sb = new StringBuilder();
-
-            // Acls
-            packList(sb,acls,'+');
-            if (acls.length > 0)
-            {
-              sb.append('+');
-              pack(sb,defaultAuthorityDenyToken,'+');
-            }
-            else
-              sb.append('-');
-
-            // Now, do the metadata.  This comes in two parts: first, the canned metadata, then the header data.
-            // They're all folded into the same part of the version string.
-            int headerCount = 0;
-            Iterator<String> headerIterator = headerData.keySet().iterator();
-            while (headerIterator.hasNext())
-            {
-              String headerName = headerIterator.next();
-              if (reservedHeaders.get(headerName.toLowerCase()) == null)
-                headerCount += headerData.get(headerName).size();
-            }
-            String[] fullMetadata = new String[metadata.length + headerCount];
-            headerCount = 0;
-            headerIterator = headerData.keySet().iterator();
-            while (headerIterator.hasNext())
-            {
-              String headerName = headerIterator.next();
-              if (reservedHeaders.get(headerName.toLowerCase()) == null)
-              {
-                List<String> headerValues = headerData.get(headerName);
-                for (String headerValue : headerValues)
-                {
-                  fixedListStrings[0] = "header-"+headerName;
-                  fixedListStrings[1] = headerValue;
-                  StringBuilder newsb = new StringBuilder();
-                  packFixedList(newsb,fixedListStrings,'=');
-                  fullMetadata[headerCount++] = newsb.toString();
-                }
-              }
-            }
-            int index = 0;
-            while (index < metadata.length)
-            {
-              fullMetadata[headerCount++] = metadata[index++];
-            }
-            java.util.Arrays.sort(fullMetadata);
-            
-            packList(sb,fullMetadata,'+');
-            // Done with the parseable part!  Add the checksum.
-            sb.append(checkSum);
-            // Add the filter version
-            sb.append("+");
-            sb.append(filterVersion);
-            rval[i] = sb.toString();
+            rval[i] = makeVersionString(acls,metadata,headerData,checkSum,filterVersion);
             break;
           case RESULT_RETRY_DOCUMENT:
             // Document could not be processed right now.
@@ -1234,6 +1266,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
         if (Logging.connectors.isDebugEnabled())
           Logging.connectors.debug("WEB: Removing url '"+documentIdentifier+"' because it's not in the set of allowed ones");
         // Use null because we should have already filtered when we queued.
+        releaseContent(activities,documentIdentifier,filter);
         rval[i] = null;
       }
       i++;
@@ -1241,6 +1274,163 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     return rval;
   }
 
+  /** Build a document version string.
+  *@param acls are the sorted forced acls.
+  *@param metadata are the sorted, packed metadata name/value pairs from the document specification.
+  *@param headerData are the response headers, keyed by header name.
+  *@param checkSum is the document checksum.
+  *@param filterVersion is the version string of the url filter.
+  *@return the version string.
+  */
+  protected String makeVersionString(String[] acls, String[] metadata, Map<String,List<String>> headerData,
+    String checkSum, String filterVersion)
+  {
+    StringBuilder sb = new StringBuilder();
+    String[] fixedListStrings = new String[2];
+
+    // Acls
+    packList(sb,acls,'+');
+    if (acls.length > 0)
+    {
+      sb.append('+');
+      pack(sb,defaultAuthorityDenyToken,'+');
+    }
+    else
+      sb.append('-');
+
+    // Now, do the metadata.  This comes in two parts: first, the canned metadata, then the header data.
+    // They're all folded into the same part of the version string.
+    int headerCount = 0;
+    Iterator<String> headerIterator = headerData.keySet().iterator();
+    while (headerIterator.hasNext())
+    {
+      String headerName = headerIterator.next();
+      if (reservedHeaders.get(headerName.toLowerCase()) == null)
+        headerCount += headerData.get(headerName).size();
+    }
+    String[] fullMetadata = new String[metadata.length + headerCount];
+    headerCount = 0;
+    headerIterator = headerData.keySet().iterator();
+    while (headerIterator.hasNext())
+    {
+      String headerName = headerIterator.next();
+      if (reservedHeaders.get(headerName.toLowerCase()) == null)
+      {
+        List<String> headerValues = headerData.get(headerName);
+        for (String headerValue : headerValues)
+        {
+          fixedListStrings[0] = "header-"+headerName;
+          fixedListStrings[1] = headerValue;
+          StringBuilder newsb = new StringBuilder();
+          packFixedList(newsb,fixedListStrings,'=');
+          fullMetadata[headerCount++] = newsb.toString();
+        }
+      }
+    }
+    int index = 0;
+    while (index < metadata.length)
+    {
+      fullMetadata[headerCount++] = metadata[index++];
+    }
+    java.util.Arrays.sort(fullMetadata);
+    
+    packList(sb,fullMetadata,'+');
+    // Done with the parseable part!  Add the checksum.
+    sb.append(checkSum);
+    // Add the filter version
+    sb.append("+");
+    sb.append(filterVersion);
+    return sb.toString();
+  }
+
+  /** Decide whether a document, just fetched and cached, may be revalidated rather than refetched next
+  * time.  A revalidated document is never read, so this is only true of documents we could never have
+  * found any links in.
+  *@param documentURI is the document identifier.
+  *@return true if the document may be revalidated.
+  */
+  protected boolean isDocumentRevalidatable(String documentURI)
+    throws ManifoldCFException
+  {
+    if (cache.getResponseCode(documentURI) != 200)
+      return false;
+    if (isXMLMimeType(extractMimeType(extractContentType(cache.getContentType(documentURI)))))
+      return false;
+    return !isDocumentText(documentURI);
+  }
+
+  /** Find out what we need to revalidate a document, from its last version string.
+  *@param oldVersion is the version string from the last time the document was versioned.
+  *@param acls are the sorted forced acls.
+  *@param metadata are the sorted, packed metadata name/value pairs from the document specification.
+  *@param filterVersion is the version string of the url filter.
+  *@return the revalidation data, or null if the document must be fetched in full.
+  */
+  protected RevalidationData findRevalidationData(String oldVersion, String[] acls, String[] metadata, String filterVersion)
+  {
+    // Skip past the acls, and pick up the metadata
+    ArrayList oldAcls = new ArrayList();
+    StringBuilder denyAclBuffer = new StringBuilder();
+    ArrayList oldMetadata = new ArrayList();
+    int index = unpackList(oldAcls,oldVersion,0,'+');
+    if (index < oldVersion.length() && oldVersion.charAt(index++) == '+')
+      index = unpack(denyAclBuffer,oldVersion,index,'+');
+    index = unpackList(oldMetadata,oldVersion,index,'+');
+
+    // The checksum comes next, and only some documents are marked as revalidatable
+    int checkSumEnd = oldVersion.indexOf('+',index);
+    if (checkSumEnd == -1)
+      return null;
+    String checkSum = oldVersion.substring(index,checkSumEnd);
+    if (!checkSum.startsWith(REVALIDATABLE_CHECKSUM_PREFIX))
+      return null;
+
+    // Recover the headers
+    Map<String,List<String>> headerData = new HashMap<String,List<String>>();
+    String eTag = null;
+    String lastModified = null;
+    String[] fixedList = new String[2];
+    for (Object o : oldMetadata)
+    {
+      unpackFixedList(fixedList,(String)o,0,'=');
+      if (!fixedList[0].startsWith("header-"))
+        continue;
+      String headerName = fixedList[0].substring("header-".length());
+      List<String> headerValues = headerData.get(headerName);
+      if (headerValues == null)
+      {
+        headerValues = new ArrayList<String>();
+        headerData.put(headerName,headerValues);
+      }
+      headerValues.add(fixedList[1]);
+      if (headerName.equalsIgnoreCase("ETag"))
+        eTag = fixedList[1];
+      else if (headerName.equalsIgnoreCase("Last-Modified"))
+        lastModified = fixedList[1];
+    }
+    if (eTag == null && lastModified == null)
+      return null;
+
+    // A 304 leaves the version unchanged, so that is only correct if everything else that goes into the
+    // version (acls, specified metadata, and filter) is unchanged too
+    if (!makeVersionString(acls,metadata,headerData,checkSum,filterVersion).equals(oldVersion))
+      return null;
+
+    return new RevalidationData(checkSum,headerData,eTag,lastModified);
+  }
+
+  /** Check, and clear, whether a document must be fetched in full rather than revalidated.
+  *@param documentIdentifier is the document identifier.
+  *@return true if the document must be fetched in full.
+  */
+  protected static boolean checkFullFetchRequired(String documentIdentifier)
+  {
+    synchronized (fullFetchDocuments)
+    {
+      return fullFetchDocuments.remove(documentIdentifier) != null;
+    }
+  }
+
   protected static String extractContentType(String contentType)
   {
     // Some sites have multiple content types.  We just look at the LAST one in that case.
@@ -1316,6 +1506,22 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
         // somebody else.  We *do* have to signal the document to be removed from the index, however, or it will
         // stick around until the job is deleted.
         activities.deleteDocument(documentIdentifier,version);
+        releaseContent(activities,documentIdentifier,filter);
+        continue;
+      }
+
+      if (!doScanOnly && revalidatedDocuments.contains(documentIdentifier))
+      {
+        // The document is unchanged, so we didn't fetch it, but it needs indexing anyway (e.g. because the
+        // output connection changed).  Retry it, and fetch it in full next time.
+        if (Logging.connectors.isDebugEnabled())
+          Logging.connectors.debug("WEB: Document '"+documentIdentifier+"' was revalidated but needs indexing; retrying with a full fetch");
+        synchronized (fullFetchDocuments)
+        {
+          fullFetchDocuments.put(documentIdentifier,Boolean.TRUE);
+        }
+        activities.retryDocumentProcessing(documentIdentifier);
+        i++;
         continue;
       }
 
@@ -1324,7 +1530,12 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
       boolean indexDocument = extractLinks(documentIdentifier,activities,filter);
 
       // If scanOnly is set, we never ingest.  But all else is the same.
-      if (!doScanOnly)
+      if (doScanOnly)
+      {
+        // The document is unchanged, so whatever content it owns, it still owns
+        renewContent(activities,documentIdentifier,filter);
+      }
+      else
       {
         // Consider this document for ingestion.
         // We can exclude it if it does not seem to be a kind of document that the ingestion system knows
@@ -1332,7 +1543,12 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
         if (indexDocument)
           indexDocument = isDataIngestable(activities,documentIdentifier,filter);
 
+        // Only one of the documents in a job with exactly the same content gets indexed
+        String duplicateOf = null;
         if (indexDocument)
+          duplicateOf = findContentOwner(activities,documentIdentifier,version,filter);
+
+        if (indexDocument && duplicateOf == null)
         {
           // Ingest the document
           if (Logging.connectors.isDebugEnabled())
@@ -1449,6 +1665,17 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
           else
             Logging.connectors.error("WEB: Expected a cached document for '"+documentIdentifier+"', but none present!");
         }
+        else if (duplicateOf != null)
+        {
+          // Remove any copy of this document that was indexed before its twin was.  The version is left
+          // empty, so that which document owns the content is decided afresh next time.
+          activities.deleteDocument(documentIdentifier,"");
+          activities.recordActivity(null,ACTIVITY_DUPLICATE,null,documentIdentifier,"SUPPRESSED",
+            "Same content as '"+duplicateOf+"'",null);
+
+          if (Logging.connectors.isDebugEnabled())
+            Logging.connectors.debug("WEB: Decided not to ingest '"+documentIdentifier+"' because it has the same content as '"+duplicateOf+"'");
+        }
         else
         {
           // In case the indexability of the document changed, we still want to notify the incremental indexer.
@@ -1456,6 +1683,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
           // previously indexed, it will be removed.
           
           activities.deleteDocument(documentIdentifier,version);
+          releaseContent(activities,documentIdentifier,filter);
           
           if (Logging.connectors.isDebugEnabled())
             Logging.connectors.debug("WEB: Decided not to ingest '"+documentIdentifier+"' because it did not match ingestability criteria");
@@ -1467,6 +1695,66 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     }
   }
 
+  /** Claim a document's content for it within the job, unless another document in the job already has
+  * exactly the same content, and the same access tokens and metadata.  Only jobs that ask for duplicates
+  * to be suppressed do this.
+  *@return null if the document should be indexed, or the identifier of the document that has its content.
+  */
+  protected String findContentOwner(IProcessActivity activities, String documentIdentifier, String version,
+    DocumentURLFilter filter)
+    throws ManifoldCFException
+  {
+    if (!filter.getSuppressDuplicates())
+      return null;
+    String contentHash = cache.getContentHash(documentIdentifier);
+    if (contentHash == null)
+      return null;
+    // The access tokens and metadata are at the front of the version string
+    ArrayList acls = new ArrayList();
+    StringBuilder denyAclBuffer = new StringBuilder();
+    ArrayList metadata = new ArrayList();
+    int index = unpackList(acls,version,0,'+');
+    if (index < version.length() && version.charAt(index++) == '+')
+    {
+      index = unpack(denyAclBuffer,version,index,'+');
+    }
+    index = unpackList(metadata,version,index,'+');
+    String contentKey = activities.createJobSpecificString("webcrawler:content:"+ManifoldCF.hash(contentHash+"+"+version.substring(0,index)));
+    String owner = contentHashManager.claimContent(contentKey,getJobID(activities),ManifoldCF.hash(documentIdentifier),documentIdentifier,
+      System.currentTimeMillis(),duplicateClaimLifetime);
+    if (owner.equals(documentIdentifier))
+      return null;
+    return owner;
+  }
+
+  /** Give up whatever content a document has claimed within the job, so that another document with that
+  * content can be indexed.
+  */
+  protected void releaseContent(INamingActivity activities, String documentIdentifier, DocumentURLFilter filter)
+    throws ManifoldCFException
+  {
+    if (filter.getSuppressDuplicates())
+      contentHashManager.releaseContent(getJobID(activities),ManifoldCF.hash(documentIdentifier));
+  }
+
+  /** Keep the claim an unchanged document has on its content from looking abandoned.
+  */
+  protected void renewContent(INamingActivity activities, String documentIdentifier, DocumentURLFilter filter)
+    throws ManifoldCFException
+  {
+    if (filter.getSuppressDuplicates())
+      contentHashManager.renewContent(getJobID(activities),ManifoldCF.hash(documentIdentifier),System.currentTimeMillis());
+  }
+
+  /** Find the job that an activity object belongs to, which content claims are made within.
+  */
+  protected static Long getJobID(INamingActivity activities)
+  {
+    // Job-specific strings look like "J <jobid>:<string>"
+    String prefix = activities.createJobSpecificString("");
+    return new Long(prefix.substring(2,prefix.length()-1));
+  }
+
   /** Free a set of documents.  This method is called for all documents whose versions have been fetched using
   * the getDocumentVersions() method, including those that returned null versions.  It may be used to free resources
   * committed during the getDocumentVersions() method.  It is guaranteed to be called AFTER any calls to
@@ -1482,11 +1770,12 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     while (i < documentIdentifiers.length)
     {
       String version = versions[i];
+      String urlValue = documentIdentifiers[i];
       if (version != null)
       {
-        String urlValue = documentIdentifiers[i];
         cache.deleteData(urlValue);
       }
+      revalidatedDocuments.remove(urlValue);
       i++;
     }
   }
@@ -3770,6 +4059,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     String inclusionsIndex = ".*\n";
     String exclusionsIndex = "";
     boolean includeMatching = true;
+    boolean suppressDuplicates = false;
     
     // Now, loop through description
     i = 0;
@@ -3814,6 +4104,14 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
         else
           includeMatching = true;
       }
+      else if (sn.getType().equals(WebcrawlerConfig.NODE_SUPPRESSDUPLICATES))
+      {
+        String value = sn.getAttributeValue(WebcrawlerConfig.ATTR_VALUE);
+        if (value == null || value.equals("false"))
+          suppressDuplicates = false;
+        else
+          suppressDuplicates = true;
+      }
     }
 
     // Seeds tab
@@ -4050,6 +4348,13 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
 "      <textarea rows=\"10\" cols=\"60\" name=\"exclusionsindex\">"+org.apache.manifoldcf.ui.util.Encoder.bodyEscape(exclusionsIndex)+"</textarea>\n"+
 "    </td>\n"+
 "  </tr>\n"+
+"  <tr>\n"+
+"    <td class=\"description\"><nobr>" + Messages.getBodyString(locale,"WebcrawlerConnector.IndexOnlyOneOfDuplicates") + "</nobr></td>\n"+
+"    <td class=\"value\">\n"+
+"      <input type=\"checkbox\" name=\"suppressduplicates\" value=\"true\""+(suppressDuplicates?" checked=\"yes\"":"")+"/>\n"+
+"      <input type=\"hidden\" name=\"suppressduplicates_present\" value=\"true\"/>\n"+
+"    </td>\n"+
+"  </tr>\n"+
 "</table>\n"
       );
     }
@@ -4057,7 +4362,9 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     {
       out.print(
 "<input type=\"hidden\" name=\"exclusions\" value=\""+org.apache.manifoldcf.ui.util.Encoder.attributeEscape(exclusions)+"\"/>\n"+
-"<input type=\"hidden\" name=\"exclusionsindex\" value=\""+org.apache.manifoldcf.ui.util.Encoder.attributeEscape(exclusionsIndex)+"\"/>\n"
+"<input type=\"hidden\" name=\"exclusionsindex\" value=\""+org.apache.manifoldcf.ui.util.Encoder.attributeEscape(exclusionsIndex)+"\"/>\n"+
+"<input type=\"hidden\" name=\"suppressduplicates\" value=\""+(suppressDuplicates?"true":"false")+"\"/>\n"+
+"<input type=\"hidden\" name=\"suppressduplicates_present\" value=\"true\"/>\n"
       );
     }
   
@@ -4379,6 +4686,27 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
       ds.addChild(ds.getChildCount(),cn);
     }
 
+    // Handle the duplicate suppression switch
+    String suppressDuplicatesPresent = variableContext.getParameter("suppressduplicates_present");
+    if (suppressDuplicatesPresent != null)
+    {
+      // Delete existing switch record first
+      int i = 0;
+      while (i < ds.getChildCount())
+      {
+        SpecificationNode sn = ds.getChild(i);
+        if (sn.getType().equals(WebcrawlerConfig.NODE_SUPPRESSDUPLICATES))
+          ds.removeChild(i);
+        else
+          i++;
+      }
+
+      String suppressDuplicates = variableContext.getParameter("suppressduplicates");
+      SpecificationNode cn = new SpecificationNode(WebcrawlerConfig.NODE_SUPPRESSDUPLICATES);
+      cn.setAttribute(WebcrawlerConfig.ATTR_VALUE,(suppressDuplicates==null||suppressDuplicates.equals("false"))?"false":"true");
+      ds.addChild(ds.getChildCount(),cn);
+    }
+
     // Read the url specs
     String urlRegexpCount = variableContext.getParameter("urlregexpcount");
     if (urlRegexpCount != null && urlRegexpCount.length() > 0)
@@ -4581,6 +4909,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     String inclusionsIndex = ".*\n";
     String exclusionsIndex = "";
     boolean includeMatching = false;
+    boolean suppressDuplicates = false;
     
     int i = 0;
     while (i < ds.getChildCount())
@@ -4624,6 +4953,14 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
         else
           includeMatching = true;
       }
+      else if (sn.getType().equals(WebcrawlerConfig.NODE_SUPPRESSDUPLICATES))
+      {
+        String value = sn.getAttributeValue(WebcrawlerConfig.ATTR_VALUE);
+        if (value == null || value.equals("false"))
+          suppressDuplicates = false;
+        else
+          suppressDuplicates = true;
+      }
     }
     out.print(
 "<table class=\"displaytable\">\n"+
@@ -4922,6 +5259,12 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     out.print(
 "    </td>\n"+
 "  </tr>\n"+
+"  <tr>\n"+
+"    <td class=\"description\"><nobr>" + Messages.getBodyString(locale,"WebcrawlerConnector.IndexOnlyOneOfDuplicates") + "</nobr></td>\n"+
+"    <td class=\"value\">\n"+
+"    "+(suppressDuplicates?"yes":"no")+"\n"+
+"    </td>\n"+
+"  </tr>\n"+
 "    \n"+
 "  <tr><td class=\"separator\" colspan=\"2\"><hr/></td></tr>\n"
     );
@@ -5031,8 +5374,16 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
   protected int lookupIPAddress(String documentIdentifier, IVersionActivity activities, String hostName, long currentTime, StringBuilder ipAddressBuffer)
     throws ManifoldCFException, ServiceInterruption
   {
-    String eventName = makeDNSEventName(activities,hostName);
-    DNSManager.DNSInfo info = dnsManager.lookup(hostName,currentTime);
+    // Write out whatever the resolver has found since we last did, including hosts looked up ahead of time
+    writeResolvedHosts();
+    // What's in memory doesn't need the table
+    DNSManager.DNSInfo info = dnsResolver.lookup(hostName,currentTime);
+    if (info == null)
+    {
+      info = dnsManager.lookup(hostName,currentTime);
+      if (info != null)
+        dnsResolver.remember(info);
+    }
     if (info != null)
     {
       String ipAddress = info.getIPAddress();
@@ -5041,30 +5392,17 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
       ipAddressBuffer.append(ipAddress);
       return RESULTSTATUS_TRUE;
     }
+    String eventName = makeDNSEventName(activities,hostName);
     if (activities.beginEventSequence(eventName))
     {
       //  We uniquely can do the lookup.
       try
       {
-        // Fetch it using InetAddress
-        InetAddress ip = null;
-        try
-        {
-          ip = InetAddress.getByName(hostName);
-        }
-        catch (UnknownHostException e)
-        {
-          // Host is unknown, so leave ipAddress as null.
-        }
-        String fqdn = null;
-        String ipAddress = null;
-        if (ip != null)
-        {
-          fqdn = ip.getCanonicalHostName();
-          ipAddress = ip.getHostAddress();
-        }
-        // Write this to the cache - expiration time 6 hours
-        dnsManager.writeDNSData(hostName,fqdn,ipAddress,currentTime + 1000*60*60*6);
+        // This picks up a lookup already in progress for the host, if there is one
+        info = dnsResolver.resolve(hostName);
+        // Write this to the table before anyone waiting on the event goes looking for it
+        writeResolvedHosts();
+        String ipAddress = info.getIPAddress();
         if (ipAddress == null)
           return RESULTSTATUS_FALSE;
         ipAddressBuffer.append(ipAddress);
@@ -5082,6 +5420,47 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     }
   }
 
+  /** Write the DNS answers the resolver has found, but not yet written, to the table, in one batch.
+  * If the write fails, the answers are kept for next time.
+  */
+  protected void writeResolvedHosts()
+    throws ManifoldCFException
+  {
+    DNSManager.DNSInfo[] infos = dnsResolver.takeUnwritten();
+    if (infos == null)
+      return;
+    try
+    {
+      dnsManager.writeDNSData(infos);
+    }
+    catch (ManifoldCFException e)
+    {
+      // Keep the answers for the next write.  The table is only a shared cache, so a failure
+      // here should not fail the document that happened to trigger the write.
+      dnsResolver.putBackUnwritten(infos);
+      if (e.getErrorCode() == ManifoldCFException.INTERRUPTED)
+        throw e;
+      Logging.connectors.warn("WEB: Couldn't write resolved host names: "+e.getMessage(),e);
+    }
+  }
+
+  /** Start resolving the host of a newly discovered document, so that the answer is likely
+  * to be ready by the time the document is fetched.
+  */
+  protected static void prefetchHost(String documentIdentifier)
+  {
+    try
+    {
+      String hostName = new URL(documentIdentifier).getHost();
+      if (hostName != null && hostName.length() > 0)
+        dnsResolver.prefetch(hostName);
+    }
+    catch (MalformedURLException e)
+    {
+      // Nothing to prefetch
+    }
+  }
+
   /** Construct the robots key for a host.
   * This is used to look up robots info in the database, and to form the corresponding event name.
   */
@@ -5805,11 +6184,10 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
       Logging.connectors.debug("Web: Not indexing document '"+documentIdentifier+"' because of redirection");
     // For html, we don't want any actions, because we don't do form submission.
     ProcessActivityHTMLHandler htmlHandler = new ProcessActivityHTMLHandler(documentIdentifier,activities,filter);
-    handleHTML(documentIdentifier,htmlHandler);
+    ProcessActivityXMLHandler xmlHandler = new ProcessActivityXMLHandler(documentIdentifier,activities,filter);
+    handleHTMLAndXML(documentIdentifier,htmlHandler,xmlHandler);
     if (Logging.connectors.isDebugEnabled() && htmlHandler.shouldIndex() == false)
       Logging.connectors.debug("Web: Not indexing document '"+documentIdentifier+"' because of HTML robots or content tags prohibiting indexing");
-    ProcessActivityXMLHandler xmlHandler = new ProcessActivityXMLHandler(documentIdentifier,activities,filter);
-    handleXML(documentIdentifier,xmlHandler);
     if (Logging.connectors.isDebugEnabled() && xmlHandler.shouldIndex() == false)
       Logging.connectors.debug("Web: Not indexing document '"+documentIdentifier+"' because of XML robots or content tags prohibiting indexing");
     // May add more later for other extraction tasks.
@@ -5849,6 +6227,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
         if (Logging.connectors.isDebugEnabled())
           Logging.connectors.debug("WEB: In "+contextDescription+" document '"+documentIdentifier+"', found link to '"+newIdentifier+"'");
         activities.addDocumentReference(newIdentifier,documentIdentifier,linkType,null,null,null,calculateDocumentEvents(activities,newIdentifier));
+        prefetchHost(newIdentifier);
       }
       else
       {
@@ -6073,6 +6452,121 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     }
   }
 
+  /** Check if a mime type is one we look for XML links in.
+  *@param mimeType is the mime type, without any character set specification.
+  *@return true if it is.
+  */
+  protected static boolean isXMLMimeType(String mimeType)
+  {
+    return mimeType != null && (
+      mimeType.equals("text/xml") ||
+      mimeType.equals("application/rss+xml") ||
+      mimeType.equals("application/xml") ||
+      mimeType.equals("application/atom+xml") ||
+      mimeType.equals("application/xhtml+xml") ||
+      mimeType.equals("text/XML") ||
+      mimeType.equals("application/rdf+xml") ||
+      mimeType.equals("text/application") ||
+      mimeType.equals("XML"));
+  }
+
+  /** Handle document references from both HTML and XML, opening and decoding the document just once.
+  * The text check reads the start of the same stream, and when a document qualifies for both kinds
+  * of parse, the HTML and XML parsers are driven from the same characters.
+  */
+  protected void handleHTMLAndXML(String documentURI, IHTMLHandler htmlHandler, IXMLHandler xmlHandler)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    int responseCode = cache.getResponseCode(documentURI);
+    if (responseCode != 200)
+      return;
+
+    // We ONLY look for XML if the content type *says* it is XML.
+    String contentType = extractContentType(cache.getContentType(documentURI));
+    boolean isXML = isXMLMimeType(extractMimeType(contentType));
+    String encoding = extractEncoding(contentType);
+    try
+    {
+      InputStream is = cache.getData(documentURI);
+      if (is == null)
+      {
+        Logging.connectors.error("WEB: Document '"+documentURI+"' should be in cache but isn't");
+        return;
+      }
+      try
+      {
+        InputStream bis = new BufferedInputStream(is);
+        boolean isText = startsAsText(bis);
+        if (!isText)
+        {
+          if (Logging.connectors.isDebugEnabled())
+            Logging.connectors.debug("WEB: Document '"+documentURI+"' is not text; can't extract links");
+          if (!isXML)
+            return;
+        }
+
+        Parser p = new Parser();
+        if (!isXML)
+        {
+          if (encoding == null)
+            encoding = "utf-8";
+          if (Logging.connectors.isDebugEnabled())
+            Logging.connectors.debug("WEB: Document '"+documentURI+"' is text, with encoding '"+encoding+"'; link extraction starting");
+          p.parseWithoutCharsetDetection(encoding,bis,new FormParseState(htmlHandler));
+          return;
+        }
+
+        // The document says it is XML, so use the XML character set detection for both parses
+        if (isText && Logging.connectors.isDebugEnabled())
+          Logging.connectors.debug("WEB: Document '"+documentURI+"' is XML text; link extraction starting");
+        XMLFuzzyHierarchicalParseState x = new XMLFuzzyHierarchicalParseState();
+        OuterContextClass c = new OuterContextClass(x,documentURI,xmlHandler);
+        x.setContext(c);
+        try
+        {
+          if (isText)
+            p.parseWithCharsetDetection(encoding,bis,new FanOutCharacterReceiver(new SingleCharacterReceiver[]{new FormParseState(htmlHandler),x}));
+          else
+            p.parseWithCharsetDetection(encoding,bis,x);
+          c.checkIfValidFeed();
+        }
+        finally
+        {
+          x.cleanup();
+        }
+      }
+      catch (UnsupportedEncodingException e)
+      {
+        // The encoding specified was crap, so don't handle this document.
+        if (Logging.connectors.isDebugEnabled())
+          Logging.connectors.debug("WEB: Document '"+documentURI+"' had an unrecognized encoding '"+encoding+"'");
+        return;
+      }
+      finally
+      {
+        is.close();
+      }
+    }
+    catch (java.net.SocketTimeoutException e)
+    {
+      throw new ManifoldCFException("Socket timeout exception: "+e.getMessage(),e);
+    }
+    catch (ConnectTimeoutException e)
+    {
+      throw new ManifoldCFException("Socket connect timeout exception: "+e.getMessage(),e);
+    }
+    catch (InterruptedIOException e)
+    {
+      //Logging.connectors.warn("IO interruption seen",e);
+
+      throw new ManifoldCFException("Interrupted: "+e.getMessage(),e,ManifoldCFException.INTERRUPTED);
+    }
+    catch (IOException e)
+    {
+      throw new ManifoldCFException("IO error: "+e.getMessage(),e);
+    }
+  }
+
   /** Handle document references from XML.  Right now we only understand RSS. */
   protected void handleXML(String documentURI, IXMLHandler handler)
     throws ManifoldCFException, ServiceInterruption
@@ -6086,18 +6580,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
       // We ONLY look for XML if the content type *says* it is XML.
       String contentType = extractContentType(cache.getContentType(documentURI));
       String mimeType = extractMimeType(contentType);
-      boolean isXML =
-        mimeType.equals("text/xml") ||
-        mimeType.equals("application/rss+xml") ||
-        mimeType.equals("application/xml") ||
-        mimeType.equals("application/atom+xml") ||
-        mimeType.equals("application/xhtml+xml") ||
-        mimeType.equals("text/XML") ||
-        mimeType.equals("application/rdf+xml") ||
-        mimeType.equals("text/application") ||
-        mimeType.equals("XML");
-
-      if (!isXML)
+      if (!isXMLMimeType(mimeType))
         return;
 
       // OK, it's XML.  Now what?  Well, we get the encoding, and we verify that it is text, then we try to get links
@@ -6897,6 +7380,30 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     }
   }
 
+  /** Does a stream start out as text, as far as we can tell?  The first 4K is examined, and the
+  * stream is then reset to where it was.
+  *@param is is the stream, which must support mark and reset.
+  *@return true if it looks like text.
+  */
+  protected static boolean startsAsText(InputStream is)
+    throws IOException
+  {
+    byte[] byteBuffer = new byte[4096];
+    is.mark(byteBuffer.length);
+    int amt = 0;
+    while (amt < byteBuffer.length)
+    {
+      int incr = is.read(byteBuffer,amt,byteBuffer.length-amt);
+      if (incr == -1)
+        break;
+      amt += incr;
+    }
+    is.reset();
+    if (amt == 0)
+      return false;
+    return isText(byteBuffer,amt);
+  }
+
   /** Is the document text, as far as we can tell? */
   protected boolean isDocumentText(String documentURI)
     throws ManifoldCFException
@@ -7150,6 +7657,69 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     }
   }
 
+  /** What we need to revalidate a document with a conditional request, and to rebuild its version
+  * string if it turns out to be unchanged.
+  */
+  protected static class RevalidationData
+  {
+    protected final String checkSum;
+    protected final Map<String,List<String>> headerData;
+    protected final String eTag;
+    protected final String lastModified;
+
+    public RevalidationData(String checkSum, Map<String,List<String>> headerData, String eTag, String lastModified)
+    {
+      this.checkSum = checkSum;
+      this.headerData = headerData;
+      this.eTag = eTag;
+      this.lastModified = lastModified;
+    }
+
+    public String getCheckSum()
+    {
+      return checkSum;
+    }
+
+    public Map<String,List<String>> getHeaderData()
+    {
+      return headerData;
+    }
+
+    public String getETag()
+    {
+      return eTag;
+    }
+
+    public String getLastModified()
+    {
+      return lastModified;
+    }
+  }
+
+  /** The documents that must be fetched in full, least recently added first.  Only the
+  * most recent entries, up to the limit, are kept.  Synchronize on this object to use it.
+  */
+  protected static class FullFetchDocuments extends LinkedHashMap<String,Boolean>
+  {
+    protected int limit = FULL_FETCH_LIMIT_DEFAULT;
+
+    public FullFetchDocuments()
+    {
+      super();
+    }
+
+    public synchronized void setLimit(int limit)
+    {
+      this.limit = limit;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String,Boolean> eldest)
+    {
+      return size() > limit;
+    }
+  }
+
   /** Name/value class */
   protected static class NameValue
   {
@@ -7270,6 +7840,8 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     protected ArrayList excludeIndexPatterns = new ArrayList();
     /** The hash map of seed hosts, to limit urls by, if non-null */
     protected HashMap seedHosts = null;
+    /** Whether only one of the documents with identical content is to be indexed */
+    protected boolean suppressDuplicates = false;
     
     /** Canonicalization policies */
     protected CanonicalizationPolicies canonicalizationPolicies = new CanonicalizationPolicies();
@@ -7331,6 +7903,14 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
           else
             limitToSeeds = true;
         }
+        else if (sn.getType().equals(WebcrawlerConfig.NODE_SUPPRESSDUPLICATES))
+        {
+          String value = sn.getAttributeValue(WebcrawlerConfig.ATTR_VALUE);
+          if (value == null || value.equals("false"))
+            suppressDuplicates = false;
+          else
+            suppressDuplicates = true;
+        }
         else if (sn.getType().equals("urlspec"))
         {
           String urlRegexp = sn.getAttributeValue("regexp");
@@ -7408,6 +7988,9 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
       }
 
       versionString = includesIndex + "+" + excludesIndex;
+      // Turning duplicate suppression on or off changes what gets indexed
+      if (suppressDuplicates)
+        versionString += "+suppressduplicates";
       
       ArrayList list = stringToArray(includes);
       compileList(includePatterns,list);
@@ -7458,6 +8041,13 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
       // In practice, this is NOT what controls the set that is spidered, but rather the set that is indexed
       return versionString;
     }
+
+    /** Check whether only one of the documents with identical content should be indexed.
+    */
+    public boolean getSuppressDuplicates()
+    {
+      return suppressDuplicates;
+    }
     
     /** Check if both a document and host are legal.
     */
@@ -0,0 +1,188 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.webcrawler;
+
+/** Streaming implementation of the 64-bit xxHash function (seed 0).  Data can be fed in any
+* number of pieces of any size; the result is the same as hashing it all at once.  This is
+* not a cryptographic hash, but it is fast and spreads its values well, which is what is
+* needed to tell whether two documents have the same content.
+*/
+public class XXHash64
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  protected static final long PRIME1 = 0x9E3779B185EBCA87L;
+  protected static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+  protected static final long PRIME3 = 0x165667B19E3779F9L;
+  protected static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+  protected static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+  /** The four accumulators */
+  protected long v1 = PRIME1 + PRIME2;
+  protected long v2 = PRIME2;
+  protected long v3 = 0L;
+  protected long v4 = -PRIME1;
+  /** Bytes left over from the last update, that didn't make up a whole 32-byte stripe */
+  protected final byte[] pending = new byte[32];
+  protected int pendingAmt = 0;
+  /** Total bytes seen */
+  protected long totalLength = 0L;
+
+  /** Constructor.
+  */
+  public XXHash64()
+  {
+  }
+
+  /** Add data to the hash.
+  *@param buffer is the data buffer.
+  *@param offset is the offset of the data in the buffer.
+  *@param amt is the number of bytes.
+  */
+  public void update(byte[] buffer, int offset, int amt)
+  {
+    totalLength += (long)amt;
+    int end = offset + amt;
+    if (pendingAmt > 0)
+    {
+      int fill = Math.min(32 - pendingAmt,amt);
+      System.arraycopy(buffer,offset,pending,pendingAmt,fill);
+      pendingAmt += fill;
+      offset += fill;
+      if (pendingAmt < 32)
+        return;
+      processStripe(pending,0);
+      pendingAmt = 0;
+    }
+    while (end - offset >= 32)
+    {
+      processStripe(buffer,offset);
+      offset += 32;
+    }
+    if (offset < end)
+    {
+      System.arraycopy(buffer,offset,pending,0,end - offset);
+      pendingAmt = end - offset;
+    }
+  }
+
+  /** Get the hash of everything added so far.
+  *@return the hash value.
+  */
+  public long getValue()
+  {
+    long h;
+    if (totalLength >= 32L)
+    {
+      h = Long.rotateLeft(v1,1) + Long.rotateLeft(v2,7) + Long.rotateLeft(v3,12) + Long.rotateLeft(v4,18);
+      h = mergeRound(h,v1);
+      h = mergeRound(h,v2);
+      h = mergeRound(h,v3);
+      h = mergeRound(h,v4);
+    }
+    else
+      h = PRIME5;
+    h += totalLength;
+
+    int i = 0;
+    while (i + 8 <= pendingAmt)
+    {
+      h ^= round(0L,readLong(pending,i));
+      h = Long.rotateLeft(h,27) * PRIME1 + PRIME4;
+      i += 8;
+    }
+    if (i + 4 <= pendingAmt)
+    {
+      h ^= (readInt(pending,i) & 0xFFFFFFFFL) * PRIME1;
+      h = Long.rotateLeft(h,23) * PRIME2 + PRIME3;
+      i += 4;
+    }
+    while (i < pendingAmt)
+    {
+      h ^= (pending[i] & 0xFFL) * PRIME5;
+      h = Long.rotateLeft(h,11) * PRIME1;
+      i++;
+    }
+
+    h ^= h >>> 33;
+    h *= PRIME2;
+    h ^= h >>> 29;
+    h *= PRIME3;
+    h ^= h >>> 32;
+    return h;
+  }
+
+  /** Get the hash of everything added so far, as 16 hex digits.
+  *@return the hash string.
+  */
+  public String getHexValue()
+  {
+    String hex = Long.toHexString(getValue());
+    StringBuilder sb = new StringBuilder(16);
+    for (int i = hex.length(); i < 16; i++)
+    {
+      sb.append('0');
+    }
+    return sb.append(hex).toString();
+  }
+
+  protected void processStripe(byte[] buffer, int offset)
+  {
+    v1 = round(v1,readLong(buffer,offset));
+    v2 = round(v2,readLong(buffer,offset + 8));
+    v3 = round(v3,readLong(buffer,offset + 16));
+    v4 = round(v4,readLong(buffer,offset + 24));
+  }
+
+  protected static long round(long acc, long input)
+  {
+    acc += input * PRIME2;
+    acc = Long.rotateLeft(acc,31);
+    return acc * PRIME1;
+  }
+
+  protected static long mergeRound(long acc, long val)
+  {
+    acc ^= round(0L,val);
+    return acc * PRIME1 + PRIME4;
+  }
+
+  /** Read a little-endian long */
+  protected static long readLong(byte[] buffer, int offset)
+  {
+    return (buffer[offset] & 0xFFL)
+      | ((buffer[offset + 1] & 0xFFL) << 8)
+      | ((buffer[offset + 2] & 0xFFL) << 16)
+      | ((buffer[offset + 3] & 0xFFL) << 24)
+      | ((buffer[offset + 4] & 0xFFL) << 32)
+      | ((buffer[offset + 5] & 0xFFL) << 40)
+      | ((buffer[offset + 6] & 0xFFL) << 48)
+      | ((buffer[offset + 7] & 0xFFL) << 56);
+  }
+
+  /** Read a little-endian int */
+  protected static int readInt(byte[] buffer, int offset)
+  {
+    return (buffer[offset] & 0xFF)
+      | ((buffer[offset + 1] & 0xFF) << 8)
+      | ((buffer[offset + 2] & 0xFF) << 16)
+      | ((buffer[offset + 3] & 0xFF) << 24);
+  }
+
+}
@@ -0,0 +1,126 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.webcrawler.tests;
+
+import org.apache.manifoldcf.crawler.connectors.webcrawler.RobotsPathMatcher;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class RobotsPathMatcherTest
+{
+
+  @Test
+  public void literalPaths()
+    throws Exception
+  {
+    RobotsPathMatcher m = makeMatcher(new String[]{"/private/","/tmp","/exact.html$"});
+    assertTrue(m.matches("/private/file.html"));
+    assertTrue(m.matches("/tmp"));
+    assertTrue(m.matches("/tmpfile"));
+    assertTrue(m.matches("/exact.html"));
+    assertFalse(m.matches("/exact.html?q=1"));
+    assertFalse(m.matches("/private"));
+    assertFalse(m.matches("/"));
+  }
+
+  @Test
+  public void wildcardPaths()
+    throws Exception
+  {
+    RobotsPathMatcher m = makeMatcher(new String[]{"/*.pdf$","/search*q="});
+    assertTrue(m.matches("/docs/a.pdf"));
+    assertFalse(m.matches("/docs/a.pdf.html"));
+    assertTrue(m.matches("/search?x=1&q=foo"));
+    assertFalse(m.matches("/search"));
+  }
+
+  @Test
+  public void sameAsOneRuleAtATime()
+    throws Exception
+  {
+    String alphabet = "/ab*$";
+    Random r = new Random(42L);
+    for (int i = 0; i < 2000; i++)
+    {
+      String[] specs = new String[r.nextInt(6)];
+      for (int j = 0; j < specs.length; j++)
+      {
+        specs[j] = "/" + randomString(r,alphabet,6);
+      }
+      RobotsPathMatcher m = makeMatcher(specs);
+      for (int j = 0; j < 20; j++)
+      {
+        String path = "/" + randomString(r,"/ab$",8);
+        assertEquals(Arrays.asList(specs).toString()+" "+path,oneAtATime(specs,path),m.matches(path));
+      }
+    }
+  }
+
+  @Test
+  public void manyRules()
+    throws Exception
+  {
+    // A robots.txt's worth of disallows, and a crawl's worth of paths
+    String[] specs = new String[200];
+    for (int i = 0; i < specs.length; i++)
+    {
+      specs[i] = "/section" + i + "/private/";
+    }
+    specs[0] = "/*.cgi$";
+    RobotsPathMatcher m = makeMatcher(specs);
+    for (int i = 0; i < 1000; i++)
+    {
+      String path = "/section" + (i % 300) + ((i % 3 == 0)?"/private/page":"/public/page") + i + ((i % 7 == 0)?".cgi":".html");
+      assertEquals(path,oneAtATime(specs,path),m.matches(path));
+    }
+  }
+
+  protected static RobotsPathMatcher makeMatcher(String[] specs)
+  {
+    RobotsPathMatcher m = new RobotsPathMatcher();
+    for (String spec : specs)
+    {
+      m.addRule(spec);
+    }
+    return m;
+  }
+
+  protected static boolean oneAtATime(String[] specs, String path)
+  {
+    for (String spec : specs)
+    {
+      if (RobotsPathMatcher.doesPathMatch(path,spec))
+        return true;
+    }
+    return false;
+  }
+
+  protected static String randomString(Random r, String alphabet, int maxLength)
+  {
+    int length = r.nextInt(maxLength);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < length; i++)
+    {
+      sb.append(alphabet.charAt(r.nextInt(alphabet.length())));
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,67 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.webcrawler.tests;
+
+import org.apache.manifoldcf.crawler.connectors.webcrawler.XXHash64;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class XXHash64Test
+{
+
+  @Test
+  public void knownValues()
+    throws Exception
+  {
+    assertEquals("ef46db3751d8e999",hash(new byte[0]));
+    assertEquals("44bc2cf5ad770999",hash("abc".getBytes("utf-8")));
+    // Long enough to use the four-accumulator stripes
+    assertEquals("fbcea83c8a378bf1",hash("Nobody inspects the spammish repetition".getBytes("utf-8")));
+  }
+
+  @Test
+  public void piecesSameAsWhole()
+    throws Exception
+  {
+    Random r = new Random(42L);
+    for (int i = 0; i < 500; i++)
+    {
+      byte[] data = new byte[r.nextInt(200)];
+      r.nextBytes(data);
+      XXHash64 pieces = new XXHash64();
+      int offset = 0;
+      while (offset < data.length)
+      {
+        int amt = Math.min(r.nextInt(40),data.length - offset);
+        pieces.update(data,offset,amt);
+        offset += amt;
+      }
+      assertEquals(hash(data),pieces.getHexValue());
+    }
+  }
+
+  protected static String hash(byte[] data)
+  {
+    XXHash64 h = new XXHash64();
+    h.update(data,0,data.length);
+    return h.getHexValue();
+  }
+
+}
@@ -584,6 +584,211 @@ public class IncrementalIngester extends org.apache.manifoldcf.core.database.Bas
     }
   }
 
+  /** Ingest a group of documents.
+  * This is equivalent to calling documentIngest() for each document, except that the documents are handed to the output
+  * connector together, so that connectors that support bulk submission can send them to the output data store at once.
+  * ServiceInterruption is thrown if the ingestion must be rescheduled; in that case none of the documents should be
+  * considered to have been ingested.
+  *@param outputConnectionName is the name of the output connection associated with this action.
+  *@param identifierClasses are the names of the spaces in which the identifier hashes should be interpreted.
+  *@param identifierHashes are the hashed document identifiers.
+  *@param documentVersions are the document versions.
+  *@param outputVersion is the output version string constructed from the output specification by the output connector.
+  *@param parameterVersion is the forced parameter version.
+  *@param authorityName is the name of the authority associated with the documents, if any.
+  *@param data are the document data.  The data is closed after ingestion is complete.
+  *@param ingestTime is the time at which the ingestion took place, in milliseconds since epoch.
+  *@param documentURIs are the URIs of the documents, which will be used as the keys of the documents in the index.
+  *@param activities is an object providing a set of methods that the implementer can use to perform the operation.
+  *@return an array with one entry per document: true if the ingest was ok, false if the ingest is illegal (and should not be repeated).
+  */
+  @Override
+  public boolean[] documentIngestMultiple(String outputConnectionName,
+    String[] identifierClasses, String[] identifierHashes,
+    String[] documentVersions,
+    String outputVersion,
+    String parameterVersion,
+    String authorityName,
+    RepositoryDocument[] data,
+    long ingestTime, String[] documentURIs,
+    IOutputActivity activities)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    IOutputConnection connection = connectionManager.load(outputConnectionName);
+
+    boolean[] rval = new boolean[identifierHashes.length];
+
+    // Only documents that actually have something to index, and whose URI is not shared with another document in
+    // the same group, can go out together.  The rest are done one at a time, just as documentIngest() would.
+    List<Integer> group = new ArrayList<Integer>();
+    List<Integer> singles = new ArrayList<Integer>();
+    Set<String> groupURIs = new HashSet<String>();
+    for (int i = 0; i < identifierHashes.length; i++)
+    {
+      if (documentURIs[i] != null && groupURIs.add(documentURIs[i]))
+        group.add(new Integer(i));
+      else
+        singles.add(new Integer(i));
+    }
+
+    if (group.size() > 0)
+    {
+      int[] indexes = new int[group.size()];
+      for (int i = 0; i < indexes.length; i++)
+      {
+        indexes[i] = group.get(i).intValue();
+      }
+      boolean[] groupResults = performIngestionMultiple(connection,indexes,identifierClasses,identifierHashes,documentVersions,
+        outputVersion,parameterVersion,authorityName,data,ingestTime,documentURIs,activities);
+      for (int i = 0; i < indexes.length; i++)
+      {
+        rval[indexes[i]] = groupResults[i];
+      }
+    }
+
+    for (Integer index : singles)
+    {
+      int i = index.intValue();
+      String docKey = makeKey(identifierClasses[i],identifierHashes[i]);
+      if (Logging.ingest.isDebugEnabled())
+      {
+        Logging.ingest.debug("Ingesting document '"+docKey+"' into output connection '"+outputConnectionName+"'");
+      }
+      rval[i] = performIngestion(connection,docKey,documentVersions[i],outputVersion,parameterVersion,authorityName,
+        data[i],ingestTime,documentURIs[i],activities);
+    }
+
+    return rval;
+  }
+
+  /** Do the actual ingestion for a group of documents, all of which have distinct, non-null URIs.
+  *@param indexes are the positions of the documents in the argument arrays that should be ingested.
+  *@return the result for each of the indexed documents, in the same order as indexes.
+  */
+  protected boolean[] performIngestionMultiple(IOutputConnection connection, int[] indexes,
+    String[] identifierClasses, String[] identifierHashes, String[] documentVersions,
+    String outputVersion, String parameterVersion, String authorityNameString,
+    RepositoryDocument[] data, long ingestTime, String[] documentURIs,
+    IOutputActivity activities)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    String[] docKeys = new String[indexes.length];
+    String[] classes = new String[indexes.length];
+    String[] hashes = new String[indexes.length];
+    String[] uris = new String[indexes.length];
+    String[] uriHashes = new String[indexes.length];
+    for (int i = 0; i < indexes.length; i++)
+    {
+      int index = indexes[i];
+      classes[i] = identifierClasses[index];
+      hashes[i] = identifierHashes[index];
+      docKeys[i] = makeKey(classes[i],hashes[i]);
+      uris[i] = documentURIs[index];
+      uriHashes[i] = ManifoldCF.hash(uris[i]);
+      if (Logging.ingest.isDebugEnabled())
+      {
+        Logging.ingest.debug("Ingesting document '"+docKeys[i]+"' into output connection '"+connection.getName()+"' as part of a group");
+      }
+    }
+
+    // See what uris were used before for these docs, if any, all at once.
+    DeleteInfo[] oldInfo;
+    while (true)
+    {
+      long sleepAmt = 0L;
+      try
+      {
+        oldInfo = getDocumentURIMultiple(connection.getName(),classes,hashes);
+        break;
+      }
+      catch (ManifoldCFException e)
+      {
+        // Look for deadlock and retry if so
+        if (e.getErrorCode() == e.DATABASE_TRANSACTION_ABORT)
+        {
+          if (Logging.perf.isDebugEnabled())
+            Logging.perf.debug("Aborted select looking for status: "+e.getMessage());
+          sleepAmt = getSleepAmt();
+          continue;
+        }
+        throw e;
+      }
+      finally
+      {
+        sleepFor(sleepAmt);
+      }
+    }
+
+    // Lock every uri involved, old and new, at once.  The lock manager sorts and dedups these.
+    List<String> lockList = new ArrayList<String>();
+    for (int i = 0; i < indexes.length; i++)
+    {
+      lockList.add(connection.getName()+":"+uris[i]);
+      if (oldInfo[i] != null && oldInfo[i].getURI() != null && !oldInfo[i].getURI().equals(uris[i]))
+        lockList.add(connection.getName()+":"+oldInfo[i].getURI());
+    }
+    String[] lockArray = lockList.toArray(new String[0]);
+
+    lockManager.enterCriticalSections(null,null,lockArray);
+    try
+    {
+      ArrayList list = new ArrayList();
+
+      // Clean up old uris and conflicting records first, for the whole group, so that nothing we remove here
+      // can clobber a document we are about to add.
+      for (int i = 0; i < indexes.length; i++)
+      {
+        String oldURI = (oldInfo[i] == null)?null:oldInfo[i].getURI();
+        if (oldURI != null && !oldURI.equals(uris[i]))
+        {
+          // Delete all records from the database that match the old URI, except for THIS record.
+          list.clear();
+          String query = buildConjunctionClause(list,new ClauseDescription[]{
+            new UnitaryClause(uriHashField,"=",ManifoldCF.hash(oldURI)),
+            new UnitaryClause(outputConnNameField,"=",connection.getName())});
+          list.add(docKeys[i]);
+          performDelete("WHERE "+query+" AND "+docKeyField+"!=?",list,null);
+          removeDocument(connection,oldURI,oldInfo[i].getOutputVersion(),activities);
+        }
+
+        // Get rid of all records that match the NEW uri, except for this record.
+        list.clear();
+        String query = buildConjunctionClause(list,new ClauseDescription[]{
+          new UnitaryClause(uriHashField,"=",uriHashes[i]),
+          new UnitaryClause(outputConnNameField,"=",connection.getName())});
+        list.add(docKeys[i]);
+        performDelete("WHERE "+query+" AND "+ docKeyField+"!=?",list,null);
+      }
+
+      // Note the ingestions before we actually try them, exactly as for a single document.
+      String[] outputDescriptions = new String[indexes.length];
+      String[] authorityNames = new String[indexes.length];
+      RepositoryDocument[] documents = new RepositoryDocument[indexes.length];
+      for (int i = 0; i < indexes.length; i++)
+      {
+        noteDocumentIngest(connection.getName(),docKeys[i],null,null,null,null,ingestTime,uris[i],uriHashes[i]);
+        outputDescriptions[i] = outputVersion;
+        authorityNames[i] = authorityNameString;
+        documents[i] = data[indexes[i]];
+      }
+
+      int[] results = addOrReplaceDocuments(connection,uris,outputDescriptions,documents,authorityNames,activities);
+
+      boolean[] rval = new boolean[indexes.length];
+      for (int i = 0; i < indexes.length; i++)
+      {
+        noteDocumentIngest(connection.getName(),docKeys[i],documentVersions[indexes[i]],outputVersion,parameterVersion,authorityNameString,
+          ingestTime,uris[i],uriHashes[i]);
+        rval[i] = (results[i] == IOutputConnector.DOCUMENTSTATUS_ACCEPTED);
+      }
+      return rval;
+    }
+    finally
+    {
+      lockManager.leaveCriticalSections(null,null,lockArray);
+    }
+  }
+
   /** Note the fact that we checked a document (and found that it did not need to be ingested, because the
   * versions agreed).
   *@param outputConnectionName is the name of the output connection associated with this action.
@@ -811,14 +1016,18 @@ public class IncrementalIngester extends org.apache.manifoldcf.core.database.Bas
     lockManager.enterCriticalSections(null,null,lockArray);
     try
     {
-      // Fetch the document URIs for the listed documents
+      // Remove the listed documents from the output data store, all at once
+      String[] validOutputVersionArray = new String[validURIArray.length];
       int j = 0;
+      validURIcount = 0;
       while (j < uris.length)
       {
         if (uris[j] != null && uris[j].getURI() != null)
-          removeDocument(connection,uris[j].getURI(),uris[j].getOutputVersion(),activities);
+          validOutputVersionArray[validURIcount++] = uris[j].getOutputVersion();
         j++;
       }
+      if (validURIArray.length > 0)
+        removeDocuments(connection,validURIArray,validOutputVersionArray,activities);
 
       // Now, get rid of all rows that match the given uris.
       // Do the queries together, then the deletes
@@ -1686,6 +1895,36 @@ public class IncrementalIngester extends org.apache.manifoldcf.core.database.Bas
     }
   }
 
+  /** Add or replace a group of documents, using the specified output connection, via the standard pool.
+  */
+  protected int[] addOrReplaceDocuments(IOutputConnection connection, String[] documentURIs, String[] outputDescriptions,
+    RepositoryDocument[] documents, String[] authorityNameStrings,
+    IOutputAddActivity activities)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    // Set indexing date
+    Date indexingDate = new Date();
+    for (RepositoryDocument document : documents)
+    {
+      document.setIndexingDate(indexingDate);
+    }
+    IOutputConnector connector = outputConnectorPool.grab(connection);
+    if (connector == null)
+      // The connector is not installed; treat this as a service interruption.
+      throw new ServiceInterruption("Output connector not installed",0L);
+    try
+    {
+      int[] rval = connector.addOrReplaceDocuments(documentURIs,outputDescriptions,documents,authorityNameStrings,activities);
+      if (rval == null || rval.length != documents.length)
+        throw new ManifoldCFException("Output connector returned the wrong number of document statuses");
+      return rval;
+    }
+    finally
+    {
+      outputConnectorPool.release(connection,connector);
+    }
+  }
+
   /** Remove document, using the specified output connection, via the standard pool.
   */
   protected void removeDocument(IOutputConnection connection, String documentURI, String outputDescription, IOutputRemoveActivity activities)
@@ -1705,6 +1944,25 @@ public class IncrementalIngester extends org.apache.manifoldcf.core.database.Bas
     }
   }
 
+  /** Remove a group of documents, using the specified output connection, via the standard pool.
+  */
+  protected void removeDocuments(IOutputConnection connection, String[] documentURIs, String[] outputDescriptions, IOutputRemoveActivity activities)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    IOutputConnector connector = outputConnectorPool.grab(connection);
+    if (connector == null)
+      // The connector is not installed; treat this as a service interruption.
+      throw new ServiceInterruption("Output connector not installed",0L);
+    try
+    {
+      connector.removeDocuments(documentURIs,outputDescriptions,activities);
+    }
+    finally
+    {
+      outputConnectorPool.release(connection,connector);
+    }
+  }
+
   /** Make a key from a document class and a hash */
   protected static String makeKey(String documentClass, String documentHash)
   {
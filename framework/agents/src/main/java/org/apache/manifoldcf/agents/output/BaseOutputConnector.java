@@ -197,6 +197,32 @@ public abstract class BaseOutputConnector extends org.apache.manifoldcf.core.con
     return DOCUMENTSTATUS_REJECTED;
   }
 
+  /** Add (or replace) a group of documents in the output data store using the connector.
+  * This method has the same semantics as addOrReplaceDocument(), except that it allows the connector to send all of the documents to
+  * the output data store at once, e.g. as a single bulk request.  A status is returned for each document.  If a ServiceInterruption is
+  * thrown, none of the documents in the group should be considered to have been indexed, and the whole group will be retried.
+  * The base class implementation simply calls addOrReplaceDocument() for each document in turn.
+  *@param documentURIs are the URIs of the documents.
+  *@param outputDescriptions are the description strings that were constructed for the documents by the getOutputDescription() method.
+  *@param documents are the document data to be processed (handed to the output data store).
+  *@param authorityNameStrings are the names of the authorities responsible for authorizing any access tokens passed in with the repository
+  * documents.  Individual values may be null.
+  *@param activities is the handle to an object that the implementer of an output connector may use to perform operations, such as logging processing activity.
+  *@return the document statuses (accepted or permanently rejected), one per document, in the same order as the documents.
+  */
+  @Override
+  public int[] addOrReplaceDocuments(String[] documentURIs, String[] outputDescriptions, RepositoryDocument[] documents, String[] authorityNameStrings,
+    IOutputAddActivity activities)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    int[] rval = new int[documents.length];
+    for (int i = 0; i < documents.length; i++)
+    {
+      rval[i] = addOrReplaceDocument(documentURIs[i],outputDescriptions[i],documents[i],authorityNameStrings[i],activities);
+    }
+    return rval;
+  }
+
   /** Remove a document using the connector.
   * Note that the last outputDescription is included, since it may be necessary for the connector to use such information to know how to properly remove the document.
   *@param documentURI is the URI of the document.  The URI is presumed to be the unique identifier which the output data store will use to process
@@ -210,6 +236,25 @@ public abstract class BaseOutputConnector extends org.apache.manifoldcf.core.con
   {
     // Does nothing in the base class
   }
+
+  /** Remove a group of documents using the connector.
+  * This method has the same semantics as removeDocument(), except that it allows the connector to remove all of the documents
+  * from the output data store at once, e.g. as a single delete request.  If a ServiceInterruption is thrown, none of the documents
+  * should be considered to have been removed, and the whole group will be retried.
+  * The base class implementation simply calls removeDocument() for each document in turn.
+  *@param documentURIs are the URIs of the documents.
+  *@param outputDescriptions are the last description strings that were constructed for the documents by the getOutputDescription() method.
+  *@param activities is the handle to an object that the implementer of an output connector may use to perform operations, such as logging processing activity.
+  */
+  @Override
+  public void removeDocuments(String[] documentURIs, String[] outputDescriptions, IOutputRemoveActivity activities)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    for (int i = 0; i < documentURIs.length; i++)
+    {
+      removeDocument(documentURIs[i],outputDescriptions[i],activities);
+    }
+  }
   
   // UI support methods.
   //
@@ -24,7 +24,10 @@ import org.apache.manifoldcf.authorities.system.ManifoldCF;
 import org.apache.manifoldcf.authorities.system.Logging;
 import org.apache.manifoldcf.authorities.system.RequestQueue;
 import org.apache.manifoldcf.authorities.system.AuthRequest;
+import org.apache.manifoldcf.authorities.system.AuthorizationResponseCache;
+import org.apache.manifoldcf.authorities.system.AuthorityRequestSet;
 import org.apache.manifoldcf.authorities.system.MappingRequest;
+import org.apache.manifoldcf.authorities.system.RequestQueueFullException;
 
 import java.io.*;
 import java.util.*;
@@ -181,154 +184,44 @@ public class UserACLServlet extends HttpServlet
         throw new ManifoldCFException("System improperly initialized");
       }
 
-      RequestQueue<AuthRequest> queue = ManifoldCF.getRequestQueue();
-      if (queue == null)
+      AuthorizationResponseCache authCache = ManifoldCF.getAuthorizationResponseCache();
+      if (authCache == null)
       {
         // System wasn't started; return unauthorized
         throw new ManifoldCFException("System improperly initialized");
       }
 
       
+      // Every authority has to answer by this time, or it is considered unreachable
+      long authorityTimeout = ManifoldCF.getAuthorityTimeout();
+      long deadline = (authorityTimeout == 0L)?Long.MAX_VALUE:System.currentTimeMillis() + authorityTimeout;
+
       IThreadContext itc = ThreadContextFactory.make();
       
       IMappingConnectionManager mappingConnManager = MappingConnectionManagerFactory.make(itc);
       IAuthorityConnectionManager authConnManager = AuthorityConnectionManagerFactory.make(itc);
 
       // Get all mapping connections; we may not need them all but we do need to be able to look them all up
-      IMappingConnection[] mappingConnections = mappingConnManager.getAllConnections();
-      
-      // One thread per connection, which is responsible for starting the mapping process when it is ready.
-      List<MappingOrderThread> mappingThreads = new ArrayList<MappingOrderThread>();
-      // One thread per authority, which is responsible for starting the auth request when it is ready.
-      List<AuthOrderThread> authThreads = new ArrayList<AuthOrderThread>();
-
-      Map<MapperDescription,MappingRequest> mappingRequests = new HashMap<MapperDescription,MappingRequest>();
-      Map<String,AuthRequest> authRequests = new HashMap<String,AuthRequest>();
-
-      Map<String,IMappingConnection> mappingConnMap = new HashMap<String,IMappingConnection>();
-      
-      // Fill in mappingConnMap, since we need to be able to find connections given connection names
-      for (IMappingConnection c : mappingConnections)
-      {
-        mappingConnMap.put(c.getName(),c);
-      }
-
-      // Set of connections we need to fire off
-      Set<MapperDescription> activeConnections = new HashSet<MapperDescription>();
-
-      // We do the minimal set of mapping requests and authorities.  Since it is the authority tokens we are
-      // looking for, we start there, and build authority requests first, then mapping requests that support them,
-      // etc.
-      // Create auth requests
+      AuthorityRequestSet requestSet = new AuthorityRequestSet(mappingQueue,authCache,mappingConnManager.getAllConnections(),deadline);
       for (String authDomain : domainMap.keySet())
       {
-        IAuthorityConnection[] connections = authConnManager.getDomainConnections(authDomain);
-        for (int i = 0; i < connections.length; i++)
+        if (!requestSet.addDomain(authDomain,domainMap.get(authDomain),authConnManager.getDomainConnections(authDomain)))
         {
-          IAuthorityConnection thisConnection = connections[i];
-          String identifyingString = thisConnection.getDescription();
-          if (identifyingString == null || identifyingString.length() == 0)
-            identifyingString = thisConnection.getName();
-          
-          // Create a request
-          AuthRequest ar = new AuthRequest(thisConnection,identifyingString);
-          authRequests.put(thisConnection.getName(), ar);
-          
-          // We create an auth thread if there are prerequisites to meet.
-          // Otherwise, we just fire off the request
-          String domainUserID = domainMap.get(authDomain);
-          if (thisConnection.getPrerequisiteMapping() == null)
-          {
-            ar.setUserID(domainUserID);
-            queue.addRequest(ar);
-          }
-          else
-          {
-            MapperDescription md = new MapperDescription(thisConnection.getPrerequisiteMapping(),authDomain);
-            AuthOrderThread thread = new AuthOrderThread(identifyingString,
-              ar, md,
-              queue, mappingRequests);
-            authThreads.add(thread);
-            // The same mapper can be used for multiple domains, although this is likely to be uncommon.  Nevertheless,
-            // mapper invocations need to be segregated to prevent trouble
-            activeConnections.add(md);
-          }
+          sendBusy(response);
+          return;
         }
       }
 
-      // Create mapping requests
-      while (!activeConnections.isEmpty())
-      {
-        Iterator<MapperDescription> connectionIter = activeConnections.iterator();
-        MapperDescription mapperDesc = connectionIter.next();
-        String connectionName = mapperDesc.mapperName;
-        String authDomain = mapperDesc.authDomain;
-        IMappingConnection thisConnection = mappingConnMap.get(connectionName);
-        String identifyingString = thisConnection.getDescription();
-        if (identifyingString == null || identifyingString.length() == 0)
-          identifyingString = connectionName;
-
-        // Create a request
-        MappingRequest mr = new MappingRequest(thisConnection,identifyingString);
-        mappingRequests.put(mapperDesc, mr);
-
-        // Either start up a thread, or just fire it off immediately.
-        if (thisConnection.getPrerequisiteMapping() == null)
-        {
-          mr.setUserID(domainMap.get(authDomain));
-          mappingQueue.addRequest(mr);
-        }
-        else
-        {
-          //System.out.println("Mapper: prerequisite found: '"+thisConnection.getPrerequisiteMapping()+"'");
-          MapperDescription p = new MapperDescription(thisConnection.getPrerequisiteMapping(),authDomain);
-          MappingOrderThread thread = new MappingOrderThread(identifyingString,
-            mr, p, mappingQueue, mappingRequests);
-          mappingThreads.add(thread);
-          if (mappingRequests.get(p) == null)
-            activeConnections.add(p);
-        }
-        activeConnections.remove(mapperDesc);
-      }
-      
-      // Start threads.  We have to wait until all the requests have been
-      // at least created before we do this.
-      for (MappingOrderThread thread : mappingThreads)
-      {
-        thread.start();
-      }
-      for (AuthOrderThread thread : authThreads)
-      {
-        thread.start();
-      }
-      
-      // Wait for the threads to finish up.  This will guarantee that all entities have run to completion.
-      for (MappingOrderThread thread : mappingThreads)
-      {
-        thread.finishUp();
-      }
-      for (AuthOrderThread thread : authThreads)
-      {
-        thread.finishUp();
-      }
-      
-      // This is probably unnecessary, but we do it anyway just to adhere to the contract
-      for (MappingRequest mr : mappingRequests.values())
-      {
-        mr.waitForComplete();
-      }
-      
-      // Handle all exceptions thrown during mapping.  In general this just means logging them, because
-      // the downstream authorities will presumably not find what they are looking for and error out that way.
-      for (MappingRequest mr : mappingRequests.values())
+      requestSet.waitForComplete();
+
+      if (requestSet.isMappingOverloaded())
       {
-        Throwable exception = mr.getAnswerException();
-        if (exception != null)
-        {
-          Logging.authorityService.warn("Mapping exception logged from "+mr.getIdentifyingString()+": "+exception.getMessage()+"; mapper aborted", exception);
-        }
+        sendBusy(response);
+        return;
       }
       
+      Map<String,AuthRequest> authRequests = requestSet.getAuthRequests();
+
       // Now, work through the returning answers.
 
       // Ask all the interrogated authorities for their ACLs, and merge the final list together.
@@ -342,21 +235,24 @@ public class UserACLServlet extends HttpServlet
         {
           AuthRequest ar = authRequests.get(connectionName);
 
-          if (Logging.authorityService.isDebugEnabled())
-            Logging.authorityService.debug("Waiting for answer from authority connection "+ar.getIdentifyingString()+" for user '"+ar.getUserID()+"'");
-
-          ar.waitForComplete();
-
-          if (Logging.authorityService.isDebugEnabled())
-            Logging.authorityService.debug("Received answer from authority connection "+ar.getIdentifyingString()+" for user '"+ar.getUserID()+"'");
+          if (requestSet.isTimedOut(connectionName))
+          {
+            // The request will still be answered eventually, and the answer remembered, but we can't wait for it
+            Logging.authorityService.warn("Authority '"+ar.getIdentifyingString()+"' did not answer for user '"+ar.getUserID()+"' within "+authorityTimeout+" ms; treating as unreachable");
+            sb.append(UNREACHABLE_VALUE).append(java.net.URLEncoder.encode(ar.getIdentifyingString(),"UTF-8")).append("\n");
+            continue;
+          }
 
           Throwable exception = ar.getAnswerException();
           AuthorizationResponse reply = ar.getAnswerResponse();
           if (exception != null)
           {
             // Exceptions are always bad now
+            // A full queue means we're overloaded, which the caller should treat as "try again later".
             // The ManifoldCFException here must disable access to the UI without causing a generic badness thing to happen, so use 403.
-            if (exception instanceof ManifoldCFException)
+            if (exception instanceof RequestQueueFullException)
+              sendBusy(response);
+            else if (exception instanceof ManifoldCFException)
               response.sendError(response.SC_FORBIDDEN,"From "+ar.getIdentifyingString()+": "+exception.getMessage());
             else
               response.sendError(response.SC_INTERNAL_SERVER_ERROR,"From "+ar.getIdentifyingString()+": "+exception.getMessage());
@@ -453,158 +349,13 @@ public class UserACLServlet extends HttpServlet
     }
   }
 
-  /** This class represents a tuple of (mapper_name, auth_domain).
-  */
-  protected static class MapperDescription
-  {
-    public final String mapperName;
-    public final String authDomain;
-    
-    public MapperDescription(String mapperName, String authDomain)
-    {
-      this.mapperName = mapperName;
-      this.authDomain = authDomain;
-    }
-    
-    public int hashCode()
-    {
-      return mapperName.hashCode() + authDomain.hashCode();
-    }
-    
-    public boolean equals(Object o)
-    {
-      if (!(o instanceof MapperDescription))
-        return false;
-      MapperDescription other = (MapperDescription)o;
-      return this.mapperName.equals(other.mapperName) &&
-        this.authDomain.equals(other.authDomain);
-    }
-  }
-  
-  /** This thread is responsible for making sure that the constraints for a given mapping connection
-  * are met, and then when they are, firing off a MappingRequest.  One of these threads is spun up
-  * for every IMappingConnection being handled.
-  * NOTE WELL: The number of threads this might require is worrisome.  It is essentially
-  * <number_of_app_server_threads> * <number_of_mappers>.  I will try later to see if I can find
-  * a way of limiting this to sane numbers.
+  /** Turn a request away because the authority service is overloaded.
   */
-  protected static class MappingOrderThread extends Thread
+  protected static void sendBusy(HttpServletResponse response)
+    throws IOException
   {
-    protected final MappingRequest request;
-    protected final MapperDescription prerequisite;
-    protected final Map<MapperDescription,MappingRequest> requests;
-    protected final RequestQueue<MappingRequest> mappingRequestQueue;
-
-    protected Throwable exception = null;
-    
-    public MappingOrderThread(
-      String identifyingString,
-      MappingRequest request,
-      MapperDescription prerequisite,
-      RequestQueue<MappingRequest> mappingRequestQueue,
-      Map<MapperDescription, MappingRequest> requests)
-    {
-      super();
-      this.request = request;
-      this.prerequisite = prerequisite;
-      this.mappingRequestQueue = mappingRequestQueue;
-      this.requests = requests;
-      setName("Constraint matcher for mapper '"+identifyingString+"'");
-      setDaemon(true);
-    }
-    
-    public void run()
-    {
-      try
-      {
-        MappingRequest mappingRequest = requests.get(prerequisite);
-        mappingRequest.waitForComplete();
-        // Constraints are met.  Fire off the request.
-        request.setUserID(mappingRequest.getAnswerResponse());
-        mappingRequestQueue.addRequest(request);
-      }
-      catch (Throwable e)
-      {
-        exception = e;
-      }
-    }
-
-    public void finishUp()
-      throws InterruptedException
-    {
-      join();
-      if (exception != null)
-      {
-        if (exception instanceof Error)
-          throw (Error)exception;
-        else if (exception instanceof RuntimeException)
-          throw (RuntimeException)exception;
-      }
-    }
-    
+    Logging.authorityService.warn("Authority service request queue is full; rejecting request");
+    response.sendError(response.SC_SERVICE_UNAVAILABLE,"Authority service is overloaded; try again later");
   }
 
-  /** This thread is responsible for making sure that the constraints for a given authority connection
-  * are met, and then when they are, firing off an AuthRequest.  One of these threads is spun up
-  * for every IAuthorityConnection being handled.
-  * NOTE WELL: The number of threads this might require is worrisome.  It is essentially
-  * <number_of_app_server_threads> * <number_of_authorities>.  I will try later to see if I can find
-  * a way of limiting this to sane numbers.
-  */
-  protected static class AuthOrderThread extends Thread
-  {
-    protected final AuthRequest request;
-    protected final MapperDescription prerequisite;
-    protected final Map<MapperDescription,MappingRequest> mappingRequests;
-    protected final RequestQueue<AuthRequest> authRequestQueue;
-    
-    protected Throwable exception = null;
-    
-    public AuthOrderThread(
-      String identifyingString,
-      AuthRequest request,
-      MapperDescription prerequisite,
-      RequestQueue<AuthRequest> authRequestQueue,
-      Map<MapperDescription, MappingRequest> mappingRequests)
-    {
-      super();
-      this.request = request;
-      this.prerequisite = prerequisite;
-      this.authRequestQueue = authRequestQueue;
-      this.mappingRequests = mappingRequests;
-      setName("Constraint matcher for authority '"+identifyingString+"'");
-      setDaemon(true);
-    }
-    
-    public void run()
-    {
-      try
-      {
-        MappingRequest mappingRequest = mappingRequests.get(prerequisite);
-        mappingRequest.waitForComplete();
-        // Constraints are met.  Fire off the request.  User may be null if mapper failed!!
-        request.setUserID(mappingRequest.getAnswerResponse());
-        authRequestQueue.addRequest(request);
-      }
-      catch (Throwable e)
-      {
-        exception = e;
-      }
-    }
-
-    public void finishUp()
-      throws InterruptedException
-    {
-      join();
-      if (exception != null)
-      {
-        if (exception instanceof Error)
-          throw (Error)exception;
-        else if (exception instanceof RuntimeException)
-          throw (RuntimeException)exception;
-      }
-    }
-    
-  }
-  
 }
@@ -35,9 +35,13 @@ public class CacheManager implements ICacheManager
 
   protected final static String cacheLockPrefix = "_Cache_";
 
+  protected final IThreadContext context;
   protected ILockManager lockManager;
   protected static GeneralCache cache = new GeneralCache();
 
+  // Memory budgets for object classes, by class name.  A value of -1 means unlimited.
+  protected final static Map<String,Long> classByteBudgets = new HashMap<String,Long>();
+
   // This is the hash mapping transaction id's to CacheTransactionHandle objects.
   // It is thread specific because transactions are thread local.
   protected HashMap transactionHash = new HashMap();
@@ -45,6 +49,7 @@ public class CacheManager implements ICacheManager
   public CacheManager(IThreadContext context)
     throws ManifoldCFException
   {
+    this.context = context;
     lockManager = LockManagerFactory.make(context);
   }
 
@@ -493,6 +498,7 @@ public class CacheManager implements ICacheManager
   *@param currentTime is the current time in milliseconds since epoch.
   */
   protected void resetObjectExpiration(ICacheDescription objectDescription, long currentTime)
+    throws ManifoldCFException
   {
 
     // Update the expiration time for this object.
@@ -502,12 +508,37 @@ public class CacheManager implements ICacheManager
     // Update LRU and max counts.  This also flushes the cache to meet the criteria.
     ICacheClass objectClass = objectDescription.getObjectClass();
     if (objectClass != null)
-      cache.setObjectClass(objectDescription,objectClass.getClassName(),objectClass.getMaxLRUCount());
+    {
+      String className = objectClass.getClassName();
+      cache.setObjectClass(objectDescription,className,objectClass.getMaxLRUCount(),getClassByteBudget(className));
+    }
     else
       cache.setObjectClass(objectDescription,null,Integer.MAX_VALUE);
 
   }
 
+  /** Get the memory budget for an object class.  This comes from the property
+  * org.apache.manifoldcf.cache.maxbytes.&lt;class name&gt;, or from org.apache.manifoldcf.cache.maxbytes
+  * if that is not set.
+  *@param className is the object class name.
+  *@return the budget in bytes, or -1 if unlimited.
+  */
+  protected long getClassByteBudget(String className)
+    throws ManifoldCFException
+  {
+    synchronized (classByteBudgets)
+    {
+      Long rval = classByteBudgets.get(className);
+      if (rval == null)
+      {
+        long defaultBudget = LockManagerFactory.getLongProperty(context,ManifoldCF.cacheMaxBytesProperty,-1L);
+        rval = new Long(LockManagerFactory.getLongProperty(context,ManifoldCF.cacheMaxBytesProperty+"."+className,defaultBudget));
+        classByteBudgets.put(className,rval);
+      }
+      return rval.longValue();
+    }
+  }
+
   /** Save a newly created object.  The object MUST be one of those identified in the
   * enterCache() method.
   *@param handle is the create handle.
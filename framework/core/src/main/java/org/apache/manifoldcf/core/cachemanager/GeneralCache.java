@@ -26,80 +26,83 @@ import java.util.*;
 * objects.
 * This cache is entirely local to a JVM and does NOT have any locking and synchronization semantics
 * cross-JVM.  That is handled at a higher level.
+*
+* To reduce lock contention, the cache is divided into a fixed number of segments, each with its own lock.
+* An object lives in the segment selected by the hash of its description.  LRU limits, both object counts
+* and byte sizes, apply to each class as a whole, across all segments: the cache keeps per-class totals, and
+* every object of a class carries a sequence number that orders it in a single cache-wide LRU list.  Eviction
+* finds the least recently used object of the class in any segment, and locks only that segment to remove it.
+* Object sizes are known only for objects implementing ISizeEstimate; other objects count as zero bytes, and
+* are therefore limited only by count.
 */
 public class GeneralCache
 {
   public static final String _rcsid = "@(#)$Id: GeneralCache.java 988245 2010-08-23 18:39:35Z kwright $";
 
-  // This table is for looking stuff up by object description
-  protected ObjectRecordTable hashtable = new ObjectRecordTable();
-  // This table is for looking stuff up by cache key - hash table of hash tables
-  protected InvalidationTable invalidationTable = new InvalidationTable();
-  // This table keeps the running count of each object class
-  protected ObjectClassTable objectClassTable = new ObjectClassTable();
-  // This structure is the general expiration tree
-  public ExpirationTree expirationTree = new ExpirationTree();
+  /** Number of segments; must be a power of two */
+  protected final static int segmentCount = 16;
+
+  /** The segments */
+  protected final CacheSegment[] segments;
+
+  /** Totals for each object class, across all segments.  Synchronize on this map before using it.  It
+  * is locked only while holding a segment lock, or with no lock held, never the other way around. */
+  protected final Map<String,ClassTotal> classTotals = new HashMap<String,ClassTotal>();
+
+  /** The next LRU sequence number.  Synchronize on classTotals before using it. */
+  protected long lruSequence = 0L;
 
   public GeneralCache()
   {
+    segments = new CacheSegment[segmentCount];
+    for (int i = 0; i < segmentCount; i++)
+    {
+      segments[i] = new CacheSegment();
+    }
   }
 
   /** Locate an object in the cache, and return it if found.
   *@param objectDescription is the object's unique identifier.
   *@return the object if found, or null if not present in the cache.
   */
-  public synchronized Object lookup(Object objectDescription)
+  public Object lookup(Object objectDescription)
   {
-    ObjectRecord o = hashtable.lookup(objectDescription);
-    if (o == null)
-      return null;
-    return o.getObject();
+    return getSegment(objectDescription).lookup(objectDescription);
   }
 
   /** Get the creation time of an object in the cache.
   *@param objectDescription is the object's unique identifier.
   *@return the creation time, or -1 if object not found.
   */
-  public synchronized long getObjectCreationTime(Object objectDescription)
+  public long getObjectCreationTime(Object objectDescription)
   {
-    ObjectRecord o = hashtable.lookup(objectDescription);
-    if (o == null)
-      return -1L;
-    return o.getCreationTime();
+    return getSegment(objectDescription).getObjectCreationTime(objectDescription);
   }
 
   /** Get the invalidation keys for an object in the cache.
   *@param objectDescription is the object's unique identifier.
   *@return the keys, or null if not found.
   */
-  public synchronized StringSet getObjectInvalidationKeys(Object objectDescription)
+  public StringSet getObjectInvalidationKeys(Object objectDescription)
   {
-    ObjectRecord o = hashtable.lookup(objectDescription);
-    if (o == null)
-      return null;
-    return o.getKeys();
+    return getSegment(objectDescription).getObjectInvalidationKeys(objectDescription);
   }
 
   /** Get the expiration time for an object in the cache.
   *@param objectDescription is the object's unique identifier.
   *@return the expiration time (-1L means none).
   */
-  public synchronized long getObjectExpirationTime(Object objectDescription)
+  public long getObjectExpirationTime(Object objectDescription)
   {
-    ObjectRecord o = hashtable.lookup(objectDescription);
-    if (o == null)
-      return -1L;
-    return o.getObjectExpiration();
+    return getSegment(objectDescription).getObjectExpirationTime(objectDescription);
   }
 
   /** Delete a record from the cache.
   *@param objectDescription is the unique description.
   */
-  public synchronized void deleteObject(Object objectDescription)
+  public void deleteObject(Object objectDescription)
   {
-    ObjectRecord o = hashtable.lookup(objectDescription);
-    if (o != null)
-      deleteEntry(o);
+    getSegment(objectDescription).deleteObject(objectDescription);
   }
 
   /** Add a newly created object to the cache.  Use ONLY for newly created objects!
@@ -108,38 +111,22 @@ public class GeneralCache
   *@param keys are the invalidation keys for the newly created object.
   *@param timestamp is the creation timestamp for this object (used for cross-JVM invalidation)
   */
-  public synchronized void setObject(Object objectDescription, Object object, StringSet keys, long timestamp)
+  public void setObject(Object objectDescription, Object object, StringSet keys, long timestamp)
   {
-    ObjectRecord record = new ObjectRecord(objectDescription,object,keys,timestamp);
-    hashtable.add(record);
-    // Make an entry in the invalidation hash
-    invalidationTable.addKeys(keys,record);
-    // Object has no expiration or class yet, so don't add it to the expiration tree, or to the object
-    // class trees
+    // Estimate the size outside of any lock
+    long objectSize = 0L;
+    if (object instanceof ISizeEstimate)
+      objectSize = ((ISizeEstimate)object).getSizeEstimate();
+    getSegment(objectDescription).setObject(objectDescription,object,keys,timestamp,objectSize);
   }
 
   /** Set an object's expiration time.
   *@param objectDescription is the object's unique description.
   *@param expirationTime is the object's new expiration time, in milliseconds since epoch.
   */
-  public synchronized void setObjectExpiration(Object objectDescription, long expirationTime)
+  public void setObjectExpiration(Object objectDescription, long expirationTime)
   {
-    // Find existing object
-    ObjectRecord existing = hashtable.lookup(objectDescription);
-    if (existing == null)
-      return;
-    if (existing.getObjectExpiration() != -1)
-    {
-      // Pull the object from the expiration tree
-      expirationTree.removeEntry(existing);
-    }
-    // Set the new expiration
-    existing.setObjectExpiration(expirationTime);
-    if (expirationTime != -1)
-    {
-      //Put the object back into the expiration tree
-      expirationTree.addEntry(existing);
-    }
+    getSegment(objectDescription).setObjectExpiration(objectDescription,expirationTime);
   }
 
   /** Set an object's class and maximum count.  This will clean up extra objects
@@ -149,69 +136,86 @@ public class GeneralCache
   *@param maxCount is the maximum number of objects of the class to permit to
   * remain in the cache.
   */
-  public synchronized void setObjectClass(Object objectDescription, String objectClass,
+  public void setObjectClass(Object objectDescription, String objectClass,
     int maxCount)
   {
-    // Lookup the existing object class
-    ObjectRecord existing = hashtable.lookup(objectDescription);
-    if (existing == null)
+    setObjectClass(objectDescription,objectClass,maxCount,-1L);
+  }
+
+  /** Set an object's class, maximum count, and maximum byte size.  This will clean up extra objects
+  * in a Least Recently Used fashion until both limits are met.
+  *@param objectDescription is the object's unique description.
+  *@param objectClass is the object's "class", or grouping for the purposes of LRU.
+  *@param maxCount is the maximum number of objects of the class to permit to
+  * remain in the cache.
+  *@param maxBytes is the maximum estimated size, in bytes, of all objects of the class
+  * to permit to remain in the cache, or -1 if unlimited.
+  */
+  public void setObjectClass(Object objectDescription, String objectClass,
+    int maxCount, long maxBytes)
+  {
+    if (!getSegment(objectDescription).setObjectClass(objectDescription,objectClass) || objectClass == null)
       return;
-    if (existing.getObjectClass() != null)
-    {
-      // Pull the object from the object class expiration tree
-      objectClassTable.removeEntry(existing);
-    }
-    // Set the new object class & LRU value
-    existing.setObjectClass(objectClass);
-    if (objectClass != null)
-    {
-      // Put the object into the object class expiration tree
-      objectClassTable.addEntry(existing);
 
-      if (maxCount >= 0)
+    // Now, clean up objects to meet the limits.  Only one segment is locked at a time.
+    while (true)
+    {
+      Object protectedDescription;
+      synchronized (classTotals)
       {
-        // Now, clean up objects to meet the count
-        while (objectClassTable.getCurrentMemberCount(objectClass) > maxCount)
+        ClassTotal total = classTotals.get(objectClass);
+        if (total == null)
+          return;
+        if (maxCount >= 0 && total.memberCount > maxCount)
+          protectedDescription = null;
+        else if (maxBytes >= 0L && total.byteCount > maxBytes)
         {
-          ObjectRecord oldestRecord = objectClassTable.getOldestEntry(objectClass);
-          // Delete this entry from all places it lives
-          deleteEntry(oldestRecord);
+          // Never evict the object we were just handed to meet the byte budget, however,
+          // since the caller is about to use it.
+          protectedDescription = objectDescription;
         }
-
+        else
+          return;
       }
+      if (!evictOldest(objectClass,protectedDescription))
+        return;
     }
+  }
 
+  /** Evict the least recently used object of a class, across all segments.
+  *@param objectClass is the object class.
+  *@param protectedDescription is the description of an object that must not be evicted, or null.
+  *@return false if there was nothing that could be evicted.
+  */
+  protected boolean evictOldest(String objectClass, Object protectedDescription)
+  {
+    CacheSegment oldestSegment = null;
+    long oldestSequence = Long.MAX_VALUE;
+    for (CacheSegment segment : segments)
+    {
+      long sequence = segment.getOldestSequence(objectClass,protectedDescription);
+      if (sequence < oldestSequence)
+      {
+        oldestSequence = sequence;
+        oldestSegment = segment;
+      }
+    }
+    if (oldestSegment == null)
+      return false;
+    // If the segment changed in the meantime, nothing is evicted, and the caller just checks again
+    oldestSegment.evictOldest(objectClass,protectedDescription,oldestSequence);
+    return true;
   }
 
   /** Invalidate a set of keys.  This causes all objects that have any of the specified
   * keys as invalidation keys to be removed from the cache.
   *@param keys is the StringSet describing the keys to invalidate.
   */
-  public synchronized void invalidateKeys(StringSet keys)
+  public void invalidateKeys(StringSet keys)
   {
-    Iterator enum2 = keys.getKeys();
-    while (enum2.hasNext())
+    for (CacheSegment segment : segments)
     {
-      String invalidateKey = (String)enum2.next();
-      Iterator enum1 = invalidationTable.getObjectRecordsForKey(invalidateKey);
-      while (enum1.hasNext())
-      {
-        ObjectRecord record = (ObjectRecord)enum1.next();
-        hashtable.remove(record);
-        // Remove from object class table
-        if (record.getObjectClass() != null)
-        {
-          objectClassTable.removeEntry(record);
-        }
-        // Remove from expiration table
-        if (record.getExpirationTime() >= 0)
-        {
-          expirationTree.removeEntry(record);
-        }
-
-      }
-      // We do this last, because we are enumerating over something in here!
-      invalidationTable.removeKey(invalidateKey);
+      segment.invalidateKeys(keys);
     }
   }
 
@@ -220,47 +224,283 @@ public class GeneralCache
   */
   public void expireRecords(long expireTime)
   {
-    while (true)
+    for (CacheSegment segment : segments)
     {
-      // Do the synchronizer inside the loop.  Cleanup is slower,
-      // but the cache does not get locked for long periods.
-      synchronized (this)
-      {
-        // Get the oldest record, if any
-        ObjectRecord x = expirationTree.getOldestEntry();
-        if (x == null)
-          break;
-        if (x.getExpirationTime() > expireTime)
-          break;
-        // Remove the entry
-        deleteEntry(x);
-      }
+      segment.expireRecords(expireTime);
+    }
+  }
+
+  /** Get the total estimated size of all objects of a class currently in the cache.
+  *@param objectClass is the object class.
+  *@return the size, in bytes.
+  */
+  public long getObjectClassByteCount(String objectClass)
+  {
+    long rval = 0L;
+    for (CacheSegment segment : segments)
+    {
+      rval += segment.getObjectClassByteCount(objectClass);
+    }
+    return rval;
+  }
+
+  /** Get the number of objects of a class currently in the cache.
+  *@param objectClass is the object class.
+  *@return the count.
+  */
+  public int getObjectClassMemberCount(String objectClass)
+  {
+    int rval = 0;
+    for (CacheSegment segment : segments)
+    {
+      rval += segment.getObjectClassMemberCount(objectClass);
     }
+    return rval;
   }
 
-  /** Delete a record from the cache. NOTE WELL: This method cannot be used
-  * if the data associated with the record is currently being processed with
-  * an enumeration (for example), since it modifies the structures that the
-  * enumeration is based on!
-  *@param record is the object record.
+  /** Find the segment for an object description.
   */
-  protected void deleteEntry(ObjectRecord record)
+  protected CacheSegment getSegment(Object objectDescription)
   {
-    // Delete from the main cache
-    hashtable.remove(record);
-    // Delete from key hash
-    invalidationTable.removeObjectRecord(record);
-    // Remove from object class table
-    if (record.getObjectClass() != null)
+    int hash = objectDescription.hashCode();
+    // Spread the bits, since description hash codes are often poorly distributed in the low bits
+    hash ^= (hash >>> 16);
+    hash ^= (hash >>> 8);
+    return segments[hash & (segmentCount-1)];
+  }
+
+  /** One segment of the cache.  All methods are synchronized on the segment.
+  */
+  protected class CacheSegment
+  {
+    // This table is for looking stuff up by object description
+    protected final ObjectRecordTable hashtable = new ObjectRecordTable();
+    // This table is for looking stuff up by cache key - hash table of hash tables
+    protected final InvalidationTable invalidationTable = new InvalidationTable();
+    // This table keeps the running count of each object class
+    protected final ObjectClassTable objectClassTable = new ObjectClassTable();
+    // This structure is the general expiration tree
+    protected final ExpirationTree expirationTree = new ExpirationTree();
+
+    public CacheSegment()
+    {
+    }
+
+    public synchronized Object lookup(Object objectDescription)
+    {
+      ObjectRecord o = hashtable.lookup(objectDescription);
+      if (o == null)
+        return null;
+      return o.getObject();
+    }
+
+    public synchronized long getObjectCreationTime(Object objectDescription)
+    {
+      ObjectRecord o = hashtable.lookup(objectDescription);
+      if (o == null)
+        return -1L;
+      return o.getCreationTime();
+    }
+
+    public synchronized StringSet getObjectInvalidationKeys(Object objectDescription)
+    {
+      ObjectRecord o = hashtable.lookup(objectDescription);
+      if (o == null)
+        return null;
+      return o.getKeys();
+    }
+
+    public synchronized long getObjectExpirationTime(Object objectDescription)
+    {
+      ObjectRecord o = hashtable.lookup(objectDescription);
+      if (o == null)
+        return -1L;
+      return o.getObjectExpiration();
+    }
+
+    public synchronized void deleteObject(Object objectDescription)
+    {
+      ObjectRecord o = hashtable.lookup(objectDescription);
+      if (o != null)
+        deleteEntry(o);
+    }
+
+    public synchronized void setObject(Object objectDescription, Object object, StringSet keys, long timestamp, long objectSize)
+    {
+      // Replacing an existing object must not leave the old record behind in the other structures
+      ObjectRecord existing = hashtable.lookup(objectDescription);
+      if (existing != null)
+        deleteEntry(existing);
+      ObjectRecord record = new ObjectRecord(objectDescription,object,keys,timestamp,objectSize);
+      hashtable.add(record);
+      // Make an entry in the invalidation hash
+      invalidationTable.addKeys(keys,record);
+      // Object has no expiration or class yet, so don't add it to the expiration tree, or to the object
+      // class trees
+    }
+
+    public synchronized void setObjectExpiration(Object objectDescription, long expirationTime)
     {
-      objectClassTable.removeEntry(record);
+      // Find existing object
+      ObjectRecord existing = hashtable.lookup(objectDescription);
+      if (existing == null)
+        return;
+      if (existing.getObjectExpiration() != -1)
+      {
+        // Pull the object from the expiration tree
+        expirationTree.removeEntry(existing);
+      }
+      // Set the new expiration
+      existing.setObjectExpiration(expirationTime);
+      if (expirationTime != -1)
+      {
+        //Put the object back into the expiration tree
+        expirationTree.addEntry(existing);
+      }
+    }
+
+    /** Set an object's class, making it the most recently used object of the class.
+    *@return false if the object is not in the cache.
+    */
+    public synchronized boolean setObjectClass(Object objectDescription, String objectClass)
+    {
+      // Lookup the existing object class
+      ObjectRecord existing = hashtable.lookup(objectDescription);
+      if (existing == null)
+        return false;
+      if (existing.getObjectClass() != null)
+      {
+        // Pull the object from the object class expiration tree
+        objectClassTable.removeEntry(existing);
+      }
+      // Set the new object class & LRU value
+      existing.setObjectClass(objectClass);
+      if (objectClass != null)
+      {
+        // Put the object into the object class expiration tree
+        objectClassTable.addEntry(existing);
+      }
+      return true;
+    }
+
+    /** Find the LRU sequence number of the oldest object of a class in this segment.
+    *@param objectClass is the object class.
+    *@param protectedDescription is the description of an object to skip, or null.
+    *@return the sequence number, or Long.MAX_VALUE if there is no such object.
+    */
+    public synchronized long getOldestSequence(String objectClass, Object protectedDescription)
+    {
+      ObjectRecord oldestRecord = getOldestUnprotected(objectClass,protectedDescription);
+      if (oldestRecord == null)
+        return Long.MAX_VALUE;
+      return oldestRecord.getLRUSequence();
+    }
+
+    /** Evict the oldest object of a class in this segment, provided it is still the one expected.
+    *@param objectClass is the object class.
+    *@param protectedDescription is the description of an object to skip, or null.
+    *@param sequence is the expected LRU sequence number of the oldest object.
+    */
+    public synchronized void evictOldest(String objectClass, Object protectedDescription, long sequence)
+    {
+      ObjectRecord oldestRecord = getOldestUnprotected(objectClass,protectedDescription);
+      if (oldestRecord != null && oldestRecord.getLRUSequence() == sequence)
+      {
+        // Delete this entry from all places it lives
+        deleteEntry(oldestRecord);
+      }
+    }
+
+    protected ObjectRecord getOldestUnprotected(String objectClass, Object protectedDescription)
+    {
+      ObjectRecord oldestRecord = objectClassTable.getOldestEntry(objectClass);
+      if (oldestRecord != null && protectedDescription != null && oldestRecord.getObjectDescription().equals(protectedDescription))
+        oldestRecord = oldestRecord.getNextLRU();
+      return oldestRecord;
+    }
+
+    public synchronized void invalidateKeys(StringSet keys)
+    {
+      Iterator enum2 = keys.getKeys();
+      while (enum2.hasNext())
+      {
+        String invalidateKey = (String)enum2.next();
+        Iterator enum1 = invalidationTable.getObjectRecordsForKey(invalidateKey);
+        while (enum1.hasNext())
+        {
+          ObjectRecord record = (ObjectRecord)enum1.next();
+          hashtable.remove(record);
+          // Remove from object class table
+          if (record.getObjectClass() != null)
+          {
+            objectClassTable.removeEntry(record);
+          }
+          // Remove from expiration table
+          if (record.getExpirationTime() >= 0)
+          {
+            expirationTree.removeEntry(record);
+          }
+
+        }
+        // We do this last, because we are enumerating over something in here!
+        invalidationTable.removeKey(invalidateKey);
+      }
     }
-    // Remove from expiration table
-    if (record.getExpirationTime() >= 0)
+
+    public void expireRecords(long expireTime)
     {
-      expirationTree.removeEntry(record);
+      while (true)
+      {
+        // Do the synchronizer inside the loop.  Cleanup is slower,
+        // but the cache does not get locked for long periods.
+        synchronized (this)
+        {
+          // Get the oldest record, if any
+          ObjectRecord x = expirationTree.getOldestEntry();
+          if (x == null)
+            break;
+          if (x.getExpirationTime() > expireTime)
+            break;
+          // Remove the entry
+          deleteEntry(x);
+        }
+      }
     }
 
+    public synchronized long getObjectClassByteCount(String objectClass)
+    {
+      return objectClassTable.getCurrentByteCount(objectClass);
+    }
+
+    public synchronized int getObjectClassMemberCount(String objectClass)
+    {
+      return objectClassTable.getCurrentMemberCount(objectClass);
+    }
+
+    /** Delete a record from the cache. NOTE WELL: This method cannot be used
+    * if the data associated with the record is currently being processed with
+    * an enumeration (for example), since it modifies the structures that the
+    * enumeration is based on!
+    *@param record is the object record.
+    */
+    protected void deleteEntry(ObjectRecord record)
+    {
+      // Delete from the main cache
+      hashtable.remove(record);
+      // Delete from key hash
+      invalidationTable.removeObjectRecord(record);
+      // Remove from object class table
+      if (record.getObjectClass() != null)
+      {
+        objectClassTable.removeEntry(record);
+      }
+      // Remove from expiration table
+      if (record.getExpirationTime() >= 0)
+      {
+        expirationTree.removeEntry(record);
+      }
+
+    }
   }
 
   /** This class represents a cached object.  It has enough hooks to allow it
@@ -272,16 +512,19 @@ public class GeneralCache
     protected Object theObject;
     protected StringSet invalidationKeys;
     protected long creationTime;
+    protected long objectSize;
     protected long expirationTime = -1;
     protected String objectClass = null;
     protected ObjectRecord prevLRU = null;
     protected ObjectRecord nextLRU = null;
+    protected long lruSequence = 0L;
     protected ObjectRecord sameExpirationPrev = null;
     protected ObjectRecord sameExpirationNext = null;
 
-    public ObjectRecord(Object objectDescription, Object theObject, StringSet invalidationKeys, long creationTime)
+    public ObjectRecord(Object objectDescription, Object theObject, StringSet invalidationKeys, long creationTime, long objectSize)
     {
       this.creationTime = creationTime;
+      this.objectSize = objectSize;
       this.objectDescription = objectDescription;
       this.theObject = theObject;
       this.invalidationKeys = invalidationKeys;
@@ -292,6 +535,11 @@ public class GeneralCache
       return creationTime;
     }
 
+    public long getObjectSize()
+    {
+      return objectSize;
+    }
+
     public void setSameExpirationPrev(ObjectRecord x)
     {
       sameExpirationPrev = x;
@@ -337,6 +585,16 @@ public class GeneralCache
       return objectClass;
     }
 
+    public long getLRUSequence()
+    {
+      return lruSequence;
+    }
+
+    public void setLRUSequence(long sequence)
+    {
+      lruSequence = sequence;
+    }
+
     public ObjectRecord getPrevLRU()
     {
       return prevLRU;
@@ -524,6 +782,14 @@ public class GeneralCache
       return x.getCurrentMemberCount();
     }
 
+    public long getCurrentByteCount(String objectClassName)
+    {
+      ObjectClassRecord x = (ObjectClassRecord)hashtable.get(objectClassName);
+      if (x == null)
+        return 0L;
+      return x.getCurrentByteCount();
+    }
+
     public ObjectRecord getOldestEntry(String objectClassName)
     {
       ObjectClassRecord x = (ObjectClassRecord)hashtable.get(objectClassName);
@@ -539,6 +805,7 @@ public class GeneralCache
   protected class ObjectClassRecord
   {
     protected int currentMemberCount = 0;
+    protected long currentByteCount = 0L;
     protected ObjectRecord firstLRU = null;
     protected ObjectRecord lastLRU = null;
 
@@ -551,12 +818,26 @@ public class GeneralCache
       return currentMemberCount;
     }
 
+    public long getCurrentByteCount()
+    {
+      return currentByteCount;
+    }
+
     /** Call this ONLY if it is known that the entry exists in
     * the object class record!!!
     */
     public void removeEntry(ObjectRecord x)
     {
       currentMemberCount--;
+      currentByteCount -= x.getObjectSize();
+      synchronized (classTotals)
+      {
+        ClassTotal total = classTotals.get(x.getObjectClass());
+        total.memberCount--;
+        total.byteCount -= x.getObjectSize();
+        if (total.memberCount == 0)
+          classTotals.remove(x.getObjectClass());
+      }
       // Patch up everything
       ObjectRecord prev = x.getPrevLRU();
       ObjectRecord next = x.getNextLRU();
@@ -579,6 +860,20 @@ public class GeneralCache
     public void addEntry(ObjectRecord x)
     {
       currentMemberCount++;
+      currentByteCount += x.getObjectSize();
+      synchronized (classTotals)
+      {
+        ClassTotal total = classTotals.get(x.getObjectClass());
+        if (total == null)
+        {
+          total = new ClassTotal();
+          classTotals.put(x.getObjectClass(),total);
+        }
+        total.memberCount++;
+        total.byteCount += x.getObjectSize();
+        // Appended at the end of the list, so sequence numbers within a segment stay in LRU order
+        x.setLRUSequence(lruSequence++);
+      }
       x.setNextLRU(null);
       x.setPrevLRU(lastLRU);
       if (lastLRU == null)
@@ -598,6 +893,18 @@ public class GeneralCache
 
   }
 
+  /** The totals for one object class, across all segments.
+  */
+  protected static class ClassTotal
+  {
+    public int memberCount = 0;
+    public long byteCount = 0L;
+
+    public ClassTotal()
+    {
+    }
+  }
+
   /** This class represents a timed expiration tree.  Expiration
   * is used to order the nodes.
   */
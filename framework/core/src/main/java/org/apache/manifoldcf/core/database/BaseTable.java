@@ -173,6 +173,57 @@ public class BaseTable
     dbInterface.performDrop(tableName,invalidateKeys);
   }
 
+  /** Perform a table creation operation, for a table partitioned by the value of one column.
+  *@param columnMap is the map describing the columns and types, as for performCreate().
+  *@param partitionColumn is the name of the column whose value selects the partition.
+  *@param invalidateKeys are the cache keys that should be invalidated, if any.
+  */
+  protected void performCreatePartitioned(Map columnMap, String partitionColumn, StringSet invalidateKeys)
+    throws ManifoldCFException
+  {
+    dbInterface.performCreatePartitioned(tableName,columnMap,partitionColumn,invalidateKeys);
+  }
+
+  /** Check whether this table is partitioned.
+  *@return true if the table was created with performCreatePartitioned().
+  */
+  protected boolean isPartitioned()
+    throws ManifoldCFException
+  {
+    return dbInterface.isTablePartitioned(tableName);
+  }
+
+  /** Check whether a partition of this table exists.
+  *@param partitionName is the name of the partition.
+  *@return true if the partition exists.
+  */
+  protected boolean partitionExists(String partitionName)
+    throws ManifoldCFException
+  {
+    return dbInterface.doesPartitionExist(tableName,partitionName);
+  }
+
+  /** Add a partition to this table, for a single value of the partition column.
+  *@param partitionName is the name of the partition to create.
+  *@param partitionValue is the value of the partition column the partition holds.
+  *@param invalidateKeys are the cache keys that should be invalidated, if any.
+  */
+  protected void performCreatePartition(String partitionName, Long partitionValue, StringSet invalidateKeys)
+    throws ManifoldCFException
+  {
+    dbInterface.performCreatePartition(tableName,partitionName,partitionValue,invalidateKeys);
+  }
+
+  /** Drop a partition of this table, along with all the rows it holds.
+  *@param partitionName is the name of the partition to drop.
+  *@param invalidateKeys are the cache keys that should be invalidated, if any.
+  */
+  protected void performDropPartition(String partitionName, StringSet invalidateKeys)
+    throws ManifoldCFException
+  {
+    dbInterface.performDropPartition(tableName,partitionName,invalidateKeys);
+  }
+
   /** Get the current table schema.
   *@param invalidateKeys are the cache keys, if needed (null if no cache desired).
   *@param queryClass is the LRU class name against which this query would be cached,
@@ -692,6 +692,64 @@ public class DBInterfaceDerby extends Database implements IDBInterface
     performModification("DROP TABLE "+tableName,null,invalidateKeys);
   }
 
+  /** Check whether this database can partition a table by the values of a column.
+  *@return true if performCreatePartitioned(), performCreatePartition(), and performDropPartition()
+  * may be used.
+  */
+  public boolean supportsListPartitioning()
+    throws ManifoldCFException
+  {
+    return false;
+  }
+
+  /** Check whether an existing table is partitioned.
+  *@param tableName is the name of the table.
+  *@return true if the table was created with performCreatePartitioned().
+  */
+  public boolean isTablePartitioned(String tableName)
+    throws ManifoldCFException
+  {
+    return false;
+  }
+
+  /** Check whether a partition of a partitioned table exists.
+  *@param tableName is the name of the partitioned table.
+  *@param partitionName is the name of the partition.
+  *@return true if the partition exists.
+  */
+  public boolean doesPartitionExist(String tableName, String partitionName)
+    throws ManifoldCFException
+  {
+    return false;
+  }
+
+  /** Perform a table creation operation, for a table whose rows are partitioned by the value of
+  * one column.  Not supported by this database.
+  */
+  public void performCreatePartitioned(String tableName, Map<String,ColumnDescription> columnMap,
+    String partitionColumn, StringSet invalidateKeys)
+    throws ManifoldCFException
+  {
+    throw new ManifoldCFException("Partitioned tables are not supported by this database");
+  }
+
+  /** Add a partition to a partitioned table.  Not supported by this database.
+  */
+  public void performCreatePartition(String tableName, String partitionName, Long partitionValue,
+    StringSet invalidateKeys)
+    throws ManifoldCFException
+  {
+    throw new ManifoldCFException("Partitioned tables are not supported by this database");
+  }
+
+  /** Drop a partition of a partitioned table.  Not supported by this database.
+  */
+  public void performDropPartition(String tableName, String partitionName, StringSet invalidateKeys)
+    throws ManifoldCFException
+  {
+    throw new ManifoldCFException("Partitioned tables are not supported by this database");
+  }
+
   /** Create user and database.
   *@param adminUserName is the admin user name.
   *@param adminPassword is the admin password.
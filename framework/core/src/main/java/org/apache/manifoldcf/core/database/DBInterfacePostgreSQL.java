@@ -519,6 +519,170 @@ public class DBInterfacePostgreSQL extends Database implements IDBInterface
     performModification("DROP TABLE "+tableName,null,invalidateKeys);
   }
 
+  /** Check whether this database can partition a table by the values of a column.
+  * Declarative list partitioning with a default partition first appeared in PostgreSQL 11.
+  *@return true if performCreatePartitioned(), performCreatePartition(), and performDropPartition()
+  * may be used.
+  */
+  @Override
+  public boolean supportsListPartitioning()
+    throws ManifoldCFException
+  {
+    IResultSet set = performQuery("SELECT current_setting('server_version_num') AS versionnum",null,null,null);
+    if (set.getRowCount() == 0)
+      return false;
+    try
+    {
+      return Integer.parseInt(set.getRow(0).getValue("versionnum").toString()) >= 110000;
+    }
+    catch (NumberFormatException e)
+    {
+      return false;
+    }
+  }
+
+  /** Check whether an existing table is partitioned.
+  *@param tableName is the name of the table.
+  *@return true if the table was created with performCreatePartitioned().
+  */
+  @Override
+  public boolean isTablePartitioned(String tableName)
+    throws ManifoldCFException
+  {
+    List list = new ArrayList();
+    list.add(tableName);
+    IResultSet set = performQuery("SELECT relkind FROM pg_class WHERE relname=? AND relkind='p'",list,null,null);
+    return set.getRowCount() > 0;
+  }
+
+  /** Check whether a partition of a partitioned table exists.
+  *@param tableName is the name of the partitioned table.
+  *@param partitionName is the name of the partition.
+  *@return true if the partition exists.
+  */
+  @Override
+  public boolean doesPartitionExist(String tableName, String partitionName)
+    throws ManifoldCFException
+  {
+    List list = new ArrayList();
+    list.add(tableName);
+    list.add(partitionName);
+    IResultSet set = performQuery("SELECT t1.relname FROM pg_inherits t0, pg_class t1, pg_class t2 WHERE t0.inhrelid=t1.oid AND "+
+      "t0.inhparent=t2.oid AND t2.relname=? AND t1.relname=?",list,null,null);
+    return set.getRowCount() > 0;
+  }
+
+  /** Perform a table creation operation, for a table whose rows are partitioned by the value of
+  * one column.  Rows whose value has no partition of its own are kept in a default partition.
+  *@param tableName is the name of the table to create.
+  *@param columnMap is the map describing the columns and types, as for performCreate().  The
+  * primary key is extended to include the partition column, and no references may be described.
+  *@param partitionColumn is the name of the column whose value selects the partition.
+  *@param invalidateKeys are the cache keys that should be invalidated, if any.
+  */
+  @Override
+  public void performCreatePartitioned(String tableName, Map<String,ColumnDescription> columnMap,
+    String partitionColumn, StringSet invalidateKeys)
+    throws ManifoldCFException
+  {
+    StringBuilder queryBuffer = new StringBuilder("CREATE TABLE ");
+    queryBuffer.append(tableName);
+    queryBuffer.append('(');
+    String primaryKey = null;
+    Iterator<String> iter = columnMap.keySet().iterator();
+    while (iter.hasNext())
+    {
+      String columnName = iter.next();
+      ColumnDescription cd = columnMap.get(columnName);
+      if (cd.getReferenceTable() != null)
+        throw new ManifoldCFException("Partitioned table '"+tableName+"' cannot have references");
+      // A partitioned table's primary key must include the partition column, so it can't go inline
+      if (cd.getIsPrimaryKey())
+      {
+        primaryKey = columnName;
+        cd = new ColumnDescription(cd.getTypeString(),false,cd.getIsNull(),null,null,false);
+      }
+      appendDescription(queryBuffer,columnName,cd,false);
+      queryBuffer.append(',');
+    }
+    queryBuffer.append("PRIMARY KEY(");
+    if (primaryKey != null && !primaryKey.equals(partitionColumn))
+      queryBuffer.append(primaryKey).append(',');
+    queryBuffer.append(partitionColumn);
+    queryBuffer.append(")) PARTITION BY LIST(");
+    queryBuffer.append(partitionColumn);
+    queryBuffer.append(')');
+
+    beginTransaction(TRANSACTION_ENCLOSING);
+    try
+    {
+      performModification(queryBuffer.toString(),null,invalidateKeys);
+      performModification("CREATE TABLE "+tableName+"_default PARTITION OF "+tableName+" DEFAULT",null,invalidateKeys);
+    }
+    catch (ManifoldCFException e)
+    {
+      signalRollback();
+      throw e;
+    }
+    catch (Error e)
+    {
+      signalRollback();
+      throw e;
+    }
+    finally
+    {
+      endTransaction();
+    }
+  }
+
+  /** Add a partition to a partitioned table, for a single value of the partition column.
+  * The value must not yet have any rows in the table.
+  *@param tableName is the name of the partitioned table.
+  *@param partitionName is the name of the partition to create.
+  *@param partitionValue is the value of the partition column the partition holds.
+  *@param invalidateKeys are the cache keys that should be invalidated, if any.
+  */
+  @Override
+  public void performCreatePartition(String tableName, String partitionName, Long partitionValue,
+    StringSet invalidateKeys)
+    throws ManifoldCFException
+  {
+    // Partition bounds can't be parameters, but the value is a number so a literal is safe
+    performModification("CREATE TABLE "+partitionName+" PARTITION OF "+tableName+" FOR VALUES IN ("+
+      partitionValue.toString()+")",null,invalidateKeys);
+  }
+
+  /** Drop a partition of a partitioned table, along with all the rows it holds.
+  *@param tableName is the name of the partitioned table.
+  *@param partitionName is the name of the partition to drop.
+  *@param invalidateKeys are the cache keys that should be invalidated, if any.
+  */
+  @Override
+  public void performDropPartition(String tableName, String partitionName, StringSet invalidateKeys)
+    throws ManifoldCFException
+  {
+    beginTransaction(TRANSACTION_ENCLOSING);
+    try
+    {
+      performModification("ALTER TABLE "+tableName+" DETACH PARTITION "+partitionName,null,invalidateKeys);
+      performModification("DROP TABLE "+partitionName,null,invalidateKeys);
+    }
+    catch (ManifoldCFException e)
+    {
+      signalRollback();
+      throw e;
+    }
+    catch (Error e)
+    {
+      signalRollback();
+      throw e;
+    }
+    finally
+    {
+      endTransaction();
+    }
+  }
+
   /** Create user and database.
   *@param adminUserName is the admin user name.
   *@param adminPassword is the admin password.
@@ -55,6 +55,7 @@ public abstract class Database
   protected final long maxQueryTime;
   protected final boolean debug;
   protected final int maxDBConnections;
+  protected final int maxQueryThreads;
   
   protected static Random random = new Random();
 
@@ -73,6 +74,7 @@ public abstract class Database
     this.maxQueryTime = ((long)LockManagerFactory.getIntProperty(context, ManifoldCF.databaseQueryMaxTimeProperty,60)) * 1000L;
     this.debug = LockManagerFactory.getBooleanProperty(context, ManifoldCF.databaseConnectionTrackingProperty, false);
     this.maxDBConnections = LockManagerFactory.getIntProperty(context, ManifoldCF.databaseHandleMaxcountProperty, 50);
+    this.maxQueryThreads = LockManagerFactory.getIntProperty(context, ManifoldCF.databaseQueryThreadsProperty, maxDBConnections);
 
     this.cacheManager = CacheManagerFactory.make(context);
   }
@@ -645,27 +647,25 @@ public abstract class Database
     }
   }
   
-  /** Thread used to execute queries.  An instance of this thread is spun up every time a query is executed.  This is necessary because JDBC does not
-  * guarantee interruptability, and the Postgresql JDBC driver unfortunately eats all thread interrupts.  So, we fire up a thread to do each interaction with
+  /** Task used to execute queries.  Each query is handed to a pooled thread (see QueryExecutorPool).  This is necessary because JDBC does not
+  * guarantee interruptability, and the Postgresql JDBC driver unfortunately eats all thread interrupts.  So, we use a separate thread to do each interaction with
   * the database server, thus insuring that the owning thread remains interruptable and will therefore not block shutdown.
   */
-  protected class ExecuteQueryThread extends Thread
+  protected class ExecuteQueryTask extends QueryExecutorPool.QueryTask
   {
-    protected Connection connection;
-    protected String query;
-    protected List params;
-    protected boolean bResults;
-    protected int maxResults;
-    protected ResultSpecification spec;
-    protected ILimitChecker returnLimit;
-    protected Throwable exception = null;
+    protected final Connection connection;
+    protected final String query;
+    protected final List params;
+    protected final boolean bResults;
+    protected final int maxResults;
+    protected final ResultSpecification spec;
+    protected final ILimitChecker returnLimit;
     protected IResultSet rval = null;
 
-    public ExecuteQueryThread(Connection connection, String query, List params, boolean bResults, int maxResults,
+    public ExecuteQueryTask(Connection connection, String query, List params, boolean bResults, int maxResults,
       ResultSpecification spec, ILimitChecker returnLimit)
     {
       super();
-      setDaemon(true);
       this.connection = connection;
       this.query = query;
       this.params = params;
@@ -675,24 +675,18 @@ public abstract class Database
       this.returnLimit = returnLimit;
     }
 
-    public void run()
+    @Override
+    protected void doWork()
+      throws Throwable
     {
-      try
-      {
-        // execute using the passed connection handle
-        rval = execute(connection,query,params,bResults,maxResults,spec,returnLimit);
-      }
-      catch (Throwable e)
-      {
-        this.exception = e;
-      }
+      // execute using the passed connection handle
+      rval = execute(connection,query,params,bResults,maxResults,spec,returnLimit);
     }
 
     public IResultSet finishUp()
-      throws ManifoldCFException, InterruptedException
+      throws ManifoldCFException
     {
-      join();
-      Throwable thr = exception;
+      Throwable thr = getException();
       if (thr != null)
       {
         if (thr instanceof ManifoldCFException)
@@ -712,7 +706,7 @@ public abstract class Database
     }
   }
 
-  /** Do query execution via a subthread, so the primary thread can be interrupted */
+  /** Do query execution via a pooled subthread, so the primary thread can be interrupted */
   protected IResultSet executeViaThread(Connection connection, String query, List params, boolean bResults, int maxResults,
     ResultSpecification spec, ILimitChecker returnLimit)
     throws ManifoldCFException
@@ -721,16 +715,15 @@ public abstract class Database
       // This probably means that the thread was interrupted and the connection was abandoned.  Just return null.
       return null;
 
-    ExecuteQueryThread t = new ExecuteQueryThread(connection,query,params,bResults,maxResults,spec,returnLimit);
+    ExecuteQueryTask t = new ExecuteQueryTask(connection,query,params,bResults,maxResults,spec,returnLimit);
     try
     {
-      t.start();
+      // If we're interrupted, the pool interrupts and abandons the executing thread - but we can't wait for it...
+      QueryExecutorPool.execute(t,maxQueryThreads);
       return t.finishUp();
     }
     catch (InterruptedException e)
     {
-      // Try to kill the background thread - but we can't wait for it...
-      t.interrupt();
       // VERY IMPORTANT: Try to close the connection, so nothing is left dangling.  The connection will be abandoned anyhow.
       try
       {
@@ -0,0 +1,308 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.core.database;
+
+import java.util.*;
+
+/** This class maintains a pool of reusable threads that execute database queries on behalf
+* of other threads.  Queries are run in a separate thread because JDBC does not guarantee
+* interruptability, and the Postgresql JDBC driver unfortunately eats all thread interrupts.
+* Rather than create a new thread for every query, we keep a bounded number of idle threads around
+* and hand queries to them.
+*
+* A thread that is running a query on behalf of a caller that is interrupted is abandoned: it is
+* never returned to the pool, and exits as soon as its current query completes.  If there are no idle
+* threads available, a new one is always created, so acquiring a thread never blocks.
+*/
+public class QueryExecutorPool
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** Amount of time an idle thread will wait for work before exiting, in milliseconds */
+  protected final static long idleTimeout = 60000L;
+
+  /** Idle threads, available for reuse */
+  protected final static List<QueryExecutorThread> idleThreads = new ArrayList<QueryExecutorThread>();
+
+  /** Thread counter, for naming */
+  protected static int threadCounter = 0;
+
+  private QueryExecutorPool()
+  {
+  }
+
+  /** Execute a task in a pooled thread, waiting for it to complete.
+  * If the calling thread is interrupted, the pooled thread is interrupted and abandoned,
+  * and an InterruptedException is thrown.  The task itself will continue to run to completion
+  * in the background.
+  *@param task is the task to run.
+  *@param maxIdleThreads is the maximum number of idle threads to retain in the pool.
+  */
+  public static void execute(QueryTask task, int maxIdleThreads)
+    throws InterruptedException
+  {
+    QueryExecutorThread t = acquireThread();
+    t.assignTask(task);
+    try
+    {
+      task.waitForCompletion();
+    }
+    catch (InterruptedException e)
+    {
+      // Try to kill the executing thread - but we can't wait for it...
+      t.abandon();
+      throw e;
+    }
+    releaseThread(t,maxIdleThreads);
+  }
+
+  /** Shut down the pool, causing all idle threads to exit.
+  * Threads that are currently busy will exit when their current task completes.
+  */
+  public static void releaseAll()
+  {
+    synchronized (idleThreads)
+    {
+      for (QueryExecutorThread t : idleThreads)
+      {
+        t.abandon();
+      }
+      idleThreads.clear();
+    }
+  }
+
+  /** Get the number of idle threads currently in the pool.
+  */
+  public static int getIdleThreadCount()
+  {
+    synchronized (idleThreads)
+    {
+      return idleThreads.size();
+    }
+  }
+
+  /** Obtain a thread, either from the idle list or by creating a new one.
+  */
+  protected static QueryExecutorThread acquireThread()
+  {
+    synchronized (idleThreads)
+    {
+      while (idleThreads.size() > 0)
+      {
+        QueryExecutorThread t = idleThreads.remove(idleThreads.size()-1);
+        // The thread may have timed out while we weren't looking
+        if (t.reserve())
+          return t;
+      }
+      threadCounter++;
+    }
+    QueryExecutorThread t = new QueryExecutorThread("Database query thread "+Integer.toString(threadCounter));
+    t.reserve();
+    t.start();
+    return t;
+  }
+
+  /** Return a thread to the idle list, unless the list is already full, in which case the
+  * thread is told to exit.
+  */
+  protected static void releaseThread(QueryExecutorThread t, int maxIdleThreads)
+  {
+    synchronized (idleThreads)
+    {
+      if (idleThreads.size() < maxIdleThreads)
+      {
+        idleThreads.add(t);
+        return;
+      }
+    }
+    t.abandon();
+  }
+
+  /** Remove a thread from the idle list.  Called by a thread that is exiting on its own.
+  */
+  protected static void removeIdleThread(QueryExecutorThread t)
+  {
+    synchronized (idleThreads)
+    {
+      idleThreads.remove(t);
+    }
+  }
+
+  /** A unit of work to be performed by a pooled thread.
+  */
+  public static abstract class QueryTask
+  {
+    protected boolean done = false;
+    protected Throwable exception = null;
+
+    public QueryTask()
+    {
+    }
+
+    /** Perform the work.  Called in the pooled thread.
+    */
+    protected abstract void doWork()
+      throws Throwable;
+
+    /** Run the task, recording any exception.
+    */
+    protected void perform()
+    {
+      try
+      {
+        doWork();
+      }
+      catch (Throwable e)
+      {
+        exception = e;
+      }
+    }
+
+    /** Signal completion to the waiting caller.
+    */
+    protected synchronized void signalDone()
+    {
+      done = true;
+      notifyAll();
+    }
+
+    /** Wait for the task to complete.
+    */
+    protected synchronized void waitForCompletion()
+      throws InterruptedException
+    {
+      while (!done)
+      {
+        wait();
+      }
+    }
+
+    /** Get the exception thrown by the task, if any.
+    */
+    public Throwable getException()
+    {
+      return exception;
+    }
+  }
+
+  /** A pooled thread.  Each thread runs one task at a time, and waits on itself for the next one.
+  */
+  protected static class QueryExecutorThread extends Thread
+  {
+    /** The task to run next, or null if idle */
+    protected QueryTask task = null;
+    /** True if this thread has been handed out, and will receive a task */
+    protected boolean reserved = false;
+    /** True if this thread should exit at the first opportunity */
+    protected boolean abandoned = false;
+
+    public QueryExecutorThread(String name)
+    {
+      super();
+      setName(name);
+      setDaemon(true);
+    }
+
+    /** Reserve this thread for a caller.
+    *@return false if the thread has already exited or been abandoned.
+    */
+    public synchronized boolean reserve()
+    {
+      if (abandoned)
+        return false;
+      reserved = true;
+      return true;
+    }
+
+    /** Hand this thread a task to run.
+    */
+    public synchronized void assignTask(QueryTask task)
+    {
+      this.task = task;
+      notifyAll();
+    }
+
+    /** Tell the thread to exit once it is done with its current task, and interrupt it.
+    */
+    public void abandon()
+    {
+      synchronized (this)
+      {
+        abandoned = true;
+        notifyAll();
+      }
+      interrupt();
+    }
+
+    public void run()
+    {
+      while (true)
+      {
+        QueryTask currentTask;
+        synchronized (this)
+        {
+          long waitStart = System.currentTimeMillis();
+          while (task == null && !abandoned)
+          {
+            long remaining = idleTimeout - (System.currentTimeMillis() - waitStart);
+            if (!reserved && remaining <= 0L)
+            {
+              abandoned = true;
+              break;
+            }
+            try
+            {
+              // Reserved threads must wait for their task regardless of timeout
+              wait(reserved?idleTimeout:remaining);
+            }
+            catch (InterruptedException e)
+            {
+              // Stray interrupts from a previous query are ignored here; abandonment is signalled by flag
+            }
+          }
+          if (task == null)
+          {
+            // Abandoned, or timed out
+            break;
+          }
+          currentTask = task;
+          task = null;
+        }
+
+        // Clear any interrupt left over from the last task before starting this one
+        Thread.interrupted();
+        currentTask.perform();
+
+        boolean exitNow;
+        synchronized (this)
+        {
+          // Must no longer be reserved before the caller learns we are done, since the caller
+          // may immediately return this thread to the pool
+          reserved = false;
+          exitNow = abandoned;
+        }
+        currentTask.signalDone();
+        if (exitNow)
+          break;
+      }
+      removeIdleThread(this);
+    }
+  }
+
+}
@@ -21,7 +21,7 @@ package org.apache.manifoldcf.core.database;
 import org.apache.manifoldcf.core.interfaces.*;
 import java.util.*;
 
-public class RSet implements IResultSet
+public class RSet implements IResultSet, ISizeEstimate
 {
   public static final String _rcsid = "@(#)$Id: RSet.java 988245 2010-08-23 18:39:35Z kwright $";
 
@@ -73,4 +73,30 @@ public class RSet implements IResultSet
     return rval;
   }
 
+  /** Estimate the memory occupied by this resultset.
+  * This is approximate, and counts only strings, and fixed overheads for everything else.
+  *@return the estimated size, in bytes.
+  */
+  public long getSizeEstimate()
+  {
+    long rval = 64L;
+    for (IResultRow row : rows)
+    {
+      rval += 64L;
+      Iterator<String> iter = row.getColumns();
+      while (iter.hasNext())
+      {
+        String columnName = iter.next();
+        Object value = row.getValue(columnName);
+        // Map entry overhead
+        rval += 32L;
+        if (value instanceof String)
+          rval += 40L + 2L * (long)((String)value).length();
+        else if (value != null)
+          rval += 16L;
+      }
+    }
+    return rval;
+  }
+
 }
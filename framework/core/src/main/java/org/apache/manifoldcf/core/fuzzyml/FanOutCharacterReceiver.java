@@ -0,0 +1,104 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.core.fuzzyml;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import java.io.*;
+
+/** This class hands each character it receives to several single-character receivers, so that
+* one decode of a stream can drive more than one parser.  A receiver that signals it is done
+* gets no further characters, and is not finished up; the whole fan-out is done when all
+* of its receivers are.
+*/
+public class FanOutCharacterReceiver extends SingleCharacterReceiver
+{
+  protected final SingleCharacterReceiver[] receivers;
+  protected final boolean[] done;
+  protected int activeCount;
+
+  /** Constructor.
+  *@param receivers are the receivers that should each see the whole stream.
+  */
+  public FanOutCharacterReceiver(SingleCharacterReceiver[] receivers)
+  {
+    super(65536);
+    this.receivers = receivers;
+    this.done = new boolean[receivers.length];
+    this.activeCount = receivers.length;
+  }
+
+  /** Receive a character.
+  *@return true if all receivers are done.
+  */
+  @Override
+  public boolean dealWithCharacter(char c)
+    throws IOException, ManifoldCFException
+  {
+    for (int i = 0; i < receivers.length; i++)
+    {
+      if (!done[i] && receivers[i].dealWithCharacter(c))
+      {
+        done[i] = true;
+        activeCount--;
+      }
+    }
+    return activeCount == 0;
+  }
+
+  /** Receive a chunk of characters, handing the whole chunk to each receiver in turn.
+  *@return -1 if some receiver is not yet done, otherwise the offset just past the character
+  * after which the last receiver was done.
+  */
+  @Override
+  public int dealWithCharacters(char[] buffer, int offset, int len)
+    throws IOException, ManifoldCFException
+  {
+    int rval = -1;
+    for (int i = 0; i < receivers.length; i++)
+    {
+      if (!done[i])
+      {
+        int next = receivers[i].dealWithCharacters(buffer,offset,len);
+        if (next != -1)
+        {
+          done[i] = true;
+          activeCount--;
+          if (next > rval)
+            rval = next;
+        }
+      }
+    }
+    return (activeCount == 0)?rval:-1;
+  }
+
+  /** Finish up all receivers that are still active.
+  */
+  @Override
+  public void finishUp()
+    throws ManifoldCFException
+  {
+    for (int i = 0; i < receivers.length; i++)
+    {
+      if (!done[i])
+        receivers[i].finishUp();
+    }
+    super.finishUp();
+  }
+
+}
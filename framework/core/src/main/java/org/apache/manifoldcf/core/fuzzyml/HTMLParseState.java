@@ -160,4 +160,16 @@ public class HTMLParseState extends TagParseState
     return super.noteEscapedCharacter(thisChar);
   }
 
+  /** This method gets called for a run of characters that are found within an
+  * escape block, e.g. CDATA.
+  *@return -1 to continue, or the offset just past the character after which processing
+  * should halt.
+  */
+  @Override
+  protected final int noteEscapedCharacters(char[] buffer, int offset, int len)
+    throws ManifoldCFException
+  {
+    return super.noteEscapedCharacters(buffer,offset,len);
+  }
+
 }
@@ -46,15 +46,32 @@ public abstract class SingleCharacterReceiver extends CharacterReceiver
       int amt = reader.read(charBuffer);
       if (amt == -1)
         return false;
-      for (int i = 0; i < amt; i++)
-      {
-        if (dealWithCharacter(charBuffer[i]))
-        {
-          return dealWithRemainder(charBuffer, i+1, amt-(i+1), reader);
-        }
-      }
+      int next = dealWithCharacters(charBuffer, 0, amt);
+      if (next != -1)
+        return dealWithRemainder(charBuffer, next, amt-next, reader);
     }
   }
+
+  /** Receive a chunk of characters.  The default calls dealWithCharacter() for each one.
+  * Override this to handle runs of characters together; an override must have exactly the
+  * same effect as the character-at-a-time calls would.
+  *@param buffer is the buffer holding the characters.
+  *@param offset is the offset within the buffer of the first character.
+  *@param len is the number of characters.
+  *@return -1 if all characters were consumed and we are not done, otherwise the offset
+  * just past the character after which we were done.
+  */
+  public int dealWithCharacters(char[] buffer, int offset, int len)
+    throws IOException, ManifoldCFException
+  {
+    int end = offset + len;
+    for (int i = offset; i < end; i++)
+    {
+      if (dealWithCharacter(buffer[i]))
+        return i+1;
+    }
+    return -1;
+  }
   
   /** Receive a byte.
   * @return true if done.
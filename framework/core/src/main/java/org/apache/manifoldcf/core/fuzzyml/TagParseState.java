@@ -102,6 +102,15 @@ public class TagParseState extends SingleCharacterReceiver
   /** Buffer of characters seen after ampersand. */
   protected StringBuilder ampBuffer = new StringBuilder();
 
+  /** Size of the name cache; must be a power of two */
+  protected static final int NAME_CACHE_SIZE = 256;
+  /** Longest name we bother to cache */
+  protected static final int MAX_CACHED_NAME_LENGTH = 32;
+
+  /** Tag and attribute names seen recently, so that the same few names are not
+  * allocated over and over. */
+  protected final String[] nameCache = new String[NAME_CACHE_SIZE];
+
   protected static final Map<String,String> mapLookup = new HashMap<String,String>();
   static
   {
@@ -142,7 +151,7 @@ public class TagParseState extends SingleCharacterReceiver
         // Output current token, if any
         if (currentTagNameBuffer != null && currentTagNameBuffer.length() > 0)
         {
-          currentTagName = currentTagNameBuffer.toString();
+          currentTagName = makeName(currentTagNameBuffer);
           if (noteBTagToken(currentTagName))
             return true;
           currentTagName = null;
@@ -194,7 +203,7 @@ public class TagParseState extends SingleCharacterReceiver
         {
           if (currentTagNameBuffer != null && currentTagNameBuffer.length() > 0)
           {
-            currentTagName = currentTagNameBuffer.toString();
+            currentTagName = makeName(currentTagNameBuffer);
             if (noteBTagToken(currentTagName))
               return true;
             currentTagNameBuffer = null;
@@ -207,7 +216,7 @@ public class TagParseState extends SingleCharacterReceiver
         {
           if (currentTagNameBuffer != null && currentTagNameBuffer.length() > 0)
           {
-            currentTagName = currentTagNameBuffer.toString();
+            currentTagName = makeName(currentTagNameBuffer);
             if (noteBTagToken(currentTagName))
               return true;
             currentTagNameBuffer = null;
@@ -353,7 +362,7 @@ public class TagParseState extends SingleCharacterReceiver
         if (currentTagNameBuffer.length() > 0)
         {
           // Done with the tag name!
-          currentTagName = currentTagNameBuffer.toString();
+          currentTagName = makeName(currentTagNameBuffer);
           currentTagNameBuffer = null;
           currentAttrList = new ArrayList<AttrNameValue>();
           currentState = TAGPARSESTATE_IN_QTAG_ATTR_NAME;
@@ -364,7 +373,7 @@ public class TagParseState extends SingleCharacterReceiver
       {
         if (currentTagNameBuffer.length() > 0)
         {
-          currentTagName = currentTagNameBuffer.toString();
+          currentTagName = makeName(currentTagNameBuffer);
           currentTagNameBuffer = null;
           currentAttrList = new ArrayList<AttrNameValue>();
           currentState = TAGPARSESTATE_IN_QTAG_SAW_QUESTION;
@@ -381,7 +390,7 @@ public class TagParseState extends SingleCharacterReceiver
       {
         if (currentTagNameBuffer.length() > 0)
         {
-          currentTagName = currentTagNameBuffer.toString();
+          currentTagName = makeName(currentTagNameBuffer);
           currentTagNameBuffer = null;
           currentAttrList = new ArrayList<AttrNameValue>();
         }
@@ -404,14 +413,14 @@ public class TagParseState extends SingleCharacterReceiver
         if (currentTagNameBuffer.length() > 0)
         {
           // Done with the bracket token!
-          currentTagName = currentTagNameBuffer.toString();
+          currentTagName = makeName(currentTagNameBuffer);
           currentTagNameBuffer = null;
           currentState = TAGPARSESTATE_NEED_FINAL_BRACKET;
         }
       }
       else if (thisChar == '[')
       {
-        currentTagName = currentTagNameBuffer.toString();
+        currentTagName = makeName(currentTagNameBuffer);
         currentTagNameBuffer = null;
         currentState = TAGPARSESTATE_IN_CDATA_BODY;
         if (noteEscaped(currentTagName))
@@ -438,7 +447,7 @@ public class TagParseState extends SingleCharacterReceiver
         if (currentTagNameBuffer.length() > 0)
         {
           // Done with bang token
-          currentTagName = currentTagNameBuffer.toString();
+          currentTagName = makeName(currentTagNameBuffer);
           currentTagNameBuffer = null;
           if (noteBTag(currentTagName))
             return true;
@@ -449,7 +458,7 @@ public class TagParseState extends SingleCharacterReceiver
       else if (thisChar == '>')
       {
         // Also done, but signal end too.
-        currentTagName = currentTagNameBuffer.toString();
+        currentTagName = makeName(currentTagNameBuffer);
         currentTagNameBuffer = null;
         if (noteBTag(currentTagName))
           return true;
@@ -469,7 +478,7 @@ public class TagParseState extends SingleCharacterReceiver
         if (currentTagNameBuffer.length() > 0)
         {
           // Done with the tag name!
-          currentTagName = currentTagNameBuffer.toString();
+          currentTagName = makeName(currentTagNameBuffer);
           currentTagNameBuffer = null;
           currentAttrList = new ArrayList<AttrNameValue>();
           currentState = TAGPARSESTATE_IN_ATTR_NAME;
@@ -480,7 +489,7 @@ public class TagParseState extends SingleCharacterReceiver
       {
         if (currentTagNameBuffer.length() > 0)
         {
-          currentTagName = currentTagNameBuffer.toString();
+          currentTagName = makeName(currentTagNameBuffer);
           currentTagNameBuffer = null;
           currentAttrList = new ArrayList<AttrNameValue>();
           currentState = TAGPARSESTATE_IN_TAG_SAW_SLASH;
@@ -497,7 +506,7 @@ public class TagParseState extends SingleCharacterReceiver
       {
         if (currentTagNameBuffer.length() > 0)
         {
-          currentTagName = currentTagNameBuffer.toString();
+          currentTagName = makeName(currentTagNameBuffer);
           currentTagNameBuffer = null;
           currentAttrList = new ArrayList<AttrNameValue>();
         }
@@ -520,7 +529,7 @@ public class TagParseState extends SingleCharacterReceiver
         if (currentAttrNameBuffer.length() > 0)
         {
           // Done with attr name!
-          currentAttrName = currentAttrNameBuffer.toString();
+          currentAttrName = makeName(currentAttrNameBuffer);
           currentAttrNameBuffer = null;
           currentState = TAGPARSESTATE_IN_QTAG_ATTR_LOOKING_FOR_VALUE;
         }
@@ -529,7 +538,7 @@ public class TagParseState extends SingleCharacterReceiver
       {
         if (currentAttrNameBuffer.length() > 0)
         {
-          currentAttrName = currentAttrNameBuffer.toString();
+          currentAttrName = makeName(currentAttrNameBuffer);
           currentAttrNameBuffer = null;
           currentState = TAGPARSESTATE_IN_QTAG_ATTR_VALUE;
           currentValueBuffer = newBuffer();
@@ -539,7 +548,7 @@ public class TagParseState extends SingleCharacterReceiver
       {
         if (currentAttrNameBuffer.length() > 0)
         {
-          currentAttrName = currentAttrNameBuffer.toString();
+          currentAttrName = makeName(currentAttrNameBuffer);
           currentAttrNameBuffer = null;
         }
         if (currentAttrName != null)
@@ -555,7 +564,7 @@ public class TagParseState extends SingleCharacterReceiver
       {
         if (currentAttrNameBuffer.length() > 0)
         {
-          currentAttrName = currentAttrNameBuffer.toString();
+          currentAttrName = makeName(currentAttrNameBuffer);
           currentAttrNameBuffer = null;
         }
         if (currentAttrName != null)
@@ -579,7 +588,7 @@ public class TagParseState extends SingleCharacterReceiver
         if (currentAttrNameBuffer.length() > 0)
         {
           // Done with attr name!
-          currentAttrName = currentAttrNameBuffer.toString();
+          currentAttrName = makeName(currentAttrNameBuffer);
           currentAttrNameBuffer = null;
           currentState = TAGPARSESTATE_IN_ATTR_LOOKING_FOR_VALUE;
         }
@@ -588,7 +597,7 @@ public class TagParseState extends SingleCharacterReceiver
       {
         if (currentAttrNameBuffer.length() > 0)
         {
-          currentAttrName = currentAttrNameBuffer.toString();
+          currentAttrName = makeName(currentAttrNameBuffer);
           currentAttrNameBuffer = null;
           currentState = TAGPARSESTATE_IN_ATTR_VALUE;
           currentValueBuffer = newBuffer();
@@ -598,7 +607,7 @@ public class TagParseState extends SingleCharacterReceiver
       {
         if (currentAttrNameBuffer.length() > 0)
         {
-          currentAttrName = currentAttrNameBuffer.toString();
+          currentAttrName = makeName(currentAttrNameBuffer);
           currentAttrNameBuffer = null;
         }
         if (currentAttrName != null)
@@ -614,7 +623,7 @@ public class TagParseState extends SingleCharacterReceiver
       {
         if (currentAttrNameBuffer.length() > 0)
         {
-          currentAttrName = currentAttrNameBuffer.toString();
+          currentAttrName = makeName(currentAttrNameBuffer);
           currentAttrNameBuffer = null;
         }
         if (currentAttrName != null)
@@ -747,7 +756,7 @@ public class TagParseState extends SingleCharacterReceiver
         if (currentTagNameBuffer != null && currentTagNameBuffer.length() > 0)
         {
           // Done with the tag name!
-          currentTagName = currentTagNameBuffer.toString();
+          currentTagName = makeName(currentTagNameBuffer);
           currentTagNameBuffer = null;
         }
       }
@@ -755,7 +764,7 @@ public class TagParseState extends SingleCharacterReceiver
       {
         if (currentTagNameBuffer != null && currentTagNameBuffer.length() > 0)
         {
-          currentTagName = currentTagNameBuffer.toString();
+          currentTagName = makeName(currentTagNameBuffer);
           currentTagNameBuffer = null;
         }
         if (currentTagName != null)
@@ -890,6 +899,135 @@ public class TagParseState extends SingleCharacterReceiver
     return false;
   }
 
+  /** Deal with a chunk of characters.  Runs of characters that cannot change the parse state,
+  * such as body text or the inside of a quoted attribute value, are handled all at once; everything
+  * else goes through dealWithCharacter().  Subclasses that override dealWithCharacter() must
+  * override this method as well.
+  *@return -1 if all characters were consumed and we are not done, otherwise the offset
+  * just past the character after which we were done.
+  */
+  @Override
+  public int dealWithCharacters(char[] buffer, int offset, int len)
+    throws ManifoldCFException
+  {
+    int end = offset + len;
+    int i = offset;
+    while (i < end)
+    {
+      int runEnd = i;
+      switch (currentState)
+      {
+      case TAGPARSESTATE_NORMAL:
+        if (bTagDepth == 0 && !inAmpersand)
+        {
+          while (runEnd < end && buffer[runEnd] != '<' && buffer[runEnd] != '&')
+            runEnd++;
+          if (runEnd > i)
+          {
+            int next = noteNormalCharacters(buffer,i,runEnd-i);
+            if (next != -1)
+              return next;
+          }
+        }
+        break;
+
+      case TAGPARSESTATE_IN_CDATA_BODY:
+        while (runEnd < end && buffer[runEnd] != ']')
+          runEnd++;
+        if (runEnd > i)
+        {
+          int next = noteEscapedCharacters(buffer,i,runEnd-i);
+          if (next != -1)
+            return next;
+        }
+        break;
+
+      case TAGPARSESTATE_IN_COMMENT:
+        while (runEnd < end && buffer[runEnd] != '-')
+          runEnd++;
+        break;
+
+      case TAGPARSESTATE_IN_TAG_NAME:
+        while (runEnd < end && !isWhitespace(buffer[runEnd]) && buffer[runEnd] != '/' && buffer[runEnd] != '>')
+          runEnd++;
+        currentTagNameBuffer.append(buffer,i,runEnd-i);
+        break;
+
+      case TAGPARSESTATE_IN_ATTR_NAME:
+        while (runEnd < end && !isWhitespace(buffer[runEnd]) && buffer[runEnd] != '=' && buffer[runEnd] != '/' && buffer[runEnd] != '>')
+          runEnd++;
+        currentAttrNameBuffer.append(buffer,i,runEnd-i);
+        break;
+
+      case TAGPARSESTATE_IN_SINGLE_QUOTES_ATTR_VALUE:
+      case TAGPARSESTATE_IN_QTAG_SINGLE_QUOTES_ATTR_VALUE:
+        runEnd = findQuotedValueEnd(buffer,i,end,'\'');
+        currentValueBuffer.append(buffer,i,runEnd-i);
+        break;
+
+      case TAGPARSESTATE_IN_DOUBLE_QUOTES_ATTR_VALUE:
+      case TAGPARSESTATE_IN_QTAG_DOUBLE_QUOTES_ATTR_VALUE:
+        runEnd = findQuotedValueEnd(buffer,i,end,'"');
+        currentValueBuffer.append(buffer,i,runEnd-i);
+        break;
+
+      default:
+        break;
+      }
+      if (runEnd > i)
+      {
+        i = runEnd;
+        continue;
+      }
+      // The next character may change the state, so it gets the full treatment
+      if (dealWithCharacter(buffer[i++]))
+        return i;
+    }
+    return -1;
+  }
+
+  /** Find the end of a run of quoted attribute value characters.
+  */
+  protected static int findQuotedValueEnd(char[] buffer, int start, int end, char quote)
+  {
+    while (start < end)
+    {
+      char x = buffer[start];
+      if (x == quote || x == '\n' || x == '\r')
+        break;
+      start++;
+    }
+    return start;
+  }
+
+  /** Make a tag or attribute name from a buffer, reusing the String from the last time
+  * the same name was seen if we can.
+  */
+  protected String makeName(StringBuilder sb)
+  {
+    int length = sb.length();
+    if (length > MAX_CACHED_NAME_LENGTH)
+      return sb.toString();
+    int hash = 0;
+    for (int i = 0; i < length; i++)
+    {
+      hash = 31 * hash + sb.charAt(i);
+    }
+    int index = (hash ^ (hash >>> 8)) & (NAME_CACHE_SIZE - 1);
+    String candidate = nameCache[index];
+    if (candidate != null && candidate.length() == length)
+    {
+      int i = 0;
+      while (i < length && candidate.charAt(i) == sb.charAt(i))
+        i++;
+      if (i == length)
+        return candidate;
+    }
+    String rval = sb.toString();
+    nameCache[index] = rval;
+    return rval;
+  }
+
   /** Allocate the buffer.
   */
   protected StringBuilder newBuffer()
@@ -1037,6 +1175,24 @@ public class TagParseState extends SingleCharacterReceiver
     return false;
   }
 
+  /** This method gets called for a run of characters that are not part of a tag etc.
+  * The default calls noteNormalCharacter() for each one.  Override this method as well as
+  * noteNormalCharacter() to handle the whole run at once.
+  *@return -1 to continue, or the offset just past the character after which processing
+  * should halt.
+  */
+  protected int noteNormalCharacters(char[] buffer, int offset, int len)
+    throws ManifoldCFException
+  {
+    int end = offset + len;
+    for (int i = offset; i < end; i++)
+    {
+      if (noteNormalCharacter(buffer[i]))
+        return i+1;
+    }
+    return -1;
+  }
+
   /** This method gets called for every character that is found within an
   * escape block, e.g. CDATA.
   * Override this method to intercept such characters.
@@ -1048,9 +1204,30 @@ public class TagParseState extends SingleCharacterReceiver
     return false;
   }
   
+  /** This method gets called for a run of characters that are found within an
+  * escape block, e.g. CDATA.  The default calls noteEscapedCharacter() for each one.
+  * Override this method as well as noteEscapedCharacter() to handle the whole run at once.
+  *@return -1 to continue, or the offset just past the character after which processing
+  * should halt.
+  */
+  protected int noteEscapedCharacters(char[] buffer, int offset, int len)
+    throws ManifoldCFException
+  {
+    int end = offset + len;
+    for (int i = offset; i < end; i++)
+    {
+      if (noteEscapedCharacter(buffer[i]))
+        return i+1;
+    }
+    return -1;
+  }
+
   /** Decode an html attribute */
   protected static String attributeDecode(String input)
   {
+    // Most values have no entities at all
+    if (input.indexOf('&') == -1)
+      return input;
     StringBuilder output = new StringBuilder();
     int i = 0;
     while (i < input.length())
@@ -127,6 +127,31 @@ public class XMLFuzzyHierarchicalParseState extends XMLFuzzyParseState
     return false;
   }
   
+  /** Handle a run of characters that are not part of a tag etc.
+  *@return -1 to continue processing.
+  */
+  @Override
+  protected int noteNormalCharacters(char[] buffer, int offset, int len)
+    throws ManifoldCFException
+  {
+    appendToCharacterBuffer(buffer,offset,len);
+    return -1;
+  }
+
+  protected void appendToCharacterBuffer(char[] buffer, int offset, int len)
+    throws ManifoldCFException
+  {
+    while (len > 0)
+    {
+      int amt = Math.min(len,MAX_CHUNK_SIZE - characterBuffer.length());
+      characterBuffer.append(buffer,offset,amt);
+      offset += amt;
+      len -= amt;
+      if (characterBuffer.length() >= MAX_CHUNK_SIZE)
+        flushCharacterBuffer();
+    }
+  }
+
   protected void appendToCharacterBuffer(char thisChar)
     throws ManifoldCFException
   {
@@ -172,6 +197,18 @@ public class XMLFuzzyHierarchicalParseState extends XMLFuzzyParseState
     return false;
   }
 
+  /** Handle a run of characters found within an escape block.
+  *@return -1 to continue processing.
+  */
+  @Override
+  protected int noteEscapedCharacters(char[] buffer, int offset, int len)
+    throws ManifoldCFException
+  {
+    if (captureEscaped)
+      appendToCharacterBuffer(buffer,offset,len);
+    return -1;
+  }
+
   /** Called for the end of every cdata-like tag.
   *@return true to halt further processing.
   */
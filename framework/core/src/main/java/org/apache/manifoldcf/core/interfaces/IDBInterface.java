@@ -164,6 +164,59 @@ public interface IDBInterface
   public void performDrop(String tableName, StringSet invalidateKeys)
     throws ManifoldCFException;
 
+  /** Check whether this database can partition a table by the values of a column.
+  *@return true if performCreatePartitioned(), performCreatePartition(), and performDropPartition()
+  * may be used.
+  */
+  public boolean supportsListPartitioning()
+    throws ManifoldCFException;
+
+  /** Check whether an existing table is partitioned.
+  *@param tableName is the name of the table.
+  *@return true if the table was created with performCreatePartitioned().
+  */
+  public boolean isTablePartitioned(String tableName)
+    throws ManifoldCFException;
+
+  /** Check whether a partition of a partitioned table exists.
+  *@param tableName is the name of the partitioned table.
+  *@param partitionName is the name of the partition.
+  *@return true if the partition exists.
+  */
+  public boolean doesPartitionExist(String tableName, String partitionName)
+    throws ManifoldCFException;
+
+  /** Perform a table creation operation, for a table whose rows are partitioned by the value of
+  * one column.  Rows whose value has no partition of its own are kept in a default partition.
+  *@param tableName is the name of the table to create.
+  *@param columnMap is the map describing the columns and types, as for performCreate().  The
+  * primary key is extended to include the partition column, and no references may be described.
+  *@param partitionColumn is the name of the column whose value selects the partition.
+  *@param invalidateKeys are the cache keys that should be invalidated, if any.
+  */
+  public void performCreatePartitioned(String tableName, Map<String,ColumnDescription> columnMap,
+    String partitionColumn, StringSet invalidateKeys)
+    throws ManifoldCFException;
+
+  /** Add a partition to a partitioned table, for a single value of the partition column.
+  * The value must not yet have any rows in the table.
+  *@param tableName is the name of the partitioned table.
+  *@param partitionName is the name of the partition to create.
+  *@param partitionValue is the value of the partition column the partition holds.
+  *@param invalidateKeys are the cache keys that should be invalidated, if any.
+  */
+  public void performCreatePartition(String tableName, String partitionName, Long partitionValue,
+    StringSet invalidateKeys)
+    throws ManifoldCFException;
+
+  /** Drop a partition of a partitioned table, along with all the rows it holds.
+  *@param tableName is the name of the partitioned table.
+  *@param partitionName is the name of the partition to drop.
+  *@param invalidateKeys are the cache keys that should be invalidated, if any.
+  */
+  public void performDropPartition(String tableName, String partitionName, StringSet invalidateKeys)
+    throws ManifoldCFException;
+
   /** Create user and database.
   *@param adminUserName is the admin user name.
   *@param adminPassword is the admin password.
@@ -0,0 +1,34 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.core.interfaces;
+
+/** This interface is implemented by cached objects that can estimate how much memory they occupy.
+* The cache manager uses the estimate to enforce per-class memory budgets.  The estimate need not be
+* exact, but it should be stable for the lifetime of the object.
+*/
+public interface ISizeEstimate
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** Estimate the memory occupied by this object.
+  *@return the estimated size, in bytes.
+  */
+  public long getSizeEstimate();
+  
+}
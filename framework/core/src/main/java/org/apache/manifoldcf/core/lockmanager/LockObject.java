@@ -35,6 +35,8 @@ public class LockObject
   private boolean obtainedWrite = false;  // Set to true if this object already owns the permission to exclusively write
   private int obtainedRead = 0;           // Set to a count if this object already owns the permission to read
   private int obtainedNonExWrite = 0;     // Set to a count if this object already owns the permission to non-exclusively write
+  private boolean globalWaiter = false;   // Set to true while a thread in this JVM is waiting for the cross-JVM write or non-ex write lock
+  private boolean globalReadWaiter = false;       // Set to true while a thread in this JVM is waiting for the cross-JVM read lock
 
   protected static final String LOCKEDANOTHERTHREAD = "Locked by another thread in this JVM";
   protected static final String LOCKEDANOTHERJVM = "Locked by another JVM";
@@ -51,39 +53,63 @@ public class LockObject
     this.lockPool = null;
   }
 
+  /** Release this object from the pool, unless some thread in this JVM still holds it
+  * or is waiting for the cross-JVM lock through it.  Call only while synchronized.
+  */
+  protected void releaseIfIdle()
+  {
+    if (lockPool != null && !(obtainedWrite || obtainedRead > 0 || obtainedNonExWrite > 0 || globalWaiter || globalReadWaiter))
+      lockPool.releaseObject(lockKey,this);
+  }
+
   /** This method WILL NOT BE CALLED UNLESS we are actually committing a write lock for the
   * first time for a given thread.
   */
   public void enterWriteLock()
     throws ManifoldCFException, InterruptedException, ExpiredObjectException
   {
-    while (true)
+    synchronized (this)
     {
+      while (true)
+      {
+        if (lockPool == null)
+          throw new ExpiredObjectException("Invalid");
+        if (!(obtainedWrite || obtainedRead > 0 || obtainedNonExWrite > 0 || globalWaiter || globalReadWaiter))
+          break;
+        wait();
+      }
+      // Usually the cross-JVM lock is free, or there is none
       try
       {
-        synchronized (this)
-        {
-          if (lockPool == null)
-            throw new ExpiredObjectException("Invalid");
-
-          while (true)
-          {
-            try
-            {
-              enterWriteLockNoWait();
-              return;
-            }
-            catch (LocalLockException le)
-            {
-              wait();
-            }
-          }
-        }
+        obtainGlobalWriteLockNoWait();
+        obtainedWrite = true;
+        return;
       }
-      catch (LockException le2)
+      catch (LockException le)
       {
-        // Cross JVM lock; sleep!
-        ManifoldCF.sleep(10);
+        // Another JVM has it
+      }
+      globalWaiter = true;
+    }
+    // Wait for the cross-JVM lock without holding this object's monitor, so other threads
+    // can still try for it without waiting.  Local readers are not held up by this; any fairness
+    // between readers and writers is up to the cross-JVM lock.
+    boolean succeeded = false;
+    try
+    {
+      obtainGlobalWriteLock();
+      succeeded = true;
+    }
+    finally
+    {
+      synchronized (this)
+      {
+        globalWaiter = false;
+        if (succeeded)
+          obtainedWrite = true;
+        else
+          releaseIfIdle();
+        notifyAll();
       }
     }
   }
@@ -105,7 +131,7 @@ public class LockObject
     if (obtainedWrite)
       throw new LocalLockException(LOCKEDANOTHERTHREAD);
     // Got the write token!
-    if (obtainedRead > 0 || obtainedNonExWrite > 0)
+    if (obtainedRead > 0 || obtainedNonExWrite > 0 || globalWaiter || globalReadWaiter)
       throw new LocalLockException(LOCKEDANOTHERTHREAD);
     // Attempt to obtain a global write lock
     obtainGlobalWriteLockNoWait();
@@ -116,6 +142,28 @@ public class LockObject
     throws ManifoldCFException, LockException, InterruptedException
   {
   }
+
+  /** Obtain the cross-JVM write lock, waiting as long as necessary.  Only one thread per lock
+  * object calls this at a time, and never while this JVM holds the lock in any form.
+  * The default implementation polls; override it if there is a way to be told when the lock is freed.
+  */
+  protected void obtainGlobalWriteLock()
+    throws ManifoldCFException, InterruptedException
+  {
+    while (true)
+    {
+      try
+      {
+        obtainGlobalWriteLockNoWait();
+        return;
+      }
+      catch (LockException le)
+      {
+        // Cross JVM lock; sleep!
+        ManifoldCF.sleep(10);
+      }
+    }
+  }
   
 
   public void leaveWriteLock()
@@ -154,7 +202,7 @@ public class LockObject
           }
 
           // Lock is free, so release this object from the pool
-          lockPool.releaseObject(lockKey,this);
+          releaseIfIdle();
 
           notifyAll();
           return;
@@ -177,34 +225,50 @@ public class LockObject
   public void enterNonExWriteLock()
     throws ManifoldCFException, InterruptedException, ExpiredObjectException
   {
-    while (true)
+    synchronized (this)
     {
+      while (true)
+      {
+        if (lockPool == null)
+          throw new ExpiredObjectException("Invalid");
+        if (!(obtainedWrite || obtainedRead > 0 || globalWaiter || globalReadWaiter))
+          break;
+        wait();
+      }
+      // We've got the local non-ex write token
+      if (obtainedNonExWrite > 0)
+      {
+        obtainedNonExWrite++;
+        return;
+      }
       try
       {
-        synchronized (this)
-        {
-          if (lockPool == null)
-            throw new ExpiredObjectException("Invalid");
-
-          // System.out.println("Entering write lock for resource "+lockFileName);
-          while (true)
-          {
-            try
-            {
-              enterNonExWriteLockNoWait();
-              return;
-            }
-            catch (LocalLockException le)
-            {
-              wait();
-            }
-          }
-        }
+        obtainGlobalNonExWriteLockNoWait();
+        obtainedNonExWrite++;
+        return;
       }
-      catch (LockException le2)
+      catch (LockException le)
       {
-        // Cross JVM lock; sleep!
-        ManifoldCF.sleep(10);
+        // Another JVM has it
+      }
+      globalWaiter = true;
+    }
+    boolean succeeded = false;
+    try
+    {
+      obtainGlobalNonExWriteLock();
+      succeeded = true;
+    }
+    finally
+    {
+      synchronized (this)
+      {
+        globalWaiter = false;
+        if (succeeded)
+          obtainedNonExWrite++;
+        else
+          releaseIfIdle();
+        notifyAll();
       }
     }
   }
@@ -223,7 +287,7 @@ public class LockObject
       throw new ExpiredObjectException("Invalid");
 
     // Does another thread in this JVM have the lock?
-    if (obtainedWrite || obtainedRead > 0)
+    if (obtainedWrite || obtainedRead > 0 || globalWaiter || globalReadWaiter)
       throw new LocalLockException(LOCKEDANOTHERTHREAD);
     // We've got the local non-ex write token
     if (obtainedNonExWrite > 0)
@@ -239,6 +303,27 @@ public class LockObject
     throws ManifoldCFException, LockException, InterruptedException
   {
   }
+
+  /** Obtain the cross-JVM non-ex write lock, waiting as long as necessary.
+  * The default implementation polls.
+  */
+  protected void obtainGlobalNonExWriteLock()
+    throws ManifoldCFException, InterruptedException
+  {
+    while (true)
+    {
+      try
+      {
+        obtainGlobalNonExWriteLockNoWait();
+        return;
+      }
+      catch (LockException le)
+      {
+        // Cross JVM lock; sleep!
+        ManifoldCF.sleep(10);
+      }
+    }
+  }
   
 
   public void leaveNonExWriteLock()
@@ -281,7 +366,7 @@ public class LockObject
           }
 
           // Lock is free, so release this object from the pool
-          lockPool.releaseObject(lockKey,this);
+          releaseIfIdle();
 
           notifyAll();
           break;
@@ -305,37 +390,51 @@ public class LockObject
   public void enterReadLock()
     throws ManifoldCFException, InterruptedException, ExpiredObjectException
   {
-    // if (lockFileName != null)
-    //      System.out.println("Entering read lock for resource "+lockFileName.toString()+" "+toString());
-    while (true)
+    synchronized (this)
     {
+      while (true)
+      {
+        if (lockPool == null)
+          throw new ExpiredObjectException("Invalid");
+        // A thread waiting for a cross-JVM write lock doesn't hold up readers here.  Only another
+        // reader's wait does, since this thread will share the read lock it is getting.
+        if (!(obtainedWrite || obtainedNonExWrite > 0 || globalReadWaiter))
+          break;
+        wait();
+      }
+      if (obtainedRead > 0)
+      {
+        obtainedRead++;
+        return;
+      }
       try
       {
-        synchronized (this)
-        {
-          if (lockPool == null)
-            throw new ExpiredObjectException("Invalid");
-
-          while (true)
-          {
-            try
-            {
-              enterReadLockNoWait();
-              // if (lockFileName != null)
-              //      System.out.println("Obtained read permission for resource "+lockFileName.toString());
-              return;
-            }
-            catch (LocalLockException le)
-            {
-              wait();
-            }
-          }
-        }
+        obtainGlobalReadLockNoWait();
+        obtainedRead = 1;
+        return;
       }
       catch (LockException le)
       {
-        ManifoldCF.sleep(10);
-        // Loop around
+        // Another JVM has a conflicting lock
+      }
+      globalReadWaiter = true;
+    }
+    boolean succeeded = false;
+    try
+    {
+      obtainGlobalReadLock();
+      succeeded = true;
+    }
+    finally
+    {
+      synchronized (this)
+      {
+        globalReadWaiter = false;
+        if (succeeded)
+          obtainedRead++;
+        else
+          releaseIfIdle();
+        notifyAll();
       }
     }
   }
@@ -346,7 +445,7 @@ public class LockObject
     if (lockPool == null)
       throw new ExpiredObjectException("Invalid");
 
-    if (obtainedWrite || obtainedNonExWrite > 0)
+    if (obtainedWrite || obtainedNonExWrite > 0 || globalReadWaiter)
       throw new LocalLockException(LOCKEDANOTHERTHREAD);
     if (obtainedRead > 0)
     {
@@ -363,6 +462,27 @@ public class LockObject
     throws ManifoldCFException, LockException, InterruptedException
   {
   }
+
+  /** Obtain the cross-JVM read lock, waiting as long as necessary.
+  * The default implementation polls.
+  */
+  protected void obtainGlobalReadLock()
+    throws ManifoldCFException, InterruptedException
+  {
+    while (true)
+    {
+      try
+      {
+        obtainGlobalReadLockNoWait();
+        return;
+      }
+      catch (LockException le)
+      {
+        ManifoldCF.sleep(10);
+        // Loop around
+      }
+    }
+  }
   
 
   public void leaveReadLock()
@@ -405,7 +525,7 @@ public class LockObject
           }
 
           // Lock is free, so release this object from the pool
-          lockPool.releaseObject(lockKey,this);
+          releaseIfIdle();
 
           notifyAll();
           return;
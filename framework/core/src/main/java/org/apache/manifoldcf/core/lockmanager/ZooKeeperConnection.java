@@ -41,8 +41,14 @@ public class ZooKeeperConnection
   private static final String READ_PREFIX = "read-";
   private static final String NONEXWRITE_PREFIX = "nonexwrite-";
   private static final String WRITE_PREFIX = "write-";
+  private static final String WAITER_PREFIX = "waiter-";
 
   private static final String CHILD_PREFIX = "child-";
+
+  // The kinds of lock node each kind of lock cannot coexist with
+  private static final String[] WRITE_CONFLICTS = new String[]{WRITE_PREFIX,NONEXWRITE_PREFIX,READ_PREFIX};
+  private static final String[] NONEXWRITE_CONFLICTS = new String[]{WRITE_PREFIX,READ_PREFIX};
+  private static final String[] READ_CONFLICTS = new String[]{WRITE_PREFIX,NONEXWRITE_PREFIX};
   
   // Our zookeeper client
   protected ZooKeeper zookeeper = null;
@@ -244,42 +250,7 @@ public class ZooKeeperConnection
   public boolean obtainWriteLockNoWait(String lockPath)
     throws ManifoldCFException, InterruptedException
   {
-    if (lockNode != null)
-      throw new IllegalStateException("Already have a lock in place: '"+lockNode+"'; can't also write lock '"+lockPath+"'");
-
-    try
-    {
-      // Assert that we want a write lock
-      lockNode = createSequentialChild(lockPath,WRITE_PREFIX);
-      String lockSequenceNumber = lockNode.substring(lockPath.length() + 1 + WRITE_PREFIX.length());
-      // See if we got it
-      List<String> children = zookeeper.getChildren(lockPath,false);
-      for (String x : children)
-      {
-        String otherLock;
-        if (x.startsWith(WRITE_PREFIX))
-          otherLock = x.substring(WRITE_PREFIX.length());
-        else if (x.startsWith(NONEXWRITE_PREFIX))
-          otherLock = x.substring(NONEXWRITE_PREFIX.length());
-        else if (x.startsWith(READ_PREFIX))
-          otherLock = x.substring(READ_PREFIX.length());
-        else
-          continue;
-        if (otherLock.compareTo(lockSequenceNumber) < 0)
-        {
-          // We didn't get the lock.  Clean up and exit
-          zookeeper.delete(lockNode,-1);
-          lockNode = null;
-          return false;
-        }
-      }
-      // We got it!
-      return true;
-    }
-    catch (KeeperException e)
-    {
-      throw new ManifoldCFException(e.getMessage(),e);
-    }
+    return obtainLockNoWait(lockPath,WRITE_PREFIX,WRITE_CONFLICTS);
   }
   
   /** Obtain a non-ex-write lock, with no wait.
@@ -289,40 +260,7 @@ public class ZooKeeperConnection
   public boolean obtainNonExWriteLockNoWait(String lockPath)
     throws ManifoldCFException, InterruptedException
   {
-    if (lockNode != null)
-      throw new IllegalStateException("Already have a lock in place: '"+lockNode+"'; can't also non-ex write lock '"+lockPath+"'");
-
-    try
-    {
-      // Assert that we want a read lock
-      lockNode = createSequentialChild(lockPath,NONEXWRITE_PREFIX);
-      String lockSequenceNumber = lockNode.substring(lockPath.length() + 1 + NONEXWRITE_PREFIX.length());
-      // See if we got it
-      List<String> children = zookeeper.getChildren(lockPath,false);
-      for (String x : children)
-      {
-        String otherLock;
-        if (x.startsWith(WRITE_PREFIX))
-          otherLock = x.substring(WRITE_PREFIX.length());
-        else if (x.startsWith(READ_PREFIX))
-          otherLock = x.substring(READ_PREFIX.length());
-        else
-          continue;
-        if (otherLock.compareTo(lockSequenceNumber) < 0)
-        {
-          // We didn't get the lock.  Clean up and exit
-          zookeeper.delete(lockNode,-1);
-          lockNode = null;
-          return false;
-        }
-      }
-      // We got it!
-      return true;
-    }
-    catch (KeeperException e)
-    {
-      throw new ManifoldCFException(e.getMessage(),e);
-    }
+    return obtainLockNoWait(lockPath,NONEXWRITE_PREFIX,NONEXWRITE_CONFLICTS);
   }
 
   /** Obtain a read lock, with no wait.
@@ -332,42 +270,36 @@ public class ZooKeeperConnection
   public boolean obtainReadLockNoWait(String lockPath)
     throws ManifoldCFException, InterruptedException
   {
-    if (lockNode != null)
-      throw new IllegalStateException("Already have a lock in place: '"+lockNode+"'; can't also read lock '"+lockPath+"'");
-
-    try
-    {
-      // Assert that we want a read lock
-      lockNode = createSequentialChild(lockPath,READ_PREFIX);
-      String lockSequenceNumber = lockNode.substring(lockPath.length() + 1 + READ_PREFIX.length());
-      // See if we got it
-      List<String> children = zookeeper.getChildren(lockPath,false);
-      for (String x : children)
-      {
-        String otherLock;
-        if (x.startsWith(WRITE_PREFIX))
-          otherLock = x.substring(WRITE_PREFIX.length());
-        else if (x.startsWith(NONEXWRITE_PREFIX))
-          otherLock = x.substring(NONEXWRITE_PREFIX.length());
-        else
-          continue;
-        if (otherLock.compareTo(lockSequenceNumber) < 0)
-        {
-          // We didn't get the lock.  Clean up and exit
-          zookeeper.delete(lockNode,-1);
-          lockNode = null;
-          return false;
-        }
-      }
-      // We got it!
-      return true;
-    }
-    catch (KeeperException e)
-    {
-      throw new ManifoldCFException(e.getMessage(),e);
-    }
+    return obtainLockNoWait(lockPath,READ_PREFIX,READ_CONFLICTS);
   }
   
+  /** Obtain a write lock, waiting until it is available.
+  *@param lockPath is the lock node path.
+  */
+  public void obtainWriteLock(String lockPath)
+    throws ManifoldCFException, InterruptedException
+  {
+    obtainLock(lockPath,WRITE_PREFIX,WRITE_CONFLICTS,true);
+  }
+
+  /** Obtain a non-ex-write lock, waiting until it is available.
+  *@param lockPath is the lock node path.
+  */
+  public void obtainNonExWriteLock(String lockPath)
+    throws ManifoldCFException, InterruptedException
+  {
+    obtainLock(lockPath,NONEXWRITE_PREFIX,NONEXWRITE_CONFLICTS,false);
+  }
+
+  /** Obtain a read lock, waiting until it is available.
+  *@param lockPath is the lock node path.
+  */
+  public void obtainReadLock(String lockPath)
+    throws ManifoldCFException, InterruptedException
+  {
+    obtainLock(lockPath,READ_PREFIX,READ_CONFLICTS,false);
+  }
+
   /** Release the (saved) lock.
   */
   public void releaseLock()
@@ -595,6 +527,266 @@ public class ZooKeeperConnection
     }
   }
 
+  /** Try once to obtain a lock.  A lock node is created, and is kept only if no conflicting
+  * node precedes it.
+  *@return true if the lock was obtained.
+  */
+  protected boolean obtainLockNoWait(String lockPath, String lockPrefix, String[] conflictPrefixes)
+    throws ManifoldCFException, InterruptedException
+  {
+    if (lockNode != null)
+      throw new IllegalStateException("Already have a lock in place: '"+lockNode+"'; can't also lock '"+lockPath+"'");
+
+    try
+    {
+      // Assert that we want the lock
+      lockNode = createSequentialChild(lockPath,lockPrefix);
+      return checkLockNode(lockPath,lockPrefix,conflictPrefixes);
+    }
+    catch (KeeperException e)
+    {
+      throw new ManifoldCFException(e.getMessage(),e);
+    }
+  }
+
+  /** Try once to obtain a lock, giving up a place in line at the same time.
+  *@return true if the lock was obtained.
+  */
+  protected boolean obtainLockNoWait(String lockPath, String lockPrefix, String[] conflictPrefixes, String waiterNode)
+    throws KeeperException, InterruptedException
+  {
+    // One round trip both creates the lock node and removes the waiter node
+    List<OpResult> results = zookeeper.multi(Arrays.asList(
+      Op.create(lockPath + "/" + lockPrefix, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL),
+      Op.delete(waiterNode,-1)));
+    lockNode = ((OpResult.CreateResult)results.get(0)).getPath();
+    return checkLockNode(lockPath,lockPrefix,conflictPrefixes);
+  }
+
+  /** Having just created a lock node, see if we got the lock.  If not, the lock node is deleted.
+  *@return true if the lock was obtained.
+  */
+  protected boolean checkLockNode(String lockPath, String lockPrefix, String[] conflictPrefixes)
+    throws KeeperException, InterruptedException
+  {
+    String lockSequenceNumber = lockNode.substring(lockPath.length() + 1 + lockPrefix.length());
+    boolean succeeded = false;
+    try
+    {
+      // See if we got it
+      succeeded = (findConflict(zookeeper.getChildren(lockPath,false),conflictPrefixes,lockSequenceNumber) == null);
+      return succeeded;
+    }
+    finally
+    {
+      if (!succeeded)
+        abandonLockNode();
+    }
+  }
+
+  /** Obtain a lock, waiting as long as necessary.
+  * While a conflicting lock is held, we just watch its node, and only try for the lock once that
+  * node goes away, so waiting ends as soon as the holder lets go, rather than at the next poll.
+  * Exclusive writers, which can only get in one at a time, also line up behind one another, so
+  * that only the first in line is woken when the lock is freed, and the others write nothing.  Nobody waits in line for a read
+  * or non-ex write lock, because a waiter in line would hold up requests that could share the lock
+  * with its current holders.
+  *@param lockPath is the lock node path.
+  *@param lockPrefix is the prefix for the kind of lock node we want.
+  *@param conflictPrefixes are the prefixes of the lock nodes we cannot coexist with.
+  *@param waitInLine is true if we should wait in line behind other such waiters.
+  */
+  protected void obtainLock(String lockPath, String lockPrefix, String[] conflictPrefixes, boolean waitInLine)
+    throws ManifoldCFException, InterruptedException
+  {
+    if (lockNode != null)
+      throw new IllegalStateException("Already have a lock in place: '"+lockNode+"'; can't also lock '"+lockPath+"'");
+
+    try
+    {
+      String waiterNode = null;
+      String waiterSequenceNumber = null;
+      try
+      {
+        while (true)
+        {
+          List<String> children;
+          try
+          {
+            children = zookeeper.getChildren(lockPath,false);
+          }
+          catch (KeeperException.NoNodeException e)
+          {
+            children = new ArrayList<String>();
+          }
+          if (waitInLine)
+          {
+            if (waiterNode == null)
+            {
+              if (findPredecessor(children,WAITER_PREFIX,null) != null || findConflict(children,conflictPrefixes,null) != null)
+              {
+                // We'll have to wait, so get in line
+                waiterNode = createSequentialChild(lockPath,WAITER_PREFIX);
+                waiterSequenceNumber = waiterNode.substring(lockPath.length() + 1 + WAITER_PREFIX.length());
+                continue;
+              }
+            }
+            else
+            {
+              String predecessor = findPredecessor(children,WAITER_PREFIX,waiterSequenceNumber);
+              if (predecessor != null)
+              {
+                waitForDeletion(lockPath + "/" + predecessor);
+                continue;
+              }
+            }
+          }
+          String conflict = findConflict(children,conflictPrefixes,null);
+          if (conflict != null)
+          {
+            waitForDeletion(lockPath + "/" + conflict);
+            continue;
+          }
+          if (waiterNode == null)
+          {
+            if (obtainLockNoWait(lockPath,lockPrefix,conflictPrefixes))
+              return;
+          }
+          else
+          {
+            // First in line: try for the lock, leaving the line as we do
+            boolean succeeded = obtainLockNoWait(lockPath,lockPrefix,conflictPrefixes,waiterNode);
+            waiterNode = null;
+            if (succeeded)
+              return;
+          }
+          // Somebody else got in first; go back to watching
+        }
+      }
+      finally
+      {
+        if (waiterNode != null)
+        {
+          try
+          {
+            zookeeper.delete(waiterNode,-1);
+          }
+          catch (KeeperException.NoNodeException e)
+          {
+          }
+        }
+      }
+    }
+    catch (KeeperException e)
+    {
+      throw new ManifoldCFException(e.getMessage(),e);
+    }
+  }
+
+  /** Find the waiter immediately ahead of us in line.
+  *@param children are the children of the lock node.
+  *@param prefix is the prefix of the waiter nodes.
+  *@param sequenceNumber is the sequence number of our own waiter node, or null if we aren't in line yet.
+  *@return the waiter node with the highest sequence number below ours, or null if there is none.
+  */
+  protected static String findPredecessor(List<String> children, String prefix, String sequenceNumber)
+  {
+    String rval = null;
+    String rvalSequenceNumber = null;
+    for (String x : children)
+    {
+      if (!x.startsWith(prefix))
+        continue;
+      String otherSequenceNumber = x.substring(prefix.length());
+      if (sequenceNumber != null && otherSequenceNumber.compareTo(sequenceNumber) >= 0)
+        continue;
+      if (rvalSequenceNumber == null || otherSequenceNumber.compareTo(rvalSequenceNumber) > 0)
+      {
+        rval = x;
+        rvalSequenceNumber = otherSequenceNumber;
+      }
+    }
+    return rval;
+  }
+
+  /** Find a lock node that conflicts with ours.
+  *@param children are the children of the lock node.
+  *@param conflictPrefixes are the kinds of lock node that conflict.
+  *@param lockSequenceNumber is the sequence number of our lock node, or null if we don't have one yet.
+  *@return the conflicting child preceding ours, or null if there is none.
+  */
+  protected static String findConflict(List<String> children, String[] conflictPrefixes, String lockSequenceNumber)
+  {
+    for (String x : children)
+    {
+      for (String prefix : conflictPrefixes)
+      {
+        if (x.startsWith(prefix))
+        {
+          if (lockSequenceNumber == null || x.substring(prefix.length()).compareTo(lockSequenceNumber) < 0)
+            return x;
+          break;
+        }
+      }
+    }
+    return null;
+  }
+
+  /** Wait until a node is deleted, or until something else happens to the connection that
+  * means the caller should look again.
+  */
+  protected void waitForDeletion(String nodePath)
+    throws KeeperException, InterruptedException
+  {
+    NodeWatcher watcher = new NodeWatcher();
+    if (zookeeper.exists(nodePath,watcher) == null)
+      return;
+    watcher.waitForEvent();
+  }
+
+  /** Delete the lock node we created, when we aren't going to hold the lock after all.
+  */
+  protected void abandonLockNode()
+    throws KeeperException, InterruptedException
+  {
+    try
+    {
+      zookeeper.delete(lockNode,-1);
+    }
+    catch (KeeperException.NoNodeException e)
+    {
+    }
+    finally
+    {
+      lockNode = null;
+    }
+  }
+
+  /** Watcher for a single node, which a thread can wait on. */
+  protected static class NodeWatcher implements Watcher
+  {
+    protected boolean fired = false;
+
+    public NodeWatcher()
+    {
+    }
+
+    public synchronized void process(WatchedEvent event)
+    {
+      fired = true;
+      notifyAll();
+    }
+
+    public synchronized void waitForEvent()
+      throws InterruptedException
+    {
+      while (!fired)
+      {
+        wait();
+      }
+    }
+  }
+
   /** Watcher class for zookeeper, so we get notified about zookeeper events. */
   protected static class ZooKeeperWatcher implements Watcher
   {
@@ -35,7 +35,10 @@ public class ZooKeeperLockObject extends LockObject
   private final ZooKeeperConnectionPool pool;
   private final String lockPath;
   
-  private ZooKeeperConnection currentConnection = null;
+  // A writer in this JVM may be waiting for the lock while local readers hold it, so
+  // read locks get a connection of their own
+  private ZooKeeperConnection writeConnection = null;
+  private ZooKeeperConnection readConnection = null;
 
   public ZooKeeperLockObject(LockPool lockPool, Object lockKey, ZooKeeperConnectionPool pool)
   {
@@ -48,13 +51,13 @@ public class ZooKeeperLockObject extends LockObject
   protected void obtainGlobalWriteLockNoWait()
     throws ManifoldCFException, LockException, InterruptedException
   {
-    if (currentConnection != null)
+    if (writeConnection != null)
       throw new IllegalStateException("Already have a connection before write locking: "+lockPath);
     boolean succeeded = false;
-    currentConnection = pool.grab();
+    writeConnection = pool.grab();
     try
     {
-      succeeded = currentConnection.obtainWriteLockNoWait(lockPath);
+      succeeded = writeConnection.obtainWriteLockNoWait(lockPath);
       if (!succeeded)
         throw new LockException(LOCKEDANOTHERJVM);
     }
@@ -62,8 +65,31 @@ public class ZooKeeperLockObject extends LockObject
     {
       if (!succeeded)
       {
-        pool.release(currentConnection);
-        currentConnection = null;
+        pool.release(writeConnection);
+        writeConnection = null;
+      }
+    }
+  }
+
+  @Override
+  protected void obtainGlobalWriteLock()
+    throws ManifoldCFException, InterruptedException
+  {
+    if (writeConnection != null)
+      throw new IllegalStateException("Already have a connection before write locking: "+lockPath);
+    boolean succeeded = false;
+    writeConnection = pool.grab();
+    try
+    {
+      writeConnection.obtainWriteLock(lockPath);
+      succeeded = true;
+    }
+    finally
+    {
+      if (!succeeded)
+      {
+        pool.release(writeConnection);
+        writeConnection = null;
       }
     }
   }
@@ -72,22 +98,23 @@ public class ZooKeeperLockObject extends LockObject
   protected void clearGlobalWriteLock()
     throws ManifoldCFException, LockException, InterruptedException
   {
-    if (currentConnection == null)
+    if (writeConnection == null)
       throw new IllegalStateException("Cannot clear write lock we don't have: "+lockPath);
-    clearLock();
+    clearLock(writeConnection);
+    writeConnection = null;
   }
   
   @Override
   protected void obtainGlobalNonExWriteLockNoWait()
     throws ManifoldCFException, LockException, InterruptedException
   {
-    if (currentConnection != null)
+    if (writeConnection != null)
       throw new IllegalStateException("Already have a connection before non-ex-write locking: "+lockPath);
     boolean succeeded = false;
-    currentConnection = pool.grab();
+    writeConnection = pool.grab();
     try
     {
-      succeeded = currentConnection.obtainNonExWriteLockNoWait(lockPath);
+      succeeded = writeConnection.obtainNonExWriteLockNoWait(lockPath);
       if (!succeeded)
         throw new LockException(LOCKEDANOTHERJVM);
     }
@@ -95,8 +122,31 @@ public class ZooKeeperLockObject extends LockObject
     {
       if (!succeeded)
       {
-        pool.release(currentConnection);
-        currentConnection = null;
+        pool.release(writeConnection);
+        writeConnection = null;
+      }
+    }
+  }
+
+  @Override
+  protected void obtainGlobalNonExWriteLock()
+    throws ManifoldCFException, InterruptedException
+  {
+    if (writeConnection != null)
+      throw new IllegalStateException("Already have a connection before non-ex-write locking: "+lockPath);
+    boolean succeeded = false;
+    writeConnection = pool.grab();
+    try
+    {
+      writeConnection.obtainNonExWriteLock(lockPath);
+      succeeded = true;
+    }
+    finally
+    {
+      if (!succeeded)
+      {
+        pool.release(writeConnection);
+        writeConnection = null;
       }
     }
   }
@@ -105,22 +155,23 @@ public class ZooKeeperLockObject extends LockObject
   protected void clearGlobalNonExWriteLock()
     throws ManifoldCFException, LockException, InterruptedException
   {
-    if (currentConnection == null)
+    if (writeConnection == null)
       throw new IllegalStateException("Cannot clear non-ex-write lock we don't have: "+lockPath);
-    clearLock();
+    clearLock(writeConnection);
+    writeConnection = null;
   }
 
   @Override
   protected void obtainGlobalReadLockNoWait()
     throws ManifoldCFException, LockException, InterruptedException
   {
-    if (currentConnection != null)
+    if (readConnection != null)
       throw new IllegalStateException("Already have a connection before read locking: "+lockPath);
     boolean succeeded = false;
-    currentConnection = pool.grab();
+    readConnection = pool.grab();
     try
     {
-      succeeded = currentConnection.obtainReadLockNoWait(lockPath);
+      succeeded = readConnection.obtainReadLockNoWait(lockPath);
       if (!succeeded)
         throw new LockException(LOCKEDANOTHERJVM);
     }
@@ -128,8 +179,31 @@ public class ZooKeeperLockObject extends LockObject
     {
       if (!succeeded)
       {
-        pool.release(currentConnection);
-        currentConnection = null;
+        pool.release(readConnection);
+        readConnection = null;
+      }
+    }
+  }
+
+  @Override
+  protected void obtainGlobalReadLock()
+    throws ManifoldCFException, InterruptedException
+  {
+    if (readConnection != null)
+      throw new IllegalStateException("Already have a connection before read locking: "+lockPath);
+    boolean succeeded = false;
+    readConnection = pool.grab();
+    try
+    {
+      readConnection.obtainReadLock(lockPath);
+      succeeded = true;
+    }
+    finally
+    {
+      if (!succeeded)
+      {
+        pool.release(readConnection);
+        readConnection = null;
       }
     }
   }
@@ -138,17 +212,17 @@ public class ZooKeeperLockObject extends LockObject
   protected void clearGlobalReadLock()
     throws ManifoldCFException, LockException, InterruptedException
   {
-    if (currentConnection == null)
+    if (readConnection == null)
       throw new IllegalStateException("Cannot clear read lock we don't have: "+lockPath);
-    clearLock();
+    clearLock(readConnection);
+    readConnection = null;
   }
 
-  protected void clearLock()
+  protected void clearLock(ZooKeeperConnection connection)
     throws ManifoldCFException, InterruptedException
   {
-    currentConnection.releaseLock();
-    pool.release(currentConnection);
-    currentConnection = null;
+    connection.releaseLock();
+    pool.release(connection);
   }
 
 }
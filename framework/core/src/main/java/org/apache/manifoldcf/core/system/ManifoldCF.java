@@ -21,6 +21,7 @@ package org.apache.manifoldcf.core.system;
 import org.apache.manifoldcf.core.interfaces.*;
 import java.io.*;
 import java.util.*;
+import java.nio.charset.Charset;
 import java.security.MessageDigest;
 
 public class ManifoldCF
@@ -124,11 +125,18 @@ public class ManifoldCF
   public static final String databaseHandleTimeoutProperty = "org.apache.manifoldcf.database.handletimeout";
   /** Connection tracking debug property */
   public static final String databaseConnectionTrackingProperty = "org.apache.manifoldcf.database.connectiontracking";
+  /** Maximum number of idle query threads to keep around for reuse */
+  public static final String databaseQueryThreadsProperty = "org.apache.manifoldcf.database.maxquerythreads";
 
   // Database performance monitoring properties
   /** Elapsed time a query can take before a warning is output to the log, in seconds */
   public static final String databaseQueryMaxTimeProperty = "org.apache.manifoldcf.database.maxquerytime";
   
+  // Cache properties
+  /** Default maximum estimated size, in bytes, of the cached objects of any one class; may be
+  * overridden per class by appending "." and the class name */
+  public static final String cacheMaxBytesProperty = "org.apache.manifoldcf.cache.maxbytes";
+  
   // Log configuration properties
   /** Location of log configuration file */
   public static final String logConfigFileProperty = "org.apache.manifoldcf.logconfigfile";
@@ -552,6 +560,12 @@ public class ManifoldCF
     return companyDatabase.getDatabaseName()+"_"+childDBIdentifier;
   }
 
+  // Each thread keeps its own digest for hash(), since getting a new one is far from free and hash() is called
+  // for every document identifier the crawler sees
+  protected static final ThreadLocal<MessageDigest> threadDigest = new ThreadLocal<MessageDigest>();
+  protected static final Charset hashCharset = Charset.forName("UTF-8");
+  protected static final char[] hexDigits = "0123456789ABCDEF".toCharArray();
+
   /** Perform standard hashing of a string
   *  @param input is the string to hash.
   *  @return the encrypted string.
@@ -582,15 +596,7 @@ public class ManifoldCF
   public static void addToHash(MessageDigest digest, String input)
     throws ManifoldCFException
   {
-    try
-    {
-      byte[] inputBytes = input.getBytes("UTF-8");
-      digest.update(inputBytes);
-    }
-    catch (Exception e)
-    {
-      throw new ManifoldCFException("Couldn't encrypt: "+e.getMessage(),e,ManifoldCFException.GENERAL_ERROR);
-    }
+    digest.update(input.getBytes(hashCharset));
   }
 
   /** Calculate final hash value
@@ -598,23 +604,24 @@ public class ManifoldCF
   public static String getHashValue(MessageDigest digest)
     throws ManifoldCFException
   {
-    try
-    {
-      byte[] encryptedBytes = digest.digest();
-      StringBuilder rval = new StringBuilder();
-      int i = 0;
-      while (i < encryptedBytes.length)
-      {
-        byte x = encryptedBytes[i++];
-        rval.append(writeNibble((((int)x) >> 4) & 15));
-        rval.append(writeNibble(((int)x) & 15));
-      }
-      return rval.toString();
-    }
-    catch (Exception e)
+    return encodeHex(digest.digest());
+  }
+
+  /** Encode bytes as upper-case hex.
+  *@param bytes are the bytes.
+  *@return the hex string, two characters per byte.
+  */
+  protected static String encodeHex(byte[] bytes)
+  {
+    char[] chars = new char[bytes.length * 2];
+    int j = 0;
+    for (int i = 0; i < bytes.length; i++)
     {
-      throw new ManifoldCFException("Couldn't encrypt: "+e.getMessage(),e,ManifoldCFException.GENERAL_ERROR);
+      int x = bytes[i];
+      chars[j++] = hexDigits[(x >> 4) & 15];
+      chars[j++] = hexDigits[x & 15];
     }
+    return new String(chars);
   }
 
   /** Verify login.
@@ -643,7 +650,14 @@ public class ManifoldCF
   public static String encrypt(String input)
     throws ManifoldCFException
   {
-    MessageDigest hash = startHash();
+    MessageDigest hash = threadDigest.get();
+    if (hash == null)
+    {
+      hash = startHash();
+      threadDigest.set(hash);
+    }
+    else
+      hash.reset();
     addToHash(hash,input);
     return getHashValue(hash);
   }
@@ -1514,6 +1528,8 @@ public class ManifoldCF
     {
       // Clean up the database handles
       org.apache.manifoldcf.core.database.ConnectionFactory.releaseAll();
+      // Let idle query threads exit
+      org.apache.manifoldcf.core.database.QueryExecutorPool.releaseAll();
     }
   }
 }
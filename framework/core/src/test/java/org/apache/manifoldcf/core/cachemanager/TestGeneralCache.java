@@ -0,0 +1,144 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.core.cachemanager;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestGeneralCache
+{
+
+  @Test
+  public void countLimit()
+    throws Exception
+  {
+    GeneralCache cache = new GeneralCache();
+    for (int i = 0; i < 100; i++)
+    {
+      addObject(cache,"count",i,"value"+i,10);
+    }
+    // The limit applies to the whole cache, not to each segment
+    assertEquals(10,cache.getObjectClassMemberCount("count"));
+    // The survivors are the most recently used objects
+    for (int i = 0; i < 100; i++)
+    {
+      if (i >= 90)
+        assertNotNull(cache.lookup("count"+i));
+      else
+        assertNull(cache.lookup("count"+i));
+    }
+  }
+
+  @Test
+  public void countLimitOfOne()
+    throws Exception
+  {
+    GeneralCache cache = new GeneralCache();
+    for (int i = 0; i < 20; i++)
+    {
+      addObject(cache,"one",i,"value"+i,1);
+      assertEquals(1,cache.getObjectClassMemberCount("one"));
+      assertNotNull(cache.lookup("one"+i));
+    }
+  }
+
+  @Test
+  public void reuseRefreshesLRU()
+    throws Exception
+  {
+    GeneralCache cache = new GeneralCache();
+    for (int i = 0; i < 5; i++)
+    {
+      addObject(cache,"reuse",i,"value"+i,5);
+    }
+    // Touch the oldest object, so the next-oldest is the one evicted
+    cache.setObjectClass("reuse0","reuse",5);
+    addObject(cache,"reuse",5,"value5",5);
+    assertEquals(5,cache.getObjectClassMemberCount("reuse"));
+    assertNotNull(cache.lookup("reuse0"));
+    assertNull(cache.lookup("reuse1"));
+  }
+
+  @Test
+  public void byteLimit()
+    throws Exception
+  {
+    GeneralCache cache = new GeneralCache();
+    for (int i = 0; i < 50; i++)
+    {
+      cache.setObject("bytes"+i,new SizedObject(100L),new StringSet(),0L);
+      cache.setObjectClass("bytes"+i,"bytes",Integer.MAX_VALUE,1000L);
+      assertTrue(cache.getObjectClassByteCount("bytes") <= 1000L);
+    }
+    assertEquals(10,cache.getObjectClassMemberCount("bytes"));
+    assertNotNull(cache.lookup("bytes49"));
+
+    // An object bigger than the budget evicts everything else, but survives itself
+    cache.setObject("huge",new SizedObject(5000L),new StringSet(),0L);
+    cache.setObjectClass("huge","bytes",Integer.MAX_VALUE,1000L);
+    assertEquals(1,cache.getObjectClassMemberCount("bytes"));
+    assertNotNull(cache.lookup("huge"));
+  }
+
+  @Test
+  public void deleteUpdatesTotals()
+    throws Exception
+  {
+    GeneralCache cache = new GeneralCache();
+    for (int i = 0; i < 10; i++)
+    {
+      addObject(cache,"delete",i,"value"+i,10);
+    }
+    for (int i = 0; i < 5; i++)
+    {
+      cache.deleteObject("delete"+i);
+    }
+    for (int i = 10; i < 15; i++)
+    {
+      addObject(cache,"delete",i,"value"+i,10);
+    }
+    assertEquals(10,cache.getObjectClassMemberCount("delete"));
+    assertNotNull(cache.lookup("delete5"));
+  }
+
+  protected static void addObject(GeneralCache cache, String objectClass, int index, Object object, int maxCount)
+  {
+    String description = objectClass + index;
+    cache.setObject(description,object,new StringSet(),0L);
+    cache.setObjectClass(description,objectClass,maxCount);
+  }
+
+  protected static class SizedObject implements ISizeEstimate
+  {
+    protected final long size;
+
+    public SizedObject(long size)
+    {
+      this.size = size;
+    }
+
+    @Override
+    public long getSizeEstimate()
+    {
+      return size;
+    }
+  }
+
+}
@@ -0,0 +1,163 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.core.database;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestQueryExecutorPool
+{
+
+  @Test
+  public void reuseTest()
+    throws Exception
+  {
+    QueryExecutorPool.releaseAll();
+    final AtomicInteger count = new AtomicInteger(0);
+    for (int i = 0; i < 1000; i++)
+    {
+      QueryExecutorPool.execute(new CountingTask(count),4);
+    }
+    assertEquals(1000,count.get());
+    // Sequential use should have kept exactly one thread around
+    assertEquals(1,QueryExecutorPool.getIdleThreadCount());
+    QueryExecutorPool.releaseAll();
+    assertEquals(0,QueryExecutorPool.getIdleThreadCount());
+  }
+
+  @Test
+  public void exceptionTest()
+    throws Exception
+  {
+    QueryExecutorPool.QueryTask task = new QueryExecutorPool.QueryTask()
+    {
+      @Override
+      protected void doWork()
+        throws Throwable
+      {
+        throw new IllegalStateException("test");
+      }
+    };
+    QueryExecutorPool.execute(task,4);
+    assertTrue(task.getException() instanceof IllegalStateException);
+    QueryExecutorPool.releaseAll();
+  }
+
+  @Test
+  public void interruptTest()
+    throws Exception
+  {
+    QueryExecutorPool.releaseAll();
+    final Thread caller = Thread.currentThread();
+    Thread interrupter = new Thread()
+    {
+      public void run()
+      {
+        try
+        {
+          Thread.sleep(200L);
+        }
+        catch (InterruptedException e)
+        {
+          return;
+        }
+        caller.interrupt();
+      }
+    };
+    interrupter.start();
+    try
+    {
+      QueryExecutorPool.execute(new QueryExecutorPool.QueryTask()
+        {
+          @Override
+          protected void doWork()
+            throws Throwable
+          {
+            Thread.sleep(30000L);
+          }
+        },4);
+      fail("Should have been interrupted");
+    }
+    catch (InterruptedException e)
+    {
+    }
+    interrupter.join();
+    // The abandoned thread must not have been returned to the pool
+    assertEquals(0,QueryExecutorPool.getIdleThreadCount());
+  }
+
+  @Test
+  public void concurrentTest()
+    throws Exception
+  {
+    QueryExecutorPool.releaseAll();
+    final int numThreads = 20;
+    final int tasksPerThread = 200;
+    final AtomicInteger count = new AtomicInteger(0);
+    Thread[] threads = new Thread[numThreads];
+    for (int i = 0; i < numThreads; i++)
+    {
+      threads[i] = new Thread()
+      {
+        public void run()
+        {
+          try
+          {
+            for (int j = 0; j < tasksPerThread; j++)
+            {
+              QueryExecutorPool.execute(new CountingTask(count),4);
+            }
+          }
+          catch (InterruptedException e)
+          {
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (int i = 0; i < numThreads; i++)
+    {
+      threads[i].join();
+    }
+    assertEquals(numThreads * tasksPerThread,count.get());
+    // No more idle threads are kept than the limit, however many were needed at once
+    assertTrue(QueryExecutorPool.getIdleThreadCount() <= 4);
+    QueryExecutorPool.releaseAll();
+  }
+
+  protected static class CountingTask extends QueryExecutorPool.QueryTask
+  {
+    protected final AtomicInteger count;
+
+    public CountingTask(AtomicInteger count)
+    {
+      this.count = count;
+    }
+
+    @Override
+    protected void doWork()
+      throws Throwable
+    {
+      count.incrementAndGet();
+    }
+  }
+
+}
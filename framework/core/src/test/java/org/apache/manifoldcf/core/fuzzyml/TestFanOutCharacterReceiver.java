@@ -0,0 +1,122 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.core.fuzzyml;
+
+import org.apache.manifoldcf.core.interfaces.*;
+
+import java.io.*;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Check that a fan-out receiver gives each parser the same view as a parse of its own.
+*/
+public class TestFanOutCharacterReceiver
+{
+
+  @Before
+  public void setUp()
+  {
+    org.apache.manifoldcf.core.system.Logging.misc = org.apache.log4j.Logger.getLogger("test");
+  }
+
+  @Test
+  public void sameResultsTest()
+    throws Exception
+  {
+    byte[] page = makePage(200);
+    Parser p = new Parser();
+
+    CountingParseState separate = new CountingParseState(-1);
+    p.parseWithoutCharsetDetection("utf-8",new ByteArrayInputStream(page),separate);
+
+    CountingParseState all = new CountingParseState(-1);
+    CountingParseState early = new CountingParseState(10);
+    CountingParseState another = new CountingParseState(-1);
+    p.parseWithoutCharsetDetection("utf-8",new ByteArrayInputStream(page),
+      new FanOutCharacterReceiver(new SingleCharacterReceiver[]{all,early,another}));
+
+    assertEquals(separate.tagCount,all.tagCount);
+    assertEquals(separate.tagCount,another.tagCount);
+    assertTrue(all.finished);
+    // The receiver that stopped early saw no more tags, and was not finished up
+    assertEquals(10,early.tagCount);
+    assertFalse(early.finished);
+  }
+
+  @Test
+  public void allDoneTest()
+    throws Exception
+  {
+    byte[] page = makePage(200);
+    CountingParseState first = new CountingParseState(5);
+    CountingParseState second = new CountingParseState(7);
+    FanOutCharacterReceiver fanOut = new FanOutCharacterReceiver(new SingleCharacterReceiver[]{first,second});
+    // Once every receiver is done, the fan-out signals done as well
+    assertTrue(fanOut.dealWithCharacters(new InputStreamReader(new ByteArrayInputStream(page),"utf-8")));
+    assertEquals(5,first.tagCount);
+    assertEquals(7,second.tagCount);
+  }
+
+  /** Build an xhtml page with the given number of links. */
+  protected static byte[] makePage(int linkCount)
+    throws IOException
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    sb.append("<html><head><title>Test page</title><meta name=\"robots\" content=\"index,follow\"/></head><body>\n");
+    for (int i = 0; i < linkCount; i++)
+    {
+      sb.append("<p>Paragraph ").append(i).append(" with a <a href=\"http://www.example.com/page").append(i).append(".html\">link</a> in it.</p>\n");
+    }
+    sb.append("</body></html>\n");
+    return sb.toString().getBytes("utf-8");
+  }
+
+  /** Parse state that counts tags, and optionally stops after some number of them. */
+  protected static class CountingParseState extends TagParseState
+  {
+    protected final int stopAfter;
+    public int tagCount = 0;
+    public boolean finished = false;
+
+    public CountingParseState(int stopAfter)
+    {
+      super();
+      this.stopAfter = stopAfter;
+    }
+
+    @Override
+    protected boolean noteTag(String tagName, List<AttrNameValue> attributes)
+      throws ManifoldCFException
+    {
+      tagCount++;
+      return stopAfter != -1 && tagCount >= stopAfter;
+    }
+
+    @Override
+    public void finishUp()
+      throws ManifoldCFException
+    {
+      finished = true;
+      super.finishUp();
+    }
+  }
+
+}
@@ -0,0 +1,254 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.core.fuzzyml;
+
+import org.apache.manifoldcf.core.interfaces.*;
+
+import java.io.*;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Check that the chunked character path through TagParseState produces exactly what the
+* character-at-a-time path does.
+*/
+public class TestTagParseState
+{
+
+  @Before
+  public void setUp()
+  {
+    org.apache.manifoldcf.core.system.Logging.misc = org.apache.log4j.Logger.getLogger("test");
+  }
+
+  @Test
+  public void representativeDocumentsTest()
+    throws Exception
+  {
+    checkSameEvents(makeHTMLPage(50),-1);
+    checkSameEvents(makeRSSFeed(50),-1);
+    // Stop part way through
+    checkSameEvents(makeHTMLPage(50),37);
+  }
+
+  @Test
+  public void randomDocumentsTest()
+    throws Exception
+  {
+    // Documents made of the characters the parser cares about, to get into every state
+    String alphabet = "<<>>!!--[[]]??//==''\"\"&&;;#x \n\rabcCDATA";
+    Random r = new Random(42L);
+    for (int i = 0; i < 2000; i++)
+    {
+      int length = r.nextInt(300);
+      StringBuilder sb = new StringBuilder();
+      for (int j = 0; j < length; j++)
+      {
+        sb.append(alphabet.charAt(r.nextInt(alphabet.length())));
+      }
+      checkSameEvents(sb.toString(),(i % 5 == 0)?r.nextInt(10):-1);
+    }
+  }
+
+  protected static void checkSameEvents(String document, int stopAfter)
+    throws Exception
+  {
+    RecordingParseState single = new RecordingParseState(stopAfter);
+    parseOneAtATime(document.toCharArray(),single);
+    RecordingParseState chunked = new RecordingParseState(stopAfter);
+    // Small, odd-sized reads, so that runs get split across chunks
+    if (chunked.dealWithCharacters(new SmallReadReader(document,7)) == false)
+      chunked.finishUp();
+    assertEquals(document,single.events.toString(),chunked.events.toString());
+  }
+
+  protected static void parseOneAtATime(char[] chars, TagParseState parser)
+    throws Exception
+  {
+    for (char c : chars)
+    {
+      if (parser.dealWithCharacter(c))
+        return;
+    }
+    parser.finishUp();
+  }
+
+  protected static String makeHTMLPage(int linkCount)
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<!DOCTYPE html>\n<html><head><title>Test &amp; page</title>\n");
+    sb.append("<meta name=\"robots\" content=\"index,follow\">\n<!-- a comment -- with dashes -->\n");
+    sb.append("<script type='text/javascript'>var x = 1 < 2;</script></head>\n<body class=main>\n");
+    for (int i = 0; i < linkCount; i++)
+    {
+      sb.append("<p id=\"p").append(i).append("\">Paragraph ").append(i).append(" has a <a href=\"http://www.example.com/page")
+        .append(i).append(".html?a=1&amp;b=2\" title='Page ").append(i).append("'>link</a> &copy; &#169; in it.<br/></p>\n");
+    }
+    sb.append("</body></html>\n");
+    return sb.toString();
+  }
+
+  protected static String makeRSSFeed(int itemCount)
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<rss version=\"2.0\"><channel>\n");
+    for (int i = 0; i < itemCount; i++)
+    {
+      sb.append("<item><title>Item ").append(i).append("</title><link>http://www.example.com/item").append(i)
+        .append("</link><description><![CDATA[Some <b>escaped</b> text ]] for item ").append(i).append("]]></description></item>\n");
+    }
+    sb.append("</channel></rss>\n");
+    return sb.toString();
+  }
+
+  /** Reader that never returns more than a few characters at a time. */
+  protected static class SmallReadReader extends StringReader
+  {
+    protected final int maxRead;
+
+    public SmallReadReader(String value, int maxRead)
+    {
+      super(value);
+      this.maxRead = maxRead;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int len)
+      throws IOException
+    {
+      return super.read(buffer,offset,Math.min(len,maxRead));
+    }
+  }
+
+  /** Parse state that writes down everything it is told, and optionally halts after some
+  * number of tags.
+  */
+  protected static class RecordingParseState extends TagParseState
+  {
+    protected final int stopAfter;
+    protected int tagCount = 0;
+    public final StringBuilder events = new StringBuilder();
+
+    public RecordingParseState(int stopAfter)
+    {
+      super();
+      this.stopAfter = stopAfter;
+    }
+
+    protected boolean countTag()
+    {
+      tagCount++;
+      return stopAfter != -1 && tagCount >= stopAfter;
+    }
+
+    @Override
+    protected boolean noteTag(String tagName, List<AttrNameValue> attributes)
+      throws ManifoldCFException
+    {
+      events.append("[tag ").append(tagName);
+      for (AttrNameValue nv : attributes)
+      {
+        events.append(" ").append(nv.getName()).append("=").append(nv.getValue());
+      }
+      events.append("]");
+      return countTag();
+    }
+
+    @Override
+    protected boolean noteEndTag(String tagName)
+      throws ManifoldCFException
+    {
+      events.append("[end ").append(tagName).append("]");
+      return countTag();
+    }
+
+    @Override
+    protected boolean noteQTag(String tagName, List<AttrNameValue> attributes)
+      throws ManifoldCFException
+    {
+      events.append("[qtag ").append(tagName).append(" ").append(attributes.size()).append("]");
+      return countTag();
+    }
+
+    @Override
+    protected boolean noteBTag(String tagName)
+      throws ManifoldCFException
+    {
+      events.append("[btag ").append(tagName).append("]");
+      return false;
+    }
+
+    @Override
+    protected boolean noteEndBTag()
+      throws ManifoldCFException
+    {
+      events.append("[endbtag]");
+      return false;
+    }
+
+    @Override
+    protected boolean noteBTagToken(String token)
+      throws ManifoldCFException
+    {
+      events.append("[token ").append(token).append("]");
+      return false;
+    }
+
+    @Override
+    protected boolean noteEscaped(String token)
+      throws ManifoldCFException
+    {
+      events.append("[escaped ").append(token).append("]");
+      return false;
+    }
+
+    @Override
+    protected boolean noteEndEscaped()
+      throws ManifoldCFException
+    {
+      events.append("[endescaped]");
+      return false;
+    }
+
+    @Override
+    protected boolean noteNormalCharacter(char thisChar)
+      throws ManifoldCFException
+    {
+      events.append(thisChar);
+      return false;
+    }
+
+    @Override
+    protected boolean noteEscapedCharacter(char thisChar)
+      throws ManifoldCFException
+    {
+      events.append('{').append(thisChar).append('}');
+      return false;
+    }
+
+    @Override
+    public void finishUp()
+      throws ManifoldCFException
+    {
+      events.append("[finish]");
+      super.finishUp();
+    }
+  }
+
+}
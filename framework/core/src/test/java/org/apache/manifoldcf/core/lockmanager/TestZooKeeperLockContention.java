@@ -0,0 +1,249 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.core.lockmanager;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Lock tests against an embedded ZooKeeper, with each thread using its own lock pool
+* where it should behave like a separate JVM.
+*/
+public class TestZooKeeperLockContention extends ZooKeeperBase
+{
+  protected final static int threadCount = 8;
+  protected final static int iterations = 100;
+
+  @Test
+  public void contentionTest()
+    throws Exception
+  {
+    ZooKeeperConnectionPool pool = new ZooKeeperConnectionPool("localhost:8348",2000);
+    try
+    {
+      LockObjectFactory factory = new ZooKeeperLockObjectFactory(pool);
+      String lockKey = "contentionkey";
+      int[] counter = new int[1];
+      ContendingThread[] threads = new ContendingThread[threadCount];
+      int writerCount = 0;
+      for (int i = 0; i < threadCount; i++)
+      {
+        boolean isReader = ((i % 4) == 0);
+        if (!isReader)
+          writerCount++;
+        threads[i] = new ContendingThread(factory,lockKey,counter,isReader);
+        threads[i].start();
+      }
+      for (int i = 0; i < threadCount; i++)
+      {
+        rethrow(threads[i].finishUp());
+      }
+      // Writers increment twice each time, with nothing but the lock to protect the count
+      assertEquals(2 * writerCount * iterations,counter[0]);
+    }
+    finally
+    {
+      pool.closeAll();
+    }
+  }
+
+  @Test
+  public void readerPassesWaitingWriterTest()
+    throws Exception
+  {
+    ZooKeeperConnectionPool pool = new ZooKeeperConnectionPool("localhost:8348",2000);
+    try
+    {
+      LockObjectFactory factory = new ZooKeeperLockObjectFactory(pool);
+      String lockKey = "readerkey";
+      // Another JVM reads
+      LockObject otherLock = new LockPool(factory).getObject(lockKey);
+      otherLock.enterReadLock();
+      boolean otherLocked = true;
+      // A writer in this JVM has to wait for it
+      LockPool lp = new LockPool(factory);
+      WriterThread writer = new WriterThread(lp.getObject(lockKey));
+      writer.start();
+      try
+      {
+        Thread.sleep(500L);
+        assertFalse(writer.hasWritten());
+        // ... but another reader in this JVM can share the other JVM's read lock right away
+        LockObject lo = lp.getObject(lockKey);
+        lo.enterReadLockNoWait();
+        try
+        {
+          otherLock.leaveReadLock();
+          otherLocked = false;
+          // The writer now waits for the local reader
+          Thread.sleep(500L);
+          assertFalse(writer.hasWritten());
+        }
+        finally
+        {
+          lo.leaveReadLock();
+        }
+      }
+      finally
+      {
+        if (otherLocked)
+          otherLock.leaveReadLock();
+        rethrow(writer.finishUp());
+      }
+      assertTrue(writer.hasWritten());
+    }
+    finally
+    {
+      pool.closeAll();
+    }
+  }
+
+  protected static void rethrow(Throwable e)
+    throws Exception
+  {
+    if (e == null)
+      return;
+    if (e instanceof RuntimeException)
+      throw (RuntimeException)e;
+    if (e instanceof Error)
+      throw (Error)e;
+    throw (Exception)e;
+  }
+
+  /** Thread that takes the lock over and over.  Writers increment the counter without any
+  * other protection; readers check that no writer is part way through.
+  */
+  protected static class ContendingThread extends Thread
+  {
+    protected final LockObjectFactory factory;
+    protected final Object lockKey;
+    protected final int[] counter;
+    protected final boolean isReader;
+
+    protected Throwable exception = null;
+
+    public ContendingThread(LockObjectFactory factory, Object lockKey, int[] counter, boolean isReader)
+    {
+      this.factory = factory;
+      this.lockKey = lockKey;
+      this.counter = counter;
+      this.isReader = isReader;
+    }
+
+    public void run()
+    {
+      try
+      {
+        LockPool lp = new LockPool(factory);
+        for (int i = 0; i < iterations; i++)
+        {
+          LockObject lo = lp.getObject(lockKey);
+          if (isReader)
+          {
+            lo.enterReadLock();
+            try
+            {
+              if (counter[0] % 2 == 1)
+                throw new Exception("Read while a write was in progress");
+            }
+            finally
+            {
+              lo.leaveReadLock();
+            }
+          }
+          else
+          {
+            lo.enterWriteLock();
+            try
+            {
+              // Two separate increments, so readers can tell if they get in between
+              int value = counter[0];
+              counter[0] = value + 1;
+              Thread.sleep(5L);
+              counter[0] = value + 2;
+            }
+            finally
+            {
+              lo.leaveWriteLock();
+            }
+          }
+        }
+      }
+      catch (Throwable e)
+      {
+        exception = e;
+      }
+    }
+
+    public Throwable finishUp()
+      throws InterruptedException
+    {
+      join();
+      return exception;
+    }
+  }
+
+  /** Thread that takes a write lock once. */
+  protected static class WriterThread extends Thread
+  {
+    protected final LockObject lo;
+
+    protected volatile boolean written = false;
+    protected Throwable exception = null;
+
+    public WriterThread(LockObject lo)
+    {
+      this.lo = lo;
+    }
+
+    public void run()
+    {
+      try
+      {
+        lo.enterWriteLock();
+        try
+        {
+          written = true;
+        }
+        finally
+        {
+          lo.leaveWriteLock();
+        }
+      }
+      catch (Throwable e)
+      {
+        exception = e;
+      }
+    }
+
+    public boolean hasWritten()
+    {
+      return written;
+    }
+
+    public Throwable finishUp()
+      throws InterruptedException
+    {
+      join();
+      return exception;
+    }
+  }
+
+}
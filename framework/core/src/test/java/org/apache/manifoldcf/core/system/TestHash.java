@@ -0,0 +1,119 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.core.system;
+
+import java.security.MessageDigest;
+import java.util.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Check that hashing gives the same answers it always has, from any thread.
+*/
+public class TestHash
+{
+
+  @Test
+  public void knownValues()
+    throws Exception
+  {
+    assertEquals("A9993E364706816ABA3E25717850C26C9CD0D89D",ManifoldCF.hash("abc"));
+    assertEquals("DA39A3EE5E6B4B0D3255BFEF95601890AFD80709",ManifoldCF.hash(""));
+    // Again, to make sure the reused digest starts clean
+    assertEquals("A9993E364706816ABA3E25717850C26C9CD0D89D",ManifoldCF.hash("abc"));
+    for (int i = 0; i < 1000; i++)
+    {
+      String input = "http://www.example.com/docs/"+i+"/\u00e9t\u00e9";
+      assertEquals(oldHash(input),ManifoldCF.hash(input));
+    }
+  }
+
+  @Test
+  public void incrementalHash()
+    throws Exception
+  {
+    MessageDigest digest = ManifoldCF.startHash();
+    ManifoldCF.addToHash(digest,"a");
+    ManifoldCF.addToHash(digest,"bc");
+    assertEquals(ManifoldCF.hash("abc"),ManifoldCF.getHashValue(digest));
+  }
+
+  @Test
+  public void manyThreads()
+    throws Exception
+  {
+    final Throwable[] failure = new Throwable[1];
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++)
+    {
+      final int threadNumber = t;
+      threads[t] = new Thread()
+        {
+          public void run()
+          {
+            try
+            {
+              for (int i = 0; i < 5000; i++)
+              {
+                String input = "doc"+threadNumber+"_"+i;
+                if (!oldHash(input).equals(ManifoldCF.hash(input)))
+                  throw new Exception("Wrong hash for '"+input+"'");
+              }
+            }
+            catch (Throwable e)
+            {
+              failure[0] = e;
+            }
+          }
+        };
+      threads[t].start();
+    }
+    for (Thread t : threads)
+    {
+      t.join();
+    }
+    if (failure[0] != null)
+      throw new Exception(failure[0].getMessage(),failure[0]);
+  }
+
+  /** The way hashing used to be done: new digest each time, hex encoded a character at a time */
+  protected static String oldHash(String input)
+    throws Exception
+  {
+    MessageDigest digest = MessageDigest.getInstance("SHA");
+    digest.update(input.getBytes("UTF-8"));
+    byte[] encryptedBytes = digest.digest();
+    StringBuilder rval = new StringBuilder();
+    for (byte x : encryptedBytes)
+    {
+      rval.append(writeNibble((((int)x) >> 4) & 15));
+      rval.append(writeNibble(((int)x) & 15));
+    }
+    return rval.toString();
+  }
+
+  protected static char writeNibble(int value)
+  {
+    if (value >= 10)
+      return (char)(value-10+'A');
+    else
+      return (char)(value+'0');
+  }
+
+}
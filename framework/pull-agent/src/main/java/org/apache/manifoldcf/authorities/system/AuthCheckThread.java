@@ -34,14 +34,16 @@ public class AuthCheckThread extends Thread
 
   // Local data
   protected RequestQueue<AuthRequest> requestQueue;
+  protected AuthorizationResponseCache responseCache;
 
   /** Constructor.
   */
-  public AuthCheckThread(String id, RequestQueue<AuthRequest> requestQueue)
+  public AuthCheckThread(String id, RequestQueue<AuthRequest> requestQueue, AuthorizationResponseCache responseCache)
     throws ManifoldCFException
   {
     super();
     this.requestQueue = requestQueue;
+    this.responseCache = responseCache;
     setName("Auth check thread "+id);
     setDaemon(true);
   }
@@ -75,6 +77,8 @@ public class AuthCheckThread extends Thread
 
           AuthorizationResponse response = null;
           Throwable exception = null;
+          // Set only if the answer came from the connector itself
+          boolean rememberable = false;
 
           // Grab an authorization response only if there's a user
           if (theRequest.getUserID() != null)
@@ -94,6 +98,7 @@ public class AuthCheckThread extends Thread
                   try
                   {
                     response = connector.getAuthorizationResponse(theRequest.getUserID());
+                    rememberable = true;
                   }
                   catch (ManifoldCFException e)
                   {
@@ -128,8 +133,8 @@ public class AuthCheckThread extends Thread
             }
           }
 
-          // The request is complete
-          theRequest.completeRequest(response,exception);
+          // The request is complete, along with any identical ones that were waiting for it
+          responseCache.completeRequest(theRequest,response,exception,rememberable);
 
           // Repeat, and only go to sleep if there are no more requests.
         }
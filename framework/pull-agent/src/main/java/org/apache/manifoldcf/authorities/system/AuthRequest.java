@@ -79,12 +79,39 @@ public class AuthRequest
   {
     synchronized (this)
     {
-      if (answerComplete)
-        return;
-      this.wait();
+      while (!answerComplete)
+        this.wait();
+    }
+  }
+
+  /** Wait for an auth request to be complete, but no longer than the specified time.
+  *@param maxWaitTime is the longest time to wait, in milliseconds.
+  *@return true if the request is complete.
+  */
+  public boolean waitForComplete(long maxWaitTime)
+    throws InterruptedException
+  {
+    long endTime = System.currentTimeMillis() + maxWaitTime;
+    synchronized (this)
+    {
+      while (!answerComplete)
+      {
+        long waitTime = endTime - System.currentTimeMillis();
+        if (waitTime <= 0L)
+          return false;
+        this.wait(waitTime);
+      }
+      return true;
     }
   }
 
+  /** Check whether the request is complete.
+  */
+  public synchronized boolean isComplete()
+  {
+    return answerComplete;
+  }
+
   /** Note that the request is complete, and record the answers.
   */
   public void completeRequest(AuthorizationResponse answerResponse, Throwable answerException)
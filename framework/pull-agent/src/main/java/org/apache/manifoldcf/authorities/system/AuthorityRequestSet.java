@@ -0,0 +1,359 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.authorities.system;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.authorities.interfaces.*;
+import java.util.*;
+
+/** This class holds the mapping and authority requests made to answer one request for a user's access tokens.
+* Only the authorities for the requested domains are asked, along with the mappers they depend on.  A request
+* that depends on a mapper is held back, and queued by whichever thread completes that mapper, so no thread
+* has to wait for it.  Every authority has to answer by the deadline, or it is considered unreachable.
+*/
+public class AuthorityRequestSet
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** The queue mapping requests go on */
+  protected final RequestQueue<MappingRequest> mappingQueue;
+  /** The cache authority requests go through */
+  protected final AuthorizationResponseCache authCache;
+  /** The time by which every authority must answer, or Long.MAX_VALUE */
+  protected final long deadline;
+
+  /** Mapping connections, by name */
+  protected final Map<String,IMappingConnection> mappingConnMap = new HashMap<String,IMappingConnection>();
+  /** Mapping requests, by mapper and domain */
+  protected final Map<MapperDescription,MappingRequest> mappingRequests = new HashMap<MapperDescription,MappingRequest>();
+  /** Authority requests, by connection name */
+  protected final Map<String,AuthRequest> authRequests = new HashMap<String,AuthRequest>();
+  /** Names of the authority connections that did not answer in time */
+  protected final Set<String> timedOutConnections = new HashSet<String>();
+
+  /** Constructor.
+  *@param mappingQueue is the queue mapping requests go on.
+  *@param authCache is the cache authority requests go through.
+  *@param mappingConnections are all the mapping connections, since any of them may be needed.
+  *@param deadline is the time by which every authority must answer, or Long.MAX_VALUE if there is none.
+  */
+  public AuthorityRequestSet(RequestQueue<MappingRequest> mappingQueue, AuthorizationResponseCache authCache,
+    IMappingConnection[] mappingConnections, long deadline)
+  {
+    this.mappingQueue = mappingQueue;
+    this.authCache = authCache;
+    this.deadline = deadline;
+    for (IMappingConnection c : mappingConnections)
+    {
+      mappingConnMap.put(c.getName(),c);
+    }
+  }
+
+  /** Make and fire off the requests for one domain.  Requests that have no prerequisite are queued right away;
+  * the rest are queued when their prerequisite mapping request completes.
+  *@param authDomain is the authorization domain.
+  *@param userID is the user's name in that domain.
+  *@param connections are the authority connections for that domain.
+  *@return false if a request could not be queued, because the service is overloaded.
+  */
+  public boolean addDomain(String authDomain, String userID, IAuthorityConnection[] connections)
+  {
+    // Mapping requests that must wait for another mapping request to complete before they can be queued.
+    List<MappingOrder> mappingOrders = new ArrayList<MappingOrder>();
+    // Auth requests that must wait for a mapping request to complete before they can be queued.
+    List<AuthOrder> authOrders = new ArrayList<AuthOrder>();
+
+    // Set of connections we need to fire off
+    Set<MapperDescription> activeConnections = new HashSet<MapperDescription>();
+
+    // We do the minimal set of mapping requests and authorities.  Since it is the authority tokens we are
+    // looking for, we start there, and build authority requests first, then mapping requests that support them,
+    // etc.
+    // Create auth requests
+    for (int i = 0; i < connections.length; i++)
+    {
+      IAuthorityConnection thisConnection = connections[i];
+      String identifyingString = thisConnection.getDescription();
+      if (identifyingString == null || identifyingString.length() == 0)
+        identifyingString = thisConnection.getName();
+
+      // Create a request
+      AuthRequest ar = new AuthRequest(thisConnection,identifyingString);
+      authRequests.put(thisConnection.getName(), ar);
+
+      // We hold the request back if there are prerequisites to meet.
+      // Otherwise, we just fire off the request
+      if (thisConnection.getPrerequisiteMapping() == null)
+      {
+        ar.setUserID(userID);
+        if (!authCache.addRequest(ar,deadline))
+          return false;
+      }
+      else
+      {
+        MapperDescription md = new MapperDescription(thisConnection.getPrerequisiteMapping(),authDomain);
+        authOrders.add(new AuthOrder(ar, md, authCache, mappingRequests, deadline));
+        // The same mapper can be used for multiple domains, although this is likely to be uncommon.  Nevertheless,
+        // mapper invocations need to be segregated to prevent trouble
+        activeConnections.add(md);
+      }
+    }
+
+    // Create mapping requests
+    while (!activeConnections.isEmpty())
+    {
+      Iterator<MapperDescription> connectionIter = activeConnections.iterator();
+      MapperDescription mapperDesc = connectionIter.next();
+      String connectionName = mapperDesc.mapperName;
+      IMappingConnection thisConnection = mappingConnMap.get(connectionName);
+      String identifyingString = thisConnection.getDescription();
+      if (identifyingString == null || identifyingString.length() == 0)
+        identifyingString = connectionName;
+
+      // Create a request
+      MappingRequest mr = new MappingRequest(thisConnection,identifyingString);
+      mappingRequests.put(mapperDesc, mr);
+
+      // Either hold it back, or just fire it off immediately.
+      if (thisConnection.getPrerequisiteMapping() == null)
+      {
+        mr.setUserID(userID);
+        if (!mappingQueue.addRequest(mr,deadline))
+          return false;
+      }
+      else
+      {
+        MapperDescription p = new MapperDescription(thisConnection.getPrerequisiteMapping(),authDomain);
+        mappingOrders.add(new MappingOrder(mr, p, mappingQueue, mappingRequests, deadline));
+        if (mappingRequests.get(p) == null)
+          activeConnections.add(p);
+      }
+      activeConnections.remove(mapperDesc);
+    }
+
+    // Hang the held-back requests off their prerequisites.  We have to wait until all the requests have been
+    // at least created before we do this.  Each one is queued by whatever thread completes its prerequisite,
+    // so no threads are needed here.
+    for (MappingOrder order : mappingOrders)
+    {
+      order.register();
+    }
+    for (AuthOrder order : authOrders)
+    {
+      order.register();
+    }
+    return true;
+  }
+
+  /** Wait for the authorities to answer, or for the deadline to pass.  Since every authority request depends,
+  * at most, on mapping requests, once they are done, all the mappers that matter are done too.
+  */
+  public void waitForComplete()
+    throws InterruptedException
+  {
+    for (String connectionName : authRequests.keySet())
+    {
+      AuthRequest ar = authRequests.get(connectionName);
+
+      if (Logging.authorityService.isDebugEnabled())
+        Logging.authorityService.debug("Waiting for answer from authority connection "+ar.getIdentifyingString()+" for user '"+ar.getUserID()+"'");
+
+      if (deadline == Long.MAX_VALUE)
+        ar.waitForComplete();
+      else if (!ar.waitForComplete(deadline - System.currentTimeMillis()))
+      {
+        timedOutConnections.add(connectionName);
+        continue;
+      }
+
+      if (Logging.authorityService.isDebugEnabled())
+        Logging.authorityService.debug("Received answer from authority connection "+ar.getIdentifyingString()+" for user '"+ar.getUserID()+"'");
+    }
+  }
+
+  /** Look at how the mappers did.  In general, problems are just logged, because the downstream authorities
+  * will presumably not find what they are looking for and error out that way.  Call after waitForComplete().
+  *@return true if a mapping request could not be queued, because the service is overloaded.
+  */
+  public boolean isMappingOverloaded()
+  {
+    for (MappingRequest mr : mappingRequests.values())
+    {
+      if (!mr.isComplete())
+      {
+        Logging.authorityService.warn("Mapper "+mr.getIdentifyingString()+" did not finish in time; dependent authorities treated as unreachable");
+        continue;
+      }
+      Throwable exception = mr.getAnswerException();
+      if (exception instanceof RequestQueueFullException)
+        return true;
+      if (exception != null)
+      {
+        Logging.authorityService.warn("Mapping exception logged from "+mr.getIdentifyingString()+": "+exception.getMessage()+"; mapper aborted", exception);
+      }
+    }
+    return false;
+  }
+
+  /** Get the authority requests.
+  *@return the requests, keyed by authority connection name.
+  */
+  public Map<String,AuthRequest> getAuthRequests()
+  {
+    return authRequests;
+  }
+
+  /** Check whether an authority failed to answer by the deadline.  Call after waitForComplete().
+  *@param connectionName is the authority connection name.
+  *@return true if it did not answer in time.
+  */
+  public boolean isTimedOut(String connectionName)
+  {
+    return timedOutConnections.contains(connectionName);
+  }
+
+  /** This class represents a tuple of (mapper_name, auth_domain).
+  */
+  protected static class MapperDescription
+  {
+    public final String mapperName;
+    public final String authDomain;
+
+    public MapperDescription(String mapperName, String authDomain)
+    {
+      this.mapperName = mapperName;
+      this.authDomain = authDomain;
+    }
+
+    public int hashCode()
+    {
+      return mapperName.hashCode() + authDomain.hashCode();
+    }
+
+    public boolean equals(Object o)
+    {
+      if (!(o instanceof MapperDescription))
+        return false;
+      MapperDescription other = (MapperDescription)o;
+      return this.mapperName.equals(other.mapperName) &&
+        this.authDomain.equals(other.authDomain);
+    }
+  }
+
+  /** This class is responsible for firing off a MappingRequest once the mapping request it depends on
+  * is complete.  It is run by whatever thread completes the prerequisite, usually a mapping thread.
+  */
+  protected static class MappingOrder implements Runnable
+  {
+    protected final MappingRequest request;
+    protected final MapperDescription prerequisite;
+    protected final Map<MapperDescription,MappingRequest> requests;
+    protected final RequestQueue<MappingRequest> mappingRequestQueue;
+    protected final long deadline;
+
+    public MappingOrder(
+      MappingRequest request,
+      MapperDescription prerequisite,
+      RequestQueue<MappingRequest> mappingRequestQueue,
+      Map<MapperDescription, MappingRequest> requests,
+      long deadline)
+    {
+      this.request = request;
+      this.prerequisite = prerequisite;
+      this.mappingRequestQueue = mappingRequestQueue;
+      this.requests = requests;
+      this.deadline = deadline;
+    }
+
+    /** Arrange to be run when the prerequisite completes.  All requests must exist before this is called.
+    */
+    public void register()
+    {
+      requests.get(prerequisite).addCompletionAction(this);
+    }
+
+    public void run()
+    {
+      try
+      {
+        // Constraints are met.  Fire off the request.
+        request.setUserID(requests.get(prerequisite).getAnswerResponse());
+        if (!mappingRequestQueue.addRequest(request,deadline))
+          request.completeRequest(null,new RequestQueueFullException("Mapping request queue is full"));
+      }
+      catch (Throwable e)
+      {
+        // Don't let the completing thread take the hit; fail this request instead
+        request.completeRequest(null,e);
+      }
+    }
+
+  }
+
+  /** This class is responsible for firing off an AuthRequest once the mapping request it depends on
+  * is complete.  It is run by whatever thread completes the prerequisite, usually a mapping thread.
+  */
+  protected static class AuthOrder implements Runnable
+  {
+    protected final AuthRequest request;
+    protected final MapperDescription prerequisite;
+    protected final Map<MapperDescription,MappingRequest> mappingRequests;
+    protected final AuthorizationResponseCache authCache;
+    protected final long deadline;
+
+    public AuthOrder(
+      AuthRequest request,
+      MapperDescription prerequisite,
+      AuthorizationResponseCache authCache,
+      Map<MapperDescription, MappingRequest> mappingRequests,
+      long deadline)
+    {
+      this.request = request;
+      this.prerequisite = prerequisite;
+      this.authCache = authCache;
+      this.mappingRequests = mappingRequests;
+      this.deadline = deadline;
+    }
+
+    /** Arrange to be run when the prerequisite completes.  All requests must exist before this is called.
+    */
+    public void register()
+    {
+      mappingRequests.get(prerequisite).addCompletionAction(this);
+    }
+
+    public void run()
+    {
+      try
+      {
+        // Constraints are met.  Fire off the request.  User may be null if mapper failed!!
+        request.setUserID(mappingRequests.get(prerequisite).getAnswerResponse());
+        // If this can't be queued, the request is completed with an exception that says so
+        authCache.addRequest(request,deadline);
+      }
+      catch (Throwable e)
+      {
+        // Don't let the completing thread take the hit; fail this request instead
+        request.completeRequest(null,e);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,295 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.authorities.system;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.authorities.interfaces.*;
+import java.util.*;
+
+/** This class sits in front of the authorization request queue, and answers requests from memory when it can.
+* Answers are remembered per authority connection and user for a limited time, and only a limited number of
+* them are kept, least recently used first out.  Also, when a request comes in for an authority connection and
+* user that is already being looked up, no second lookup is queued; the new request just gets the answer to the
+* one in progress.
+* Only real answers from the connector are remembered.  Errors, default responses, and "unreachable"
+* answers are not, so the next request will try the authority again.
+* If a lookup's deadline passes while it is still on the queue, it stays on the queue only if one of the
+* requests sharing it can still be answered in time, and then under that request's deadline.
+*/
+public class AuthorizationResponseCache implements IOverdueRequestHandler<AuthRequest>
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** The queue that requests go on when they can't be answered from memory */
+  protected final RequestQueue<AuthRequest> requestQueue;
+  /** How long, in milliseconds, an answer is remembered.  Zero means answers are not remembered at all. */
+  protected final long responseLifetime;
+  /** The most answers remembered at once */
+  protected final int maxResponses;
+
+  /** Remembered answers, by key, in least-recently-used order */
+  protected final Map<String,CachedResponse> responses;
+  /** Lookups in progress, by key */
+  protected final Map<String,PendingLookup> pendingLookups = new HashMap<String,PendingLookup>();
+
+  // Statistics
+  protected long hitCount = 0L;
+  protected long missCount = 0L;
+  protected long coalescedCount = 0L;
+
+  /** Constructor.
+  *@param requestQueue is the queue that lookups are placed on.
+  *@param responseLifetime is how long, in milliseconds, an answer is remembered.
+  *@param maxResponses is the most answers to remember at once.
+  */
+  public AuthorizationResponseCache(RequestQueue<AuthRequest> requestQueue, long responseLifetime, final int maxResponses)
+  {
+    this.requestQueue = requestQueue;
+    this.responseLifetime = responseLifetime;
+    this.maxResponses = maxResponses;
+    this.responses = new LinkedHashMap<String,CachedResponse>(16,0.75f,true)
+    {
+      protected boolean removeEldestEntry(Map.Entry<String,CachedResponse> eldest)
+      {
+        return size() > maxResponses;
+      }
+    };
+    requestQueue.setOverdueHandler(this);
+  }
+
+  /** Add a request, with no deadline.
+  *@param request is the request, with its user ID already set.
+  *@return false if the request could not be queued.
+  */
+  public boolean addRequest(AuthRequest request)
+  {
+    return addRequest(request,Long.MAX_VALUE);
+  }
+
+  /** Add a request.  The request will be completed either right away, from memory, or when
+  * its lookup (or an identical one already in progress) is done.  If the request queue is full, the request
+  * is completed right away with a RequestQueueFullException.
+  *@param request is the request, with its user ID already set.
+  *@param deadline is the time by which the caller needs an answer, or Long.MAX_VALUE if there is no such time.
+  *@return false if the request could not be queued.
+  */
+  public boolean addRequest(AuthRequest request, long deadline)
+  {
+    String userID = request.getUserID();
+    if (userID == null)
+    {
+      // Nothing to look up; the auth check thread will answer right away
+      if (requestQueue.addRequest(request,deadline))
+        return true;
+      request.completeRequest(null,new RequestQueueFullException("Authorization request queue is full"));
+      return false;
+    }
+    String key = makeKey(request.getAuthorityConnection().getName(),userID);
+    AuthorizationResponse response;
+    synchronized (this)
+    {
+      CachedResponse cr = responses.get(key);
+      if (cr != null && cr.expirationTime > System.currentTimeMillis())
+      {
+        hitCount++;
+        response = cr.response;
+      }
+      else
+      {
+        if (cr != null)
+          responses.remove(key);
+        PendingLookup pl = pendingLookups.get(key);
+        if (pl != null)
+        {
+          coalescedCount++;
+          pl.addFollower(request,deadline);
+          return true;
+        }
+        missCount++;
+        pendingLookups.put(key,new PendingLookup(request));
+        response = null;
+      }
+    }
+    if (response != null)
+    {
+      request.completeRequest(response,null);
+      return true;
+    }
+    if (requestQueue.addRequest(request,deadline))
+      return true;
+    // Turned away; so is anyone who joined in the meantime
+    completeRequest(request,null,new RequestQueueFullException("Authorization request queue is full"),false);
+    return false;
+  }
+
+  /** Complete a request that came off the queue, and any identical requests that were waiting for it.
+  *@param request is the request.
+  *@param response is the answer, or null.
+  *@param exception is the exception, or null.
+  *@param rememberable is true if the answer came from the connector, and can be given to later requests.
+  */
+  public void completeRequest(AuthRequest request, AuthorizationResponse response, Throwable exception, boolean rememberable)
+  {
+    List<AuthRequest> followers = null;
+    String userID = request.getUserID();
+    if (userID != null)
+    {
+      String key = makeKey(request.getAuthorityConnection().getName(),userID);
+      synchronized (this)
+      {
+        PendingLookup pl = pendingLookups.get(key);
+        if (pl != null && pl.leader == request)
+        {
+          pendingLookups.remove(key);
+          followers = pl.followers;
+        }
+        if (rememberable && exception == null && response != null && responseLifetime > 0L &&
+          response.getResponseStatus() != AuthorizationResponse.RESPONSE_UNREACHABLE)
+          responses.put(key,new CachedResponse(response,System.currentTimeMillis() + responseLifetime));
+      }
+    }
+    request.completeRequest(response,exception);
+    if (followers != null)
+    {
+      for (AuthRequest follower : followers)
+      {
+        follower.completeRequest(response,exception);
+      }
+    }
+  }
+
+  /** Handle a lookup whose deadline passed while it was on the queue.  If another request is sharing the
+  * lookup and can still be answered in time, the lookup goes back on the queue under that request's deadline.
+  * Otherwise, everyone waiting for it has given up, so it is dropped, and completed as unreachable.
+  *@param request is the request.
+  *@param currentTime is the current time.
+  *@return the new deadline, or -1L if the request is dropped.
+  */
+  @Override
+  public long requestOverdue(AuthRequest request, long currentTime)
+  {
+    String userID = request.getUserID();
+    if (userID != null)
+    {
+      String key = makeKey(request.getAuthorityConnection().getName(),userID);
+      synchronized (this)
+      {
+        PendingLookup pl = pendingLookups.get(key);
+        if (pl != null && pl.leader == request)
+        {
+          long deadline = pl.getEarliestFollowerDeadline(currentTime);
+          if (deadline != -1L)
+            return deadline;
+        }
+      }
+    }
+    completeRequest(request,new AuthorizationResponse(new String[0],AuthorizationResponse.RESPONSE_UNREACHABLE),null,false);
+    return -1L;
+  }
+
+  /** Throw away answers that have expired.
+  *@param currentTime is the current time.
+  */
+  public synchronized void expireResponses(long currentTime)
+  {
+    Iterator<CachedResponse> iter = responses.values().iterator();
+    while (iter.hasNext())
+    {
+      if (iter.next().expirationTime <= currentTime)
+        iter.remove();
+    }
+  }
+
+  /** Get the number of requests answered from memory */
+  public synchronized long getHitCount()
+  {
+    return hitCount;
+  }
+
+  /** Get the number of requests that needed a lookup */
+  public synchronized long getMissCount()
+  {
+    return missCount;
+  }
+
+  /** Get the number of requests that shared a lookup already in progress */
+  public synchronized long getCoalescedCount()
+  {
+    return coalescedCount;
+  }
+
+  /** Get the number of answers currently remembered */
+  public synchronized int getSize()
+  {
+    return responses.size();
+  }
+
+  protected static String makeKey(String connectionName, String userID)
+  {
+    // Length prefix, so that no two name/user pairs give the same key
+    return Integer.toString(connectionName.length()) + ":" + connectionName + ":" + userID;
+  }
+
+  /** A remembered answer */
+  protected static class CachedResponse
+  {
+    public final AuthorizationResponse response;
+    public final long expirationTime;
+
+    public CachedResponse(AuthorizationResponse response, long expirationTime)
+    {
+      this.response = response;
+      this.expirationTime = expirationTime;
+    }
+  }
+
+  /** A lookup in progress, and the requests waiting for it */
+  protected static class PendingLookup
+  {
+    public final AuthRequest leader;
+    public final List<AuthRequest> followers = new ArrayList<AuthRequest>();
+    // The deadline of each follower, in the same order
+    public final List<Long> followerDeadlines = new ArrayList<Long>();
+
+    public PendingLookup(AuthRequest leader)
+    {
+      this.leader = leader;
+    }
+
+    public void addFollower(AuthRequest follower, long deadline)
+    {
+      followers.add(follower);
+      followerDeadlines.add(new Long(deadline));
+    }
+
+    /** Get the earliest deadline of any follower that can still be answered in time, or -1L if there is none */
+    public long getEarliestFollowerDeadline(long currentTime)
+    {
+      long rval = -1L;
+      for (Long deadline : followerDeadlines)
+      {
+        long value = deadline.longValue();
+        if (value > currentTime && (rval == -1L || value < rval))
+          rval = value;
+      }
+      return rval;
+    }
+  }
+
+}
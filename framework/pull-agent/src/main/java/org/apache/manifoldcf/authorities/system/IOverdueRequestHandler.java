@@ -0,0 +1,37 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.authorities.system;
+
+/** This interface is called by a request queue when a request's deadline passes before any reader thread
+* has taken it.  The queue does not keep such requests; the handler decides whether the request is still
+* wanted by someone, and if so, under what deadline it should go back on the queue.
+*/
+public interface IOverdueRequestHandler<T>
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** Handle a request whose deadline has passed.  This is called without the queue's lock held.
+  *@param request is the request.
+  *@param currentTime is the current time.
+  *@return a deadline later than currentTime to put the request back on the queue with, or -1L to drop it.
+  * A dropped request is the handler's responsibility to complete, if anything is still waiting for it.
+  */
+  public long requestOverdue(T request, long currentTime);
+
+}
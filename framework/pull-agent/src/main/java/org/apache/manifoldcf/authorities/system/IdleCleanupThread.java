@@ -65,6 +65,24 @@ public class IdleCleanupThread extends Thread
           authorityConnectorPool.pollAllConnectors();
           mappingConnectorPool.pollAllConnectors();
           cacheManager.expireObjects(System.currentTimeMillis());
+          AuthorizationResponseCache responseCache = ManifoldCF.getAuthorizationResponseCache();
+          if (responseCache != null)
+          {
+            responseCache.expireResponses(System.currentTimeMillis());
+            if (Logging.authorityService.isDebugEnabled())
+              Logging.authorityService.debug("Authorization response cache: "+responseCache.getSize()+" responses; "+
+                responseCache.getHitCount()+" hits, "+responseCache.getMissCount()+" misses, "+
+                responseCache.getCoalescedCount()+" coalesced");
+          }
+          if (Logging.authorityService.isDebugEnabled())
+          {
+            RequestQueue<AuthRequest> requestQueue = ManifoldCF.getRequestQueue();
+            if (requestQueue != null)
+              Logging.authorityService.debug("Authorization request queue: "+requestQueue.getStatistics());
+            RequestQueue<MappingRequest> mappingRequestQueue = ManifoldCF.getMappingRequestQueue();
+            if (mappingRequestQueue != null)
+              Logging.authorityService.debug("Mapping request queue: "+mappingRequestQueue.getStatistics());
+          }
           
           // Sleep for the retry interval.
           ManifoldCF.sleep(5000L);
@@ -37,12 +37,21 @@ public class ManifoldCF extends org.apache.manifoldcf.core.system.ManifoldCF
   protected static int numAuthCheckThreads = 0;
   // Number of mapping threads
   protected static int numMappingThreads = 0;
+  // How long, in milliseconds, the service waits for any one authority; 0 means forever
+  protected static long authorityTimeout = 0L;
   
   protected static final String authCheckThreadCountProperty = "org.apache.manifoldcf.authorityservice.threads";
   protected static final String mappingThreadCountProperty = "org.apache.manifoldcf.authorityservice.mappingthreads";
+  protected static final String responseLifetimeProperty = "org.apache.manifoldcf.authorityservice.responselifetime";
+  protected static final String responseCacheSizeProperty = "org.apache.manifoldcf.authorityservice.responsecachesize";
+  protected static final String authorityTimeoutProperty = "org.apache.manifoldcf.authorityservice.authoritytimeout";
+  protected static final String requestQueueSizeProperty = "org.apache.manifoldcf.authorityservice.queuesize";
+  protected static final String mappingRequestQueueSizeProperty = "org.apache.manifoldcf.authorityservice.mappingqueuesize";
 
   // Request queue
   protected static RequestQueue<AuthRequest> requestQueue = null;
+  // Remembered authorization responses, in front of the request queue
+  protected static AuthorizationResponseCache responseCache = null;
   // Mapping request queue
   protected static RequestQueue<MappingRequest> mappingRequestQueue = null;
   
@@ -161,17 +170,36 @@ public class ManifoldCF extends org.apache.manifoldcf.core.system.ManifoldCF
     if (numMappingThreads < 1 || numMappingThreads > 100)
       throw new ManifoldCFException("Illegal value for the number of mapping threads");
 
+    long responseLifetime = LockManagerFactory.getLongProperty(threadContext, responseLifetimeProperty, 60000L);
+    if (responseLifetime < 0L)
+      throw new ManifoldCFException("Illegal value for the authorization response lifetime");
+    int responseCacheSize = LockManagerFactory.getIntProperty(threadContext, responseCacheSizeProperty, 10000);
+    if (responseCacheSize < 1)
+      throw new ManifoldCFException("Illegal value for the authorization response cache size");
+
+    authorityTimeout = LockManagerFactory.getLongProperty(threadContext, authorityTimeoutProperty, 0L);
+    if (authorityTimeout < 0L)
+      throw new ManifoldCFException("Illegal value for the authority timeout");
+
+    int requestQueueSize = LockManagerFactory.getIntProperty(threadContext, requestQueueSizeProperty, 10000);
+    if (requestQueueSize < 1)
+      throw new ManifoldCFException("Illegal value for the authorization request queue size");
+    int mappingRequestQueueSize = LockManagerFactory.getIntProperty(threadContext, mappingRequestQueueSizeProperty, 10000);
+    if (mappingRequestQueueSize < 1)
+      throw new ManifoldCFException("Illegal value for the mapping request queue size");
+
     // Start up threads
     idleCleanupThread = new IdleCleanupThread();
     idleCleanupThread.start();
 
-    requestQueue = new RequestQueue<AuthRequest>();
-    mappingRequestQueue = new RequestQueue<MappingRequest>();
+    requestQueue = new RequestQueue<AuthRequest>(requestQueueSize);
+    responseCache = new AuthorizationResponseCache(requestQueue,responseLifetime,responseCacheSize);
+    mappingRequestQueue = new RequestQueue<MappingRequest>(mappingRequestQueueSize);
 
     authCheckThreads = new AuthCheckThread[numAuthCheckThreads];
     for (int i = 0; i < numAuthCheckThreads; i++)
     {
-      authCheckThreads[i] = new AuthCheckThread(Integer.toString(i),requestQueue);
+      authCheckThreads[i] = new AuthCheckThread(Integer.toString(i),requestQueue,responseCache);
       authCheckThreads[i].start();
     }
     
@@ -271,6 +299,7 @@ public class ManifoldCF extends org.apache.manifoldcf.core.system.ManifoldCF
     AuthorityConnectorPoolFactory.make(threadContext).flushUnusedConnectors();
     numAuthCheckThreads = 0;
     requestQueue = null;
+    responseCache = null;
     MappingConnectorPoolFactory.make(threadContext).flushUnusedConnectors();
     numMappingThreads = 0;
     mappingRequestQueue = null;
@@ -282,6 +311,22 @@ public class ManifoldCF extends org.apache.manifoldcf.core.system.ManifoldCF
     return requestQueue;
   }
 
+  /** Get the current authorization response cache.  Authorization requests should be added here, rather than
+  * directly to the request queue.
+  */
+  public static AuthorizationResponseCache getAuthorizationResponseCache()
+  {
+    return responseCache;
+  }
+
+  /** Get how long, in milliseconds, to wait for any one authority to answer a request.  An authority that takes
+  * longer is reported as unreachable.  Zero means to wait as long as it takes.
+  */
+  public static long getAuthorityTimeout()
+  {
+    return authorityTimeout;
+  }
+
   /** Get the current mapping request queue */
   public static RequestQueue<MappingRequest> getMappingRequestQueue()
   {
@@ -24,7 +24,8 @@ import java.util.*;
 
 /** This class describes a user mapping request.  The request has state: It can be in an incomplete state, or it can be in a complete state.
 * The thread that cares whether the request is complete needs to be able to wait for that situation to occur, so the request has
-* a method that does just that.
+* a method that does just that.  Requests that depend on this one can instead register actions, which are run by whatever thread
+* completes the request.
 */
 public class MappingRequest
 {
@@ -40,6 +41,9 @@ public class MappingRequest
   protected String outputUserID = null;
   protected Throwable answerException = null;
 
+  // Actions to run when the request completes
+  protected List<Runnable> completionActions = null;
+
   /** Construct the request, and record the question.
   */
   public MappingRequest(IMappingConnection mappingConnection, String identifyingString)
@@ -80,16 +84,43 @@ public class MappingRequest
   {
     synchronized (this)
     {
-      if (answerComplete)
+      while (!answerComplete)
+        this.wait();
+    }
+  }
+
+  /** Check whether the request is complete.
+  */
+  public synchronized boolean isComplete()
+  {
+    return answerComplete;
+  }
+
+  /** Register an action to run when the request is complete.  The action is run by the thread that completes
+  * the request, so it should be quick, e.g. queuing a request that depends on this one.  If the request is
+  * already complete, the action is run right away, by the caller.
+  *@param action is the action.
+  */
+  public void addCompletionAction(Runnable action)
+  {
+    synchronized (this)
+    {
+      if (!answerComplete)
+      {
+        if (completionActions == null)
+          completionActions = new ArrayList<Runnable>();
+        completionActions.add(action);
         return;
-      this.wait();
+      }
     }
+    action.run();
   }
 
   /** Note that the request is complete, and record the answers.
   */
   public void completeRequest(String outputUserID, Throwable answerException)
   {
+    List<Runnable> actions;
     synchronized (this)
     {
       if (answerComplete)
@@ -102,6 +133,17 @@ public class MappingRequest
 
       // Notify threads waiting on the answer.
       this.notifyAll();
+
+      actions = completionActions;
+      completionActions = null;
+    }
+    // Run the actions outside of the lock, since they may well complete other requests
+    if (actions != null)
+    {
+      for (Runnable action : actions)
+      {
+        action.run();
+      }
     }
   }
 
@@ -21,54 +21,321 @@ package org.apache.manifoldcf.authorities.system;
 import org.apache.manifoldcf.core.interfaces.*;
 import org.apache.manifoldcf.authorities.interfaces.*;
 import java.util.*;
+import java.util.concurrent.locks.*;
 
 /** This class describes a authorization request queue, which has a "stuffer" servlet and many "reader" threads.
-* The queue manages thread synchronization so that (a) the "stuffer" servlet blindly appends authority requests, and
+* The queue manages thread synchronization so that (a) the "stuffer" servlet appends requests, and
 * then waits for these requests to be completed, and
 * (b) the "reader" threads block if queue is empty.
-* The objects being queued are all AuthRequest objects.
+* Requests are handed out earliest deadline first, and in the order they were added when deadlines are the same,
+* so no request is starved by ones that came in later.  A request whose deadline has already passed when it
+* reaches the front is taken off the queue, since its caller has given up; an overdue request handler, if
+* there is one, may put it back under a later deadline if someone else is still waiting for it.
+* The queue has a maximum size.  When it is full, further requests are refused right away, rather than being
+* added to a backlog that could never be worked off in time.
 */
 public class RequestQueue<T>
 {
   public static final String _rcsid = "@(#)$Id: RequestQueue.java 988245 2010-08-23 18:39:35Z kwright $";
 
-  // Since the queue has a maximum size, an ArrayList is a fine way to keep it
-  protected List<T> queue = new ArrayList<T>();
+  /** The most requests that may be waiting at once */
+  protected final int maxSize;
 
-  /** Constructor.
+  // Fair, so that reader threads get requests in the order they started waiting
+  protected final ReentrantLock lock = new ReentrantLock(true);
+  protected final Condition notEmpty = lock.newCondition();
+
+  // Waiting requests, by deadline and then sequence
+  protected final PriorityQueue<QueueEntry<T>> queue = new PriorityQueue<QueueEntry<T>>();
+  // What to do with requests whose deadline passes while they are waiting, or null to just drop them
+  protected volatile IOverdueRequestHandler<T> overdueHandler = null;
+  // The next sequence number
+  protected long sequence = 0L;
+
+  // Statistics
+  protected int peakDepth = 0;
+  protected long addedCount = 0L;
+  protected long rejectedCount = 0L;
+  protected long takenCount = 0L;
+  protected long overdueCount = 0L;
+  protected long totalWaitTime = 0L;
+  protected long maxWaitTime = 0L;
+
+  /** Constructor, for a queue without a size limit.
   */
   public RequestQueue()
   {
+    this(Integer.MAX_VALUE);
+  }
+
+  /** Constructor.
+  *@param maxSize is the most requests that may be waiting at once.
+  */
+  public RequestQueue(int maxSize)
+  {
+    this.maxSize = maxSize;
+  }
+
+  /** Set the handler for requests whose deadline passes while they are waiting.
+  *@param overdueHandler is the handler, or null if such requests should just be dropped.
+  */
+  public void setOverdueHandler(IOverdueRequestHandler<T> overdueHandler)
+  {
+    this.overdueHandler = overdueHandler;
+  }
+
+  /** Add a request to the queue, with no deadline.
+  *@param dd is the request.
+  *@return false if the queue is full, and the request was not added.
+  */
+  public boolean addRequest(T dd)
+  {
+    return addRequest(dd,Long.MAX_VALUE);
   }
 
   /** Add a request to the queue.
   *@param dd is the request.
+  *@param deadline is the time by which the caller needs an answer, or Long.MAX_VALUE if there is no such time.
+  *@return false if the queue is full, and the request was not added.
   */
-  public void addRequest(T dd)
+  public boolean addRequest(T dd, long deadline)
   {
-    synchronized (queue)
+    lock.lock();
+    try
     {
-      queue.add(dd);
-      queue.notify();
+      int depth = queue.size();
+      if (depth >= maxSize)
+      {
+        rejectedCount++;
+        return false;
+      }
+      queue.add(new QueueEntry<T>(dd,deadline,sequence++,System.currentTimeMillis()));
+      addedCount++;
+      if (depth + 1 > peakDepth)
+        peakDepth = depth + 1;
+      notEmpty.signal();
+      return true;
+    }
+    finally
+    {
+      lock.unlock();
     }
   }
 
   /** Pull the next request off the queue, but wait if there is
-  * nothing there.
+  * nothing there.  Requests found to be overdue along the way are passed to the overdue handler.
   *@return the request to be processed.
   */
   public T getRequest()
     throws InterruptedException
   {
-    synchronized (queue)
+    while (true)
     {
-      // If queue is empty, go to sleep
-      while (queue.size() == 0)
-        queue.wait();
+      QueueEntry<T> entry;
+      long currentTime;
+      lock.lockInterruptibly();
+      try
+      {
+        // If queue is empty, go to sleep
+        while (queue.size() == 0)
+          notEmpty.await();
+
+        currentTime = System.currentTimeMillis();
+        entry = queue.poll();
+        if (entry.deadline > currentTime)
+        {
+          long waitTime = currentTime - entry.addTime;
+          takenCount++;
+          totalWaitTime += waitTime;
+          if (waitTime > maxWaitTime)
+            maxWaitTime = waitTime;
+          return entry.request;
+        }
+        overdueCount++;
+      }
+      finally
+      {
+        lock.unlock();
+      }
 
-      return queue.remove(queue.size()-1);
+      // Too late for its caller.  The handler is called without the lock, since it may need locks of its own.
+      IOverdueRequestHandler<T> handler = overdueHandler;
+      if (handler == null)
+        continue;
+      long newDeadline = handler.requestOverdue(entry.request,currentTime);
+      if (newDeadline <= currentTime)
+        continue;
+      lock.lock();
+      try
+      {
+        // This takes back the place the request just gave up, so the size limit is not checked again
+        queue.add(new QueueEntry<T>(entry.request,newDeadline,sequence++,entry.addTime));
+        notEmpty.signal();
+      }
+      finally
+      {
+        lock.unlock();
+      }
     }
   }
 
+  /** Get the number of requests waiting right now */
+  public int getDepth()
+  {
+    lock.lock();
+    try
+    {
+      return queue.size();
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /** Get the largest number of requests that have been waiting at once */
+  public int getPeakDepth()
+  {
+    lock.lock();
+    try
+    {
+      return peakDepth;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /** Get the number of requests added */
+  public long getAddedCount()
+  {
+    lock.lock();
+    try
+    {
+      return addedCount;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /** Get the number of requests refused because the queue was full */
+  public long getRejectedCount()
+  {
+    lock.lock();
+    try
+    {
+      return rejectedCount;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /** Get the number of requests handed out to readers */
+  public long getTakenCount()
+  {
+    lock.lock();
+    try
+    {
+      return takenCount;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /** Get the number of times a request's deadline passed while it was waiting */
+  public long getOverdueCount()
+  {
+    lock.lock();
+    try
+    {
+      return overdueCount;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /** Get the total time, in milliseconds, that requests handed out have spent waiting */
+  public long getTotalWaitTime()
+  {
+    lock.lock();
+    try
+    {
+      return totalWaitTime;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /** Get the longest time, in milliseconds, that any request handed out has spent waiting */
+  public long getMaxWaitTime()
+  {
+    lock.lock();
+    try
+    {
+      return maxWaitTime;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /** Describe the queue's statistics, for logging.
+  */
+  public String getStatistics()
+  {
+    lock.lock();
+    try
+    {
+      return "depth "+queue.size()+" (peak "+peakDepth+"); "+addedCount+" added, "+
+        rejectedCount+" rejected, "+takenCount+" taken, "+overdueCount+" overdue; wait "+
+        ((takenCount == 0L)?0L:(totalWaitTime / takenCount))+" ms average, "+maxWaitTime+" ms max";
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /** A waiting request */
+  protected static class QueueEntry<T> implements Comparable<QueueEntry<T>>
+  {
+    public final T request;
+    public final long deadline;
+    public final long sequence;
+    public final long addTime;
+
+    public QueueEntry(T request, long deadline, long sequence, long addTime)
+    {
+      this.request = request;
+      this.deadline = deadline;
+      this.sequence = sequence;
+      this.addTime = addTime;
+    }
+
+    public int compareTo(QueueEntry<T> other)
+    {
+      if (deadline < other.deadline)
+        return -1;
+      if (deadline > other.deadline)
+        return 1;
+      if (sequence < other.sequence)
+        return -1;
+      if (sequence > other.sequence)
+        return 1;
+      return 0;
+    }
+  }
 
 }
@@ -172,6 +172,110 @@ public class BinManager extends org.apache.manifoldcf.core.database.BaseTable im
     return returnValues;
   }
 
+  /** Get N bin values for each of a set of bins (and set the next ones).  If a bin's record does not yet exist,
+  * create it with a starting value.
+  * We expect this to happen within a transaction!!
+  *@param binNames are the names of the bins (256 char max).  A bin named more than once gets separate values for each.
+  *@param newBinValues are the values to use for the bins that do not exist yet.
+  *@param counts are the number of values desired for each bin.
+  *@return the counter values for each bin.
+  */
+  @Override
+  public double[][] getIncrementBinValues(String[] binNames, double[] newBinValues, int[] counts)
+    throws ManifoldCFException
+  {
+    // A bin named more than once is read and written once, for all the values it needs
+    Map<String,Integer> totalCounts = new HashMap<String,Integer>();
+    Map<String,Double> startValues = new HashMap<String,Double>();
+    for (int i = 0; i < binNames.length; i++)
+    {
+      Integer totalCount = totalCounts.get(binNames[i]);
+      totalCounts.put(binNames[i],new Integer(((totalCount == null)?0:totalCount.intValue()) + counts[i]));
+      Double startValue = startValues.get(binNames[i]);
+      if (startValue == null || newBinValues[i] > startValue.doubleValue())
+        startValues.put(binNames[i],new Double(newBinValues[i]));
+    }
+    // Lock the rows in the same order every time, so concurrent callers don't deadlock
+    String[] sortedBinNames = totalCounts.keySet().toArray(new String[0]);
+    Arrays.sort(sortedBinNames);
+
+    // One SELECT FOR UPDATE for as many bins as we can at a time
+    Map<String,Double> currentValues = new HashMap<String,Double>();
+    int maxClause = getMaxInClause();
+    List<String> list = new ArrayList<String>();
+    for (String binName : sortedBinNames)
+    {
+      if (list.size() == maxClause)
+      {
+        readBinValues(list,currentValues);
+        list.clear();
+      }
+      list.add(binName);
+    }
+    if (list.size() > 0)
+      readBinValues(list,currentValues);
+
+    // The next value each bin hands out
+    Map<String,Double> nextValues = new HashMap<String,Double>();
+    for (String binName : sortedBinNames)
+    {
+      Double value = currentValues.get(binName);
+      double rval = startValues.get(binName).doubleValue();
+      if (value != null && value.doubleValue() > rval)
+        rval = value.doubleValue();
+      nextValues.put(binName,new Double(rval));
+      HashMap map = new HashMap();
+      map.put(binCounterField,new Double(rval + (double)totalCounts.get(binName).intValue()));
+      if (value != null)
+      {
+        ArrayList params = new ArrayList();
+        String query = buildConjunctionClause(params,new ClauseDescription[]{
+          new UnitaryClause(binNameField,binName)});
+        performUpdate(map," WHERE "+query,params,null);
+      }
+      else
+      {
+        map.put(binNameField,binName);
+        performInsert(map,null);
+      }
+    }
+
+    // Hand out each bin's values in the order they were asked for
+    double[][] returnValues = new double[binNames.length][];
+    for (int index = 0; index < binNames.length; index++)
+    {
+      double rval = nextValues.get(binNames[index]).doubleValue();
+      double[] binValues = new double[counts[index]];
+      for (int i = 0; i < binValues.length; i++)
+      {
+        binValues[i] = rval;
+        rval += 1.0;
+      }
+      returnValues[index] = binValues;
+      nextValues.put(binNames[index],new Double(rval));
+    }
+    return returnValues;
+  }
+
+  /** Read and lock the current counter values for a set of bins.
+  *@param binNames are the bin names.
+  *@param currentValues is the map the values are put into, keyed by bin name.  Bins that don't exist are left out.
+  */
+  protected void readBinValues(List<String> binNames, Map<String,Double> currentValues)
+    throws ManifoldCFException
+  {
+    ArrayList params = new ArrayList();
+    String query = buildConjunctionClause(params,new ClauseDescription[]{
+      new MultiClause(binNameField,binNames)});
+    IResultSet result = performQuery("SELECT "+binNameField+","+binCounterField+" FROM "+getTableName()+" WHERE "+query+
+      " ORDER BY "+binNameField+" FOR UPDATE",params,null,null);
+    for (int i = 0; i < result.getRowCount(); i++)
+    {
+      IResultRow row = result.getRow(i);
+      currentValues.put((String)row.getValue(binNameField),(Double)row.getValue(binCounterField));
+    }
+  }
+
   /** Get N bin values (and set next one).  If the record does not yet exist, create it with a starting value.
   * This method invokes its own retry-able transaction.
   *@param binName is the name of the bin (256 char max)
@@ -222,4 +326,54 @@ public class BinManager extends org.apache.manifoldcf.core.database.BaseTable im
     }
   }
 
+  /** Get N bin values for each of a set of bins (and set the next ones).  If a bin's record does not yet exist,
+  * create it with a starting value.
+  * This method invokes its own retry-able transaction.
+  *@param binNames are the names of the bins (256 char max).  A bin named more than once gets separate values for each.
+  *@param newBinValues are the values to use for the bins that do not exist yet.
+  *@param counts are the number of values desired for each bin.
+  *@return the counter values for each bin.
+  */
+  @Override
+  public double[][] getIncrementBinValuesInTransaction(String[] binNames, double[] newBinValues, int[] counts)
+    throws ManifoldCFException
+  {
+    while (true)
+    {
+      long sleepAmt = 0L;
+      beginTransaction();
+      try
+      {
+        return getIncrementBinValues(binNames, newBinValues, counts);
+      }
+      catch (Error e)
+      {
+        signalRollback();
+        throw e;
+      }
+      catch (RuntimeException e)
+      {
+        signalRollback();
+        throw e;
+      }
+      catch (ManifoldCFException e)
+      {
+        signalRollback();
+        if (e.getErrorCode() == e.DATABASE_TRANSACTION_ABORT)
+        {
+          if (Logging.perf.isDebugEnabled())
+            Logging.perf.debug("Aborted transaction obtaining docpriorities: "+e.getMessage());
+          sleepAmt = getSleepAmt();
+          continue;
+        }
+        throw e;
+      }
+      finally
+      {
+        endTransaction();
+        sleepFor(sleepAmt);
+      }
+    }
+  }
+
 }
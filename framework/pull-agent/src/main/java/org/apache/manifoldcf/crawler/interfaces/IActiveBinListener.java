@@ -0,0 +1,35 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.interfaces;
+
+/** This interface describes an object that wishes to be told whenever the active count
+* for a bin changes in a QueueTracker.  Since assignment ratings depend only on active bin counts,
+* this allows ratings to be recalculated incrementally, rather than all at once.
+* Implementations are called on worker threads, and should do as little as possible.
+*/
+public interface IActiveBinListener
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** Note that the active count for a bin has changed.
+  *@param binName is the name of the bin.
+  */
+  public void activeBinCountChanged(String binName);
+  
+}
@@ -63,4 +63,26 @@ public interface IBinManager
   public double[] getIncrementBinValuesInTransaction(String binName, double newBinValue, int count)
     throws ManifoldCFException;
 
+  /** Get N bin values for each of a set of bins (and set the next ones).  If a bin's record does not yet exist,
+  * create it with a starting value.
+  * We expect this to happen within a transaction!!
+  *@param binNames are the names of the bins (256 char max).  A bin named more than once gets separate values for each.
+  *@param newBinValues are the values to use for the bins that do not exist yet.
+  *@param counts are the number of values desired for each bin.
+  *@return the counter values for each bin.
+  */
+  public double[][] getIncrementBinValues(String[] binNames, double[] newBinValues, int[] counts)
+    throws ManifoldCFException;
+
+  /** Get N bin values for each of a set of bins (and set the next ones).  If a bin's record does not yet exist,
+  * create it with a starting value.
+  * This method invokes its own retry-able transaction.
+  *@param binNames are the names of the bins (256 char max).  A bin named more than once gets separate values for each.
+  *@param newBinValues are the values to use for the bins that do not exist yet.
+  *@param counts are the number of values desired for each bin.
+  *@return the counter values for each bin.
+  */
+  public double[][] getIncrementBinValuesInTransaction(String[] binNames, double[] newBinValues, int[] counts)
+    throws ManifoldCFException;
+
 }
@@ -0,0 +1,78 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.interfaces;
+
+import org.apache.manifoldcf.core.interfaces.*;
+
+/** This interface represents functionality that wakes up the threads that move jobs from one
+* state to the next.  Each event is named after the thread that handles it.  When a job changes
+* state so that one of these threads has work to do, the event is signalled, and the thread runs
+* right away instead of at the end of its poll interval.
+* Events signalled with signalEvent() are seen by all agents processes in the cluster; events
+* signalled with signalLocalEvent() are seen only by the current process.  Events are a hint only;
+* the threads still poll, less often, so nothing is lost if a signal is missed.
+*/
+public interface IJobEventNotifier
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** There may be jobs to start or to put in a wait state, because of a schedule change */
+  public final static String EVENT_SCHEDULE = "schedule";
+  /** There may be jobs ready for startup */
+  public final static String EVENT_STARTUP = "startup";
+  /** There may be jobs that need seeding */
+  public final static String EVENT_SEEDING = "seeding";
+  /** There may be active jobs that have run out of documents */
+  public final static String EVENT_FINISH = "finish";
+  /** There may be jobs that are done stopping, resuming, or shutting down */
+  public final static String EVENT_RESET = "reset";
+  /** There may be jobs whose connectors need notification of completion */
+  public final static String EVENT_NOTIFY = "notify";
+  /** There may be jobs ready to begin deletion */
+  public final static String EVENT_DELETESTART = "deletestart";
+  /** There may be jobs that are done deleting their documents */
+  public final static String EVENT_DELETE = "delete";
+
+  /** Signal an event, for all agents processes in the cluster.  This should be called only
+  * after the state change it describes has been committed.  A failure to reach the other
+  * processes is logged rather than thrown; only interruption is thrown.
+  *@param eventName is the event.
+  */
+  public void signalEvent(String eventName)
+    throws ManifoldCFException;
+
+  /** Signal an event, for the current agents process only.  This is much cheaper than signalEvent(), and
+  * is meant for events that happen often, such as documents being completed, where any one process
+  * noticing is enough.
+  *@param eventName is the event.
+  */
+  public void signalLocalEvent(String eventName);
+
+  /** Wait until an event is signalled, or until the maximum wait time is up, whichever comes first.
+  * An event signalled any time since this handle last returned from waitForEvent() for the same
+  * event causes an immediate return, so events that happen while the caller is busy are not lost.
+  * Returns for the same event are spaced out by a short minimum interval, so that a burst of signals
+  * does not make the caller run continuously.
+  *@param eventName is the event.
+  *@param maxWaitTime is the longest time to wait, in milliseconds.
+  */
+  public void waitForEvent(String eventName, long maxWaitTime)
+    throws ManifoldCFException, InterruptedException;
+
+}
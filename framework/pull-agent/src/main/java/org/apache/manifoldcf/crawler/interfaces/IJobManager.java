@@ -248,6 +248,16 @@ public interface IJobManager
 
   // This method supports the "queue stuffer" thread
 
+  /** Find the earliest time, after the current time, at which any pending document belonging to an active job
+  * becomes eligible to be fetched.  This is used by the stuffer thread to decide how long to wait after
+  * finding nothing to queue.
+  *@param currentTime is the current time, in milliseconds since epoch.
+  *@return the time, in milliseconds since epoch, or null if there are no such documents.
+  */
+  public Long getNextDocumentCheckTime(long currentTime)
+    throws ManifoldCFException;
+
+
   /** Get up to the next n document(s) to be fetched and processed.
   * This fetch returns records that contain the document identifier, plus all instructions
   * pertaining to the document's handling (e.g. whether it should be refetched if the version
@@ -22,6 +22,7 @@ import org.apache.manifoldcf.crawler.system.Logging;
 import org.apache.manifoldcf.core.interfaces.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.regex.*;
 
 /** This class attempts to provide document priorities in order to acheive as much balance as possible between documents having different bins.
@@ -60,16 +61,51 @@ public class QueueTracker
   /** These are the accumulated performance averages for all connections etc. */
   protected final PerformanceStatistics performanceStatistics = new PerformanceStatistics();
 
-  /** These are the bin counts for tracking the documents that are on
-  * the active queue, but are not being processed yet */
-  protected final Map<String,BinCount> queuedBinCounts = new HashMap<String,BinCount>();
+  /** The number of stripes in the bin registry.  Must be a power of two. */
+  protected final static int binStripeCount = 64;
 
-  /** These are the bin counts for active threads */
-  protected final Map<String,BinCount> activeBinCounts = new HashMap<String,BinCount>();
+  /** This is the bin registry.  Each bin that has documents either on the active queue or being processed has exactly one
+  * BinCount in the registry, which carries both counts for the bin.  The registry is split into stripes by bin name hash, each of which is
+  * guarded by synchronizing on it, so that threads working on different bins seldom contend.  A bin is dropped from the registry when both of
+  * its counts reach zero. */
+  protected final BinStripe[] binStripes = new BinStripe[binStripeCount];
+
+  /** These are the listeners to be told about changes to active bin counts */
+  protected final List<IActiveBinListener> activeBinListeners = new CopyOnWriteArrayList<IActiveBinListener>();
 
   /** Constructor */
   public QueueTracker()
   {
+    for (int i = 0; i < binStripes.length; i++)
+    {
+      binStripes[i] = new BinStripe();
+    }
+  }
+
+  /** Find the registry stripe that a bin belongs to.
+  */
+  protected BinStripe getStripe(String binName)
+  {
+    int h = binName.hashCode();
+    // Spread the high bits down, since only the low bits select the stripe
+    h ^= (h >>> 16);
+    return binStripes[h & (binStripeCount - 1)];
+  }
+
+  /** Register a listener for active bin count changes.
+  *@param listener is the listener.
+  */
+  public void addActiveBinListener(IActiveBinListener listener)
+  {
+    activeBinListeners.add(listener);
+  }
+
+  /** Unregister a listener for active bin count changes.
+  *@param listener is the listener.
+  */
+  public void removeActiveBinListener(IActiveBinListener listener)
+  {
+    activeBinListeners.remove(listener);
   }
 
   /** Add an access record to the queue tracker.  This happens when a document
@@ -94,15 +130,10 @@ public class QueueTracker
     while (i < binNames.length)
     {
       String binName = binNames[i++];
-      synchronized (queuedBinCounts)
+      BinStripe stripe = getStripe(binName);
+      synchronized (stripe)
       {
-        BinCount value = queuedBinCounts.get(binName);
-        if (value == null)
-        {
-          value = new BinCount();
-          queuedBinCounts.put(binName,value);
-        }
-        value.increment();
+        stripe.lookup(binName).incrementQueued();
       }
     }
 
@@ -150,28 +181,15 @@ public class QueueTracker
     {
       String binName = binNames[i++];
 
-      // Increment queued bin count for this bin.
-      synchronized (queuedBinCounts)
+      // Decrement the queued bin count and increment the active bin count for this bin, together.
+      BinStripe stripe = getStripe(binName);
+      synchronized (stripe)
       {
-        BinCount value = queuedBinCounts.get(binName);
-        if (value != null)
-        {
-          if (value.decrement())
-            queuedBinCounts.remove(binName);
-        }
-      }
-
-      // Decrement active bin count for this bin.
-      synchronized (activeBinCounts)
-      {
-        BinCount value = activeBinCounts.get(binName);
-        if (value == null)
-        {
-          value = new BinCount();
-          activeBinCounts.put(binName,value);
-        }
-        value.increment();
+        BinCount value = stripe.lookup(binName);
+        value.decrementQueued();
+        value.incrementActive();
       }
+      noteActiveBinCountChange(binName);
     }
   }
 
@@ -198,15 +216,56 @@ public class QueueTracker
     while (i < binNames.length)
     {
       String binName = binNames[i++];
-      synchronized (activeBinCounts)
+      BinStripe stripe = getStripe(binName);
+      synchronized (stripe)
       {
-        BinCount value = activeBinCounts.get(binName);
+        BinCount value = stripe.get(binName);
         if (value != null)
         {
-          if (value.decrement())
-            activeBinCounts.remove(binName);
+          value.decrementActive();
+          if (value.isEmpty())
+            stripe.remove(binName);
         }
       }
+      noteActiveBinCountChange(binName);
+    }
+  }
+
+  /** Tell all listeners that an active bin count has changed.
+  */
+  protected void noteActiveBinCountChange(String binName)
+  {
+    for (IActiveBinListener listener : activeBinListeners)
+    {
+      listener.activeBinCountChanged(binName);
+    }
+  }
+
+  /** Get the number of documents with a given bin that are currently being processed.
+  *@param binName is the bin.
+  *@return the active count.
+  */
+  public int getActiveBinCount(String binName)
+  {
+    BinStripe stripe = getStripe(binName);
+    synchronized (stripe)
+    {
+      BinCount value = stripe.get(binName);
+      return (value == null)?0:value.getActiveCount();
+    }
+  }
+
+  /** Get the number of documents with a given bin that are on the active queue but not yet being processed.
+  *@param binName is the bin.
+  *@return the queued count.
+  */
+  public int getQueuedBinCount(String binName)
+  {
+    BinStripe stripe = getStripe(binName);
+    synchronized (stripe)
+    {
+      BinCount value = stripe.get(binName);
+      return (value == null)?0:value.getQueuedCount();
     }
   }
 
@@ -221,22 +280,20 @@ public class QueueTracker
   * the number of bins.
   * The repository connection is used to reduce the priority of assignment, based on the fetch rate that will
   * result from this set of bins.
+  * This method is called for every queued document whenever ratings change, so it does no allocation.
   */
   public double calculateAssignmentRating(String[] binNames, IRepositoryConnection connection)
   {
+    // A document with no bins competes with nothing; give it the neutral rating (1.0, in log form)
+    if (binNames.length == 0)
+      return 0.0;
+
     // Work in log space
     double ratingLog = 0.0;
     int i = 0;
     while (i < binNames.length)
     {
-      String binName = binNames[i++];
-      int count = 0;
-      synchronized (activeBinCounts)
-      {
-        BinCount value = activeBinCounts.get(binName);
-        if (value != null)
-          count = value.getValue();
-      }
+      int count = getActiveBinCount(binNames[i++]);
       // rating *= (1.0 / (1.0 + (double)count))
       ratingLog -= Math.log(1.0 + (double)count);
     }
@@ -259,48 +316,86 @@ public class QueueTracker
   }
 
 
-  /** This is the class which allows a mutable integer count value to be saved in the bincount table.
+  /** This is one stripe of the bin registry.  Synchronize on it before using it.
+  */
+  protected static class BinStripe extends HashMap<String,BinCount>
+  {
+    /** Create */
+    public BinStripe()
+    {
+    }
+
+    /** Find the BinCount for a bin, creating it if it doesn't exist yet.
+    */
+    public BinCount lookup(String binName)
+    {
+      BinCount value = get(binName);
+      if (value == null)
+      {
+        value = new BinCount();
+        put(binName,value);
+      }
+      return value;
+    }
+  }
+
+  /** This is the class which holds the mutable queued and active counts for a single bin in the bin registry.
+  * It is protected by the stripe it belongs to.
   */
   protected static class BinCount
   {
-    /** The count */
-    protected int count = 0;
+    /** The number of documents on the active queue, but not being processed yet */
+    protected int queuedCount = 0;
+    /** The number of documents being processed */
+    protected int activeCount = 0;
 
     /** Create */
     public BinCount()
     {
     }
 
-    public BinCount duplicate()
+    /** Increment the queued counter */
+    public void incrementQueued()
+    {
+      queuedCount++;
+    }
+
+    /** Decrement the queued counter */
+    public void decrementQueued()
+    {
+      if (queuedCount > 0)
+        queuedCount--;
+    }
+
+    /** Increment the active counter */
+    public void incrementActive()
     {
-      BinCount rval = new BinCount();
-      rval.count = this.count;
-      return rval;
+      activeCount++;
     }
 
-    /** Increment the counter */
-    public void increment()
+    /** Decrement the active counter */
+    public void decrementActive()
     {
-      count++;
+      if (activeCount > 0)
+        activeCount--;
     }
 
-    /** Decrement the counter, returning true if empty */
-    public boolean decrement()
+    /** Check if both counters are zero */
+    public boolean isEmpty()
     {
-      count--;
-      return count == 0;
+      return queuedCount == 0 && activeCount == 0;
     }
 
-    /** Set the counter value */
-    public void setValue(int count)
+    /** Get the queued counter value */
+    public int getQueuedCount()
     {
-      this.count = count;
+      return queuedCount;
     }
 
-    /** Get the counter value */
-    public int getValue()
+    /** Get the active counter value */
+    public int getActiveCount()
     {
-      return count;
+      return activeCount;
     }
   }
 
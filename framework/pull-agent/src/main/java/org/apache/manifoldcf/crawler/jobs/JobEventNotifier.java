@@ -0,0 +1,258 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.jobs;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.crawler.interfaces.*;
+import org.apache.manifoldcf.crawler.system.Logging;
+import java.util.*;
+import java.io.*;
+
+/** This class wakes up job state threads when there is something for them to do.
+* Within a process, each event has a generation counter, which signalling bumps and waiting
+* threads watch.  Across the cluster, each event has a shared data resource, into which signalling
+* writes a new unique token; waiting threads read the resource every so often to see if it has changed.
+* The shared resource is written before the local counter is bumped, so that a thread woken
+* locally also picks up the new token, and does not wake up a second time for the same event.
+*/
+public class JobEventNotifier implements IJobEventNotifier
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  protected final static String eventResourcePrefix = "_JOBEVENT_";
+  protected final static String eventLockPrefix = "_JOBEVENTLOCK_";
+
+  /** How often, in milliseconds, a waiting thread checks for events signalled by other processes */
+  protected final static long CLUSTER_CHECK_INTERVAL = 1000L;
+  /** The minimum time, in milliseconds, between returns from waitForEvent() for the same event */
+  protected final static long MINIMUM_RETURN_INTERVAL = 1000L;
+
+  /** The local state of each event, by event name.  This is shared by all threads in the process. */
+  protected final static Map<String,LocalEvent> localEvents = new HashMap<String,LocalEvent>();
+
+  /** Thread context */
+  protected final IThreadContext threadContext;
+  /** Lock manager */
+  protected final ILockManager lockManager;
+
+  /** What this handle last saw of each event, by event name */
+  protected final Map<String,SeenEvent> seenEvents = new HashMap<String,SeenEvent>();
+
+  /** Constructor.
+  */
+  public JobEventNotifier(IThreadContext threadContext)
+    throws ManifoldCFException
+  {
+    this.threadContext = threadContext;
+    lockManager = LockManagerFactory.make(threadContext);
+  }
+
+  /** Signal an event, for all agents processes in the cluster.  This should be called only
+  * after the state change it describes has been committed.
+  *@param eventName is the event.
+  */
+  @Override
+  public void signalEvent(String eventName)
+    throws ManifoldCFException
+  {
+    try
+    {
+      writeToken(eventName);
+    }
+    catch (ManifoldCFException e)
+    {
+      if (e.getErrorCode() == ManifoldCFException.INTERRUPTED)
+        throw e;
+      // The state change is already committed, so the caller must not see this as a failure.
+      // Other processes will pick the change up when they next poll.
+      Logging.jobs.warn("Couldn't signal job event '"+eventName+"' to other processes: "+e.getMessage(),e);
+    }
+    signalLocalEvent(eventName);
+  }
+
+  /** Signal an event, for the current agents process only.
+  *@param eventName is the event.
+  */
+  @Override
+  public void signalLocalEvent(String eventName)
+  {
+    LocalEvent le = getLocalEvent(eventName);
+    synchronized (le)
+    {
+      le.generation++;
+      le.notifyAll();
+    }
+  }
+
+  /** Wait until an event is signalled, or until the maximum wait time is up, whichever comes first.
+  *@param eventName is the event.
+  *@param maxWaitTime is the longest time to wait, in milliseconds.
+  */
+  @Override
+  public void waitForEvent(String eventName, long maxWaitTime)
+    throws ManifoldCFException, InterruptedException
+  {
+    LocalEvent le = getLocalEvent(eventName);
+    SeenEvent se = seenEvents.get(eventName);
+    if (se == null)
+    {
+      // First wait for this event; anything that happened before now is not of interest,
+      // since the caller has presumably just done a pass.
+      se = new SeenEvent();
+      synchronized (le)
+      {
+        se.generation = le.generation;
+      }
+      se.token = readToken(eventName);
+      se.returnTime = 0L;
+      seenEvents.put(eventName,se);
+    }
+
+    long startTime = System.currentTimeMillis();
+    long endTime = startTime + maxWaitTime;
+    long earliestTime = se.returnTime + MINIMUM_RETURN_INTERVAL;
+    long nextClusterCheck = startTime;
+    byte[] token = null;
+    boolean tokenRead = false;
+    while (true)
+    {
+      long currentTime = System.currentTimeMillis();
+      if (currentTime >= endTime)
+        break;
+      if (currentTime >= earliestTime && currentTime >= nextClusterCheck)
+      {
+        token = readToken(eventName);
+        tokenRead = true;
+        if (!Arrays.equals(token,se.token))
+          break;
+        nextClusterCheck = currentTime + CLUSTER_CHECK_INTERVAL;
+      }
+      synchronized (le)
+      {
+        if (currentTime >= earliestTime && le.generation != se.generation)
+        {
+          tokenRead = false;
+          break;
+        }
+        long waitUntil;
+        if (currentTime < earliestTime)
+          waitUntil = earliestTime;
+        else
+          waitUntil = nextClusterCheck;
+        if (waitUntil > endTime)
+          waitUntil = endTime;
+        if (waitUntil > currentTime)
+          le.wait(waitUntil - currentTime);
+      }
+    }
+
+    // Whatever woke us up, we've now seen everything up to this point
+    synchronized (le)
+    {
+      se.generation = le.generation;
+    }
+    if (!tokenRead)
+      token = readToken(eventName);
+    se.token = token;
+    se.returnTime = System.currentTimeMillis();
+  }
+
+  /** Write a new cluster-wide token for an event.
+  */
+  protected void writeToken(String eventName)
+    throws ManifoldCFException
+  {
+    byte[] token;
+    try
+    {
+      token = IDFactory.make(threadContext).getBytes("utf-8");
+    }
+    catch (UnsupportedEncodingException e)
+    {
+      throw new ManifoldCFException(e.getMessage(),e);
+    }
+    String lockName = eventLockPrefix+eventName;
+    lockManager.enterWriteLock(lockName);
+    try
+    {
+      lockManager.writeData(eventResourcePrefix+eventName,token);
+    }
+    finally
+    {
+      lockManager.leaveWriteLock(lockName);
+    }
+  }
+
+  /** Read the cluster-wide token for an event.
+  */
+  protected byte[] readToken(String eventName)
+    throws ManifoldCFException
+  {
+    String lockName = eventLockPrefix+eventName;
+    lockManager.enterReadLock(lockName);
+    try
+    {
+      return lockManager.readData(eventResourcePrefix+eventName);
+    }
+    finally
+    {
+      lockManager.leaveReadLock(lockName);
+    }
+  }
+
+  /** Get the process-wide state of an event, creating it if needed */
+  protected static LocalEvent getLocalEvent(String eventName)
+  {
+    synchronized (localEvents)
+    {
+      LocalEvent le = localEvents.get(eventName);
+      if (le == null)
+      {
+        le = new LocalEvent();
+        localEvents.put(eventName,le);
+      }
+      return le;
+    }
+  }
+
+  /** The process-wide state of an event.  This object is also what threads wait on.
+  */
+  protected static class LocalEvent
+  {
+    public long generation = 0L;
+
+    public LocalEvent()
+    {
+    }
+  }
+
+  /** What one handle has seen of an event.
+  */
+  protected static class SeenEvent
+  {
+    public long generation;
+    public byte[] token;
+    public long returnTime;
+
+    public SeenEvent()
+    {
+    }
+  }
+
+}
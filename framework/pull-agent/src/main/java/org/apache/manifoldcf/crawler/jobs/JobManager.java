@@ -50,6 +50,7 @@ public class JobManager implements IJobManager
   protected final HopCount hopCount;
   protected final Carrydown carryDown;
   protected final EventManager eventManager;
+  protected final IJobEventNotifier jobEventNotifier;
 
 
   protected static Random random = new Random();
@@ -72,6 +73,7 @@ public class JobManager implements IJobManager
     connectionMgr = RepositoryConnectionManagerFactory.make(threadContext);
     repositoryConnectorPool = RepositoryConnectorPoolFactory.make(threadContext);
     lockManager = LockManagerFactory.make(threadContext);
+    jobEventNotifier = JobEventNotifierFactory.make(threadContext);
   }
 
   /** Install.
@@ -553,7 +555,7 @@ public class JobManager implements IJobManager
     {
       database.endTransaction();
     }
-
+    jobEventNotifier.signalEvent(jobEventNotifier.EVENT_DELETESTART);
   }
 
   /** Load a job for editing.
@@ -584,7 +586,12 @@ public class JobManager implements IJobManager
     throws ManifoldCFException
   {
     ManifoldCF.noteConfigurationChange();
+    boolean isNew = jobDescription.getIsNew();
     jobs.save(jobDescription);
+    if (isNew)
+      jobQueue.createJobPartition(jobDescription.getID());
+    // The schedule may have changed
+    jobEventNotifier.signalEvent(jobEventNotifier.EVENT_SCHEDULE);
   }
 
   /** See if there's a reference to a connection name.
@@ -1149,6 +1156,7 @@ public class JobManager implements IJobManager
     jobQueue.deleteIngestedDocumentIdentifiers(identifiers);
     // Hopcount rows get removed when the job itself is removed.
     // carrydown records get removed when the job itself is removed.
+    jobEventNotifier.signalLocalEvent(jobEventNotifier.EVENT_DELETE);
   }
 
   /** Get list of cleanable document descriptions.  This list will take into account
@@ -1361,7 +1369,7 @@ public class JobManager implements IJobManager
             rvalBoolean[i] = (allowedDocIds.get(compositeDocID) != null);
             // Set the record status to "being cleaned" and return it
             rval[i++] = dd;
-            jobQueue.setCleaningStatus(dd.getID(),processID);
+            jobQueue.setCleaningStatus(dd.getJobID(),dd.getID(),processID);
           }
 
           TrackerClass.notePrecommit();
@@ -1637,7 +1645,7 @@ public class JobManager implements IJobManager
             {
               // Set the record status to "being deleted" and return it
               rval[j++] = dd;
-              jobQueue.setDeletingStatus(dd.getID(),processID);
+              jobQueue.setDeletingStatus(dd.getJobID(),dd.getID(),processID);
             }
             i++;
           }
@@ -1974,7 +1982,7 @@ public class JobManager implements IJobManager
           int index = x.intValue();
           DocumentDescription dd = documentDescriptions[index];
           IPriorityCalculator priority = priorities[index];
-          jobQueue.writeDocPriority(currentTime,dd.getID(),priority);
+          jobQueue.writeDocPriority(currentTime,dd.getJobID(),dd.getID(),priority);
           i++;
         }
         database.performCommit();
@@ -2215,7 +2223,7 @@ public class JobManager implements IJobManager
             rvalBoolean[i] = (allowedDocIds.get(compositeDocID) != null);
             // Set the record status to "being cleaned" and return it
             rval[i++] = dd;
-            jobQueue.updateActiveRecord(dd.getID(),((Integer)statusMap.get(compositeDocID)).intValue(),processID);
+            jobQueue.updateActiveRecord(dd.getJobID(),dd.getID(),((Integer)statusMap.get(compositeDocID)).intValue(),processID);
           }
 
           TrackerClass.notePrecommit();
@@ -2490,6 +2498,9 @@ public class JobManager implements IJobManager
     // Assert the blocking documents we discovered
     vList.tallyBlockingDocuments(blockingDocuments);
 
+    if (Logging.perf.isDebugEnabled())
+      Logging.perf.debug("Read "+Integer.toString(vList.getRowsRead())+" jobqueue rows to queue "+Integer.toString(answers.size())+" documents");
+
     // Convert the saved answers to an array
     DocumentDescription[] rval = new DocumentDescription[answers.size()];
     i = 0;
@@ -2556,23 +2567,71 @@ public class JobManager implements IJobManager
     return rval;
   }
 
-  /** Fetch and process documents matching the passed-in criteria */
-  protected void fetchAndProcessDocuments(ArrayList answers, Long currentTimeValue, Long currentPriorityValue,
-    ThrottleLimit vList, IRepositoryConnection[] connections, String processID)
+  /** Find the earliest time, after the current time, at which any pending document belonging to an active job
+  * becomes eligible to be fetched.  This is used by the stuffer thread to decide how long to wait after
+  * finding nothing to queue.  Documents that are already eligible are not considered, since if they weren't
+  * queued, something else (e.g. throttling) is holding them back.
+  *@param currentTime is the current time, in milliseconds since epoch.
+  *@return the time, in milliseconds since epoch, or null if there are no such documents.
+  */
+  @Override
+  public Long getNextDocumentCheckTime(long currentTime)
     throws ManifoldCFException
   {
+    if (!jobs.activeJobsPresent())
+      return null;
 
-    // Note well: This query does not do "FOR UPDATE".  The reason is that only one thread can possibly change the document's state to active.
-    // When FOR UPDATE was included, deadlock conditions were common because of the complexity of this query.
-    // So, instead, as part of CONNECTORS-781, I've introduced a write lock for the pertinent section.
-
+    StringBuilder sb = new StringBuilder("SELECT ");
     ArrayList list = new ArrayList();
+    
+    sb.append(jobQueue.checkTimeField)
+      .append(" FROM ").append(jobQueue.getTableName())
+      .append(" t0 WHERE ");
+      
+    sb.append(database.buildConjunctionClause(list,new ClauseDescription[]{
+      new MultiClause(jobQueue.statusField,
+        new Object[]{jobQueue.statusToString(JobQueue.STATUS_PENDING),
+          jobQueue.statusToString(JobQueue.STATUS_PENDINGPURGATORY)}),
+      new UnitaryClause(jobQueue.checkActionField,"=",jobQueue.actionToString(JobQueue.ACTION_RESCAN)),
+      new UnitaryClause(jobQueue.checkTimeField,">",new Long(currentTime))})).append(" AND ");
 
+    sb.append("EXISTS(SELECT 'x' FROM ").append(jobs.getTableName()).append(" t1 WHERE ")
+      .append(database.buildConjunctionClause(list,new ClauseDescription[]{
+        new MultiClause("t1."+jobs.statusField,new Object[]{
+          Jobs.statusToString(jobs.STATUS_ACTIVE),
+          Jobs.statusToString(jobs.STATUS_ACTIVESEEDING)}),
+        new JoinClause("t1."+jobs.idField,"t0."+jobQueue.jobIDField)}))
+      .append(") ");
+      
+    sb.append(" ").append(database.constructIndexOrderByClause(new String[]{
+      jobQueue.checkTimeField},
+      true)).append(" ")
+      .append(database.constructOffsetLimitClause(0,1,true));
+
+    IResultSet set = database.performQuery(sb.toString(),list,null,null,1,null);
+    if (set.getRowCount() == 0)
+      return null;
+    IResultRow row = set.getRow(0);
+    return (Long)row.getValue(jobQueue.checkTimeField);
+  }
+
+  /** Build the query that finds candidate documents to queue, for one page of a keyset scan over docpriority.
+  *@param list is where the query parameters are placed.
+  *@param currentTimeValue is the current time.
+  *@param currentPriorityValue is the job priority being queued.
+  *@param docPriorityCursor is the docpriority at which the page begins (inclusive), or null for the first page.
+  *@param eligibleJobs are the jobs whose documents may still be queued, or null if all active jobs are eligible.
+  *@param limitValue is the maximum number of rows to read.
+  *@return the query.
+  */
+  protected String buildNextDocumentsQuery(ArrayList list, Long currentTimeValue, Long currentPriorityValue,
+    Double docPriorityCursor, List<Long> eligibleJobs, int limitValue)
+    throws ManifoldCFException
+  {
     StringBuilder sb = new StringBuilder("SELECT t0.");
-    sb.append(jobQueue.idField).append(",t0.");
-    if (Logging.scheduling.isDebugEnabled())
-      sb.append(jobQueue.docPriorityField).append(",t0.");
-    sb.append(jobQueue.jobIDField).append(",t0.")
+    sb.append(jobQueue.idField).append(",t0.")
+      .append(jobQueue.docPriorityField).append(",t0.")
+      .append(jobQueue.jobIDField).append(",t0.")
       .append(jobQueue.docHashField).append(",t0.")
       .append(jobQueue.docIDField).append(",t0.")
       .append(jobQueue.statusField).append(",t0.")
@@ -2580,14 +2639,18 @@ public class JobManager implements IJobManager
       .append(jobQueue.failCountField).append(",t0.")
       .append(jobQueue.prioritySetField).append(" FROM ").append(jobQueue.getTableName())
       .append(" t0 ").append(jobQueue.getGetNextDocumentsIndexHint()).append(" WHERE ");
-    
-    sb.append(database.buildConjunctionClause(list,new ClauseDescription[]{
-      //new UnitaryClause("t0."+jobQueue.docPriorityField,">=",new Long(0L)),
-      new MultiClause("t0."+jobQueue.statusField,new Object[]{
-        jobQueue.statusToString(JobQueue.STATUS_PENDING),
-        jobQueue.statusToString(JobQueue.STATUS_PENDINGPURGATORY)}),
-      new UnitaryClause("t0."+jobQueue.checkActionField,"=",jobQueue.actionToString(JobQueue.ACTION_RESCAN)),
-      new UnitaryClause("t0."+jobQueue.checkTimeField,"<=",currentTimeValue)})).append(" AND ");
+
+    ArrayList clauses = new ArrayList();
+    if (docPriorityCursor != null)
+      clauses.add(new UnitaryClause("t0."+jobQueue.docPriorityField,">=",docPriorityCursor));
+    clauses.add(new MultiClause("t0."+jobQueue.statusField,new Object[]{
+      jobQueue.statusToString(JobQueue.STATUS_PENDING),
+      jobQueue.statusToString(JobQueue.STATUS_PENDINGPURGATORY)}));
+    clauses.add(new UnitaryClause("t0."+jobQueue.checkActionField,"=",jobQueue.actionToString(JobQueue.ACTION_RESCAN)));
+    clauses.add(new UnitaryClause("t0."+jobQueue.checkTimeField,"<=",currentTimeValue));
+    if (eligibleJobs != null)
+      clauses.add(new MultiClause("t0."+jobQueue.jobIDField,eligibleJobs));
+    sb.append(database.buildConjunctionClause(list,(ClauseDescription[])clauses.toArray(new ClauseDescription[0]))).append(" AND ");
         
     sb.append("EXISTS(SELECT 'x' FROM ").append(jobs.getTableName()).append(" t1 WHERE ")
       .append(database.buildConjunctionClause(list,new ClauseDescription[]{
@@ -2620,7 +2683,24 @@ public class JobManager implements IJobManager
 
     sb.append(" ").append(database.constructIndexOrderByClause(new String[]{
       "t0."+jobQueue.docPriorityField, "t0."+jobQueue.statusField, "t0."+jobQueue.checkActionField, "t0."+jobQueue.checkTimeField},
-      true)).append(" ");
+      true)).append(" ")
+      .append(database.constructOffsetLimitClause(0,limitValue,true));
+    return sb.toString();
+  }
+
+  /** Fetch and process documents matching the passed-in criteria.
+  * The jobqueue is read a page at a time, in docpriority order, with each page beginning where the last one left off.
+  * Between pages, jobs whose connection has used up its document limit are dropped from the query, so that
+  * the database does not hand back rows that the throttle would only discard.
+  */
+  protected void fetchAndProcessDocuments(ArrayList answers, Long currentTimeValue, Long currentPriorityValue,
+    ThrottleLimit vList, IRepositoryConnection[] connections, String processID)
+    throws ManifoldCFException
+  {
+
+    // Note well: This query does not do "FOR UPDATE".  The reason is that only one thread can possibly change the document's state to active.
+    // When FOR UPDATE was included, deadlock conditions were common because of the complexity of this query.
+    // So, instead, as part of CONNECTORS-781, I've introduced a write lock for the pertinent section.
 
     // Before entering the transaction, we must provide the throttlelimit object with all the connector
     // instances it could possibly need.  The purpose for doing this is to prevent a deadlock where
@@ -2661,10 +2741,6 @@ public class JobManager implements IJobManager
             k++;
           }
 
-          // Now we can tack the limit onto the query.  Before this point, remainingDocuments would be crap
-          int limitValue = vList.getRemainingDocuments();
-          sb.append(database.constructOffsetLimitClause(0,limitValue,true));
-
           if (Logging.perf.isDebugEnabled())
           {
             Logging.perf.debug("Queuing documents from time "+currentTimeValue.toString()+" job priority "+currentPriorityValue.toString()+
@@ -2674,21 +2750,60 @@ public class JobManager implements IJobManager
           database.beginTransaction();
           try
           {
-            IResultSet set = database.performQuery(sb.toString(),list,null,null,-1,vList);
+            vList.beginScan();
+            // Read pages until the throttle is satisfied or there is nothing more to read.
+            List<IResultRow> rows = new ArrayList<IResultRow>();
+            int pageSize = Math.max(vList.getPageSize(),MIN_PAGE_SIZE);
+            Double docPriorityCursor = null;
+            while (true)
+            {
+              // Before this point, remainingDocuments would be crap
+              int limitValue = Math.min(vList.getRemainingDocuments(),pageSize);
+              if (limitValue <= 0)
+                break;
+              List<Long> eligibleJobs = vList.getEligibleJobs(database.getMaxInClause());
+              if (eligibleJobs != null && eligibleJobs.size() == 0)
+                break;
+
+              ArrayList list = new ArrayList();
+              String query = buildNextDocumentsQuery(list,currentTimeValue,currentPriorityValue,docPriorityCursor,eligibleJobs,limitValue);
+              int rowsRead = vList.getRowsRead();
+              int rowsExamined = vList.getRowsExamined();
+              IResultSet set = database.performQuery(query,list,null,null,-1,vList);
+              for (int j = 0; j < set.getRowCount(); j++)
+              {
+                rows.add(set.getRow(j));
+              }
+              rowsRead = vList.getRowsRead() - rowsRead;
+              rowsExamined = vList.getRowsExamined() - rowsExamined;
+
+              if (!vList.checkContinue() || rowsRead < limitValue)
+                break;
+              // The next page begins at the last docpriority we read.  Rows with that same docpriority will be read again,
+              // but are not examined twice.  If a whole page held nothing new, the run of equal docpriority values is longer than
+              // a page, so the page must grow to get past it.
+              docPriorityCursor = vList.getLastDocPriority();
+              if (rowsExamined == 0)
+              {
+                if (pageSize >= vList.getRemainingDocuments())
+                  break;
+                pageSize *= 2;
+              }
+            }
 
             if (Logging.perf.isDebugEnabled())
-              Logging.perf.debug(" Queuing "+Integer.toString(set.getRowCount())+" documents");
+              Logging.perf.debug(" Queuing "+Integer.toString(rows.size())+" documents");
 
             // To avoid deadlock, we want to update the document id hashes in order.  This means reading into a structure I can sort by docid hash,
             // before updating any rows in jobqueue.
-            String[] docIDHashes = new String[set.getRowCount()];
+            String[] docIDHashes = new String[rows.size()];
             Map storageMap = new HashMap();
             Map statusMap = new HashMap();
 
             int i = 0;
-            while (i < set.getRowCount())
+            while (i < rows.size())
             {
-              IResultRow row = set.getRow(i);
+              IResultRow row = rows.get(i);
               Long id = (Long)row.getValue(jobQueue.idField);
               Long jobID = (Long)row.getValue(jobQueue.jobIDField);
               String docIDHash = (String)row.getValue(jobQueue.docHashField);
@@ -2731,7 +2846,7 @@ public class JobManager implements IJobManager
               int status = ((Integer)statusMap.get(docIDHash)).intValue();
 
               // Set status to "ACTIVE".
-              jobQueue.updateActiveRecord(id,status,processID);
+              jobQueue.updateActiveRecord(dd.getJobID(),id,status,processID);
 
               answers.add(dd);
 
@@ -2858,7 +2973,7 @@ public class JobManager implements IJobManager
             // Grab the status
             int status = jobQueue.stringToStatus((String)row.getValue(jobQueue.statusField));
             // Update the jobqueue table
-            jobQueue.updateCompletedRecord(dd.getID(),status);
+            jobQueue.updateCompletedRecord(dd.getJobID(),dd.getID(),status);
           }
           i++;
         }
@@ -2893,6 +3008,9 @@ public class JobManager implements IJobManager
         sleepFor(sleepAmt);
       }
     }
+    // The job may have no documents left, or may be waiting for its active documents to be done
+    jobEventNotifier.signalLocalEvent(jobEventNotifier.EVENT_FINISH);
+    jobEventNotifier.signalLocalEvent(jobEventNotifier.EVENT_RESET);
   }
 
   /** Note completion of document processing by a job thread of a document.
@@ -2921,7 +3039,10 @@ public class JobManager implements IJobManager
   {
     // It's no longer an issue to have to deal with documents being conditionally deleted; that's been
     // taken over by the hopcountremoval method below.  So just use the simple 'delete' functionality.
-    return doDeleteMultiple(jobID,legalLinkTypes,documentDescriptions,hopcountMethod);
+    DocumentDescription[] rval = doDeleteMultiple(jobID,legalLinkTypes,documentDescriptions,hopcountMethod);
+    jobEventNotifier.signalLocalEvent(jobEventNotifier.EVENT_FINISH);
+    jobEventNotifier.signalLocalEvent(jobEventNotifier.EVENT_RESET);
+    return rval;
   }
 
   /** Delete from queue as a result of processing of an active document.
@@ -3012,7 +3133,7 @@ public class JobManager implements IJobManager
             // Grab the status
             int status = jobQueue.stringToStatus((String)row.getValue(jobQueue.statusField));
             // Update the jobqueue table
-            boolean didDelete = jobQueue.updateOrHopcountRemoveRecord(dd.getID(),status);
+            boolean didDelete = jobQueue.updateOrHopcountRemoveRecord(dd.getJobID(),dd.getID(),status);
             if (didDelete)
             {
               deleteList.add(dd.getDocumentIdentifierHash());
@@ -3127,7 +3248,10 @@ public class JobManager implements IJobManager
     int hopcountMethod)
     throws ManifoldCFException
   {
-    return doDeleteMultiple(jobID,legalLinkTypes,documentDescriptions,hopcountMethod);
+    DocumentDescription[] rval = doDeleteMultiple(jobID,legalLinkTypes,documentDescriptions,hopcountMethod);
+    // The job may be done shutting down
+    jobEventNotifier.signalLocalEvent(jobEventNotifier.EVENT_RESET);
+    return rval;
   }
 
   /** Delete from queue as a result of cleaning up an unreachable document.
@@ -3372,6 +3496,7 @@ public class JobManager implements IJobManager
   {
     String[] docIDHashes = new String[documentDescriptions.length];
     Long[] ids = new Long[documentDescriptions.length];
+    Long[] jobIDs = new Long[documentDescriptions.length];
     Long[] executeTimesNew = new Long[documentDescriptions.length];
     int[] actionsNew = new int[documentDescriptions.length];
 
@@ -3398,6 +3523,7 @@ public class JobManager implements IJobManager
         throw new ManifoldCFException("Assertion failure: duplicate document identifier jobid/hash detected!");
       int index = x.intValue();
       ids[i] = documentDescriptions[index].getID();
+      jobIDs[i] = documentDescriptions[index].getJobID();
       executeTimesNew[i] = executeTimes[index];
       actionsNew[i] = actions[index];
       i++;
@@ -3413,7 +3539,7 @@ public class JobManager implements IJobManager
         i = 0;
         while (i < ids.length)
         {
-          jobQueue.setRequeuedStatus(ids[i],executeTimesNew[i],actionsNew[i],-1L,-1);
+          jobQueue.setRequeuedStatus(jobIDs[i],ids[i],executeTimesNew[i],actionsNew[i],-1L,-1);
           i++;
         }
 
@@ -3480,6 +3606,7 @@ public class JobManager implements IJobManager
   {
     Long executeTimeLong = new Long(executeTime);
     Long[] ids = new Long[documentDescriptions.length];
+    Long[] jobIDs = new Long[documentDescriptions.length];
     String[] docIDHashes = new String[documentDescriptions.length];
     Long[] executeTimes = new Long[documentDescriptions.length];
     int[] actions = new int[documentDescriptions.length];
@@ -3509,6 +3636,7 @@ public class JobManager implements IJobManager
         throw new ManifoldCFException("Assertion failure: duplicate document identifier jobid/hash detected!");
       int index = x.intValue();
       ids[i] = documentDescriptions[index].getID();
+      jobIDs[i] = documentDescriptions[index].getJobID();
       executeTimes[i] = executeTimeLong;
       actions[i] = action;
       long oldFailTime = documentDescriptions[index].getFailTime();
@@ -3540,7 +3668,7 @@ public class JobManager implements IJobManager
         i = 0;
         while (i < ids.length)
         {
-          jobQueue.setRequeuedStatus(ids[i],executeTimes[i],actions[i],(failTimes==null)?-1L:failTimes[i],(failCounts==null)?-1:failCounts[i]);
+          jobQueue.setRequeuedStatus(jobIDs[i],ids[i],executeTimes[i],actions[i],(failTimes==null)?-1L:failTimes[i],(failCounts==null)?-1:failCounts[i]);
           i++;
         }
 
@@ -3585,6 +3713,7 @@ public class JobManager implements IJobManager
     throws ManifoldCFException
   {
     Long[] ids = new Long[documentDescriptions.length];
+    Long[] jobIDs = new Long[documentDescriptions.length];
     String[] docIDHashes = new String[documentDescriptions.length];
 
     // First loop maps document identifier back to an index.
@@ -3610,6 +3739,7 @@ public class JobManager implements IJobManager
         throw new ManifoldCFException("Assertion failure: duplicate document identifier jobid/hash detected!");
       int index = x.intValue();
       ids[i] = documentDescriptions[index].getID();
+      jobIDs[i] = documentDescriptions[index].getJobID();
       i++;
     }
 
@@ -3624,7 +3754,7 @@ public class JobManager implements IJobManager
         i = 0;
         while (i < ids.length)
         {
-          jobQueue.setUncleaningStatus(ids[i],checkTime);
+          jobQueue.setUncleaningStatus(jobIDs[i],ids[i],checkTime);
           i++;
         }
 
@@ -3684,6 +3814,7 @@ public class JobManager implements IJobManager
     throws ManifoldCFException
   {
     Long[] ids = new Long[documentDescriptions.length];
+    Long[] jobIDs = new Long[documentDescriptions.length];
     String[] docIDHashes = new String[documentDescriptions.length];
 
     // First loop maps document identifier back to an index.
@@ -3709,6 +3840,7 @@ public class JobManager implements IJobManager
         throw new ManifoldCFException("Assertion failure: duplicate document identifier jobid/hash detected!");
       int index = x.intValue();
       ids[i] = documentDescriptions[index].getID();
+      jobIDs[i] = documentDescriptions[index].getJobID();
       i++;
     }
 
@@ -3723,7 +3855,7 @@ public class JobManager implements IJobManager
         i = 0;
         while (i < ids.length)
         {
-          jobQueue.setUndeletingStatus(ids[i],checkTime);
+          jobQueue.setUndeletingStatus(jobIDs[i],ids[i],checkTime);
           i++;
         }
 
@@ -3944,7 +4076,7 @@ public class JobManager implements IJobManager
             int status = jobQueue.stringToStatus((String)row.getValue(jobQueue.statusField));
             Long checkTimeValue = (Long)row.getValue(jobQueue.checkTimeField);
 
-            jobQueue.updateExistingRecordInitial(rowID,status,checkTimeValue,executeTime,currentTime,docPriority,docPrereqs,processID);
+            jobQueue.updateExistingRecordInitial(jobID,rowID,status,checkTimeValue,executeTime,currentTime,docPriority,docPrereqs,processID);
           }
           else
           {
@@ -4572,7 +4704,7 @@ public class JobManager implements IJobManager
             // The hopcountChangesSeen array describes whether each reference is a new one.  This
             // helps us determine whether we're going to need to "flip" HOPCOUNTREMOVED documents
             // to the PENDING state.  If the new link ended in an existing record, THEN we need to flip them all!
-            jobQueue.updateExistingRecord(jr.getRecordID(),jr.getStatus(),jr.getCheckTimeValue(),
+            jobQueue.updateExistingRecord(jobID,jr.getRecordID(),jr.getStatus(),jr.getCheckTimeValue(),
               0L,currentTime,carrydownChangesSeen[z] || (hopcountChangesSeen!=null && hopcountChangesSeen[z]),
               reorderedDocumentPriorities[z],reorderedDocumentPrerequisites[z]);
             // Signal if we need to perform the flip
@@ -5001,7 +5133,7 @@ public class JobManager implements IJobManager
           JobqueueRecord jr = (JobqueueRecord)existingRows.get(docIDHash);
           if (jr != null)
             // It was an existing row; do the update logic; use the 'carrydown changes' flag = true all the time.
-            jobQueue.updateExistingRecord(jr.getRecordID(),jr.getStatus(),jr.getCheckTimeValue(),
+            jobQueue.updateExistingRecord(documentDescriptions[originalIndex].getJobID(),jr.getRecordID(),jr.getStatus(),jr.getCheckTimeValue(),
               0L,currentTime,true,docPriorities[originalIndex],null);
           j++;
         }
@@ -5121,12 +5253,14 @@ public class JobManager implements IJobManager
     // Note well: We can't combine locks across both our lock manager and the database unless we do it consistently.  The
     // consistent practice throughout CF is to do the external locks first, then the database locks.  This particular method
     // thus cannot use cached job description information, because it must throw database locks first against the jobs table.
+    boolean jobsStarted = false;
     while (true)
     {
       long sleepAmt = 0L;
       database.beginTransaction();
       try
       {
+        jobsStarted = false;
         // First, query the appropriate fields of all jobs.
         StringBuilder sb = new StringBuilder("SELECT ");
         ArrayList list = new ArrayList();
@@ -5269,6 +5403,7 @@ public class JobManager implements IJobManager
             // This does not get logged because the startup thread does the logging.
             jobs.startJob(jobID,windowEnd,requestMinimum);
             jobQueue.clearFailTimes(jobID);
+            jobsStarted = true;
             if (Logging.jobs.isDebugEnabled())
             {
               Logging.jobs.debug("Signalled for job start for job "+jobID);
@@ -5330,7 +5465,7 @@ public class JobManager implements IJobManager
 
         }
         database.performCommit();
-        return;
+        break;
       }
       catch (ManifoldCFException e)
       {
@@ -5355,6 +5490,11 @@ public class JobManager implements IJobManager
         sleepFor(sleepAmt);
       }
     }
+    if (jobsStarted)
+      jobEventNotifier.signalEvent(jobEventNotifier.EVENT_STARTUP);
+    // Un-waited jobs are resuming
+    if (unwaitList.size() > 0)
+      jobEventNotifier.signalEvent(jobEventNotifier.EVENT_RESET);
   }
   
   /** Put active or paused jobs in wait state, if they've exceeded their window.
@@ -5477,6 +5617,9 @@ public class JobManager implements IJobManager
     {
       database.endTransaction();
     }
+    // Waiting jobs need to be stopped once their active documents are done
+    if (waitList.size() > 0)
+      jobEventNotifier.signalEvent(jobEventNotifier.EVENT_RESET);
   }
 
   /** Reset job schedule.  This re-evaluates whether the job should be started now.  This method would typically
@@ -5763,6 +5906,7 @@ public class JobManager implements IJobManager
     {
       database.endTransaction();
     }
+    jobEventNotifier.signalEvent(jobEventNotifier.EVENT_STARTUP);
   }
 
   /** Note job delete started.
@@ -5775,6 +5919,8 @@ public class JobManager implements IJobManager
     jobs.noteJobDeleteStarted(jobID,startTime);
     if (Logging.jobs.isDebugEnabled())
       Logging.jobs.debug("Job "+jobID+" delete is now started");
+    // The job may have no documents to delete
+    jobEventNotifier.signalEvent(jobEventNotifier.EVENT_DELETE);
   }
 
   /** Note job started.
@@ -5787,6 +5933,8 @@ public class JobManager implements IJobManager
     jobs.noteJobStarted(jobID,startTime);
     if (Logging.jobs.isDebugEnabled())
       Logging.jobs.debug("Job "+jobID+" is now started");
+    // The job may have no documents to process
+    jobEventNotifier.signalEvent(jobEventNotifier.EVENT_FINISH);
   }
 
   /** Note job seeded.
@@ -5799,6 +5947,8 @@ public class JobManager implements IJobManager
     jobs.noteJobSeeded(jobID,seedTime);
     if (Logging.jobs.isDebugEnabled())
       Logging.jobs.debug("Job "+jobID+" has been successfully reseeded");
+    // Seeding may not have added any documents
+    jobEventNotifier.signalEvent(jobEventNotifier.EVENT_FINISH);
   }
 
   /** Prepare for a delete scan.
@@ -6050,6 +6200,7 @@ public class JobManager implements IJobManager
     {
       Logging.jobs.debug("Job "+jobID+" abort signal successfully sent");
     }
+    jobEventNotifier.signalEvent(jobEventNotifier.EVENT_RESET);
   }
 
   /** Manually restart a running job.  The job will be stopped and restarted.  Any schedule affinity will be lost,
@@ -6101,6 +6252,7 @@ public class JobManager implements IJobManager
     {
       Logging.jobs.debug("Job "+jobID+" restart signal successfully sent");
     }
+    jobEventNotifier.signalEvent(jobEventNotifier.EVENT_RESET);
   }
 
   /** Manually restart a running job.  The job will be stopped and restarted.  Any schedule affinity will be lost,
@@ -6165,6 +6317,8 @@ public class JobManager implements IJobManager
     {
       Logging.jobs.debug("Job "+jobID+" abort signal successfully sent");
     }
+    if (rval)
+      jobEventNotifier.signalEvent(jobEventNotifier.EVENT_RESET);
     return rval;
   }
 
@@ -6216,6 +6370,7 @@ public class JobManager implements IJobManager
     {
       Logging.jobs.debug("Job "+jobID+" successfully paused");
     }
+    jobEventNotifier.signalEvent(jobEventNotifier.EVENT_RESET);
 
   }
 
@@ -6268,6 +6423,7 @@ public class JobManager implements IJobManager
     {
       Logging.jobs.debug("Job "+jobID+" successfully restarted");
     }
+    jobEventNotifier.signalEvent(jobEventNotifier.EVENT_RESET);
   }
 
   /** Get the list of jobs that are ready for seeding.
@@ -7067,6 +7223,7 @@ public class JobManager implements IJobManager
   public void finishJobs()
     throws ManifoldCFException
   {
+    boolean jobsShuttingDown = false;
     while (true)
     {
       long sleepAmt = 0L;
@@ -7076,6 +7233,7 @@ public class JobManager implements IJobManager
       database.beginTransaction();
       try
       {
+        jobsShuttingDown = false;
         // The query I used to emit was:
         // SELECT jobid FROM jobs t0 WHERE t0.status='A' AND NOT EXISTS(SELECT 'x' FROM jobqueue t1 WHERE
         //              t0.id=t1.jobid AND t1.status IN ('A','P','F','G'))
@@ -7132,6 +7290,7 @@ public class JobManager implements IJobManager
 
           // Mark status of job as "finishing"
           jobs.writePermanentStatus(jobID,jobs.STATUS_SHUTTINGDOWN);
+          jobsShuttingDown = true;
           if (Logging.jobs.isDebugEnabled())
           {
             Logging.jobs.debug("Marked job "+jobID+" for shutdown");
@@ -7139,7 +7298,7 @@ public class JobManager implements IJobManager
 
         }
         database.performCommit();
-        return;
+        break;
       }
       catch (ManifoldCFException e)
       {
@@ -7164,6 +7323,9 @@ public class JobManager implements IJobManager
         sleepFor(sleepAmt);
       }
     }
+    // Jobs with nothing to clean up can be finished right away
+    if (jobsShuttingDown)
+      jobEventNotifier.signalEvent(jobEventNotifier.EVENT_RESET);
   }
 
   /** Find the list of jobs that need to have their connectors notified of job completion.
@@ -7273,6 +7435,11 @@ public class JobManager implements IJobManager
         Logging.jobs.debug("Resumed job "+jobID);
       }
     }
+    if (set.getRowCount() > 0)
+    {
+      jobEventNotifier.signalEvent(jobEventNotifier.EVENT_SEEDING);
+      jobEventNotifier.signalEvent(jobEventNotifier.EVENT_FINISH);
+    }
   }
 
   /** Complete the sequence that stops jobs, either for abort, pause, or because of a scheduling
@@ -7310,6 +7477,7 @@ public class JobManager implements IJobManager
         
     IResultSet set = database.performQuery(sb.toString(),list,null,null);
 
+    boolean jobsStopped = false;
     int i = 0;
     while (i < set.getRowCount())
     {
@@ -7343,12 +7511,19 @@ public class JobManager implements IJobManager
       modifiedJobs.add(jobDesc);
 
       jobs.finishStopJob(jobID,timestamp);
+      jobsStopped = true;
           
       if (Logging.jobs.isDebugEnabled())
       {
         Logging.jobs.debug("Stopped job "+jobID);
       }
     }
+    // Aborted jobs go on to notification, and jobs aborted for restart go on to startup
+    if (jobsStopped)
+    {
+      jobEventNotifier.signalEvent(jobEventNotifier.EVENT_NOTIFY);
+      jobEventNotifier.signalEvent(jobEventNotifier.EVENT_STARTUP);
+    }
   }
 
   /** Reset eligible jobs either back to the "inactive" state, or make them active again.  The
@@ -7381,6 +7556,8 @@ public class JobManager implements IJobManager
             
     IResultSet set = database.performQuery(sb.toString(),list,null,null);
 
+    boolean jobsReactivated = false;
+    boolean jobsFinished = false;
     int i = 0;
     while (i < set.getRowCount())
     {
@@ -7423,6 +7600,7 @@ public class JobManager implements IJobManager
       {
         // This job needs to re-enter the active state.  Make that happen.
         jobs.returnJobToActive(jobID);
+        jobsReactivated = true;
         if (Logging.jobs.isDebugEnabled())
         {
           Logging.jobs.debug("Job "+jobID+" is re-entering active state");
@@ -7435,12 +7613,17 @@ public class JobManager implements IJobManager
         resetJobs.add(jobDesc);
             
         jobs.finishJob(jobID,currentTime);
+        jobsFinished = true;
         if (Logging.jobs.isDebugEnabled())
         {
           Logging.jobs.debug("Job "+jobID+" now completed");
         }
       }
     }
+    if (jobsReactivated)
+      jobEventNotifier.signalEvent(jobEventNotifier.EVENT_FINISH);
+    if (jobsFinished)
+      jobEventNotifier.signalEvent(jobEventNotifier.EVENT_NOTIFY);
   }
 
   
@@ -8608,6 +8791,8 @@ public class JobManager implements IJobManager
 
   /** We go through 2x the number of documents we should need if we were perfect at setting document priorities.  */
   private static int EXTRA_FACTOR = 2;
+  /** The smallest number of jobqueue rows read at once when looking for documents to queue */
+  private static int MIN_PAGE_SIZE = 100;
 
   /** This class provides the throttling limits for the job queueing query.
   */
@@ -8652,6 +8837,17 @@ public class JobManager implements IJobManager
     // Cutoff time for documents eligible for prioritization
     protected long prioritizationTime;
 
+    // These are the jobqueue row ids examined so far in the current scan, so that rows that are read more than
+    // once (because a page begins where the last one ended) are only counted once.
+    protected Set<Long> examinedIDs = new HashSet<Long>();
+
+    // The docpriority of the last row read
+    protected Double lastDocPriority = null;
+
+    // The number of rows read, and the number of those that were examined for the first time
+    protected int rowsRead = 0;
+    protected int rowsExamined = 0;
+
     /** Constructor.
     * This class is built up piecemeal, so the constructor does nothing.
     *@param n is the maximum number of full job descriptions we want at this time.
@@ -8759,6 +8955,10 @@ public class JobManager implements IJobManager
       rval.jobConnection = jobConnection;
       // The structures where counts are maintained DO need a deep copy.
       rval.documentsProcessed = documentsProcessed;
+      rval.examinedIDs = new HashSet<Long>(examinedIDs);
+      rval.lastDocPriority = lastDocPriority;
+      rval.rowsRead = rowsRead;
+      rval.rowsExamined = rowsExamined;
       Iterator iter;
       iter = connectionMap.keySet().iterator();
       while (iter.hasNext())
@@ -8794,6 +8994,67 @@ public class JobManager implements IJobManager
       return false;
     }
 
+    /** Begin a scan of the jobqueue.  Rows examined in earlier scans may be examined again.
+    */
+    public void beginScan()
+    {
+      examinedIDs.clear();
+      lastDocPriority = null;
+    }
+
+    /** Get the number of rows to read in the first page of a scan.
+    */
+    public int getPageSize()
+    {
+      return n * maxSetSize;
+    }
+
+    /** Get the docpriority of the last row read.
+    */
+    public Double getLastDocPriority()
+    {
+      return lastDocPriority;
+    }
+
+    /** Get the number of rows read so far.
+    */
+    public int getRowsRead()
+    {
+      return rowsRead;
+    }
+
+    /** Get the number of distinct rows examined so far.
+    */
+    public int getRowsExamined()
+    {
+      return rowsExamined;
+    }
+
+    /** Find the jobs whose documents can still be included, because their connection is active and has not reached
+    * its document limit.
+    *@param maxCount is the largest number of jobs worth listing.
+    *@return the job ids, or null if all jobs are eligible, or if there are more than maxCount of them.
+    */
+    public List<Long> getEligibleJobs(int maxCount)
+    {
+      List<Long> rval = new ArrayList<Long>();
+      Iterator iter = jobConnection.keySet().iterator();
+      while (iter.hasNext())
+      {
+        Long jobID = (Long)iter.next();
+        String connectionName = (String)jobConnection.get(jobID);
+        if (activeConnections.get(connectionName) == null)
+          continue;
+        MutableInteger connectionLimit = (MutableInteger)maxConnectionCounts.get(connectionName);
+        if (connectionLimit != null && connectionLimit.intValue() == 0)
+          continue;
+        rval.add(jobID);
+      }
+      if (rval.size() == jobConnection.size() || rval.size() > maxCount)
+        return null;
+      return rval;
+    }
+
     /** Get the remaining documents we should query for.
     *@return the maximal remaining count.
     */
@@ -8813,6 +9074,14 @@ public class JobManager implements IJobManager
       // not exceed the calculated throttle number.  Second, it keeps track of how many document queue items
       // will be needed, so we can stop when we've got enough for the moment.
       Logging.perf.debug("Checking if row should be included");
+      rowsRead++;
+      lastDocPriority = (Double)row.getValue(JobQueue.docPriorityField);
+      if (!examinedIDs.add((Long)row.getValue(JobQueue.idField)))
+      {
+        Logging.perf.debug(" Row was already examined - excluding");
+        return false;
+      }
+      rowsExamined++;
       // This is the end that does the work.
       // The row passed in has the following jobqueue columns: idField, jobIDField, docIDField, and statusField
       Long jobIDValue = (Long)row.getValue(JobQueue.jobIDField);
@@ -206,7 +206,15 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
         map.put(checkActionField,new ColumnDescription("CHAR(1)",false,true,null,null,false));
         map.put(processIDField,new ColumnDescription("VARCHAR(16)",false,true,null,null,false));
         map.put(seedingProcessIDField,new ColumnDescription("VARCHAR(16)",false,true,null,null,false));
-        performCreate(map,null);
+        if (ManifoldCF.getPartitionedJobQueue(threadContext) && getDBInterface().supportsListPartitioning())
+        {
+          // One partition per job.  Partitioned tables can't be referenced, nor reference the
+          // jobs table; job records are always removed explicitly, so nothing depends on that.
+          map.put(jobIDField,new ColumnDescription("BIGINT",false,false,null,null,false));
+          performCreatePartitioned(map,jobIDField,null);
+        }
+        else
+          performCreate(map,null);
       }
       else
       {
@@ -233,7 +241,10 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
       }
 
       // Secondary table installation
-      prereqEventManager.install(getTableName(),idField);
+      if (isPartitioned())
+        prereqEventManager.install(null,null);
+      else
+        prereqEventManager.install(getTableName(),idField);
 
       // Handle indexes
       IndexDescription uniqueIndex = new IndexDescription(true,new String[]{docHashField,jobIDField});
@@ -862,7 +873,38 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     return set.getRowCount() > 0;
   }
 
+  /** For a new job: Give the job a partition of its own, if this table is partitioned.
+  * Nothing is done if the table isn't partitioned, or the job already has records.
+  *@param jobID is the job identifier.
+  */
+  public void createJobPartition(Long jobID)
+    throws ManifoldCFException
+  {
+    if (!isPartitioned())
+      return;
+    String partitionName = getJobPartitionName(jobID);
+    if (partitionExists(partitionName))
+      return;
+    // A partition can't take over rows that are already in the default partition
+    ArrayList list = new ArrayList();
+    String query = buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(jobIDField,jobID)});
+    IResultSet set = performQuery("SELECT "+idField+" FROM "+getTableName()+" WHERE "+query+" "+
+      constructOffsetLimitClause(0,1),list,null,null,1);
+    if (set.getRowCount() > 0)
+      return;
+    performCreatePartition(partitionName,jobID,null);
+  }
+
+  /** Get the name of the partition that holds a job's records.
+  */
+  protected String getJobPartitionName(Long jobID)
+  {
+    return getTableName()+"_"+jobID.toString();
+  }
+
   /** For a job deletion: Delete all records for a job.
+  * If the job has a partition of its own, the partition is simply dropped.
   *@param jobID is the job identifier.
   */
   public void deleteAllJobRecords(Long jobID)
@@ -873,6 +915,16 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     // Clean out prereqevents table first
     prereqEventManager.deleteRows(getTableName()+" t0","t0."+idField,"t0."+jobIDField+"=?",list);
     list.clear();
+    if (isPartitioned())
+    {
+      String partitionName = getJobPartitionName(jobID);
+      if (partitionExists(partitionName))
+      {
+        performDropPartition(partitionName,null);
+        noteModifications(0,0,1);
+        return;
+      }
+    }
     String query = buildConjunctionClause(list,new ClauseDescription[]{
       new UnitaryClause(jobIDField,jobID)});
     performDelete("WHERE "+query,list,null);
@@ -880,7 +932,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
   }
 
   /** Write out a document priority */
-  public void writeDocPriority(long currentTime, Long rowID, IPriorityCalculator priority)
+  public void writeDocPriority(long currentTime, Long jobID, Long rowID, IPriorityCalculator priority)
     throws ManifoldCFException
   {
     HashMap map = new HashMap();
@@ -888,6 +940,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     map.put(docPriorityField,new Double(priority.getDocumentPriority()));
     ArrayList list = new ArrayList();
     String query = buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(jobIDField,jobID),
       new UnitaryClause(idField,rowID)});
     performUpdate(map,"WHERE "+query,list,null);
     noteModifications(0,1,0);
@@ -909,7 +962,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
   
   /** Set the "completed" status for a record.
   */
-  public void updateCompletedRecord(Long recID, int currentStatus)
+  public void updateCompletedRecord(Long jobID, Long recID, int currentStatus)
     throws ManifoldCFException
   {
     HashMap map = new HashMap();
@@ -949,6 +1002,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     map.put(failCountField,null);
     ArrayList list = new ArrayList();
     String query = buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(jobIDField,jobID),
       new UnitaryClause(idField,recID)});
     performUpdate(map,"WHERE "+query,list,null);
     noteModifications(0,1,0);
@@ -958,7 +1012,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
   /** Either mark a record as hopcountremoved, or set status to "rescan", depending on the
   * record's state.
   */
-  public boolean updateOrHopcountRemoveRecord(Long recID, int currentStatus)
+  public boolean updateOrHopcountRemoveRecord(Long jobID, Long recID, int currentStatus)
     throws ManifoldCFException
   {
     HashMap map = new HashMap();
@@ -1000,6 +1054,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     map.put(failCountField,null);
     ArrayList list = new ArrayList();
     String query = buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(jobIDField,jobID),
       new UnitaryClause(idField,recID)});
     performUpdate(map,"WHERE "+query,list,null);
     noteModifications(0,1,0);
@@ -1008,10 +1063,12 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
   }
 
   /** Set the status to active on a record, leaving alone priority or check time.
+  *@param jobID is the job the record belongs to.  It is part of the WHERE clause, so that a partitioned
+  * table only has to look in the job's own partition; the same goes for the other single-record updates.
   *@param id is the job queue id.
   *@param currentStatus is the current status
   */
-  public void updateActiveRecord(Long id, int currentStatus, String processID)
+  public void updateActiveRecord(Long jobID, Long id, int currentStatus, String processID)
     throws ManifoldCFException
   {
     int newStatus;
@@ -1033,6 +1090,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     map.put(processIDField,processID);
     ArrayList list = new ArrayList();
     String query = buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(jobIDField,jobID),
       new UnitaryClause(idField,id)});
     performUpdate(map,"WHERE "+query,list,null);
     noteModifications(0,1,0);
@@ -1040,10 +1098,11 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
   }
 
   /** Set the status on a record, including check time and priority.
+  *@param jobID is the job the record belongs to.
   *@param id is the job queue id.
   *@param checkTime is the check time.
   */
-  public void setRequeuedStatus(Long id,
+  public void setRequeuedStatus(Long jobID, Long id,
     Long checkTime, int action, long failTime, int failCount)
     throws ManifoldCFException
   {
@@ -1064,6 +1123,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     // priority was in place from before.
     ArrayList list = new ArrayList();
     String query = buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(jobIDField,jobID),
       new UnitaryClause(idField,id)});
     performUpdate(map,"WHERE "+query,list,null);
     noteModifications(0,1,0);
@@ -1072,7 +1132,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
 
   /** Set the status of a document to "being deleted".
   */
-  public void setDeletingStatus(Long id, String processID)
+  public void setDeletingStatus(Long jobID, Long id, String processID)
     throws ManifoldCFException
   {
     HashMap map = new HashMap();
@@ -1080,6 +1140,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     map.put(processIDField,processID);
     ArrayList list = new ArrayList();
     String query = buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(jobIDField,jobID),
       new UnitaryClause(idField,id)});
     performUpdate(map,"WHERE "+query,list,null);
     noteModifications(0,1,0);
@@ -1087,7 +1148,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
   }
 
   /** Set the status of a document to be "no longer deleting" */
-  public void setUndeletingStatus(Long id, long checkTime)
+  public void setUndeletingStatus(Long jobID, Long id, long checkTime)
     throws ManifoldCFException
   {
     HashMap map = new HashMap();
@@ -1099,6 +1160,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     map.put(failCountField,null);
     ArrayList list = new ArrayList();
     String query = buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(jobIDField,jobID),
       new UnitaryClause(idField,id)});
     performUpdate(map,"WHERE "+query,list,null);
     noteModifications(0,1,0);
@@ -1107,7 +1169,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
 
   /** Set the status of a document to "being cleaned".
   */
-  public void setCleaningStatus(Long id, String processID)
+  public void setCleaningStatus(Long jobID, Long id, String processID)
     throws ManifoldCFException
   {
     HashMap map = new HashMap();
@@ -1115,6 +1177,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     map.put(processIDField,processID);
     ArrayList list = new ArrayList();
     String query = buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(jobIDField,jobID),
       new UnitaryClause(idField,id)});
     performUpdate(map,"WHERE "+query,list,null);
     noteModifications(0,1,0);
@@ -1122,7 +1185,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
   }
 
   /** Set the status of a document to be "no longer cleaning" */
-  public void setUncleaningStatus(Long id, long checkTime)
+  public void setUncleaningStatus(Long jobID, Long id, long checkTime)
     throws ManifoldCFException
   {
     HashMap map = new HashMap();
@@ -1134,6 +1197,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     map.put(failCountField,null);
     ArrayList list = new ArrayList();
     String query = buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(jobIDField,jobID),
       new UnitaryClause(idField,id)});
     performUpdate(map,"WHERE "+query,list,null);
     noteModifications(0,1,0);
@@ -1199,7 +1263,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
   /** Update an existing record (as the result of an initial add).
   * The record is presumed to exist and have been locked, via "FOR UPDATE".
   */
-  public void updateExistingRecordInitial(Long recordID, int currentStatus, Long checkTimeValue,
+  public void updateExistingRecordInitial(Long jobID, Long recordID, int currentStatus, Long checkTimeValue,
     long desiredExecuteTime, long currentTime, IPriorityCalculator desiredPriority, String[] prereqEvents,
     String processID)
     throws ManifoldCFException
@@ -1282,6 +1346,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     prereqEventManager.deleteRows(recordID);
     ArrayList list = new ArrayList();
     String query = buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(jobIDField,jobID),
       new UnitaryClause(idField,recordID)});
     performUpdate(map,"WHERE "+query,list,null);
     // Insert prereqevent entries, if any
@@ -1496,7 +1561,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
   /** Update an existing record (as the result of a reference add).
   * The record is presumed to exist and have been locked, via "FOR UPDATE".
   */
-  public void updateExistingRecord(Long recordID, int currentStatus, Long checkTimeValue,
+  public void updateExistingRecord(Long jobID, Long recordID, int currentStatus, Long checkTimeValue,
     long desiredExecuteTime, long currentTime, boolean otherChangesSeen,
     IPriorityCalculator desiredPriority, String[] prereqEvents)
     throws ManifoldCFException
@@ -1616,6 +1681,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     prereqEventManager.deleteRows(recordID);
     ArrayList list = new ArrayList();
     String query = buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(jobIDField,jobID),
       new UnitaryClause(idField,recordID)});
     performUpdate(map,"WHERE "+query,list,null);
     prereqEventManager.addRows(recordID,prereqEvents);
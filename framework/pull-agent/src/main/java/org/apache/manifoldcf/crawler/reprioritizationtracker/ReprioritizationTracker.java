@@ -281,12 +281,25 @@ public class ReprioritizationTracker implements IReprioritizationTracker
   public void preloadBinValues()
     throws ManifoldCFException
   {
+    if (preloadRequests.size() == 0)
+      return;
+    // Reserve the values for all bins at once, in a single transaction
+    String[] binNames = new String[preloadRequests.size()];
+    double[] weightedMinimumDepths = new double[binNames.length];
+    int[] requestCounts = new int[binNames.length];
+    int i = 0;
     for (String binName : preloadRequests.keySet())
     {
       PreloadRequest pr = preloadRequests.get(binName);
-      double[] newValues = binManager.getIncrementBinValuesInTransaction(binName, pr.getWeightedMinimumDepth(), pr.getRequestCount());
-      PreloadedValues pv = new PreloadedValues(newValues);
-      preloadedValues.put(binName,pv);
+      binNames[i] = binName;
+      weightedMinimumDepths[i] = pr.getWeightedMinimumDepth();
+      requestCounts[i] = pr.getRequestCount();
+      i++;
+    }
+    double[][] newValues = binManager.getIncrementBinValuesInTransaction(binNames, weightedMinimumDepths, requestCounts);
+    for (i = 0; i < binNames.length; i++)
+    {
+      preloadedValues.put(binNames[i],new PreloadedValues(newValues[i]));
     }
     preloadRequests.clear();
   }
@@ -26,16 +26,44 @@ import java.util.*;
 * The queue manages thread synchronization so that (a) the "stuffer" thread blocks until queue is empty, and
 * (b) the "reader" threads block if queue is empty.
 * The objects being queued are all QueuedDocumentSet objects.
+*
+* Readers always receive the document set with the best assignment rating.  Rather than rate every set on
+* every dequeue, the queue keeps the sets ordered by rating, and keeps an index of sets by bin name.  Since a
+* set's rating depends only on the active counts of its bins, the queue listens for active bin count changes
+* from the QueueTracker, and rerates only the sets that contain a changed bin.
+*
+* The stuffer thread may wait for the queue to drain to its low-water mark, and is signalled by the
+* readers as soon as that happens.
 */
-public class DocumentQueue
+public class DocumentQueue implements IActiveBinListener
 {
   public static final String _rcsid = "@(#)$Id: DocumentQueue.java 988245 2010-08-23 18:39:35Z kwright $";
 
-  // Since the queue has a maximum size, an ArrayList is a fine way to keep it
-  protected final List<QueuedDocumentSet> queue = new ArrayList<QueuedDocumentSet>();
+  // All queue state is protected by synchronizing on this object
+  protected final Object queue = new Object();
+  // The rated document sets, best first
+  protected final TreeSet<RatedDocumentSet> ratedSets = new TreeSet<RatedDocumentSet>();
+  // Document sets which have not yet been rated, in order of arrival
+  protected final List<RatedDocumentSet> unratedSets = new ArrayList<RatedDocumentSet>();
+  // The queued document sets, indexed by bin name
+  protected final Map<String,Set<RatedDocumentSet>> binIndex = new HashMap<String,Set<RatedDocumentSet>>();
+  // Sequence number, so that equally-rated sets are handed out in arrival order
+  protected long sequenceCounter = 0L;
+  // The queue tracker we are listening to, if any
+  protected QueueTracker registeredTracker = null;
   // This flag gets set to 'true' if the queue is being cleared due to a reset
   protected boolean resetFlag = false;
 
+  // Bins whose active counts have changed since the last rerating.  Protected by its own lock,
+  // so that worker threads reporting changes do not contend with readers.
+  protected Set<String> changedBins = new HashSet<String>();
+
+  // The stuffer waits on this object for the queue to reach the low-water mark.  Never lock the queue
+  // first and then this, or we may deadlock with the stuffer.
+  protected final Object lowWaterSignal = new Object();
+  // The low-water mark the stuffer is waiting for, or -1 if nobody has waited yet
+  protected volatile int lowWaterMark = -1;
+
   /** Constructor.
   */
   public DocumentQueue()
@@ -51,6 +79,7 @@ public class DocumentQueue
       resetFlag = true;
       queue.notifyAll();
     }
+    signalLowWater();
   }
 
   /** Clear the queue.  This happens during a reset.
@@ -59,9 +88,12 @@ public class DocumentQueue
   {
     synchronized (queue)
     {
-      queue.clear();
+      ratedSets.clear();
+      unratedSets.clear();
+      binIndex.clear();
       resetFlag = false;
     }
+    signalLowWater();
   }
 
   /** Check if "empty".
@@ -71,12 +103,41 @@ public class DocumentQueue
   {
     synchronized (queue)
     {
-      if (queue.size() <= n)
+      if (ratedSets.size() + unratedSets.size() <= n)
         return true;
     }
     return false;
   }
 
+  /** Wait until the queue is "empty", as defined by checkIfEmpty(), or until the specified time has elapsed.
+  *@param n is the low-water mark.
+  *@param maxWait is the maximum amount of time to wait, in milliseconds.
+  *@return true if the queue is at or below the low-water mark.
+  */
+  public boolean waitForLowWaterMark(int n, long maxWait)
+    throws InterruptedException
+  {
+    synchronized (lowWaterSignal)
+    {
+      lowWaterMark = n;
+      if (checkIfEmpty(n))
+        return true;
+      // Readers must lock lowWaterSignal to signal us, so nothing can be missed between the check and the wait
+      lowWaterSignal.wait(maxWait);
+    }
+    return checkIfEmpty(n);
+  }
+
+  /** Wake up anyone waiting for the low-water mark.
+  */
+  protected void signalLowWater()
+  {
+    synchronized (lowWaterSignal)
+    {
+      lowWaterSignal.notifyAll();
+    }
+  }
+
 
   /** Add a document to the queue.
   *@param dd is the document description.
@@ -85,11 +146,35 @@ public class DocumentQueue
   {
     synchronized (queue)
     {
-      queue.add(dd);
+      RatedDocumentSet rds = new RatedDocumentSet(dd,sequenceCounter++);
+      // Rating is deferred until a reader needs it, since only readers have the tracker
+      unratedSets.add(rds);
+      for (String binName : rds.getBinNames())
+      {
+        Set<RatedDocumentSet> binSets = binIndex.get(binName);
+        if (binSets == null)
+        {
+          binSets = new HashSet<RatedDocumentSet>();
+          binIndex.put(binName,binSets);
+        }
+        binSets.add(rds);
+      }
       queue.notify();
     }
   }
 
+  /** Note that the active count for a bin has changed.  This is called by the QueueTracker.
+  *@param binName is the name of the bin.
+  */
+  @Override
+  public void activeBinCountChanged(String binName)
+  {
+    synchronized (changedBins)
+    {
+      changedBins.add(binName);
+    }
+  }
+
   /** Pull the best-rated document set off the queue, but wait if there is
   * nothing there.
   *@param overlapCalculator performs analysis of the document sets on the queue so that we can
@@ -99,6 +184,8 @@ public class DocumentQueue
   public QueuedDocumentSet getDocument(QueueTracker overlapCalculator)
     throws InterruptedException
   {
+    QueuedDocumentSet rval;
+    boolean belowLowWater;
     synchronized (queue)
     {
       // If we are being reset, return null
@@ -106,7 +193,7 @@ public class DocumentQueue
         return null;
 
       // If queue is empty, go to sleep
-      while (queue.size() == 0 && resetFlag == false)
+      while (ratedSets.size() == 0 && unratedSets.size() == 0 && resetFlag == false)
         queue.wait();
 
       // If we've been awakened, there's either an entry to grab, or we've been
@@ -114,27 +201,146 @@ public class DocumentQueue
       if (resetFlag)
         return null;
 
-      // Go through all the documents and pick the one with the best rating
-      int i = 0;
-      int bestIndex = -1;
-      double bestRating = Double.NEGATIVE_INFINITY;
-      while (i < queue.size())
+      // Bring all ratings up to date
+      updateRatings(overlapCalculator);
+
+      // Pull off the best one.  Ties go to the one that arrived first.
+      RatedDocumentSet best = ratedSets.pollFirst();
+      for (String binName : best.getBinNames())
+      {
+        Set<RatedDocumentSet> binSets = binIndex.get(binName);
+        binSets.remove(best);
+        if (binSets.size() == 0)
+          binIndex.remove(binName);
+      }
+      rval = best.getDocumentSet();
+      belowLowWater = (ratedSets.size() + unratedSets.size() <= lowWaterMark);
+    }
+    // Signal outside of the queue lock
+    if (belowLowWater)
+      signalLowWater();
+    return rval;
+  }
+
+  /** Rerate those document sets whose ratings may have changed, and rate any new ones.
+  * Must be called while synchronized on the queue.
+  */
+  protected void updateRatings(QueueTracker overlapCalculator)
+  {
+    if (registeredTracker != overlapCalculator)
+    {
+      // We've never listened to this tracker before, so we can't trust any existing ratings.
+      if (registeredTracker != null)
+        registeredTracker.removeActiveBinListener(this);
+      overlapCalculator.addActiveBinListener(this);
+      registeredTracker = overlapCalculator;
+      synchronized (changedBins)
       {
-        QueuedDocumentSet dd = queue.get(i);
-        // Evaluate each document's bins.  These will be saved in the QueuedDocumentSet.
-        double rating = dd.calculateAssignmentRating(overlapCalculator);
-        if (bestIndex == -1 || rating > bestRating)
+        changedBins.clear();
+      }
+      List<RatedDocumentSet> allSets = new ArrayList<RatedDocumentSet>(ratedSets);
+      ratedSets.clear();
+      for (RatedDocumentSet rds : allSets)
+      {
+        rds.calculateRating(overlapCalculator);
+        ratedSets.add(rds);
+      }
+    }
+    else
+    {
+      Set<String> binsToProcess;
+      synchronized (changedBins)
+      {
+        if (changedBins.size() == 0)
+          binsToProcess = null;
+        else
         {
-          bestIndex = i;
-          bestRating = rating;
+          binsToProcess = changedBins;
+          changedBins = new HashSet<String>();
         }
-        i++;
       }
-      // Pull off the best one.  DON'T REORDER!!
-      QueuedDocumentSet rval = queue.remove(bestIndex);
-      return rval;
+      if (binsToProcess != null)
+      {
+        // Find all the affected sets first, so each is rerated only once
+        Set<RatedDocumentSet> affectedSets = new HashSet<RatedDocumentSet>();
+        for (String binName : binsToProcess)
+        {
+          Set<RatedDocumentSet> binSets = binIndex.get(binName);
+          if (binSets != null)
+            affectedSets.addAll(binSets);
+        }
+        for (RatedDocumentSet rds : affectedSets)
+        {
+          // Sets that are not yet rated are not in ratedSets; they are handled below
+          if (ratedSets.remove(rds))
+          {
+            rds.calculateRating(overlapCalculator);
+            ratedSets.add(rds);
+          }
+        }
+      }
+    }
+
+    for (RatedDocumentSet rds : unratedSets)
+    {
+      rds.calculateRating(overlapCalculator);
+      ratedSets.add(rds);
     }
+    unratedSets.clear();
   }
 
+  /** A queued document set, plus its current rating.  Instances are ordered best rating first,
+  * and then by arrival.  The rating must not be changed while the instance is in a sorted collection.
+  */
+  protected static class RatedDocumentSet implements Comparable<RatedDocumentSet>
+  {
+    protected final QueuedDocumentSet documentSet;
+    protected final long sequenceNumber;
+    protected final String[] binNames;
+    protected double rating = Double.NEGATIVE_INFINITY;
+
+    public RatedDocumentSet(QueuedDocumentSet documentSet, long sequenceNumber)
+    {
+      this.documentSet = documentSet;
+      this.sequenceNumber = sequenceNumber;
+      // Collect the distinct bins across all documents in the set
+      Set<String> bins = new HashSet<String>();
+      for (int i = 0; i < documentSet.getCount(); i++)
+      {
+        String[] docBins = documentSet.getDocument(i).getBinNames();
+        for (String binName : docBins)
+        {
+          bins.add(binName);
+        }
+      }
+      this.binNames = bins.toArray(new String[0]);
+    }
+
+    public QueuedDocumentSet getDocumentSet()
+    {
+      return documentSet;
+    }
+
+    public String[] getBinNames()
+    {
+      return binNames;
+    }
+
+    public void calculateRating(QueueTracker overlapCalculator)
+    {
+      rating = documentSet.calculateAssignmentRating(overlapCalculator);
+    }
+
+    @Override
+    public int compareTo(RatedDocumentSet other)
+    {
+      // Higher rating sorts first
+      int rval = Double.compare(other.rating,rating);
+      if (rval != 0)
+        return rval;
+      return (sequenceNumber < other.sequenceNumber)?-1:((sequenceNumber > other.sequenceNumber)?1:0);
+    }
+    
+  }
 
 }
@@ -54,6 +54,7 @@ public class FinisherThread extends Thread
       // Create a thread context object.
       IThreadContext threadContext = ThreadContextFactory.make();
       IJobManager jobManager = JobManagerFactory.make(threadContext);
+      IJobEventNotifier jobEventNotifier = JobEventNotifierFactory.make(threadContext);
       IRepositoryConnectionManager connectionManager = RepositoryConnectionManagerFactory.make(threadContext);
 
       // Loop
@@ -66,7 +67,7 @@ public class FinisherThread extends Thread
           // See if there are any completed jobs
           jobManager.finishJobs();
           Logging.threads.debug("Done cleaning up completed jobs");
-          ManifoldCF.sleep(10000L);
+          jobEventNotifier.waitForEvent(jobEventNotifier.EVENT_FINISH,60000L);
         }
         catch (ManifoldCFException e)
         {
@@ -56,6 +56,7 @@ public class JobDeleteThread extends Thread
       // Create a thread context object.
       IThreadContext threadContext = ThreadContextFactory.make();
       IJobManager jobManager = JobManagerFactory.make(threadContext);
+      IJobEventNotifier jobEventNotifier = JobEventNotifierFactory.make(threadContext);
       IRepositoryConnectionManager connectionMgr = RepositoryConnectionManagerFactory.make(threadContext);
 
       // Loop
@@ -65,9 +66,9 @@ public class JobDeleteThread extends Thread
         try
         {
           // Accumulate the wait before doing the next check.
-          // We start with 10 seconds, which is the maximum.  If there's a service request
+          // We start with 60 seconds, which is the maximum.  If there's a service request
           // that's faster than that, we'll adjust the time downward.
-          long waitTime = 10000L;
+          long waitTime = 60000L;
 
           // See if there are any starting jobs.
           // Note: Since this following call changes the job state, we must be careful to reset it on any kind of failure.
@@ -75,7 +76,7 @@ public class JobDeleteThread extends Thread
           jobManager.deleteJobsReadyForDelete();
 
           // Sleep for the retry interval.
-          ManifoldCF.sleep(waitTime);
+          jobEventNotifier.waitForEvent(jobEventNotifier.EVENT_DELETE,waitTime);
         }
         catch (ManifoldCFException e)
         {
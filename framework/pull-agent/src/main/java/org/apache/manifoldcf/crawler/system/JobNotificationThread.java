@@ -58,6 +58,7 @@ public class JobNotificationThread extends Thread
       // Create a thread context object.
       IThreadContext threadContext = ThreadContextFactory.make();
       IJobManager jobManager = JobManagerFactory.make(threadContext);
+      IJobEventNotifier jobEventNotifier = JobEventNotifierFactory.make(threadContext);
       IOutputConnectionManager connectionManager = OutputConnectionManagerFactory.make(threadContext);
       IRepositoryConnectionManager repositoryConnectionManager = RepositoryConnectionManagerFactory.make(threadContext);
 
@@ -194,7 +195,7 @@ public class JobNotificationThread extends Thread
               throw exception;
           }
 
-          ManifoldCF.sleep(10000L);
+          jobEventNotifier.waitForEvent(jobEventNotifier.EVENT_NOTIFY,60000L);
         }
         catch (ManifoldCFException e)
         {
@@ -54,6 +54,7 @@ public class JobResetThread extends Thread
       // Create a thread context object.
       IThreadContext threadContext = ThreadContextFactory.make();
       IJobManager jobManager = JobManagerFactory.make(threadContext);
+      IJobEventNotifier jobEventNotifier = JobEventNotifierFactory.make(threadContext);
       IRepositoryConnectionManager connectionManager = RepositoryConnectionManagerFactory.make(threadContext);
 
       // Loop
@@ -112,7 +113,7 @@ public class JobResetThread extends Thread
 
           }
           else
-            ManifoldCF.sleep(10000L);
+            jobEventNotifier.waitForEvent(jobEventNotifier.EVENT_RESET,60000L);
         }
         catch (ManifoldCFException e)
         {
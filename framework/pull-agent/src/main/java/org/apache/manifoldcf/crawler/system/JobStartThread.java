@@ -51,6 +51,7 @@ public class JobStartThread extends Thread
       // Create a thread context object.
       IThreadContext threadContext = ThreadContextFactory.make();
       IJobManager jobManager = JobManagerFactory.make(threadContext);
+      IJobEventNotifier jobEventNotifier = JobEventNotifierFactory.make(threadContext);
       IRepositoryConnectionManager connectionManager = RepositoryConnectionManagerFactory.make(threadContext);
 
       // Loop
@@ -93,7 +94,7 @@ public class JobStartThread extends Thread
               desc.getID().toString()+"("+desc.getDescription()+")",null,null,null);
           }
           // Loop around again, after resting a while
-          ManifoldCF.sleep(10000L);
+          jobEventNotifier.waitForEvent(jobEventNotifier.EVENT_SCHEDULE,10000L);
         }
         catch (ManifoldCFException e)
         {
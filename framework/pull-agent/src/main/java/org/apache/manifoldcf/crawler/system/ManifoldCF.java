@@ -59,6 +59,8 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
   protected static final String expireThreadCountProperty = "org.apache.manifoldcf.crawler.expirethreads";
   protected static final String lowWaterFactorProperty = "org.apache.manifoldcf.crawler.lowwaterfactor";
   protected static final String stuffAmtFactorProperty = "org.apache.manifoldcf.crawler.stuffamountfactor";
+  protected static final String partitionedJobQueueProperty = "org.apache.manifoldcf.crawler.jobqueue.partitioned";
+  protected static final String ingestBatchSizeProperty = "org.apache.manifoldcf.crawler.ingestbatchsize";
   protected static final String connectorsConfigurationFileProperty = "org.apache.manifoldcf.connectorsconfigurationfile";
   protected static final String databaseSuperuserNameProperty = "org.apache.manifoldcf.dbsuperusername";
   protected static final String databaseSuperuserPasswordProperty = "org.apache.manifoldcf.dbsuperuserpassword";
@@ -849,6 +851,25 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
   {
     return LockManagerFactory.getIntProperty(threadContext,cleanupThreadCountProperty,10);
   }
+
+  /** Check whether a newly-installed jobqueue table should be partitioned by job, where the
+  * database supports it.
+  */
+  public static boolean getPartitionedJobQueue(IThreadContext threadContext)
+    throws ManifoldCFException
+  {
+    return LockManagerFactory.getBooleanProperty(threadContext,partitionedJobQueueProperty,false);
+  }
+
+  /** Get the number of documents a worker thread hands to the output connection at once.  A value
+  * greater than one causes each document's content to be spooled to a temporary file until its group
+  * is ingested; one means documents are ingested as soon as the repository connector supplies them.
+  */
+  public static int getIngestBatchSize(IThreadContext threadContext)
+    throws ManifoldCFException
+  {
+    return LockManagerFactory.getIntProperty(threadContext,ingestBatchSizeProperty,1);
+  }
   
   /** Requeue documents due to carrydown.
   */
@@ -983,6 +1004,7 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
 
     IPriorityCalculator[] priorities = new IPriorityCalculator[descs.length];
 
+    rt.clearPreloadRequests();
     // Go through the documents and calculate the priorities
     int i = 0;
     while (i < descs.length)
@@ -1018,14 +1040,25 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
         repositoryConnectorPool.release(connection,connector);
       }
 
-      priorities[i] = new PriorityCalculator(rt,connection,binNames);
+      PriorityCalculator p = new PriorityCalculator(rt,connection,binNames);
+      priorities[i] = p;
+      p.makePreloadRequest();
 
       i++;
     }
 
-    // Now, write all the priorities we can.
-    jobManager.writeDocumentPriorities(currentTime,descs,priorities);
-
+    // Reserve all the bin values in one transaction, so that writing the priorities
+    // doesn't have to lock each bin row in turn
+    rt.preloadBinValues();
+    try
+    {
+      // Now, write all the priorities we can.
+      jobManager.writeDocumentPriorities(currentTime,descs,priorities);
+    }
+    finally
+    {
+      rt.clearPreloadedValues();
+    }
 
   }
 
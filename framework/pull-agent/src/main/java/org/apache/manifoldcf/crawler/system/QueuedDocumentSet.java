@@ -102,6 +102,8 @@ public class QueuedDocumentSet
   public double calculateAssignmentRating(QueueTracker overlapCalculator)
   {
     // This rating is the average across all documents in the set.
+    if (documents.length == 0)
+      return 0.0;
     double ratingAccumulator = 0.0;
     int i = 0;
     while (i < documents.length)
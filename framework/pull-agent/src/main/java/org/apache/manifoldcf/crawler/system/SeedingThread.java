@@ -65,6 +65,7 @@ public class SeedingThread extends Thread
       // Create a thread context object.
       IThreadContext threadContext = ThreadContextFactory.make();
       IJobManager jobManager = JobManagerFactory.make(threadContext);
+      IJobEventNotifier jobEventNotifier = JobEventNotifierFactory.make(threadContext);
       IRepositoryConnectionManager connectionMgr = RepositoryConnectionManagerFactory.make(threadContext);
       IReprioritizationTracker rt = ReprioritizationTrackerFactory.make(threadContext);
 
@@ -83,7 +84,7 @@ public class SeedingThread extends Thread
           long currentTime = System.currentTimeMillis();
 
           // Accumulate the wait before doing the next check.
-          // We start with 10 seconds, which is the maximum.  If there's a service request
+          // We start with 60 seconds, which is the maximum.  If there's a service request
           // that's faster than that, we'll adjust the time downward.
           long waitTime = 60000L;
 
@@ -101,7 +102,7 @@ public class SeedingThread extends Thread
             if (seedJobs.length == 0)
             {
               Logging.threads.debug("Seeding thread found nothing to do");
-              ManifoldCF.sleep(waitTime);
+              jobEventNotifier.waitForEvent(jobEventNotifier.EVENT_SEEDING,waitTime);
               continue;
             }
 
@@ -220,7 +221,7 @@ public class SeedingThread extends Thread
           }
 
           // Sleep for the retry interval.
-          ManifoldCF.sleep(waitTime);
+          jobEventNotifier.waitForEvent(jobEventNotifier.EVENT_SEEDING,waitTime);
         }
         catch (ManifoldCFException e)
         {
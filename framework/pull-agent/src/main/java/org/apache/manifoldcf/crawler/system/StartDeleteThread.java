@@ -58,6 +58,7 @@ public class StartDeleteThread extends Thread
       // Create a thread context object.
       IThreadContext threadContext = ThreadContextFactory.make();
       IJobManager jobManager = JobManagerFactory.make(threadContext);
+      IJobEventNotifier jobEventNotifier = JobEventNotifierFactory.make(threadContext);
       IRepositoryConnectionManager connectionMgr = RepositoryConnectionManagerFactory.make(threadContext);
 
       IDBInterface database = DBInterfaceFactory.make(threadContext,
@@ -75,9 +76,9 @@ public class StartDeleteThread extends Thread
           resetManager.waitForReset(threadContext);
 
           // Accumulate the wait before doing the next check.
-          // We start with 10 seconds, which is the maximum.  If there's a service request
+          // We start with 60 seconds, which is the maximum.  If there's a service request
           // that's faster than that, we'll adjust the time downward.
-          long waitTime = 10000L;
+          long waitTime = 60000L;
 
           if (Logging.threads.isDebugEnabled())
             Logging.threads.debug("Checking for deleting jobs");
@@ -90,7 +91,7 @@ public class StartDeleteThread extends Thread
 
             if (deleteJobs.length == 0)
             {
-              ManifoldCF.sleep(waitTime);
+              jobEventNotifier.waitForEvent(jobEventNotifier.EVENT_DELETESTART,waitTime);
               continue;
             }
 
@@ -151,7 +152,7 @@ public class StartDeleteThread extends Thread
           }
 
           // Sleep for the retry interval.
-          ManifoldCF.sleep(waitTime);
+          jobEventNotifier.waitForEvent(jobEventNotifier.EVENT_DELETESTART,waitTime);
         }
         catch (ManifoldCFException e)
         {
@@ -59,6 +59,7 @@ public class StartupThread extends Thread
       // Create a thread context object.
       IThreadContext threadContext = ThreadContextFactory.make();
       IJobManager jobManager = JobManagerFactory.make(threadContext);
+      IJobEventNotifier jobEventNotifier = JobEventNotifierFactory.make(threadContext);
       IRepositoryConnectionManager connectionMgr = RepositoryConnectionManagerFactory.make(threadContext);
       IReprioritizationTracker rt = ReprioritizationTrackerFactory.make(threadContext);
 
@@ -74,9 +75,9 @@ public class StartupThread extends Thread
           resetManager.waitForReset(threadContext);
 
           // Accumulate the wait before doing the next check.
-          // We start with 10 seconds, which is the maximum.  If there's a service request
+          // We start with 60 seconds, which is the maximum.  If there's a service request
           // that's faster than that, we'll adjust the time downward.
-          long waitTime = 10000L;
+          long waitTime = 60000L;
 
           if (Logging.threads.isDebugEnabled())
             Logging.threads.debug("Checking for starting jobs");
@@ -89,7 +90,7 @@ public class StartupThread extends Thread
 
             if (startupJobs.length == 0)
             {
-              ManifoldCF.sleep(waitTime);
+              jobEventNotifier.waitForEvent(jobEventNotifier.EVENT_STARTUP,waitTime);
               continue;
             }
 
@@ -215,7 +216,7 @@ public class StartupThread extends Thread
           }
 
           // Sleep for the retry interval.
-          ManifoldCF.sleep(waitTime);
+          jobEventNotifier.waitForEvent(jobEventNotifier.EVENT_STARTUP,waitTime);
         }
         catch (ManifoldCFException e)
         {
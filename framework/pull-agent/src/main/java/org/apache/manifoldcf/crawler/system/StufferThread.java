@@ -26,7 +26,7 @@ import java.util.*;
 import java.lang.reflect.*;
 
 /** This class represents the stuffer thread.  This thread's job is to request documents from the database and add them to the
-* document queue.  The thread then sleeps until the document queue is empty again.
+* document queue.  The thread then sleeps until the document queue is empty again, which the document queue signals.
 */
 public class StufferThread extends Thread
 {
@@ -37,6 +37,13 @@ public class StufferThread extends Thread
   /** Datum which contains the last time, in milliseconds since epoch, that any stuffer thread in the cluster
       successfully fired. */
   protected final static String stufferThreadLastTimeDatumName = "_STUFFERTHREAD_LASTTIME";
+
+  /** Longest time to wait for the queue to drain before checking everything again */
+  protected final static long maxLowWaterWait = 1000L;
+  /** Shortest time to sleep when there was nothing to stuff */
+  protected final static long minEmptySleep = 100L;
+  /** Longest time to sleep when there was nothing to stuff */
+  protected final static long maxEmptySleep = 10000L;
   
   // Local data
   
@@ -121,6 +128,12 @@ public class StufferThread extends Thread
       long lastQueueEnd = -1L;
       boolean lastQueueFullResults = false;
 
+      // Current backoff for when there is nothing to stuff
+      long emptySleep = minEmptySleep;
+      // When the next pending document becomes eligible, as of the last lookup in this run of empty passes
+      Long nextCheckTime = null;
+      boolean nextCheckTimeKnown = false;
+
       // Loop
       while (true)
       {
@@ -134,13 +147,10 @@ public class StufferThread extends Thread
           resetManager.waitForReset(threadContext);
 
           // System.out.println("Waiting...");
-          // Wait until queue is below low water mark.
-          boolean isEmpty = documentQueue.checkIfEmpty(lowWaterMark);
+          // Wait until queue is below low water mark.  The queue wakes us up as soon as that happens.
+          boolean isEmpty = documentQueue.waitForLowWaterMark(lowWaterMark,maxLowWaterWait);
           if (isEmpty == false)
-          {
-            ManifoldCF.sleep(1000L);
             continue;
-          }
           long queueNeededTime = System.currentTimeMillis();
 
           Logging.threads.debug("Document stuffer thread woke up");
@@ -201,12 +211,39 @@ public class StufferThread extends Thread
           }
 
           // If there are no queuable documents at all, then we can sleep for a while.
-          // The theory is that we need to allow stuff to accumulate.
+          // The theory is that we need to allow stuff to accumulate.  We back off exponentially, but
+          // never sleep past the time the next pending document becomes eligible.
           if (descs.length == 0)
           {
-            ManifoldCF.sleep(2000L);       // 2 seconds
+            long sleepAmt = emptySleep;
+            // Documents that are already eligible but weren't queued are blocked for some other reason
+            // (e.g. throttling), so only future check times can cut the backoff short.  That time is looked
+            // up when a run of empty passes begins, and again only after it has come and gone, so an idle
+            // agent doesn't pay for the lookup on every pass.
+            long currentTime = System.currentTimeMillis();
+            if (!nextCheckTimeKnown || (nextCheckTime != null && nextCheckTime.longValue() <= currentTime))
+            {
+              nextCheckTime = jobManager.getNextDocumentCheckTime(currentTime);
+              nextCheckTimeKnown = true;
+            }
+            if (nextCheckTime != null)
+            {
+              long untilNextCheck = nextCheckTime.longValue() - currentTime;
+              if (untilNextCheck > 0L && untilNextCheck < sleepAmt)
+                sleepAmt = untilNextCheck;
+            }
+            if (sleepAmt < minEmptySleep)
+              sleepAmt = minEmptySleep;
+            emptySleep *= 2L;
+            if (emptySleep > maxEmptySleep)
+              emptySleep = maxEmptySleep;
+            if (Logging.threads.isDebugEnabled())
+              Logging.threads.debug("Stuffer thread: Nothing to queue; sleeping for "+Long.toString(sleepAmt)+" ms");
+            ManifoldCF.sleep(sleepAmt);
             continue;
           }
+          emptySleep = minEmptySleep;
+          nextCheckTimeKnown = false;
 
           // if (Logging.threads.isDebugEnabled())
           //      Logging.threads.debug("Found "+Integer.toString(descs.length)+" documents to stuff");
@@ -81,6 +81,8 @@ public class WorkerThread extends Thread
 
       IRepositoryConnectorPool repositoryConnectorPool = RepositoryConnectorPoolFactory.make(threadContext);
       
+      int ingestBatchSize = ManifoldCF.getIngestBatchSize(threadContext);
+
       List<DocumentToProcess> fetchList = new ArrayList<DocumentToProcess>();
       Map<String,String> versionMap = new HashMap<String,String>();
       List<QueuedDocument> finishList = new ArrayList<QueuedDocument>();
@@ -529,7 +531,8 @@ public class WorkerThread extends Thread
                         // First, make the things we will need for all subsequent steps.
                         ProcessActivity activity = new ProcessActivity(processID,
                           threadContext,rt,jobManager,ingester,
-                          currentTime,job,connection,connector,connMgr,legalLinkTypes,ingestLogger,abortSet,outputVersion,newParameterVersion);
+                          currentTime,job,connection,connector,connMgr,legalLinkTypes,ingestLogger,abortSet,outputVersion,newParameterVersion,
+                          ingestBatchSize);
                         try
                         {
 
@@ -564,7 +567,7 @@ public class WorkerThread extends Thread
 
                               connector.processDocuments(processIDs,versions,activity,job.getSpecification(),scanOnly,jobType);
 
-                              // Flush remaining references into the database!
+                              // Flush remaining ingestions and references into the database!
                               activity.flush();
 
                               // "Finish" the documents (removing unneeded carrydown info, etc.)
@@ -1430,6 +1433,89 @@ public class WorkerThread extends Thread
 
   }
 
+  /** A document that has been ingested by the repository connector, but not yet handed to the output connection.
+  * Its content is copied out of the connector's streams, which are closed as soon as ingestDocument() returns.
+  */
+  protected static class PendingIngestion
+  {
+    protected final String identifierHash;
+    protected final String version;
+    protected final String documentURI;
+    protected final RepositoryDocument data;
+    protected TempFileInput binary = null;
+
+    public PendingIngestion(String identifierHash, String version, String documentURI, RepositoryDocument data)
+      throws ManifoldCFException
+    {
+      this.identifierHash = identifierHash;
+      this.version = version;
+      this.documentURI = documentURI;
+      this.data = data;
+      if (data == null)
+        return;
+      try
+      {
+        // Reader-valued fields are read into strings now
+        List<String> fieldNames = new ArrayList<String>();
+        Iterator<String> iter = data.getFields();
+        while (iter.hasNext())
+        {
+          fieldNames.add(iter.next());
+        }
+        for (String fieldName : fieldNames)
+        {
+          if (data.getField(fieldName) instanceof Reader[])
+            data.addField(fieldName,data.getFieldAsStrings(fieldName));
+        }
+      }
+      catch (InterruptedIOException e)
+      {
+        throw new ManifoldCFException("Interrupted: "+e.getMessage(),e,ManifoldCFException.INTERRUPTED);
+      }
+      catch (IOException e)
+      {
+        throw new ManifoldCFException("Error reading document fields: "+e.getMessage(),e);
+      }
+      InputStream is = data.getBinaryStream();
+      if (is != null)
+      {
+        binary = new TempFileInput(is,data.getBinaryLength());
+        data.setBinary(binary.getStream(),binary.getLength());
+      }
+    }
+
+    public String getIdentifierHash()
+    {
+      return identifierHash;
+    }
+
+    public String getVersion()
+    {
+      return version;
+    }
+
+    public String getDocumentURI()
+    {
+      return documentURI;
+    }
+
+    public RepositoryDocument getData()
+    {
+      return data;
+    }
+
+    /** Delete the spooled content. */
+    public void discard()
+      throws ManifoldCFException
+    {
+      if (binary != null)
+      {
+        binary.discard();
+        binary = null;
+      }
+    }
+  }
+
   /** Process activity class wraps access to the ingester and job queue.
   */
   protected static class ProcessActivity implements IProcessActivity
@@ -1450,10 +1536,15 @@ public class WorkerThread extends Thread
     protected final HashMap abortSet;
     protected final String outputVersion;
     protected final String parameterVersion;
+    protected final int ingestBatchSize;
     
     // We submit references in bulk, because that's way more efficient.
     protected HashMap referenceList = new HashMap();
 
+    // Documents waiting to be handed to the output connection as a group, in the order they were ingested.
+    protected final List<PendingIngestion> pendingIngestions = new ArrayList<PendingIngestion>();
+    protected final Set<String> pendingIdentifierHashes = new HashSet<String>();
+
     // Keep track of lower and upper reschedule bounds separately.  Contains a Long and is keyed by a document identifier.
     protected HashMap lowerRescheduleBounds = new HashMap();
     protected HashMap upperRescheduleBounds = new HashMap();
@@ -1466,13 +1557,14 @@ public class WorkerThread extends Thread
     /** Constructor.
     *@param jobManager is the job manager
     *@param ingester is the ingester
+    *@param ingestBatchSize is the number of documents to hand to the output connection at once.
     */
     public ProcessActivity(String processID, IThreadContext threadContext,
       IReprioritizationTracker rt, IJobManager jobManager,
       IIncrementalIngester ingester, long currentTime,
       IJobDescription job, IRepositoryConnection connection, IRepositoryConnector connector,
       IRepositoryConnectionManager connMgr, String[] legalLinkTypes, OutputActivity ingestLogger,
-      HashMap abortSet, String outputVersion, String parameterVersion)
+      HashMap abortSet, String outputVersion, String parameterVersion, int ingestBatchSize)
     {
       this.processID = processID;
       this.threadContext = threadContext;
@@ -1489,6 +1581,7 @@ public class WorkerThread extends Thread
       this.abortSet = abortSet;
       this.outputVersion = outputVersion;
       this.parameterVersion = parameterVersion;
+      this.ingestBatchSize = ingestBatchSize;
     }
 
     /** Clean up any dangling information, before abandoning this process activity object */
@@ -1502,6 +1595,7 @@ public class WorkerThread extends Thread
         dr.discard();
       }
       referenceList.clear();
+      discardPendingIngestions();
     }
 
     /** Add a document description to the current job's queue.
@@ -1706,6 +1800,8 @@ public class WorkerThread extends Thread
       throws ManifoldCFException, ServiceInterruption
     {
       String documentIdentifierHash = ManifoldCF.hash(documentIdentifier);
+      // Anything already ingested must reach the ingester first, to keep the operations in order
+      flushIngestions();
       ingester.documentRecord(job.getOutputConnectionName(),job.getConnectionName(),documentIdentifierHash,version,currentTime,ingestLogger);
     }
 
@@ -1745,14 +1841,27 @@ public class WorkerThread extends Thread
         }
       }
         
-      // First, we need to add into the metadata the stuff from the job description.
-      ingester.documentIngest(job.getOutputConnectionName(),
-        job.getConnectionName(),documentIdentifierHash,
-        version,outputVersion,parameterVersion,
-        connection.getACLAuthority(),
-        data,currentTime,
-        documentURI,
-        ingestLogger);
+      if (ingestBatchSize <= 1)
+      {
+        // First, we need to add into the metadata the stuff from the job description.
+        ingester.documentIngest(job.getOutputConnectionName(),
+          job.getConnectionName(),documentIdentifierHash,
+          version,outputVersion,parameterVersion,
+          connection.getACLAuthority(),
+          data,currentTime,
+          documentURI,
+          ingestLogger);
+        return;
+      }
+
+      // The same document cannot appear twice in one group
+      if (pendingIdentifierHashes.contains(documentIdentifierHash))
+        flushIngestions();
+      // The connector closes the document's streams once we return, so hold on to a copy until the group goes out
+      pendingIngestions.add(new PendingIngestion(documentIdentifierHash,version,documentURI,data));
+      pendingIdentifierHashes.add(documentIdentifierHash);
+      if (pendingIngestions.size() >= ingestBatchSize)
+        flushIngestions();
     }
 
     /** Delete the current document from the search engine index, while keeping track of the version information
@@ -1782,6 +1891,7 @@ public class WorkerThread extends Thread
       throws ManifoldCFException, ServiceInterruption
     {
       String documentIdentifierHash = ManifoldCF.hash(documentIdentifier);
+      flushIngestions();
       ingester.documentDelete(job.getOutputConnectionName(),
         job.getConnectionName(),documentIdentifierHash,
         ingestLogger);
@@ -1957,14 +2067,86 @@ public class WorkerThread extends Thread
         resultDescription,childIdentifiers);
     }
 
-    /** Flush the outstanding references into the database.
+    /** Flush the outstanding ingestions and references into the database.
     */
     public void flush()
-      throws ManifoldCFException
+      throws ManifoldCFException, ServiceInterruption
     {
+      flushIngestions();
       processDocumentReferences();
     }
 
+    /** Hand the pending documents to the output connection as one group.
+    */
+    protected void flushIngestions()
+      throws ManifoldCFException, ServiceInterruption
+    {
+      if (pendingIngestions.size() == 0)
+        return;
+
+      try
+      {
+        String[] identifierClasses = new String[pendingIngestions.size()];
+        String[] identifierHashes = new String[pendingIngestions.size()];
+        String[] versions = new String[pendingIngestions.size()];
+        String[] documentURIs = new String[pendingIngestions.size()];
+        RepositoryDocument[] data = new RepositoryDocument[pendingIngestions.size()];
+        for (int i = 0; i < identifierHashes.length; i++)
+        {
+          PendingIngestion pi = pendingIngestions.get(i);
+          identifierClasses[i] = job.getConnectionName();
+          identifierHashes[i] = pi.getIdentifierHash();
+          versions[i] = pi.getVersion();
+          documentURIs[i] = pi.getDocumentURI();
+          data[i] = pi.getData();
+        }
+
+        if (Logging.threads.isDebugEnabled())
+          Logging.threads.debug("Worker thread ingesting a group of "+Integer.toString(identifierHashes.length)+" documents");
+
+        boolean[] results = ingester.documentIngestMultiple(job.getOutputConnectionName(),
+          identifierClasses,identifierHashes,
+          versions,outputVersion,parameterVersion,
+          connection.getACLAuthority(),
+          data,currentTime,
+          documentURIs,
+          ingestLogger);
+
+        // The ingester has already recorded each outcome; a rejected document is simply not retried
+        if (Logging.threads.isDebugEnabled())
+        {
+          for (int i = 0; i < results.length; i++)
+          {
+            if (!results[i])
+              Logging.threads.debug("Output connection rejected document '"+identifierHashes[i]+"' in group");
+          }
+        }
+      }
+      finally
+      {
+        discardPendingIngestions();
+      }
+    }
+
+    /** Release the spooled content of the pending documents, and forget them.
+    */
+    protected void discardPendingIngestions()
+      throws ManifoldCFException
+    {
+      try
+      {
+        for (PendingIngestion pi : pendingIngestions)
+        {
+          pi.discard();
+        }
+      }
+      finally
+      {
+        pendingIngestions.clear();
+        pendingIdentifierHashes.clear();
+      }
+    }
+
     /** Process outstanding document references, in batch.
     */
     protected void processDocumentReferences()
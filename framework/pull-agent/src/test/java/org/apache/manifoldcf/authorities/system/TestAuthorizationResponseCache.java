@@ -0,0 +1,190 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.authorities.system;
+
+import org.apache.manifoldcf.authorities.interfaces.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Check that the authorization response cache answers from memory, shares lookups in progress,
+* and does not remember failures.
+*/
+public class TestAuthorizationResponseCache
+{
+
+  @Test
+  public void rememberedAnswers()
+    throws Exception
+  {
+    RequestQueue<AuthRequest> queue = new RequestQueue<AuthRequest>();
+    AuthorizationResponseCache cache = new AuthorizationResponseCache(queue,60000L,100);
+    IAuthorityConnection conn = makeConnection("ad");
+
+    AuthRequest first = makeRequest(conn,"alice");
+    cache.addRequest(first);
+    assertSame(first,queue.getRequest());
+    AuthorizationResponse answer = new AuthorizationResponse(new String[]{"token"},AuthorizationResponse.RESPONSE_OK);
+    cache.completeRequest(first,answer,null,true);
+    assertSame(answer,first.getAnswerResponse());
+
+    // Answered from memory, without going on the queue
+    AuthRequest second = makeRequest(conn,"alice");
+    cache.addRequest(second);
+    second.waitForComplete();
+    assertSame(answer,second.getAnswerResponse());
+
+    // A different user, or a different connection, is not
+    cache.addRequest(makeRequest(conn,"bob"));
+    cache.addRequest(makeRequest(makeConnection("ldap"),"alice"));
+    assertEquals(1L,cache.getHitCount());
+    assertEquals(3L,cache.getMissCount());
+
+    cache.expireResponses(System.currentTimeMillis() + 60001L);
+    assertEquals(0,cache.getSize());
+  }
+
+  @Test
+  public void sharedLookups()
+    throws Exception
+  {
+    RequestQueue<AuthRequest> queue = new RequestQueue<AuthRequest>();
+    AuthorizationResponseCache cache = new AuthorizationResponseCache(queue,60000L,100);
+    IAuthorityConnection conn = makeConnection("ad");
+
+    AuthRequest leader = makeRequest(conn,"alice");
+    AuthRequest follower = makeRequest(conn,"alice");
+    cache.addRequest(leader);
+    cache.addRequest(follower);
+    assertEquals(1L,cache.getCoalescedCount());
+    assertSame(leader,queue.getRequest());
+
+    // An unreachable authority answers both requests, but is asked again next time
+    AuthorizationResponse answer = new AuthorizationResponse(new String[0],AuthorizationResponse.RESPONSE_UNREACHABLE);
+    cache.completeRequest(leader,answer,null,true);
+    follower.waitForComplete();
+    assertSame(answer,follower.getAnswerResponse());
+
+    AuthRequest retry = makeRequest(conn,"alice");
+    cache.addRequest(retry);
+    assertSame(retry,queue.getRequest());
+    cache.completeRequest(retry,null,new Exception("Failed"),false);
+    assertEquals(0,cache.getSize());
+  }
+
+  @Test
+  public void sizeLimit()
+    throws Exception
+  {
+    RequestQueue<AuthRequest> queue = new RequestQueue<AuthRequest>();
+    AuthorizationResponseCache cache = new AuthorizationResponseCache(queue,60000L,10);
+    IAuthorityConnection conn = makeConnection("ad");
+    for (int i = 0; i < 50; i++)
+    {
+      AuthRequest ar = makeRequest(conn,"user"+i);
+      cache.addRequest(ar);
+      cache.completeRequest(queue.getRequest(),new AuthorizationResponse(new String[0],AuthorizationResponse.RESPONSE_OK),null,true);
+    }
+    assertEquals(10,cache.getSize());
+  }
+
+  @Test
+  public void fullQueue()
+    throws Exception
+  {
+    RequestQueue<AuthRequest> queue = new RequestQueue<AuthRequest>(1);
+    AuthorizationResponseCache cache = new AuthorizationResponseCache(queue,60000L,100);
+    IAuthorityConnection conn = makeConnection("ad");
+
+    assertTrue(cache.addRequest(makeRequest(conn,"alice")));
+    // Joins the lookup in progress, so it doesn't need a place in the queue
+    assertTrue(cache.addRequest(makeRequest(conn,"alice")));
+    AuthRequest refused = makeRequest(conn,"bob");
+    assertFalse(cache.addRequest(refused));
+    assertTrue(refused.isComplete());
+    assertTrue(refused.getAnswerException() instanceof RequestQueueFullException);
+
+    // Nothing remembered about the refusal; the next request gets looked up
+    queue.getRequest();
+    AuthRequest retry = makeRequest(conn,"bob");
+    assertTrue(cache.addRequest(retry));
+    assertSame(retry,queue.getRequest());
+  }
+
+  @Test
+  public void overdueLookups()
+    throws Exception
+  {
+    RequestQueue<AuthRequest> queue = new RequestQueue<AuthRequest>();
+    AuthorizationResponseCache cache = new AuthorizationResponseCache(queue,60000L,100);
+    IAuthorityConnection conn = makeConnection("ad");
+    long now = System.currentTimeMillis();
+
+    // The leader's caller has given up, but a follower's hasn't: the lookup goes on under the follower's deadline
+    AuthRequest leader = makeRequest(conn,"alice");
+    AuthRequest follower = makeRequest(conn,"alice");
+    cache.addRequest(leader,now - 1L);
+    cache.addRequest(follower,now + 60000L);
+    // Nobody is waiting for this one any more
+    AuthRequest abandoned = makeRequest(conn,"bob");
+    AuthRequest abandonedFollower = makeRequest(conn,"bob");
+    cache.addRequest(abandoned,now - 1L);
+    cache.addRequest(abandonedFollower,now - 1L);
+
+    assertSame(leader,queue.getRequest());
+    assertEquals(0,queue.getDepth());
+    assertTrue(abandoned.isComplete());
+    assertTrue(abandonedFollower.isComplete());
+    assertEquals(AuthorizationResponse.RESPONSE_UNREACHABLE,abandonedFollower.getAnswerResponse().getResponseStatus());
+
+    AuthorizationResponse answer = new AuthorizationResponse(new String[]{"token"},AuthorizationResponse.RESPONSE_OK);
+    cache.completeRequest(leader,answer,null,true);
+    assertSame(answer,follower.getAnswerResponse());
+
+    // The dropped lookup was released, so the next request is looked up afresh
+    AuthRequest retry = makeRequest(conn,"bob");
+    cache.addRequest(retry);
+    assertSame(retry,queue.getRequest());
+  }
+
+  protected static AuthRequest makeRequest(IAuthorityConnection conn, String userID)
+  {
+    AuthRequest ar = new AuthRequest(conn,conn.getName());
+    ar.setUserID(userID);
+    return ar;
+  }
+
+  protected static IAuthorityConnection makeConnection(final String name)
+  {
+    return (IAuthorityConnection)Proxy.newProxyInstance(IAuthorityConnection.class.getClassLoader(),
+      new Class[]{IAuthorityConnection.class},
+      new InvocationHandler()
+      {
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+          if (method.getName().equals("getName"))
+            return name;
+          throw new UnsupportedOperationException(method.getName());
+        }
+      });
+  }
+
+}
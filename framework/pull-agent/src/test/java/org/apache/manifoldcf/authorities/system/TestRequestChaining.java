@@ -0,0 +1,252 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.authorities.system;
+
+import org.apache.manifoldcf.authorities.interfaces.*;
+import java.util.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Check that requests can be chained off mapping requests without extra threads, and that one
+* authority that does not answer in time does not hold up the response.
+*/
+public class TestRequestChaining
+{
+
+  @BeforeClass
+  public static void setUp()
+  {
+    Logging.authorityService = org.apache.log4j.Logger.getLogger("test");
+  }
+
+  @Test
+  public void completionActions()
+    throws Exception
+  {
+    MappingRequest mr = new MappingRequest(null,"mapper");
+    final List<String> seen = new ArrayList<String>();
+    mr.addCompletionAction(new Runnable()
+      {
+        public void run()
+        {
+          seen.add("before");
+        }
+      });
+    assertEquals(0,seen.size());
+    mr.completeRequest("mapped",null);
+    assertEquals(1,seen.size());
+    // Completing twice does nothing
+    mr.completeRequest("other",null);
+    assertEquals(1,seen.size());
+    // Added after completion: runs right away
+    mr.addCompletionAction(new Runnable()
+      {
+        public void run()
+        {
+          seen.add("after");
+        }
+      });
+    assertEquals(2,seen.size());
+    assertEquals("mapped",mr.getAnswerResponse());
+  }
+
+  @Test
+  public void timedWait()
+    throws Exception
+  {
+    AuthRequest ar = new AuthRequest(null,"authority");
+    assertFalse(ar.waitForComplete(20L));
+    assertFalse(ar.waitForComplete(0L));
+    ar.completeRequest(null,null);
+    assertTrue(ar.waitForComplete(0L));
+    assertTrue(ar.isComplete());
+  }
+
+  /** Simulate the authority service: one mapper, which several authorities depend on, with one authority
+  * that never answers.  Many clients issue requests at once.  The slow authority must be reported as having
+  * timed out, without holding up the answers from all the others.
+  */
+  @Test
+  public void loadTest()
+    throws Exception
+  {
+    final int authorityCount = 6;
+    final long authorityTimeout = 1000L;
+    final int clientCount = 20;
+    final int requestsPerClient = 3;
+    final String slowAuthority = "auth"+(authorityCount-1);
+
+    final RequestQueue<MappingRequest> mappingQueue = new RequestQueue<MappingRequest>();
+    final RequestQueue<AuthRequest> authQueue = new RequestQueue<AuthRequest>();
+    final AuthorizationResponseCache authCache = new AuthorizationResponseCache(authQueue,0L,100);
+
+    final IMappingConnection[] mappingConnections = new IMappingConnection[]{makeMapper("mapper")};
+    final IAuthorityConnection[] authConnections = new IAuthorityConnection[authorityCount];
+    for (int a = 0; a < authorityCount; a++)
+    {
+      authConnections[a] = makeAuthority("auth"+a,"mapper");
+    }
+
+    List<Thread> workers = new ArrayList<Thread>();
+    for (int i = 0; i < 20; i++)
+    {
+      workers.add(new Worker<MappingRequest>(mappingQueue)
+        {
+          protected void process(MappingRequest request)
+          {
+            request.completeRequest(request.getUserID()+"@mapped",null);
+          }
+        });
+      workers.add(new Worker<AuthRequest>(authQueue)
+        {
+          protected void process(AuthRequest request)
+          {
+            // The slow authority never gets around to answering
+            if (request.getIdentifyingString().equals(slowAuthority))
+              return;
+            authCache.completeRequest(request,new AuthorizationResponse(new String[]{request.getUserID()},AuthorizationResponse.RESPONSE_OK),null,true);
+          }
+        });
+    }
+    for (Thread t : workers)
+    {
+      t.start();
+    }
+
+    final Throwable[] failure = new Throwable[1];
+    List<Thread> clients = new ArrayList<Thread>();
+    for (int c = 0; c < clientCount; c++)
+    {
+      final int clientNumber = c;
+      clients.add(new Thread()
+        {
+          public void run()
+          {
+            try
+            {
+              for (int r = 0; r < requestsPerClient; r++)
+              {
+                String userID = "user"+clientNumber+"_"+r;
+                AuthorityRequestSet requestSet = new AuthorityRequestSet(mappingQueue,authCache,mappingConnections,
+                  System.currentTimeMillis() + authorityTimeout);
+                assertTrue(requestSet.addDomain("",userID,authConnections));
+                requestSet.waitForComplete();
+                assertFalse(requestSet.isMappingOverloaded());
+
+                Map<String,AuthRequest> authRequests = requestSet.getAuthRequests();
+                assertEquals(authorityCount,authRequests.size());
+                for (String connectionName : authRequests.keySet())
+                {
+                  if (connectionName.equals(slowAuthority))
+                  {
+                    assertTrue(requestSet.isTimedOut(connectionName));
+                    continue;
+                  }
+                  assertFalse("Authority "+connectionName+" did not answer",requestSet.isTimedOut(connectionName));
+                  AuthorizationResponse reply = authRequests.get(connectionName).getAnswerResponse();
+                  assertEquals(AuthorizationResponse.RESPONSE_OK,reply.getResponseStatus());
+                  assertEquals(userID+"@mapped",reply.getAccessTokens()[0]);
+                }
+              }
+            }
+            catch (Throwable e)
+            {
+              failure[0] = e;
+            }
+          }
+        });
+    }
+    for (Thread t : clients)
+    {
+      t.start();
+    }
+    for (Thread t : clients)
+    {
+      t.join();
+    }
+    for (Thread t : workers)
+    {
+      t.interrupt();
+    }
+    if (failure[0] != null)
+      throw new Exception("Client failed: "+failure[0].getMessage(),failure[0]);
+  }
+
+  /** A mapping request that can't be queued makes the whole request one for the service to turn away.
+  */
+  @Test
+  public void overloaded()
+    throws Exception
+  {
+    RequestQueue<MappingRequest> mappingQueue = new RequestQueue<MappingRequest>(1);
+    AuthorizationResponseCache authCache = new AuthorizationResponseCache(new RequestQueue<AuthRequest>(),0L,100);
+    IMappingConnection[] mappingConnections = new IMappingConnection[]{makeMapper("mapper0"),makeMapper("mapper1")};
+    IAuthorityConnection[] authConnections = new IAuthorityConnection[]{makeAuthority("auth0","mapper0"),makeAuthority("auth1","mapper1")};
+
+    // Nothing takes requests off the mapping queue, which has room for just one
+    AuthorityRequestSet requestSet = new AuthorityRequestSet(mappingQueue,authCache,mappingConnections,Long.MAX_VALUE);
+    assertFalse(requestSet.addDomain("","user",authConnections));
+    assertEquals(1,mappingQueue.getDepth());
+  }
+
+  protected static IMappingConnection makeMapper(String name)
+  {
+    IMappingConnection rval = new org.apache.manifoldcf.authorities.mapping.MappingConnection();
+    rval.setName(name);
+    return rval;
+  }
+
+  protected static IAuthorityConnection makeAuthority(String name, String prerequisiteMapping)
+  {
+    IAuthorityConnection rval = new org.apache.manifoldcf.authorities.authority.AuthorityConnection();
+    rval.setName(name);
+    rval.setPrerequisiteMapping(prerequisiteMapping);
+    return rval;
+  }
+
+  /** A worker thread, standing in for a mapping or auth check thread */
+  protected static abstract class Worker<T> extends Thread
+  {
+    protected final RequestQueue<T> queue;
+
+    public Worker(RequestQueue<T> queue)
+    {
+      this.queue = queue;
+      setDaemon(true);
+    }
+
+    public void run()
+    {
+      try
+      {
+        while (true)
+        {
+          process(queue.getRequest());
+        }
+      }
+      catch (InterruptedException e)
+      {
+      }
+    }
+
+    protected abstract void process(T request);
+  }
+
+}
@@ -0,0 +1,176 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.authorities.system;
+
+import java.util.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Check the order in which the request queue hands out requests, and that it refuses requests when full.
+*/
+public class TestRequestQueue
+{
+
+  @Test
+  public void firstInFirstOut()
+    throws Exception
+  {
+    RequestQueue<String> queue = new RequestQueue<String>();
+    for (int i = 0; i < 100; i++)
+    {
+      assertTrue(queue.addRequest("r"+i));
+    }
+    for (int i = 0; i < 100; i++)
+    {
+      assertEquals("r"+i,queue.getRequest());
+    }
+    assertEquals(100L,queue.getTakenCount());
+    assertEquals(0,queue.getDepth());
+  }
+
+  @Test
+  public void earliestDeadlineFirst()
+    throws Exception
+  {
+    RequestQueue<String> queue = new RequestQueue<String>();
+    long now = System.currentTimeMillis();
+    queue.addRequest("none");
+    queue.addRequest("late",now + 60000L);
+    queue.addRequest("soon",now + 10000L);
+    queue.addRequest("alsoLate",now + 60000L);
+    assertEquals("soon",queue.getRequest());
+    assertEquals("late",queue.getRequest());
+    assertEquals("alsoLate",queue.getRequest());
+    assertEquals("none",queue.getRequest());
+  }
+
+  @Test
+  public void overdueDropped()
+    throws Exception
+  {
+    RequestQueue<String> queue = new RequestQueue<String>(3);
+    long now = System.currentTimeMillis();
+    queue.addRequest("expired",now - 1L);
+    queue.addRequest("alsoExpired",now - 1L);
+    queue.addRequest("live",now + 60000L);
+    assertEquals("live",queue.getRequest());
+    assertEquals(2L,queue.getOverdueCount());
+    // Nothing is kept for them, so their places are free again
+    assertEquals(0,queue.getDepth());
+    assertTrue(queue.addRequest("a"));
+    assertTrue(queue.addRequest("b"));
+    assertTrue(queue.addRequest("c"));
+  }
+
+  @Test
+  public void overdueRequeued()
+    throws Exception
+  {
+    RequestQueue<String> queue = new RequestQueue<String>();
+    final List<String> seen = new ArrayList<String>();
+    queue.setOverdueHandler(new IOverdueRequestHandler<String>()
+      {
+        public long requestOverdue(String request, long currentTime)
+        {
+          seen.add(request);
+          return request.equals("wanted")?currentTime + 60000L:-1L;
+        }
+      });
+    long now = System.currentTimeMillis();
+    queue.addRequest("wanted",now - 1L);
+    queue.addRequest("unwanted",now - 1L);
+    queue.addRequest("live",now + 30000L);
+    assertEquals("live",queue.getRequest());
+    assertEquals(Arrays.asList("wanted","unwanted"),seen);
+    // Back on the queue, under its new deadline
+    assertEquals(1,queue.getDepth());
+    assertEquals("wanted",queue.getRequest());
+  }
+
+  @Test
+  public void bounded()
+    throws Exception
+  {
+    RequestQueue<String> queue = new RequestQueue<String>(3);
+    assertTrue(queue.addRequest("a"));
+    assertTrue(queue.addRequest("b"));
+    assertTrue(queue.addRequest("c"));
+    assertFalse(queue.addRequest("d"));
+    assertEquals(1L,queue.getRejectedCount());
+    assertEquals(3,queue.getPeakDepth());
+    queue.getRequest();
+    assertTrue(queue.addRequest("d"));
+    assertEquals(3,queue.getDepth());
+  }
+
+  @Test
+  public void manyReaders()
+    throws Exception
+  {
+    final RequestQueue<Integer> queue = new RequestQueue<Integer>();
+    final int readerCount = 8;
+    final int requestCount = 20000;
+    final long[] sums = new long[readerCount];
+    Thread[] readers = new Thread[readerCount];
+    for (int i = 0; i < readerCount; i++)
+    {
+      final int readerNumber = i;
+      readers[i] = new Thread()
+        {
+          public void run()
+          {
+            try
+            {
+              while (true)
+              {
+                int value = queue.getRequest().intValue();
+                if (value < 0)
+                  return;
+                sums[readerNumber] += value;
+              }
+            }
+            catch (InterruptedException e)
+            {
+            }
+          }
+        };
+      readers[i].start();
+    }
+    long expected = 0L;
+    for (int i = 0; i < requestCount; i++)
+    {
+      queue.addRequest(new Integer(i));
+      expected += i;
+    }
+    for (int i = 0; i < readerCount; i++)
+    {
+      queue.addRequest(new Integer(-1));
+    }
+    long total = 0L;
+    for (int i = 0; i < readerCount; i++)
+    {
+      readers[i].join();
+      total += sums[i];
+    }
+    assertEquals(expected,total);
+    assertEquals((long)(requestCount + readerCount),queue.getTakenCount());
+  }
+
+}
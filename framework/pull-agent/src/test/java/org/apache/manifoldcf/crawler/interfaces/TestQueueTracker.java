@@ -0,0 +1,128 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.interfaces;
+
+import java.util.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Check the QueueTracker bin accounting.
+*/
+public class TestQueueTracker
+{
+
+  @BeforeClass
+  public static void setUp()
+  {
+    org.apache.manifoldcf.crawler.system.Logging.scheduling = org.apache.log4j.Logger.getLogger("test");
+  }
+
+  @Test
+  public void binCountTest()
+    throws Exception
+  {
+    QueueTracker qt = new QueueTracker();
+    String[] bins = new String[]{"a.com","b.com"};
+    qt.addRecord(bins);
+    qt.addRecord(new String[]{"a.com"});
+    assertEquals(2,qt.getQueuedBinCount("a.com"));
+    assertEquals(1,qt.getQueuedBinCount("b.com"));
+    assertEquals(0,qt.getActiveBinCount("a.com"));
+
+    qt.beginProcessing(bins);
+    assertEquals(1,qt.getQueuedBinCount("a.com"));
+    assertEquals(0,qt.getQueuedBinCount("b.com"));
+    assertEquals(1,qt.getActiveBinCount("a.com"));
+    assertEquals(1,qt.getActiveBinCount("b.com"));
+
+    qt.endProcessing(bins);
+    assertEquals(1,qt.getQueuedBinCount("a.com"));
+    assertEquals(0,qt.getActiveBinCount("a.com"));
+    assertEquals(0,qt.getActiveBinCount("b.com"));
+
+    // Extra ends never drive a count negative
+    qt.endProcessing(bins);
+    assertEquals(0,qt.getActiveBinCount("b.com"));
+  }
+
+  @Test
+  public void ratingTest()
+    throws Exception
+  {
+    QueueTracker qt = new QueueTracker();
+    String[] bins = new String[]{"a.com","b.com"};
+    assertEquals(0.0,qt.calculateAssignmentRating(bins,null),0.0);
+    qt.addRecord(new String[]{"a.com"});
+    qt.beginProcessing(new String[]{"a.com"});
+    qt.addRecord(new String[]{"a.com"});
+    qt.beginProcessing(new String[]{"a.com"});
+    // a.com has two active documents, b.com none
+    assertEquals(-Math.log(3.0)/2.0,qt.calculateAssignmentRating(bins,null),1e-9);
+    // No bins at all: neutral, not NaN
+    assertEquals(0.0,qt.calculateAssignmentRating(new String[0],null),0.0);
+  }
+
+  @Test
+  public void concurrencyTest()
+    throws Exception
+  {
+    final QueueTracker qt = new QueueTracker();
+    final String[] binNames = makeBinNames(1000);
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++)
+    {
+      final int offset = t;
+      threads[t] = new Thread()
+        {
+          public void run()
+          {
+            for (int i = 0; i < 20000; i++)
+            {
+              String[] bins = new String[]{binNames[(i + offset) % binNames.length]};
+              qt.addRecord(bins);
+              qt.beginProcessing(bins);
+              qt.endProcessing(bins);
+            }
+          }
+        };
+      threads[t].start();
+    }
+    for (Thread t : threads)
+    {
+      t.join();
+    }
+    for (String binName : binNames)
+    {
+      assertEquals(0,qt.getQueuedBinCount(binName));
+      assertEquals(0,qt.getActiveBinCount(binName));
+    }
+  }
+
+  protected static String[] makeBinNames(int count)
+  {
+    String[] rval = new String[count];
+    for (int i = 0; i < count; i++)
+    {
+      rval[i] = "host"+i+".example.com";
+    }
+    return rval;
+  }
+
+}
@@ -0,0 +1,156 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.system;
+
+import org.apache.manifoldcf.crawler.interfaces.*;
+import java.util.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Check that the document queue hands out the best-rated document set first, and keeps its ratings
+* up to date as bins become busy.
+*/
+public class TestDocumentQueue
+{
+
+  @BeforeClass
+  public static void setUp()
+  {
+    Logging.scheduling = org.apache.log4j.Logger.getLogger("test");
+  }
+
+  @Test
+  public void bestRatingFirst()
+    throws Exception
+  {
+    QueueTracker qt = new QueueTracker();
+    makeBusy(qt,"a.com",2);
+    makeBusy(qt,"b.com",1);
+    DocumentQueue dq = new DocumentQueue();
+    QueuedDocumentSet busiest = makeSet(new String[]{"a.com"});
+    QueuedDocumentSet busy = makeSet(new String[]{"b.com"});
+    QueuedDocumentSet idle = makeSet(new String[]{"c.com"});
+    dq.addDocument(busiest);
+    dq.addDocument(busy);
+    dq.addDocument(idle);
+    assertSame(idle,dq.getDocument(qt));
+    assertSame(busy,dq.getDocument(qt));
+    assertSame(busiest,dq.getDocument(qt));
+    assertTrue(dq.checkIfEmpty(0));
+  }
+
+  @Test
+  public void arrivalOrderForTies()
+    throws Exception
+  {
+    QueueTracker qt = new QueueTracker();
+    DocumentQueue dq = new DocumentQueue();
+    List<QueuedDocumentSet> sets = new ArrayList<QueuedDocumentSet>();
+    for (int i = 0; i < 10; i++)
+    {
+      QueuedDocumentSet set = makeSet(new String[]{"host"+i+".com"});
+      sets.add(set);
+      dq.addDocument(set);
+    }
+    for (QueuedDocumentSet set : sets)
+    {
+      assertSame(set,dq.getDocument(qt));
+    }
+  }
+
+  @Test
+  public void rerateQueuedSet()
+    throws Exception
+  {
+    QueueTracker qt = new QueueTracker();
+    DocumentQueue dq = new DocumentQueue();
+    QueuedDocumentSet first = makeSet(new String[]{"a.com"});
+    QueuedDocumentSet second = makeSet(new String[]{"b.com"});
+    QueuedDocumentSet third = makeSet(new String[]{"c.com"});
+    dq.addDocument(first);
+    dq.addDocument(second);
+    dq.addDocument(third);
+    // All three are rated now, equally
+    assertSame(first,dq.getDocument(qt));
+
+    // b.com gets busy while its set is queued, so that set has to drop behind
+    makeBusy(qt,"b.com",1);
+    assertSame(third,dq.getDocument(qt));
+    assertSame(second,dq.getDocument(qt));
+  }
+
+  @Test
+  public void rerateWhenBinIsFree()
+    throws Exception
+  {
+    QueueTracker qt = new QueueTracker();
+    makeBusy(qt,"a.com",1);
+    DocumentQueue dq = new DocumentQueue();
+    QueuedDocumentSet waiting = makeSet(new String[]{"a.com"});
+    QueuedDocumentSet other = makeSet(new String[]{"b.com","c.com"});
+    QueuedDocumentSet last = makeSet(new String[]{"d.com"});
+    dq.addDocument(waiting);
+    dq.addDocument(other);
+    dq.addDocument(last);
+    assertSame(other,dq.getDocument(qt));
+
+    // Once a.com is free again, its set is back to the front, by arrival
+    qt.endProcessing(new String[]{"a.com"});
+    assertSame(waiting,dq.getDocument(qt));
+    assertSame(last,dq.getDocument(qt));
+  }
+
+  @Test
+  public void noBinsIsNeutral()
+    throws Exception
+  {
+    QueueTracker qt = new QueueTracker();
+    makeBusy(qt,"a.com",1);
+    DocumentQueue dq = new DocumentQueue();
+    QueuedDocumentSet busy = makeSet(new String[]{"a.com"});
+    QueuedDocumentSet idle = makeSet(new String[]{"c.com"});
+    QueuedDocumentSet noBins = makeSet(new String[0]);
+    dq.addDocument(busy);
+    dq.addDocument(idle);
+    dq.addDocument(noBins);
+    // Rated like an idle bin: behind the idle set that came first, but ahead of the busy one
+    assertSame(idle,dq.getDocument(qt));
+    assertSame(noBins,dq.getDocument(qt));
+    assertSame(busy,dq.getDocument(qt));
+  }
+
+  protected static void makeBusy(QueueTracker qt, String binName, int count)
+  {
+    String[] bins = new String[]{binName};
+    for (int i = 0; i < count; i++)
+    {
+      qt.addRecord(bins);
+      qt.beginProcessing(bins);
+    }
+  }
+
+  protected static QueuedDocumentSet makeSet(String[] binNames)
+  {
+    ArrayList list = new ArrayList();
+    list.add(new QueuedDocument(null,null,binNames));
+    return new QueuedDocumentSet(list,null,null);
+  }
+
+}